@@ -0,0 +1,311 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.security.commons;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.log4j.Logger;
+
+import azkaban.utils.Props;
+
+/**
+ * Keeps one open FileSystem per proxy user so that web requests do not pay
+ * for a new DFSClient, RPC connection and lease renewer every time.
+ *
+ * Handles are borrowed and released around each use. A handle is closed once
+ * it is no longer borrowed and it has either been idle for too long, outlived
+ * its maximum lifetime (so it never outlives the credentials it was created
+ * with), been invalidated after a failure, or been pushed out because too many
+ * users hold handles.
+ *
+ * FileSystem instances handed out by the pool must not be closed by callers.
+ * The pool relies on {@link HadoopSecurityManager#getFSAsUser(String)}
+ * returning a fresh instance, i.e. fs.hdfs.impl.disable.cache should be set.
+ */
+public class FileSystemPool {
+  private static final Logger logger = Logger.getLogger(FileSystemPool.class);
+
+  public static final String MAX_USERS = "fs.pool.max.users";
+  public static final String MAX_IDLE_MS = "fs.pool.max.idle.ms";
+  public static final String MAX_LIFETIME_MS = "fs.pool.max.lifetime.ms";
+
+  private static final int DEFAULT_MAX_USERS = 100;
+  private static final long DEFAULT_MAX_IDLE_MS = 10 * 60 * 1000L;
+  private static final long DEFAULT_MAX_LIFETIME_MS = 60 * 60 * 1000L;
+  private static final long EVICTION_INTERVAL_MS = 60 * 1000L;
+
+  private final HadoopSecurityManager securityManager;
+  private final int maxUsers;
+  private final long maxIdleMs;
+  private final long maxLifetimeMs;
+
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+  private final Map<FileSystem, Entry> handles =
+      new IdentityHashMap<FileSystem, Entry>();
+  private final ScheduledExecutorService evictor;
+
+  private static class Entry {
+    private final String user;
+    private final FileSystem fs;
+    private final long createTime;
+    private long lastUsedTime;
+    private int borrowCount;
+    private boolean retired;
+
+    private Entry(String user, FileSystem fs, long now) {
+      this.user = user;
+      this.fs = fs;
+      this.createTime = now;
+      this.lastUsedTime = now;
+    }
+  }
+
+  public FileSystemPool(HadoopSecurityManager securityManager, Props props) {
+    this(securityManager, props.getInt(MAX_USERS, DEFAULT_MAX_USERS), props
+        .getLong(MAX_IDLE_MS, DEFAULT_MAX_IDLE_MS), props.getLong(
+        MAX_LIFETIME_MS, DEFAULT_MAX_LIFETIME_MS));
+  }
+
+  public FileSystemPool(HadoopSecurityManager securityManager, int maxUsers,
+      long maxIdleMs, long maxLifetimeMs) {
+    this.securityManager = securityManager;
+    this.maxUsers = maxUsers;
+    this.maxIdleMs = maxIdleMs;
+    this.maxLifetimeMs = maxLifetimeMs;
+
+    evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "azk-fs-pool-evictor");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    evictor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        evict();
+      }
+    }, EVICTION_INTERVAL_MS, EVICTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns an open FileSystem for the given user. Every call must be paired
+   * with a call to {@link #release(FileSystem)}.
+   */
+  public FileSystem borrow(String user) throws HadoopSecurityManagerException {
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      Entry entry = entries.get(user);
+      if (entry != null && !isExpired(entry, now)) {
+        entry.borrowCount++;
+        entry.lastUsedTime = now;
+        return entry.fs;
+      }
+      if (entry != null) {
+        retire(entry);
+      }
+    }
+
+    // Creating the handle talks to the NameNode, so do it outside the lock.
+    FileSystem fs = securityManager.getFSAsUser(user);
+    List<Entry> toClose;
+    Entry existing;
+    synchronized (this) {
+      existing = entries.get(user);
+      if (existing != null && !isExpired(existing, now)) {
+        // Another request created one concurrently. Use theirs.
+        existing.borrowCount++;
+        existing.lastUsedTime = now;
+        toClose = null;
+      } else {
+        existing = null;
+        Entry entry = new Entry(user, fs, now);
+        entry.borrowCount = 1;
+        entries.put(user, entry);
+        handles.put(fs, entry);
+        toClose = collectEvictable(now);
+      }
+    }
+
+    if (existing != null) {
+      closeQuietly(fs);
+      return existing.fs;
+    }
+    closeAll(toClose);
+    return fs;
+  }
+
+  /**
+   * Takes another reference to a FileSystem that is currently borrowed, for
+   * work that goes on after its borrower has released it, e.g. a background
+   * task started by a request. The handle stays open until every reference is
+   * released, even if it is evicted or invalidated meanwhile. Returns false if
+   * the FileSystem is not lent out by this pool.
+   */
+  public boolean retain(FileSystem fs) {
+    synchronized (this) {
+      Entry entry = handles.get(fs);
+      if (entry == null) {
+        return false;
+      }
+      entry.borrowCount++;
+      entry.lastUsedTime = System.currentTimeMillis();
+      return true;
+    }
+  }
+
+  /**
+   * Returns a FileSystem obtained from {@link #borrow(String)} or
+   * {@link #retain(FileSystem)} to the pool.
+   */
+  public void release(FileSystem fs) {
+    Entry closable = null;
+    synchronized (this) {
+      Entry entry = handles.get(fs);
+      if (entry == null) {
+        return;
+      }
+      entry.borrowCount--;
+      entry.lastUsedTime = System.currentTimeMillis();
+      if (entry.retired && entry.borrowCount == 0) {
+        handles.remove(fs);
+        closable = entry;
+      }
+    }
+    if (closable != null) {
+      closeQuietly(closable.fs);
+    }
+  }
+
+  /**
+   * Releases a FileSystem that failed in a way that suggests the handle itself
+   * is broken, e.g. expired credentials. The next borrow for the user creates
+   * a new handle.
+   */
+  public void invalidate(FileSystem fs) {
+    synchronized (this) {
+      Entry entry = handles.get(fs);
+      if (entry != null) {
+        retire(entry);
+      }
+    }
+    release(fs);
+  }
+
+  /**
+   * Closes all handles that are not borrowed, and stops the evictor. Borrowed
+   * handles are closed when they are released.
+   */
+  public void shutdown() {
+    evictor.shutdownNow();
+    List<Entry> toClose = new ArrayList<Entry>();
+    synchronized (this) {
+      for (Entry entry : new ArrayList<Entry>(entries.values())) {
+        retire(entry);
+        if (entry.borrowCount == 0) {
+          handles.remove(entry.fs);
+          toClose.add(entry);
+        }
+      }
+    }
+    closeAll(toClose);
+  }
+
+  private void evict() {
+    List<Entry> toClose;
+    synchronized (this) {
+      toClose = collectEvictable(System.currentTimeMillis());
+    }
+    closeAll(toClose);
+  }
+
+  private boolean isExpired(Entry entry, long now) {
+    return entry.retired || now - entry.createTime > maxLifetimeMs;
+  }
+
+  private void retire(Entry entry) {
+    entry.retired = true;
+    if (entries.get(entry.user) == entry) {
+      entries.remove(entry.user);
+    }
+  }
+
+  /**
+   * Retires expired and idle entries, and the least recently used entries
+   * beyond maxUsers, and returns those that can be closed right away. Must be
+   * called while holding the pool lock.
+   */
+  private List<Entry> collectEvictable(long now) {
+    for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+      Entry entry = it.next();
+      if (isExpired(entry, now)
+          || (entry.borrowCount == 0 && now - entry.lastUsedTime > maxIdleMs)) {
+        entry.retired = true;
+        it.remove();
+      }
+    }
+
+    while (entries.size() > maxUsers) {
+      Entry oldest = null;
+      for (Entry entry : entries.values()) {
+        if (oldest == null || entry.lastUsedTime < oldest.lastUsedTime) {
+          oldest = entry;
+        }
+      }
+      retire(oldest);
+    }
+
+    List<Entry> toClose = new ArrayList<Entry>();
+    for (Iterator<Entry> it = handles.values().iterator(); it.hasNext();) {
+      Entry entry = it.next();
+      if (entry.retired && entry.borrowCount == 0) {
+        it.remove();
+        toClose.add(entry);
+      }
+    }
+    return toClose;
+  }
+
+  private void closeAll(List<Entry> toClose) {
+    for (Entry entry : toClose) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Closing pooled file system of " + entry.user);
+      }
+      closeQuietly(entry.fs);
+    }
+  }
+
+  private void closeQuietly(FileSystem fs) {
+    try {
+      fs.close();
+    } catch (IOException e) {
+      logger.warn("Failed to close file system", e);
+    }
+  }
+}
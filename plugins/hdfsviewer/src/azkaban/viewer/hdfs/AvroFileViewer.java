@@ -17,18 +17,24 @@
 package azkaban.viewer.hdfs;
 
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
 import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileReader;
 import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.SeekableInput;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Encoder;
 import org.apache.avro.io.EncoderFactory;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.AccessControlException;
@@ -46,16 +52,38 @@ import org.codehaus.jackson.JsonGenerator;
 public class AvroFileViewer extends HdfsFileViewer {
 
   private static Logger logger = Logger.getLogger(AvroFileViewer.class);
-  // Will spend 5 seconds trying to pull data and then stop.
-  private static long STOP_TIME = 2000l;
 
   private static final String VIEWER_NAME = "Avro";
 
+  // Number of file versions whose block index is kept in memory.
+  private static final int INDEX_CACHE_SIZE = 256;
+
+  // Maps the first record of each block read so far to the block's sync
+  // point, so later pages can seek to the block holding their first record.
+  private final RecordOffsetIndexCache indexCache;
+
+  public AvroFileViewer() {
+    this(null);
+  }
+
+  /**
+   * @param indexDir where block indexes are saved, or null to only keep them
+   *          in memory
+   */
+  public AvroFileViewer(File indexDir) {
+    indexCache = new RecordOffsetIndexCache(INDEX_CACHE_SIZE, indexDir);
+  }
+
   @Override
   public String getName() {
     return VIEWER_NAME;
   }
 
+  @Override
+  public FileFormat getFormat() {
+    return FileFormat.AVRO;
+  }
+
   @Override
   public Set<Capability> getCapabilities(FileSystem fs, Path path)
       throws AccessControlException {
@@ -63,10 +91,8 @@ public class AvroFileViewer extends HdfsFileViewer {
       logger.debug("path:" + path.toUri().getPath());
     }
 
-    DataFileStream<Object> avroDataStream = null;
     try {
-      avroDataStream = getAvroDataStream(fs, path);
-      Schema schema = avroDataStream.getSchema();
+      Schema schema = getCachedSchema(fs, path);
       return (schema != null) ? EnumSet.of(Capability.READ, Capability.SCHEMA)
           : EnumSet.noneOf(Capability.class);
     } catch (AccessControlException e) {
@@ -77,14 +103,6 @@ public class AvroFileViewer extends HdfsFileViewer {
         logger.debug("Error in getting avro schema: ", e);
       }
       return EnumSet.noneOf(Capability.class);
-    } finally {
-      try {
-        if (avroDataStream != null) {
-          avroDataStream.close();
-        }
-      } catch (IOException e) {
-        logger.error(e);
-      }
     }
   }
 
@@ -94,28 +112,37 @@ public class AvroFileViewer extends HdfsFileViewer {
       logger.debug("path:" + path.toUri().getPath());
     }
 
-    DataFileStream<Object> avroDataStream = null;
     try {
-      avroDataStream = getAvroDataStream(fs, path);
-      Schema schema = avroDataStream.getSchema();
-      return schema.toString(true);
+      return getCachedSchema(fs, path).toString(true);
     } catch (IOException e) {
       if (logger.isDebugEnabled()) {
         logger.debug(path.toUri().getPath() + " is not an avro file.");
         logger.debug("Error in getting avro schema: ", e);
       }
       return null;
-    } finally {
-      try {
-        if (avroDataStream != null) {
-          avroDataStream.close();
-        }
-      } catch (IOException e) {
-        logger.error(e);
-      }
     }
   }
 
+  /**
+   * Returns the writer schema from the header of the file.
+   */
+  private Schema getCachedSchema(FileSystem fs, Path path) throws IOException {
+    return getMetadataCache().get(fs, path, "avro.schema",
+        new FileMetadataCache.Loader<Schema>() {
+          @Override
+          public Schema load(FileSystem fs, FileStatus status)
+              throws IOException {
+            DataFileStream<Object> avroDataStream =
+                getAvroDataStream(fs, status.getPath());
+            try {
+              return avroDataStream.getSchema();
+            } finally {
+              avroDataStream.close();
+            }
+          }
+        });
+  }
+
   private DataFileStream<Object> getAvroDataStream(FileSystem fs, Path path)
       throws IOException {
     if (logger.isDebugEnabled()) {
@@ -150,17 +177,40 @@ public class AvroFileViewer extends HdfsFileViewer {
   @Override
   public void displayFile(FileSystem fs, Path path, OutputStream outputStream,
       int startLine, int endLine) throws IOException {
+    displayFile(fs, path, outputStream, startLine, endLine, null,
+        newDefaultBudget());
+  }
+
+  @Override
+  public void displayFile(FileSystem fs, Path path, OutputStream outputStream,
+      int startLine, int endLine, List<String> columns, ViewBudget budget)
+      throws IOException {
 
     if (logger.isDebugEnabled()) {
       logger.debug("display avro file:" + path.toUri().getPath());
     }
 
-    DataFileStream<Object> avroDatastream = null;
+    DataFileReader<Object> avroReader = null;
     JsonGenerator g = null;
+    outputStream = budget.track(outputStream);
+    endLine = budget.lastRecord(startLine, endLine);
 
     try {
-      avroDatastream = getAvroDataStream(fs, path);
-      Schema schema = avroDatastream.getSchema();
+      FileStatus status = fs.getFileStatus(path);
+      HdfsFileKey key = HdfsFileKey.of(status);
+      RecordOffsetIndex index = indexCache.getOrCreate(key);
+      int indexSize = index.size();
+
+      FSDataInputStream in = fs.open(path);
+      try {
+        avroReader =
+            new DataFileReader<Object>(new FsSeekableInput(in,
+                status.getLen()), new GenericDatumReader<Object>());
+      } catch (IOException e) {
+        in.close();
+        throw e;
+      }
+      Schema schema = avroReader.getSchema();
       DatumWriter<Object> avroWriter = new GenericDatumWriter<Object>(schema);
 
       g = new JsonFactory().createJsonGenerator(
@@ -168,11 +218,25 @@ public class AvroFileViewer extends HdfsFileViewer {
       g.useDefaultPrettyPrinter();
       Encoder encoder = EncoderFactory.get().jsonEncoder(schema, g);
 
-      long endTime = System.currentTimeMillis() + STOP_TIME;
       int lineno = 1; // line number starts from 1
-      while (avroDatastream.hasNext() && lineno <= endLine
-          && System.currentTimeMillis() <= endTime) {
-        Object datum = avroDatastream.next();
+      RecordOffsetIndex.Entry checkpoint = index.floor(startLine);
+      if (checkpoint.getRecord() > 1) {
+        avroReader.seek(checkpoint.getOffset());
+        lineno = (int) checkpoint.getRecord();
+      }
+
+      long blockStart = avroReader.previousSync();
+      while (avroReader.hasNext() && lineno <= endLine
+          && !budget.isExhausted()) {
+        Object datum = avroReader.next();
+        if (avroReader.previousSync() != blockStart) {
+          // This was the last record of its block, the next one starts the
+          // block at the new sync point.
+          blockStart = avroReader.previousSync();
+          if (blockStart < status.getLen()) {
+            index.add(lineno + 1, blockStart);
+          }
+        }
         if (lineno >= startLine) {
           String record = "\n\n Record " + lineno + ":\n";
           outputStream.write(record.getBytes("UTF-8"));
@@ -181,6 +245,10 @@ public class AvroFileViewer extends HdfsFileViewer {
         }
         lineno++;
       }
+
+      if (index.size() != indexSize) {
+        indexCache.save(key, index);
+      }
     } catch (IOException e) {
       outputStream.write(("Error in display avro file: " + e
           .getLocalizedMessage()).getBytes("UTF-8"));
@@ -189,8 +257,66 @@ public class AvroFileViewer extends HdfsFileViewer {
       if (g != null) {
         g.close();
       }
-      avroDatastream.close();
+      if (avroReader != null) {
+        avroReader.close();
+      }
     }
   }
 
+  @Override
+  public boolean scanRecords(FileSystem fs, Path path, RecordVisitor visitor)
+      throws IOException {
+    DataFileStream<Object> avroDataStream = getAvroDataStream(fs, path);
+    try {
+      Object datum = null;
+      long record = 1;
+      while (avroDataStream.hasNext()) {
+        datum = avroDataStream.next(datum);
+        if (!visitor.visit(record++, datum.toString())) {
+          break;
+        }
+      }
+    } finally {
+      avroDataStream.close();
+    }
+    return true;
+  }
+
+  /**
+   * Lets {@link DataFileReader} seek in an HDFS file.
+   */
+  private static class FsSeekableInput implements SeekableInput {
+    private final FSDataInputStream in;
+    private final long length;
+
+    private FsSeekableInput(FSDataInputStream in, long length) {
+      this.in = in;
+      this.length = length;
+    }
+
+    @Override
+    public void seek(long p) throws IOException {
+      in.seek(p);
+    }
+
+    @Override
+    public long tell() throws IOException {
+      return in.getPos();
+    }
+
+    @Override
+    public long length() {
+      return length;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return in.read(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
 }
@@ -187,6 +187,7 @@ public class AzkabanSequenceFileReader {
     private byte[] sync = new byte[SYNC_HASH_SIZE];
     private byte[] syncCheck = new byte[SYNC_HASH_SIZE];
     private boolean syncSeen;
+    private long syncPosition = -1;
 
     private long end;
     private int keyLength;
@@ -511,6 +512,7 @@ public class AzkabanSequenceFileReader {
       valuesDecompressed = false;
 
       // Process sync
+      syncPosition = in.getPos();
       if (sync != null) {
         in.readInt();
         in.readFully(syncCheck); // read syncCheck
@@ -739,9 +741,11 @@ public class AzkabanSequenceFileReader {
       if (in.getPos() >= end) {
         return -1;
       }
+      long position = in.getPos();
       int length = in.readInt();
       if (version > 1 && sync != null && length == SYNC_ESCAPE) { // process a
                                                                   // sync entry
+        syncPosition = position;
         in.readFully(syncCheck); // read syncCheck
         if (!Arrays.equals(sync, syncCheck)) // check it
           throw new IOException("File is corrupt!");
@@ -1051,6 +1055,16 @@ public class AzkabanSequenceFileReader {
       return syncSeen;
     }
 
+    /**
+     * Returns the position of the last sync mark passed, which is a valid
+     * argument to {@link #seek(long)}. In block compressed files this is not
+     * the position before the call to next that passed it, as the values of
+     * the previous block may have been skipped first.
+     */
+    public long getSyncPosition() {
+      return syncPosition;
+    }
+
     /** Return the current byte position in the input file. */
     public synchronized long getPosition() throws IOException {
       return in.getPos();
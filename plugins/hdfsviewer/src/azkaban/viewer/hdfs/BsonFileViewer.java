@@ -17,7 +17,9 @@
 package azkaban.viewer.hdfs;
 
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -39,14 +41,24 @@ import com.mongodb.util.JSON;
  */
 public final class BsonFileViewer extends HdfsFileViewer {
 
-  /**
-   * The maximum time spent, in milliseconds, while reading records from the
-   * file.
-   */
-  private static long STOP_TIME = 2000l;
-
   private static final String VIEWER_NAME = "BSON";
 
+  private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+  private static final int POOLED_BUFFER_SIZE = 64 * 1024;
+  // An empty document is a length and a terminating zero.
+  private static final int MIN_DOCUMENT_SIZE = 5;
+  // Twice the largest document MongoDB stores, to leave room for dumps of
+  // other writers.
+  private static final int MAX_DOCUMENT_SIZE = 32 * 1024 * 1024;
+
+  private static final ThreadLocal<byte[]> buffers =
+      new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+          return new byte[POOLED_BUFFER_SIZE];
+        }
+      };
+
   @Override
   public String getName() {
     return VIEWER_NAME;
@@ -64,12 +76,25 @@ public final class BsonFileViewer extends HdfsFileViewer {
   @Override
   public void displayFile(FileSystem fs, Path path, OutputStream outStream,
       int startLine, int endLine) throws IOException {
+    displayFile(fs, path, outStream, startLine, endLine, null,
+        newDefaultBudget());
+  }
 
+  /**
+   * Skips the records before startLine by reading only their length prefix
+   * and seeking past them, and decodes the records of the window from a
+   * pooled buffer.
+   */
+  @Override
+  public void displayFile(FileSystem fs, Path path, OutputStream outStream,
+      int startLine, int endLine, List<String> columns, ViewBudget budget)
+      throws IOException {
+
+    outStream = budget.track(outStream);
+    endLine = budget.lastRecord(startLine, endLine);
     FSDataInputStream in = null;
     try {
-      in = fs.open(path, 16 * 1024 * 1024);
-
-      long endTime = System.currentTimeMillis() + STOP_TIME;
+      in = fs.open(path, STREAM_BUFFER_SIZE);
 
       BasicBSONCallback callback = new BasicBSONCallback();
       BasicBSONDecoder decoder = new BasicBSONDecoder();
@@ -79,17 +104,30 @@ public final class BsonFileViewer extends HdfsFileViewer {
        * met:
        *
        * a. we have rendered all bsonObjects desired. b. we have run out of
-       * time.
+       * budget. c. the file ends.
        */
-      for (int lineno = 1; lineno <= endLine
-          && System.currentTimeMillis() <= endTime; lineno++) {
+      for (int lineno = 1; lineno <= endLine && !budget.isExhausted();
+          lineno++) {
+        int length = readLength(in);
+        if (length < 0) {
+          break;
+        }
         if (lineno < startLine) {
+          in.seek(in.getPos() + length - 4);
           continue;
         }
 
-        callback.reset();
-        decoder.decode(in, callback);
+        byte[] document = buffers.get();
+        if (length > document.length) {
+          // Rare large documents get their own buffer, so the pooled ones
+          // stay small.
+          document = new byte[length];
+        }
+        writeLength(document, length);
+        in.readFully(document, 4, length - 4);
 
+        callback.reset();
+        decoder.decode(document, callback);
         BSONObject value = (BSONObject) callback.get();
 
         StringBuilder bldr = new StringBuilder();
@@ -101,7 +139,7 @@ public final class BsonFileViewer extends HdfsFileViewer {
       }
     } catch (IOException e) {
       outStream
-          .write(("Error in display avro file: " + e.getLocalizedMessage())
+          .write(("Error in display bson file: " + e.getLocalizedMessage())
               .getBytes("UTF-8"));
     } finally {
       if (in != null) {
@@ -110,4 +148,34 @@ public final class BsonFileViewer extends HdfsFileViewer {
       outStream.flush();
     }
   }
+
+  /**
+   * Reads the little endian length that starts every document, which counts
+   * itself. Returns -1 at the end of the file.
+   */
+  private static int readLength(FSDataInputStream in) throws IOException {
+    int b0 = in.read();
+    if (b0 < 0) {
+      return -1;
+    }
+    int b1 = in.read();
+    int b2 = in.read();
+    int b3 = in.read();
+    if ((b1 | b2 | b3) < 0) {
+      throw new EOFException("Truncated document at " + (in.getPos() - 1));
+    }
+    int length = b0 | (b1 << 8) | (b2 << 16) | (b3 << 24);
+    if (length < MIN_DOCUMENT_SIZE || length > MAX_DOCUMENT_SIZE) {
+      throw new IOException("Invalid document length " + length + " at "
+          + (in.getPos() - 4));
+    }
+    return length;
+  }
+
+  private static void writeLength(byte[] document, int length) {
+    document[0] = (byte) length;
+    document[1] = (byte) (length >>> 8);
+    document[2] = (byte) (length >>> 16);
+    document[3] = (byte) (length >>> 24);
+  }
 }
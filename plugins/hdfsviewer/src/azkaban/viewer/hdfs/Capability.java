@@ -18,5 +18,6 @@ package azkaban.viewer.hdfs;
 
 public enum Capability {
   READ,
-  SCHEMA
+  SCHEMA,
+  STATS
 }
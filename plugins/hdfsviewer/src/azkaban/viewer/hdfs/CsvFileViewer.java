@@ -0,0 +1,484 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.AccessControlException;
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+/**
+ * Displays CSV and TSV files as pages of typed rows.
+ *
+ * The delimiter, whether the first row is a header, and the type of each
+ * column are inferred from the first bytes of the file. Pages are rendered as
+ * a json object with the columns and the rows of the requested window, so the
+ * browser can sort and filter them. Like text paging, the byte offsets of rows
+ * passed while reading are kept in an index, so later pages seek close to
+ * their first row instead of parsing the file from the top. Rows are indexed
+ * by the quote aware parser, since quoted fields may span lines.
+ */
+public class CsvFileViewer extends HdfsFileViewer {
+  private static Logger logger = Logger.getLogger(CsvFileViewer.class);
+
+  private static final String VIEWER_NAME = "CSV";
+
+  // Bytes read from the top of the file to infer the schema.
+  private static final int SAMPLE_BYTES = 16 * 1024;
+  // Rows of the sample used to infer the column types.
+  private static final int SAMPLE_ROWS = 100;
+  // Rows between two checkpoints of the row index.
+  private static final int INDEX_INTERVAL = 10000;
+  // Number of file versions whose row index is kept in memory.
+  private static final int INDEX_CACHE_SIZE = 256;
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  private static final Pattern LONG_PATTERN = Pattern.compile("-?\\d{1,18}");
+  private static final Pattern DOUBLE_PATTERN =
+      Pattern.compile("-?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?");
+
+  /**
+   * Types inferred for columns, from the narrowest.
+   */
+  public enum ColumnType {
+    BOOLEAN, LONG, DOUBLE, STRING
+  }
+
+  /**
+   * The layout of a file inferred from its first rows.
+   */
+  public static final class CsvSchema {
+    private final char delimiter;
+    private final boolean header;
+    private final List<String> names;
+    private final List<ColumnType> types;
+
+    public CsvSchema(char delimiter, boolean header, List<String> names,
+        List<ColumnType> types) {
+      this.delimiter = delimiter;
+      this.header = header;
+      this.names = Collections.unmodifiableList(names);
+      this.types = Collections.unmodifiableList(types);
+    }
+
+    public char getDelimiter() {
+      return delimiter;
+    }
+
+    /**
+     * Whether the first row holds the column names rather than data.
+     */
+    public boolean hasHeader() {
+      return header;
+    }
+
+    public List<String> getNames() {
+      return names;
+    }
+
+    public List<ColumnType> getTypes() {
+      return types;
+    }
+  }
+
+  private final Set<String> acceptedSuffix = new HashSet<String>();
+  private final RecordOffsetIndexCache indexCache;
+
+  public CsvFileViewer() {
+    this(null);
+  }
+
+  /**
+   * @param indexDir where row indexes are saved, or null to only keep them
+   *          in memory
+   */
+  public CsvFileViewer(File indexDir) {
+    indexCache = new RecordOffsetIndexCache(INDEX_CACHE_SIZE, indexDir);
+    acceptedSuffix.add(".csv");
+    acceptedSuffix.add(".tsv");
+  }
+
+  @Override
+  public String getName() {
+    return VIEWER_NAME;
+  }
+
+  @Override
+  public Set<Capability> getCapabilities(FileSystem fs, Path path)
+      throws AccessControlException {
+    String name = path.getName();
+    int dot = name.lastIndexOf('.');
+    if (dot >= 0
+        && acceptedSuffix.contains(name.substring(dot).toLowerCase())) {
+      return EnumSet.of(Capability.READ, Capability.SCHEMA);
+    }
+    return EnumSet.noneOf(Capability.class);
+  }
+
+  @Override
+  public void displayFile(FileSystem fs, Path path, OutputStream outputStream,
+      int startLine, int endLine) throws IOException {
+    displayFile(fs, path, outputStream, startLine, endLine, null);
+  }
+
+  @Override
+  public void displayFile(FileSystem fs, Path path, OutputStream outputStream,
+      int startLine, int endLine, List<String> columns) throws IOException {
+    displayFile(fs, path, outputStream, startLine, endLine, columns,
+        newDefaultBudget());
+  }
+
+  /**
+   * Writes the data rows [startLine, endLine], not counting the header, as
+   * one json object with the columns and the rows. Values that do not parse
+   * as the type of their column are written as strings, and empty values as
+   * nulls.
+   */
+  @Override
+  public void displayFile(FileSystem fs, Path path, OutputStream outputStream,
+      int startLine, int endLine, List<String> columns, ViewBudget budget)
+      throws IOException {
+    if (logger.isDebugEnabled()) {
+      logger.debug("Display CSV file: " + path.toUri().getPath());
+    }
+
+    outputStream = budget.track(outputStream);
+    endLine = budget.lastRecord(startLine, endLine);
+    CsvSchema schema = getCachedSchema(fs, path);
+    int[] selected;
+    try {
+      selected = selectColumns(schema, columns);
+    } catch (IllegalArgumentException e) {
+      outputStream.write(e.getMessage().getBytes("UTF-8"));
+      return;
+    }
+
+    FileStatus status = fs.getFileStatus(path);
+    HdfsFileKey key = HdfsFileKey.of(status);
+    RecordOffsetIndex index = indexCache.getOrCreate(key);
+    int indexSize = index.size();
+    // The index counts every row of the file, including the header.
+    int skipped = schema.hasHeader() ? 1 : 0;
+    long firstRow = (long) startLine + skipped;
+    long lastRow = (long) endLine + skipped;
+
+    JsonGenerator json =
+        new JsonFactory().createJsonGenerator(outputStream, JsonEncoding.UTF8);
+    json.useDefaultPrettyPrinter();
+    FSDataInputStream in = fs.open(path);
+    try {
+      RecordOffsetIndex.Entry checkpoint = index.floor(firstRow);
+      in.seek(checkpoint.getOffset());
+      CsvReader reader =
+          new CsvReader(in, schema.getDelimiter(), READ_BUFFER_SIZE);
+      long row = checkpoint.getRecord();
+      while (row < firstRow && !budget.isCancelled()) {
+        if (!reader.skipRow()) {
+          break;
+        }
+        row++;
+        if ((row - 1) % INDEX_INTERVAL == 0) {
+          index.add(row, checkpoint.getOffset() + reader.getBytesRead());
+        }
+      }
+
+      json.writeStartObject();
+      writeColumns(json, schema, selected);
+      json.writeNumberField("firstRow", startLine);
+      json.writeArrayFieldStart("rows");
+      List<String> fields;
+      while (row <= lastRow && !budget.isExhausted()
+          && (fields = reader.readRow()) != null) {
+        json.writeStartArray();
+        for (int column : selected) {
+          writeValue(json, column < fields.size() ? fields.get(column) : "",
+              schema.getTypes().get(column));
+        }
+        json.writeEndArray();
+        json.flush();
+        row++;
+      }
+      json.writeEndArray();
+      json.writeEndObject();
+
+      if (index.size() != indexSize) {
+        indexCache.save(key, index);
+      }
+    } catch (IOException e) {
+      outputStream.write(("Error in display csv file: " + e
+          .getLocalizedMessage()).getBytes("UTF-8"));
+      throw e;
+    } finally {
+      json.flush();
+      in.close();
+    }
+  }
+
+  /**
+   * Passes each data row rendered as a json object of its named columns, so
+   * field searches work like they do for structured formats.
+   */
+  @Override
+  public boolean scanRecords(FileSystem fs, Path path, RecordVisitor visitor)
+      throws IOException {
+    CsvSchema schema = getCachedSchema(fs, path);
+    FSDataInputStream in = fs.open(path);
+    try {
+      CsvReader reader =
+          new CsvReader(in, schema.getDelimiter(), READ_BUFFER_SIZE);
+      if (schema.hasHeader()) {
+        reader.skipRow();
+      }
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      JsonFactory factory = new JsonFactory();
+      List<String> fields;
+      long record = 1;
+      while ((fields = reader.readRow()) != null) {
+        buffer.reset();
+        JsonGenerator json =
+            factory.createJsonGenerator(buffer, JsonEncoding.UTF8);
+        json.writeStartObject();
+        for (int i = 0; i < schema.getNames().size(); i++) {
+          json.writeFieldName(schema.getNames().get(i));
+          writeValue(json, i < fields.size() ? fields.get(i) : "", schema
+              .getTypes().get(i));
+        }
+        json.writeEndObject();
+        json.close();
+        if (!visitor.visit(record++, buffer.toString("UTF-8"))) {
+          break;
+        }
+      }
+    } finally {
+      in.close();
+    }
+    return true;
+  }
+
+  /**
+   * Returns the inferred delimiter, header and column types as json.
+   */
+  @Override
+  public String getSchema(FileSystem fs, Path path) {
+    try {
+      CsvSchema schema = getCachedSchema(fs, path);
+      StringWriter writer = new StringWriter();
+      JsonGenerator json = new JsonFactory().createJsonGenerator(writer);
+      json.useDefaultPrettyPrinter();
+      json.writeStartObject();
+      json.writeStringField("delimiter", String.valueOf(schema.getDelimiter()));
+      json.writeBooleanField("header", schema.hasHeader());
+      writeColumns(json, schema, null);
+      json.writeEndObject();
+      json.close();
+      return writer.toString();
+    } catch (IOException e) {
+      logger.warn("Cannot get schema for file: " + path.toUri().getPath());
+      return null;
+    }
+  }
+
+  CsvSchema getCachedSchema(FileSystem fs, Path path) throws IOException {
+    return getMetadataCache().get(fs, path, "csv.schema",
+        new FileMetadataCache.Loader<CsvSchema>() {
+          @Override
+          public CsvSchema load(FileSystem fs, FileStatus status)
+              throws IOException {
+            return inferSchema(fs, status);
+          }
+        });
+  }
+
+  private static CsvSchema inferSchema(FileSystem fs, FileStatus status)
+      throws IOException {
+    byte[] sample = new byte[SAMPLE_BYTES];
+    int length = 0;
+    InputStream in = fs.open(status.getPath());
+    try {
+      int read;
+      while (length < sample.length
+          && (read = in.read(sample, length, sample.length - length)) > 0) {
+        length += read;
+      }
+    } finally {
+      in.close();
+    }
+    boolean truncated = length < status.getLen();
+    char fallback =
+        status.getPath().getName().toLowerCase().endsWith(".tsv") ? '\t' : ',';
+    char delimiter =
+        CsvReader.detectDelimiter(sample, length, truncated, fallback);
+
+    List<List<String>> rows = new ArrayList<List<String>>();
+    CsvReader reader =
+        new CsvReader(new ByteArrayInputStream(sample, 0, length),
+            delimiter, length + 1);
+    List<String> row;
+    try {
+      while (rows.size() <= SAMPLE_ROWS && (row = reader.readRow()) != null) {
+        if (truncated && reader.getBytesRead() >= length) {
+          break;
+        }
+        rows.add(row);
+      }
+    } catch (IOException e) {
+      // a row longer than the sample, infer from what was read
+    }
+
+    int width = 0;
+    for (List<String> fields : rows) {
+      width = Math.max(width, fields.size());
+    }
+    boolean header = !rows.isEmpty() && isHeader(rows.get(0));
+    List<ColumnType> types = new ArrayList<ColumnType>();
+    for (int i = 0; i < width; i++) {
+      ColumnType type = null;
+      for (int r = header ? 1 : 0; r < rows.size(); r++) {
+        List<String> fields = rows.get(r);
+        if (i < fields.size() && !fields.get(i).isEmpty()) {
+          type = widen(type, classify(fields.get(i)));
+        }
+      }
+      types.add(type == null ? ColumnType.STRING : type);
+    }
+
+    List<String> names = new ArrayList<String>();
+    for (int i = 0; i < width; i++) {
+      names.add(header && i < rows.get(0).size() ? rows.get(0).get(i) : "col"
+          + (i + 1));
+    }
+    return new CsvSchema(delimiter, header, names, types);
+  }
+
+  /**
+   * A first row of distinct, non empty values that are neither numbers nor
+   * booleans is taken to be a header.
+   */
+  private static boolean isHeader(List<String> row) {
+    Set<String> seen = new HashSet<String>();
+    for (String value : row) {
+      if (value.isEmpty() || classify(value) != ColumnType.STRING
+          || !seen.add(value)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static ColumnType classify(String value) {
+    if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+      return ColumnType.BOOLEAN;
+    }
+    if (LONG_PATTERN.matcher(value).matches()) {
+      return ColumnType.LONG;
+    }
+    if (DOUBLE_PATTERN.matcher(value).matches()) {
+      return ColumnType.DOUBLE;
+    }
+    return ColumnType.STRING;
+  }
+
+  private static ColumnType widen(ColumnType a, ColumnType b) {
+    if (a == null || a == b) {
+      return b;
+    }
+    if ((a == ColumnType.LONG && b == ColumnType.DOUBLE)
+        || (a == ColumnType.DOUBLE && b == ColumnType.LONG)) {
+      return ColumnType.DOUBLE;
+    }
+    return ColumnType.STRING;
+  }
+
+  /**
+   * Returns the positions of the requested columns, or of all columns if
+   * none are requested.
+   *
+   * @throws IllegalArgumentException if a column does not exist
+   */
+  private static int[] selectColumns(CsvSchema schema, List<String> columns) {
+    if (columns == null || columns.isEmpty()) {
+      int[] all = new int[schema.getNames().size()];
+      for (int i = 0; i < all.length; i++) {
+        all[i] = i;
+      }
+      return all;
+    }
+    int[] selected = new int[columns.size()];
+    for (int i = 0; i < selected.length; i++) {
+      selected[i] = schema.getNames().indexOf(columns.get(i));
+      if (selected[i] < 0) {
+        throw new IllegalArgumentException("Unknown column: "
+            + columns.get(i));
+      }
+    }
+    return selected;
+  }
+
+  private static void writeColumns(JsonGenerator json, CsvSchema schema,
+      int[] selected) throws IOException {
+    json.writeArrayFieldStart("columns");
+    int count = selected == null ? schema.getNames().size() : selected.length;
+    for (int i = 0; i < count; i++) {
+      int column = selected == null ? i : selected[i];
+      json.writeStartObject();
+      json.writeStringField("name", schema.getNames().get(column));
+      json.writeStringField("type", schema.getTypes().get(column).toString()
+          .toLowerCase());
+      json.writeEndObject();
+    }
+    json.writeEndArray();
+  }
+
+  private static void writeValue(JsonGenerator json, String value,
+      ColumnType type) throws IOException {
+    if (value.isEmpty()) {
+      json.writeNull();
+      return;
+    }
+    ColumnType actual = classify(value);
+    if (type == ColumnType.BOOLEAN && actual == ColumnType.BOOLEAN) {
+      json.writeBoolean(Boolean.parseBoolean(value.toLowerCase()));
+    } else if (type == ColumnType.LONG && actual == ColumnType.LONG) {
+      json.writeNumber(Long.parseLong(value));
+    } else if (type == ColumnType.DOUBLE
+        && (actual == ColumnType.LONG || actual == ColumnType.DOUBLE)) {
+      json.writeNumber(Double.parseDouble(value));
+    } else {
+      json.writeString(value);
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming reader of delimited rows, such as CSV and TSV. Fields may be
+ * quoted with double quotes, in which case they may hold delimiters, line
+ * breaks and doubled quotes. Rows end with \n, \r\n or \r.
+ *
+ * The reader works on bytes, so it keeps track of the exact number of bytes
+ * consumed, which viewers use to index the offsets of rows. Delimiters, quotes
+ * and line breaks are ASCII, so UTF-8 text is split correctly.
+ */
+public class CsvReader {
+  /** Longest row accepted, so a missing closing quote cannot eat the heap. */
+  public static final int MAX_ROW_BYTES = 1024 * 1024;
+
+  private static final char[] DELIMITER_CANDIDATES = { ',', '\t', ';', '|' };
+
+  private final InputStream in;
+  private final byte delimiter;
+  private final byte[] buffer;
+  private int position;
+  private int limit;
+  private long bytesRead;
+
+  private byte[] field = new byte[256];
+  private int fieldLength;
+
+  public CsvReader(InputStream in, char delimiter, int bufferSize) {
+    this.in = in;
+    this.delimiter = (byte) delimiter;
+    this.buffer = new byte[bufferSize];
+  }
+
+  /**
+   * Returns the number of bytes of the stream consumed by the rows read so
+   * far.
+   */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * Returns the fields of the next row, or null at the end of the stream.
+   */
+  public List<String> readRow() throws IOException {
+    List<String> fields = new ArrayList<String>();
+    return parseRow(fields) ? fields : null;
+  }
+
+  /**
+   * Skips the next row without decoding its fields. Returns false at the end
+   * of the stream.
+   */
+  public boolean skipRow() throws IOException {
+    return parseRow(null);
+  }
+
+  private boolean parseRow(List<String> fields) throws IOException {
+    if (peek() < 0) {
+      return false;
+    }
+    long rowStart = bytesRead;
+    boolean inQuotes = false;
+    boolean quoted = false;
+    fieldLength = 0;
+    while (true) {
+      int b = read();
+      if (bytesRead - rowStart > MAX_ROW_BYTES) {
+        throw new IOException("Row at offset " + rowStart + " is longer than "
+            + MAX_ROW_BYTES + " bytes");
+      }
+      if (b < 0) {
+        endField(fields);
+        return true;
+      }
+      if (inQuotes) {
+        if (b != '"') {
+          append(fields, b);
+        } else if (peek() == '"') {
+          read();
+          append(fields, b);
+        } else {
+          inQuotes = false;
+        }
+      } else if (b == '"' && fieldLength == 0 && !quoted) {
+        inQuotes = true;
+        quoted = true;
+      } else if (b == delimiter) {
+        endField(fields);
+        quoted = false;
+      } else if (b == '\n') {
+        endField(fields);
+        return true;
+      } else if (b == '\r') {
+        if (peek() == '\n') {
+          read();
+        }
+        endField(fields);
+        return true;
+      } else {
+        append(fields, b);
+      }
+    }
+  }
+
+  private void append(List<String> fields, int b) {
+    if (fields == null) {
+      return;
+    }
+    if (fieldLength == field.length) {
+      byte[] grown = new byte[field.length * 2];
+      System.arraycopy(field, 0, grown, 0, fieldLength);
+      field = grown;
+    }
+    field[fieldLength++] = (byte) b;
+  }
+
+  private void endField(List<String> fields) throws IOException {
+    if (fields != null) {
+      fields.add(new String(field, 0, fieldLength, "UTF-8"));
+    }
+    fieldLength = 0;
+  }
+
+  private int read() throws IOException {
+    if (position == limit && !fill()) {
+      return -1;
+    }
+    bytesRead++;
+    return buffer[position++] & 0xff;
+  }
+
+  private int peek() throws IOException {
+    if (position == limit && !fill()) {
+      return -1;
+    }
+    return buffer[position] & 0xff;
+  }
+
+  private boolean fill() throws IOException {
+    int read = in.read(buffer, 0, buffer.length);
+    if (read <= 0) {
+      return false;
+    }
+    position = 0;
+    limit = read;
+    return true;
+  }
+
+  /**
+   * Guesses the delimiter from the first bytes of a file: the candidate that
+   * splits the most complete rows of the sample into the same number of
+   * fields, more than one. Returns the fallback if no candidate does.
+   *
+   * @param truncated whether the sample ends before the end of the file, in
+   *          which case its last row is ignored
+   */
+  public static char detectDelimiter(byte[] sample, int length,
+      boolean truncated, char fallback) {
+    char best = fallback;
+    int bestRows = 0;
+    int bestFields = 0;
+    for (char candidate : DELIMITER_CANDIDATES) {
+      List<Integer> counts = new ArrayList<Integer>();
+      CsvReader reader =
+          new CsvReader(new ByteArrayInputStream(sample, 0, length), candidate,
+              length + 1);
+      try {
+        List<String> row;
+        while ((row = reader.readRow()) != null) {
+          if (truncated && reader.getBytesRead() >= length) {
+            break;
+          }
+          counts.add(row.size());
+        }
+      } catch (IOException e) {
+        continue;
+      }
+
+      // the most common field count, and how many rows have it
+      int fields = 0;
+      int rows = 0;
+      for (Integer count : counts) {
+        int same = 0;
+        for (Integer other : counts) {
+          if (other.equals(count)) {
+            same++;
+          }
+        }
+        if (same > rows || (same == rows && count > fields)) {
+          rows = same;
+          fields = count;
+        }
+      }
+      if (fields > 1
+          && (rows > bestRows || (rows == bestRows && fields > bestFields))) {
+        best = candidate;
+        bestRows = rows;
+        bestFields = fields;
+      }
+    }
+    return best;
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Finds the data files of a dataset directory, and the viewer that reads
+ * each of them, for the features that work on a whole directory of part
+ * files.
+ */
+class DatasetFiles {
+  private static final int LIST_PAGE_SIZE = 1000;
+
+  private final List<HdfsFileViewer> viewers;
+  private final HdfsFileViewer defaultViewer;
+  private final FileViewerResolver viewerResolver;
+
+  /**
+   * @param defaultViewer viewer of files whose format is not recognized, or
+   *          null to skip them
+   */
+  DatasetFiles(List<HdfsFileViewer> viewers, HdfsFileViewer defaultViewer,
+      FileViewerResolver viewerResolver) {
+    this.viewers = viewers;
+    this.defaultViewer = defaultViewer;
+    this.viewerResolver = viewerResolver;
+  }
+
+  /**
+   * Returns the viewer of the format of the file, or the default viewer if it
+   * can read the file, or null.
+   */
+  HdfsFileViewer getViewer(FileSystem fs, Path path) throws IOException {
+    int viewerId = viewerResolver.resolve(fs, path).getViewerId();
+    if (viewerId >= 0) {
+      return viewers.get(viewerId);
+    }
+    if (defaultViewer != null
+        && defaultViewer.getCapabilities(fs, path).contains(Capability.READ)) {
+      return defaultViewer;
+    }
+    return null;
+  }
+
+  /**
+   * Adds the file, or at most maxFiles data files of the directory in name
+   * order, to files. Returns true if the directory has more data files.
+   */
+  static boolean listFiles(FileSystem fs, Path path, int maxFiles,
+      List<FileStatus> files) throws IOException {
+    FileStatus status = fs.getFileStatus(path);
+    if (!status.isDir()) {
+      files.add(status);
+      return false;
+    }
+
+    DirectoryPager pager = new DirectoryPager(fs, path);
+    String cursor = null;
+    int listed = 0;
+    do {
+      DirectoryPager.Page page =
+          pager.list(cursor, LIST_PAGE_SIZE, null, DirectoryPager.SortKey.NAME,
+              false);
+      for (FileStatus entry : page.getEntries()) {
+        if (isDataFile(entry)) {
+          if (listed == maxFiles) {
+            return true;
+          }
+          files.add(entry);
+          listed++;
+        }
+      }
+      cursor = page.getNextCursor();
+    } while (cursor != null);
+    return false;
+  }
+
+  /**
+   * Skips directories, empty files and the bookkeeping files of MapReduce and
+   * Pig such as _SUCCESS, _logs and .pig_schema.
+   */
+  static boolean isDataFile(FileStatus status) {
+    String name = status.getPath().getName();
+    return !status.isDir() && status.getLen() > 0 && !name.startsWith("_")
+        && !name.startsWith(".");
+  }
+}
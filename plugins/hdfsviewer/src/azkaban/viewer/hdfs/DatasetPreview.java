@@ -0,0 +1,192 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+/**
+ * Previews a directory of part files as one dataset. The viewer is picked
+ * once, from the first data file, and the first records of every data file
+ * in a page of the listing are read in parallel with it.
+ */
+public class DatasetPreview {
+  private static Logger logger = Logger.getLogger(DatasetPreview.class);
+
+  private final DatasetFiles datasetFiles;
+  private final ExecutorService executor;
+
+  /**
+   * The first records of one part file, or the reason they could not be read.
+   */
+  public static final class Part {
+    private final Path path;
+    private final String content;
+    private final String error;
+
+    public Part(Path path, String content, String error) {
+      this.path = path;
+      this.content = content;
+      this.error = error;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    public String getContent() {
+      return content;
+    }
+
+    public String getError() {
+      return error;
+    }
+  }
+
+  /**
+   * The parts of one page of the directory, in name order, and the cursor of
+   * the next page. The viewer is null if no data file was found or no viewer
+   * can read them.
+   */
+  public static final class Result {
+    private final HdfsFileViewer viewer;
+    private final List<Part> parts;
+    private final String nextCursor;
+
+    public Result(HdfsFileViewer viewer, List<Part> parts, String nextCursor) {
+      this.viewer = viewer;
+      this.parts = parts;
+      this.nextCursor = nextCursor;
+    }
+
+    public HdfsFileViewer getViewer() {
+      return viewer;
+    }
+
+    public List<Part> getParts() {
+      return parts;
+    }
+
+    public String getNextCursor() {
+      return nextCursor;
+    }
+  }
+
+  public DatasetPreview(List<HdfsFileViewer> viewers,
+      HdfsFileViewer defaultViewer, FileViewerResolver viewerResolver,
+      ExecutorService executor) {
+    this.datasetFiles =
+        new DatasetFiles(viewers, defaultViewer, viewerResolver);
+    this.executor = executor;
+  }
+
+  /**
+   * Reads the first records of the data files in a page of the directory.
+   * Files whose preview is not ready within the timeout are reported as timed
+   * out.
+   *
+   * @param cursor directory cursor returned with the previous page, null for
+   *          the first
+   * @param maxFiles number of directory entries in a page
+   * @param records number of records read from each file
+   * @param timeoutMs time budget of the whole page
+   */
+  public Result preview(final FileSystem fs, Path dir, String cursor,
+      int maxFiles, final int records, long timeoutMs) throws IOException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    DirectoryPager.Page page =
+        new DirectoryPager(fs, dir).list(cursor, maxFiles, null,
+            DirectoryPager.SortKey.NAME, false);
+
+    List<FileStatus> files = new ArrayList<FileStatus>();
+    for (FileStatus status : page.getEntries()) {
+      if (DatasetFiles.isDataFile(status)) {
+        files.add(status);
+      }
+    }
+    List<Part> parts = new ArrayList<Part>();
+    if (files.isEmpty()) {
+      return new Result(null, parts, page.getNextCursor());
+    }
+
+    final HdfsFileViewer viewer =
+        datasetFiles.getViewer(fs, files.get(0).getPath());
+    if (viewer == null) {
+      return new Result(null, parts, page.getNextCursor());
+    }
+
+    List<Future<String>> futures = new ArrayList<Future<String>>();
+    for (FileStatus status : files) {
+      final Path path = status.getPath();
+      try {
+        futures.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            viewer.displayFile(fs, path, output, 1,
+                viewer.getEndLine(records));
+            return new String(output.toByteArray(), "UTF-8");
+          }
+        }));
+      } catch (RejectedExecutionException e) {
+        futures.add(null);
+      }
+    }
+
+    for (int i = 0; i < files.size(); i++) {
+      Path path = files.get(i).getPath();
+      Future<String> future = futures.get(i);
+      if (future == null) {
+        parts.add(new Part(path, null, "Preview is not available right now."));
+        continue;
+      }
+      try {
+        long remaining = Math.max(0, deadline - System.currentTimeMillis());
+        parts.add(new Part(path, future.get(remaining, TimeUnit.MILLISECONDS),
+            null));
+      } catch (TimeoutException e) {
+        future.cancel(true);
+        parts.add(new Part(path, null, "Timed out."));
+      } catch (ExecutionException e) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Failed to preview " + path, e.getCause());
+        }
+        parts.add(new Part(path, null, "Error: "
+            + e.getCause().getLocalizedMessage()));
+      } catch (InterruptedException e) {
+        future.cancel(true);
+        Thread.currentThread().interrupt();
+        parts.add(new Part(path, null, "Interrupted."));
+      }
+    }
+    return new Result(viewer, parts, page.getNextCursor());
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+/**
+ * Combines the footer statistics of the data files of a directory, read in
+ * parallel, into statistics of the whole dataset. Only the footers are read,
+ * so this is cheap even for large datasets.
+ */
+public class DatasetStats {
+  private static Logger logger = Logger.getLogger(DatasetStats.class);
+
+  /** Largest number of data files of a directory that are read. */
+  public static final int MAX_FILES = 10000;
+
+  /**
+   * The combined statistics, and how many files they were read from. The
+   * statistics are null if no file had any. The result is incomplete if the
+   * time budget ran out or the directory had more than {@link #MAX_FILES}
+   * data files.
+   */
+  public static final class Result {
+    private final FileStats stats;
+    private final int filesSkipped;
+    private final boolean complete;
+    private final List<String> errors;
+
+    public Result(FileStats stats, int filesSkipped, boolean complete,
+        List<String> errors) {
+      this.stats = stats;
+      this.filesSkipped = filesSkipped;
+      this.complete = complete;
+      this.errors = errors;
+    }
+
+    public FileStats getStats() {
+      return stats;
+    }
+
+    public int getFilesSkipped() {
+      return filesSkipped;
+    }
+
+    public boolean isComplete() {
+      return complete;
+    }
+
+    public List<String> getErrors() {
+      return errors;
+    }
+  }
+
+  private final DatasetFiles datasetFiles;
+  private final ExecutorService executor;
+  private final int parallelism;
+
+  /**
+   * @param parallelism number of footers of one directory read at the same
+   *          time
+   */
+  public DatasetStats(List<HdfsFileViewer> viewers,
+      FileViewerResolver viewerResolver, ExecutorService executor,
+      int parallelism) {
+    // Files in no known format have no statistics.
+    this.datasetFiles = new DatasetFiles(viewers, null, viewerResolver);
+    this.executor = executor;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Reads the statistics of a file, or of the data files of a directory.
+   *
+   * @param timeoutMs time budget of the whole directory
+   */
+  public Result compute(final FileSystem fs, Path path, long timeoutMs)
+      throws IOException {
+    final long deadline = System.currentTimeMillis() + timeoutMs;
+    List<FileStatus> listing = new ArrayList<FileStatus>();
+    boolean truncated =
+        DatasetFiles.listFiles(fs, path, MAX_FILES, listing);
+    final List<FileStatus> files = listing;
+    final State state = new State();
+
+    final AtomicInteger nextFile = new AtomicInteger();
+    Callable<Void> worker = new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        int i;
+        while (System.currentTimeMillis() < deadline
+            && !Thread.currentThread().isInterrupted()
+            && (i = nextFile.getAndIncrement()) < files.size()) {
+          readStats(fs, files.get(i).getPath(), state);
+        }
+        return null;
+      }
+    };
+
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    int workers = Math.min(parallelism, files.size());
+    for (int i = 0; i < workers; i++) {
+      try {
+        futures.add(executor.submit(worker));
+      } catch (RejectedExecutionException e) {
+        break;
+      }
+    }
+    if (futures.isEmpty() && !files.isEmpty()) {
+      throw new IOException("Statistics are not available right now.");
+    }
+
+    boolean complete = !truncated;
+    for (Future<Void> future : futures) {
+      try {
+        long remaining = Math.max(0, deadline - System.currentTimeMillis());
+        future.get(remaining, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        complete = false;
+        future.cancel(true);
+      } catch (ExecutionException e) {
+        logger.warn("Statistics worker failed", e.getCause());
+      } catch (InterruptedException e) {
+        complete = false;
+        future.cancel(true);
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    synchronized (state) {
+      int read = state.stats == null ? 0 : state.stats.getFileCount();
+      if (read + state.filesSkipped < files.size()) {
+        complete = false;
+      }
+      return new Result(state.stats, state.filesSkipped, complete,
+          new ArrayList<String>(state.errors));
+    }
+  }
+
+  private void readStats(FileSystem fs, Path path, State state) {
+    try {
+      HdfsFileViewer viewer = datasetFiles.getViewer(fs, path);
+      FileStats stats = viewer == null ? null : viewer.getStats(fs, path);
+      synchronized (state) {
+        if (stats == null) {
+          state.filesSkipped++;
+        } else if (state.stats == null) {
+          state.stats = stats;
+        } else {
+          state.stats = state.stats.combine(stats);
+        }
+      }
+    } catch (Exception e) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Failed to read statistics of " + path, e);
+      }
+      synchronized (state) {
+        state.filesSkipped++;
+        state.errors.add(path + ": " + e.getLocalizedMessage());
+      }
+    }
+  }
+
+  /**
+   * Statistics combined so far, guarded by the instance lock.
+   */
+  private static class State {
+    private FileStats stats;
+    private int filesSkipped;
+    private final List<String> errors = new ArrayList<String>();
+  }
+}
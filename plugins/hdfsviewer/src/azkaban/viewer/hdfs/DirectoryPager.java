@@ -0,0 +1,312 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSClient;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+
+/**
+ * Lists a directory one page at a time without materializing the whole
+ * listing.
+ *
+ * On HDFS the listing is pulled from the NameNode in batches with
+ * {@link DFSClient#listPaths(String, byte[])}, which returns children in name
+ * order. Listing by name in ascending order therefore streams: the cursor is
+ * the last name returned and memory is proportional to the page size. Any
+ * other order has to look at every child, but only keeps the best
+ * offset + limit entries in memory while doing so.
+ */
+public class DirectoryPager {
+  /** Largest offset + limit accepted for orders other than name ascending. */
+  public static final int MAX_SORT_WINDOW = 10000;
+
+  public enum SortKey {
+    NAME, SIZE, MTIME
+  }
+
+  /**
+   * One page of a listing, and the cursor to pass back to get the next one.
+   * The cursor is null on the last page.
+   */
+  public static final class Page {
+    private final List<FileStatus> entries;
+    private final String nextCursor;
+
+    public Page(List<FileStatus> entries, String nextCursor) {
+      this.entries = entries;
+      this.nextCursor = nextCursor;
+    }
+
+    public List<FileStatus> getEntries() {
+      return entries;
+    }
+
+    public String getNextCursor() {
+      return nextCursor;
+    }
+  }
+
+  private final FileSystem fs;
+  private final Path dir;
+
+  public DirectoryPager(FileSystem fs, Path dir) {
+    this.fs = fs;
+    this.dir = dir;
+  }
+
+  /**
+   * Returns the page following the given cursor.
+   *
+   * @param cursor cursor returned with the previous page, null for the first
+   * @param limit maximum number of entries in the page, at least 1
+   * @param prefix only list children whose name starts with this, may be null
+   */
+  public Page list(String cursor, int limit, String prefix, SortKey sortKey,
+      boolean descending) throws IOException {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Invalid page size " + limit);
+    }
+    if (prefix != null && prefix.isEmpty()) {
+      prefix = null;
+    }
+    if (sortKey == SortKey.NAME && !descending) {
+      return listByName(cursor, limit, prefix);
+    }
+    return listSorted(cursor, limit, prefix, sortKey, descending);
+  }
+
+  private Page listByName(String cursor, int limit, String prefix)
+      throws IOException {
+    List<FileStatus> entries = new ArrayList<FileStatus>();
+    String startAfter = cursor;
+    if (startAfter == null && prefix != null) {
+      // Every other child starting with the prefix sorts after the prefix
+      // itself, so only the exact match has to be looked up separately.
+      Path exact = new Path(dir, prefix);
+      if (fs.exists(exact)) {
+        entries.add(fs.getFileStatus(exact));
+      }
+      startAfter = prefix;
+    }
+
+    StatusIterator it = iterate(startAfter);
+    while (it.hasNext() && entries.size() < limit) {
+      FileStatus status = it.next();
+      String name = status.getPath().getName();
+      if (prefix != null && !name.startsWith(prefix)) {
+        // children sharing a prefix are contiguous in name order
+        return new Page(entries, null);
+      }
+      entries.add(status);
+    }
+
+    String nextCursor = null;
+    if (entries.size() == limit && it.hasNext()) {
+      FileStatus peek = it.next();
+      if (prefix == null || peek.getPath().getName().startsWith(prefix)) {
+        nextCursor = entries.get(entries.size() - 1).getPath().getName();
+      }
+    }
+    return new Page(entries, nextCursor);
+  }
+
+  private Page listSorted(String cursor, int limit, String prefix,
+      SortKey sortKey, boolean descending) throws IOException {
+    int offset = 0;
+    if (cursor != null) {
+      try {
+        offset = Integer.parseInt(cursor);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid cursor " + cursor);
+      }
+    }
+    int window = offset + limit;
+    if (offset < 0 || window > MAX_SORT_WINDOW) {
+      throw new IllegalArgumentException("Cannot page beyond "
+          + MAX_SORT_WINDOW + " entries when sorting by " + sortKey);
+    }
+
+    final Comparator<FileStatus> order = comparator(sortKey, descending);
+    // Max-heap on the requested order: the head is the worst entry kept, and
+    // is dropped whenever a better one is found.
+    PriorityQueue<FileStatus> best =
+        new PriorityQueue<FileStatus>(window + 1, Collections
+            .reverseOrder(order));
+    boolean more = false;
+    StatusIterator it = iterate(null);
+    while (it.hasNext()) {
+      FileStatus status = it.next();
+      if (prefix != null && !status.getPath().getName().startsWith(prefix)) {
+        continue;
+      }
+      best.add(status);
+      if (best.size() > window) {
+        best.poll();
+        more = true;
+      }
+    }
+
+    FileStatus[] sorted = best.toArray(new FileStatus[best.size()]);
+    Arrays.sort(sorted, order);
+    List<FileStatus> entries = new ArrayList<FileStatus>();
+    for (int i = offset; i < sorted.length; i++) {
+      entries.add(sorted[i]);
+    }
+    return new Page(entries, more ? String.valueOf(window) : null);
+  }
+
+  private static Comparator<FileStatus> comparator(final SortKey sortKey,
+      final boolean descending) {
+    return new Comparator<FileStatus>() {
+      @Override
+      public int compare(FileStatus a, FileStatus b) {
+        int result;
+        switch (sortKey) {
+        case SIZE:
+          result = compareLongs(a.getLen(), b.getLen());
+          break;
+        case MTIME:
+          result =
+              compareLongs(a.getModificationTime(), b.getModificationTime());
+          break;
+        default:
+          result = 0;
+        }
+        if (result == 0) {
+          result = a.getPath().getName().compareTo(b.getPath().getName());
+        }
+        return descending ? -result : result;
+      }
+    };
+  }
+
+  private static int compareLongs(long a, long b) {
+    return a < b ? -1 : (a == b ? 0 : 1);
+  }
+
+  private StatusIterator iterate(String startAfter) throws IOException {
+    if (fs instanceof DistributedFileSystem) {
+      return new HdfsStatusIterator(((DistributedFileSystem) fs).getClient(),
+          startAfter);
+    }
+    return new ArrayStatusIterator(startAfter);
+  }
+
+  private interface StatusIterator {
+    boolean hasNext() throws IOException;
+
+    FileStatus next() throws IOException;
+  }
+
+  /**
+   * Pulls the listing from the NameNode in batches of dfs.ls.limit entries.
+   */
+  private class HdfsStatusIterator implements StatusIterator {
+    private final DFSClient client;
+    private final String src;
+    private DirectoryListing listing;
+    private int index;
+
+    private HdfsStatusIterator(DFSClient client, String startAfter)
+        throws IOException {
+      this.client = client;
+      this.src = dir.toUri().getPath();
+      this.listing =
+          client.listPaths(src, startAfter == null ? HdfsFileStatus.EMPTY_NAME
+              : startAfter.getBytes("UTF-8"));
+      if (listing == null) {
+        throw new IOException("Directory " + src + " does not exist");
+      }
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+      while (index >= listing.getPartialListing().length) {
+        if (!listing.hasMore()) {
+          return false;
+        }
+        listing = client.listPaths(src, listing.getLastName());
+        index = 0;
+        if (listing == null) {
+          throw new IOException("Directory " + src
+              + " was deleted while being listed");
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public FileStatus next() throws IOException {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      HdfsFileStatus status = listing.getPartialListing()[index++];
+      return new FileStatus(status.getLen(), status.isDir(),
+          status.getReplication(), status.getBlockSize(),
+          status.getModificationTime(), status.getAccessTime(),
+          status.getPermission(), status.getOwner(), status.getGroup(),
+          fs.makeQualified(status.getFullPath(dir)));
+    }
+  }
+
+  /**
+   * Fallback for file systems without partial listings.
+   */
+  private class ArrayStatusIterator implements StatusIterator {
+    private final FileStatus[] statuses;
+    private int index;
+
+    private ArrayStatusIterator(String startAfter) throws IOException {
+      FileStatus[] listing = fs.listStatus(dir);
+      statuses = listing == null ? new FileStatus[0] : listing;
+      Arrays.sort(statuses, comparator(SortKey.NAME, false));
+      if (startAfter != null) {
+        while (index < statuses.length
+            && statuses[index].getPath().getName().compareTo(startAfter) <= 0) {
+          index++;
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return index < statuses.length;
+    }
+
+    @Override
+    public FileStatus next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return statuses[index++];
+    }
+  }
+}
@@ -0,0 +1,466 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+/**
+ * Computes the recursive size and file count of a directory and of each of
+ * its children, like hdfs dfs -du, and caches the results.
+ *
+ * The content summaries of the child directories are requested in parallel
+ * on a shared executor. A computation outlives the request that started it:
+ * a request that does not get the result within its wait gets nothing, and a
+ * later request for the same directory joins the running computation or
+ * picks up the cached result. Results are cached per user, since summaries
+ * depend on what the user may read, and expire after a fixed time. Each user
+ * may only run a few computations at a time, to protect the NameNode.
+ */
+public class DirectoryUsage {
+  private static Logger logger = Logger.getLogger(DirectoryUsage.class);
+
+  /**
+   * Largest number of children broken down. The total of larger directories
+   * comes from a single summary of the directory itself.
+   */
+  public static final int MAX_CHILDREN = 1000;
+
+  private static final int LIST_PAGE_SIZE = 1000;
+
+  /**
+   * Recursive usage of a file or directory, or the reason it is unknown.
+   */
+  public static final class Usage {
+    private final Path path;
+    private final boolean dir;
+    private final long length;
+    private final long spaceConsumed;
+    private final long fileCount;
+    private final long directoryCount;
+    private final String error;
+
+    public Usage(Path path, boolean dir, long length, long spaceConsumed,
+        long fileCount, long directoryCount, String error) {
+      this.path = path;
+      this.dir = dir;
+      this.length = length;
+      this.spaceConsumed = spaceConsumed;
+      this.fileCount = fileCount;
+      this.directoryCount = directoryCount;
+      this.error = error;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    public boolean isDir() {
+      return dir;
+    }
+
+    public long getLength() {
+      return length;
+    }
+
+    /** Length times replication. */
+    public long getSpaceConsumed() {
+      return spaceConsumed;
+    }
+
+    public long getFileCount() {
+      return fileCount;
+    }
+
+    /** Directories in the tree, including its root. */
+    public long getDirectoryCount() {
+      return directoryCount;
+    }
+
+    public String getError() {
+      return error;
+    }
+  }
+
+  /**
+   * The usage of a directory and of its children, largest first. The
+   * breakdown is truncated if the directory has more than
+   * {@link #MAX_CHILDREN} children.
+   */
+  public static final class Result {
+    private final Usage total;
+    private final List<Usage> children;
+    private final boolean truncated;
+    private final long computeTime;
+
+    public Result(Usage total, List<Usage> children, boolean truncated,
+        long computeTime) {
+      this.total = total;
+      this.children = children;
+      this.truncated = truncated;
+      this.computeTime = computeTime;
+    }
+
+    public Usage getTotal() {
+      return total;
+    }
+
+    public List<Usage> getChildren() {
+      return children;
+    }
+
+    public boolean isTruncated() {
+      return truncated;
+    }
+
+    /** When the result was computed, in milliseconds since the epoch. */
+    public long getComputeTime() {
+      return computeTime;
+    }
+  }
+
+  private static final class Key {
+    private final String user;
+    private final String path;
+
+    private Key(String user, String path) {
+      this.user = user;
+      this.path = path;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return user.equals(other.user) && path.equals(other.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * user.hashCode() + path.hashCode();
+    }
+  }
+
+  private final FileSystemLender lender;
+  private final ExecutorService executor;
+  private final int parallelism;
+  private final int maxPerUser;
+  private final long ttlMs;
+  private final Map<Key, Computation> entries;
+  private final ConcurrentHashMap<String, Semaphore> perUser =
+      new ConcurrentHashMap<String, Semaphore>();
+
+  /**
+   * @param parallelism number of summaries of one directory requested at the
+   *          same time
+   * @param maxPerUser number of computations a user may run at the same time
+   * @param maxEntries number of results kept
+   * @param ttlMs time after which a result is computed again
+   */
+  public DirectoryUsage(FileSystemLender lender, ExecutorService executor,
+      int parallelism, int maxPerUser, final int maxEntries, long ttlMs) {
+    this.lender = lender;
+    this.executor = executor;
+    this.parallelism = parallelism;
+    this.maxPerUser = maxPerUser;
+    this.ttlMs = ttlMs;
+    this.entries = new LinkedHashMap<Key, Computation>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Computation> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Returns the usage of the directory as seen by the user, starting its
+   * computation if there is no fresh result, or null if the result is not
+   * ready within waitMs.
+   *
+   * @throws RejectedExecutionException if the user already runs too many
+   *           computations, or the executor is full
+   * @throws IOException if the computation failed
+   */
+  public Result get(String user, Path dir, long waitMs) throws IOException,
+      InterruptedException {
+    Key key = new Key(user, dir.toUri().getPath());
+    Computation computation;
+    boolean start = false;
+    synchronized (entries) {
+      computation = entries.get(key);
+      if (computation == null || computation.isExpired()) {
+        computation = new Computation(key, dir);
+        entries.put(key, computation);
+        start = true;
+      }
+    }
+    if (start) {
+      try {
+        computation.start();
+      } catch (RuntimeException e) {
+        computation.abort(e);
+        throw e;
+      } catch (IOException e) {
+        computation.abort(e);
+        throw e;
+      }
+    }
+
+    if (!computation.done.await(waitMs, TimeUnit.MILLISECONDS)) {
+      return null;
+    }
+    if (computation.error != null) {
+      throw new IOException(computation.error.getLocalizedMessage(),
+          computation.error);
+    }
+    return computation.result;
+  }
+
+  private void remove(Computation computation) {
+    synchronized (entries) {
+      if (entries.get(computation.key) == computation) {
+        entries.remove(computation.key);
+      }
+    }
+  }
+
+  private Semaphore getPermits(String user) {
+    Semaphore permits = perUser.get(user);
+    if (permits == null) {
+      Semaphore created = new Semaphore(maxPerUser);
+      permits = perUser.putIfAbsent(user, created);
+      if (permits == null) {
+        permits = created;
+      }
+    }
+    return permits;
+  }
+
+  /**
+   * One computation, run by a listing task followed by up to parallelism
+   * workers that pull child directories from a shared counter. Nothing waits
+   * on the executor, and the last worker to finish completes the result.
+   */
+  private class Computation {
+    private final Key key;
+    private final Path dir;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Result result;
+    private volatile Exception error;
+    private volatile long doneTime;
+
+    private Semaphore permits;
+    private FileSystem fs;
+    private final List<FileStatus> children = new ArrayList<FileStatus>();
+    private Usage[] usages;
+    private ContentSummary dirSummary;
+    private boolean truncated;
+    private final AtomicInteger nextChild = new AtomicInteger();
+    private final AtomicInteger runningWorkers = new AtomicInteger();
+
+    private Computation(Key key, Path dir) {
+      this.key = key;
+      this.dir = dir;
+    }
+
+    private boolean isExpired() {
+      return doneTime > 0 && System.currentTimeMillis() - doneTime > ttlMs;
+    }
+
+    private void start() throws IOException {
+      permits = getPermits(key.user);
+      if (!permits.tryAcquire()) {
+        throw new RejectedExecutionException(
+            "Too many usage computations in progress for " + key.user + ".");
+      }
+      try {
+        fs = lender.borrow(key.user);
+        try {
+          executor.execute(new Runnable() {
+            @Override
+            public void run() {
+              list();
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          lender.release(fs);
+          throw new RejectedExecutionException(
+              "Usage is not available right now.", e);
+        }
+      } catch (IOException e) {
+        permits.release();
+        throw e;
+      } catch (RuntimeException e) {
+        permits.release();
+        throw e;
+      }
+    }
+
+    /**
+     * Fails a computation that could not be started, so requests that joined
+     * it do not wait for it.
+     */
+    private void abort(Exception failure) {
+      error = failure;
+      remove(this);
+      done.countDown();
+    }
+
+    private void list() {
+      try {
+        DirectoryPager pager = new DirectoryPager(fs, dir);
+        String cursor = null;
+        do {
+          DirectoryPager.Page page =
+              pager.list(cursor, LIST_PAGE_SIZE, null,
+                  DirectoryPager.SortKey.NAME, false);
+          for (FileStatus status : page.getEntries()) {
+            if (children.size() == MAX_CHILDREN) {
+              truncated = true;
+              break;
+            }
+            children.add(status);
+          }
+          cursor = page.getNextCursor();
+        } while (cursor != null && !truncated);
+        if (truncated) {
+          dirSummary = fs.getContentSummary(dir);
+        }
+      } catch (Exception e) {
+        finish(e);
+        return;
+      }
+
+      usages = new Usage[children.size()];
+      int workers = Math.max(1, Math.min(parallelism, children.size()));
+      runningWorkers.set(workers);
+      for (int i = 1; i < workers; i++) {
+        try {
+          executor.execute(new Runnable() {
+            @Override
+            public void run() {
+              work();
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          runningWorkers.decrementAndGet();
+        }
+      }
+      // The listing task works too, so the computation always progresses.
+      work();
+    }
+
+    private void work() {
+      int i;
+      while ((i = nextChild.getAndIncrement()) < children.size()) {
+        usages[i] = summarize(children.get(i));
+      }
+      if (runningWorkers.decrementAndGet() == 0) {
+        finish(null);
+      }
+    }
+
+    private Usage summarize(FileStatus status) {
+      Path path = status.getPath();
+      if (!status.isDir()) {
+        return new Usage(path, false, status.getLen(), status.getLen()
+            * status.getReplication(), 1, 0, null);
+      }
+      try {
+        ContentSummary summary = fs.getContentSummary(path);
+        return new Usage(path, true, summary.getLength(), summary
+            .getSpaceConsumed(), summary.getFileCount(), summary
+            .getDirectoryCount(), null);
+      } catch (IOException e) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Failed to summarize " + path, e);
+        }
+        return new Usage(path, true, 0, 0, 0, 0, e.getLocalizedMessage());
+      }
+    }
+
+    private void finish(Exception failure) {
+      try {
+        if (failure != null) {
+          error = failure;
+          remove(this);
+          return;
+        }
+        List<Usage> breakdown = new ArrayList<Usage>();
+        long length = 0;
+        long spaceConsumed = 0;
+        long fileCount = 0;
+        long directoryCount = 1;
+        for (Usage usage : usages) {
+          breakdown.add(usage);
+          length += usage.getLength();
+          spaceConsumed += usage.getSpaceConsumed();
+          fileCount += usage.getFileCount();
+          directoryCount += usage.getDirectoryCount();
+        }
+        Collections.sort(breakdown, new Comparator<Usage>() {
+          @Override
+          public int compare(Usage a, Usage b) {
+            return a.getLength() < b.getLength() ? 1
+                : (a.getLength() == b.getLength() ? 0 : -1);
+          }
+        });
+
+        Usage total;
+        if (dirSummary != null) {
+          total =
+              new Usage(dir, true, dirSummary.getLength(), dirSummary
+                  .getSpaceConsumed(), dirSummary.getFileCount(), dirSummary
+                  .getDirectoryCount(), null);
+        } else {
+          total =
+              new Usage(dir, true, length, spaceConsumed, fileCount,
+                  directoryCount, null);
+        }
+        result =
+            new Result(total, breakdown, truncated, System.currentTimeMillis());
+        doneTime = result.getComputeTime();
+      } finally {
+        lender.release(fs);
+        permits.release();
+        done.countDown();
+      }
+    }
+  }
+}
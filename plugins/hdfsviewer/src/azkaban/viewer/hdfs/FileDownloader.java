@@ -0,0 +1,288 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Sends the raw bytes of a file, honouring single byte ranges so that
+ * downloads can be resumed or fetched in parallel chunks.
+ *
+ * The file is read with positional reads into one large buffer per thread.
+ * Each user may only run a few downloads at a time, and downloads beyond the
+ * server wide limit are refused with 503 instead of holding on to web server
+ * threads.
+ */
+public class FileDownloader {
+  /** Seconds after which a refused download may be retried. */
+  private static final int RETRY_AFTER_SECONDS = 10;
+
+  private final int maxPerUser;
+  private final Semaphore total;
+  private final ConcurrentHashMap<String, Semaphore> perUser =
+      new ConcurrentHashMap<String, Semaphore>();
+  private final ThreadLocal<byte[]> buffers;
+
+  /**
+   * A range of bytes, both ends included.
+   */
+  static final class Range {
+    private final long start;
+    private final long end;
+
+    Range(long start, long end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    long getStart() {
+      return start;
+    }
+
+    long getEnd() {
+      return end;
+    }
+
+    long getLength() {
+      return end - start + 1;
+    }
+  }
+
+  /** Returned by {@link #parseRange(String, long)} for unsatisfiable ranges. */
+  static final Range UNSATISFIABLE = new Range(0, -1);
+
+  /**
+   * @param maxPerUser downloads a user may run at the same time
+   * @param maxTotal downloads the server runs at the same time
+   * @param bufferSize size of the read buffer of each download thread
+   */
+  public FileDownloader(int maxPerUser, int maxTotal, final int bufferSize) {
+    this.maxPerUser = maxPerUser;
+    this.total = new Semaphore(maxTotal);
+    this.buffers = new ThreadLocal<byte[]>() {
+      @Override
+      protected byte[] initialValue() {
+        return new byte[bufferSize];
+      }
+    };
+  }
+
+  /**
+   * Writes the file, or the requested range of it, to the response.
+   */
+  public void download(FileSystem fs, Path path, String user,
+      HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    FileStatus status = fs.getFileStatus(path);
+    if (status.isDir()) {
+      resp.sendError(HttpServletResponse.SC_BAD_REQUEST, path.toUri()
+          .getPath() + " is a directory.");
+      return;
+    }
+
+    Semaphore userPermits = perUser.get(user);
+    if (userPermits == null) {
+      Semaphore created = new Semaphore(maxPerUser);
+      userPermits = perUser.putIfAbsent(user, created);
+      if (userPermits == null) {
+        userPermits = created;
+      }
+    }
+    if (!userPermits.tryAcquire()) {
+      refuse(resp, "Too many downloads in progress for " + user + ".");
+      return;
+    }
+    try {
+      if (!total.tryAcquire()) {
+        refuse(resp, "Too many downloads in progress.");
+        return;
+      }
+      try {
+        send(fs, path, status, req, resp);
+      } finally {
+        total.release();
+      }
+    } finally {
+      userPermits.release();
+    }
+  }
+
+  private void refuse(HttpServletResponse resp, String message)
+      throws IOException {
+    resp.setHeader("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+    resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, message);
+  }
+
+  private void send(FileSystem fs, Path path, FileStatus status,
+      HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    long length = status.getLen();
+    String etag = getETag(status);
+
+    Range range = null;
+    String rangeHeader = req.getHeader("Range");
+    if (rangeHeader != null
+        && ifRangeMatches(req.getHeader("If-Range"), etag,
+            status.getModificationTime())) {
+      range = parseRange(rangeHeader, length);
+    }
+
+    resp.setHeader("Accept-Ranges", "bytes");
+    resp.setHeader("ETag", etag);
+    resp.setDateHeader("Last-Modified", status.getModificationTime());
+    if (range == UNSATISFIABLE) {
+      resp.setHeader("Content-Range", "bytes */" + length);
+      resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+      return;
+    }
+
+    resp.setContentType("application/octet-stream");
+    resp.setHeader("Content-Disposition", "attachment; filename=\""
+        + path.getName().replace("\"", "") + "\"");
+    if (range == null) {
+      range = new Range(0, length - 1);
+    } else {
+      resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+      resp.setHeader("Content-Range", "bytes " + range.getStart() + "-"
+          + range.getEnd() + "/" + length);
+    }
+    resp.setHeader("Content-Length", String.valueOf(range.getLength()));
+
+    OutputStream output = resp.getOutputStream();
+    FSDataInputStream input = fs.open(path);
+    try {
+      byte[] buffer = buffers.get();
+      long position = range.getStart();
+      long remaining = range.getLength();
+      while (remaining > 0) {
+        int read =
+            input.read(position, buffer, 0,
+                (int) Math.min(buffer.length, remaining));
+        if (read < 0) {
+          throw new EOFException(path + " was truncated during download");
+        }
+        output.write(buffer, 0, read);
+        position += read;
+        remaining -= read;
+      }
+      output.flush();
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Identifies the content of a file by its length and modification time.
+   */
+  static String getETag(FileStatus status) {
+    return "\"" + Long.toHexString(status.getLen()) + "-"
+        + Long.toHexString(status.getModificationTime()) + "\"";
+  }
+
+  /**
+   * Returns whether a range may be served given the If-Range header, which
+   * holds either the strong ETag or the Last-Modified date the client has.
+   */
+  static boolean ifRangeMatches(String ifRange, String etag, long modified) {
+    if (ifRange == null) {
+      return true;
+    }
+    ifRange = ifRange.trim();
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      // weak validators never match If-Range
+      return ifRange.equals(etag);
+    }
+    try {
+      long date = parseHttpDate(ifRange);
+      // HTTP dates have a resolution of one second
+      return date == modified / 1000 * 1000;
+    } catch (ParseException e) {
+      return false;
+    }
+  }
+
+  private static long parseHttpDate(String value) throws ParseException {
+    SimpleDateFormat format =
+        new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+    return format.parse(value).getTime();
+  }
+
+  /**
+   * Parses a Range header against a file of the given length. Returns null if
+   * the whole file should be sent, which is the case for malformed headers
+   * and for multiple ranges, and {@link #UNSATISFIABLE} if the range starts
+   * beyond the end of the file, including any range of an empty file.
+   */
+  static Range parseRange(String header, long length) {
+    header = header.trim();
+    if (!header.startsWith("bytes=")) {
+      return null;
+    }
+    String spec = header.substring("bytes=".length()).trim();
+    if (spec.indexOf(',') >= 0) {
+      return null;
+    }
+    int dash = spec.indexOf('-');
+    if (dash < 0) {
+      return null;
+    }
+
+    long start;
+    long end;
+    try {
+      String first = spec.substring(0, dash).trim();
+      String last = spec.substring(dash + 1).trim();
+      if (first.isEmpty()) {
+        // suffix range: the last n bytes, of which an empty file has none
+        long suffix = Long.parseLong(last);
+        if (suffix <= 0 || length == 0) {
+          return UNSATISFIABLE;
+        }
+        start = Math.max(0, length - suffix);
+        end = length - 1;
+      } else {
+        start = Long.parseLong(first);
+        end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+        if (start < 0 || end < start) {
+          return null;
+        }
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+
+    if (start >= length) {
+      return UNSATISFIABLE;
+    }
+    return new Range(start, Math.min(end, length - 1));
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+
+/**
+ * Binary container formats that can be recognized from the magic bytes at the
+ * head or tail of a file.
+ */
+public enum FileFormat {
+  ORC,
+  AVRO,
+  PARQUET,
+  SEQUENCE_FILE,
+  UNKNOWN;
+
+  private static final int HEAD_SIZE = 4096;
+  private static final int TAIL_SIZE = 16;
+
+  private static final byte[] ORC_MAGIC = { 'O', 'R', 'C' };
+  private static final byte[] AVRO_MAGIC = { 'O', 'b', 'j', 1 };
+  private static final byte[] PARQUET_MAGIC = { 'P', 'A', 'R', '1' };
+  private static final byte[] SEQUENCE_FILE_MAGIC = { 'S', 'E', 'Q' };
+
+  /**
+   * Reads the head and tail of the file once and returns the format its magic
+   * bytes belong to.
+   */
+  public static FileFormat detect(FileSystem fs, FileStatus status)
+      throws IOException {
+    long len = status.getLen();
+    if (len == 0) {
+      return UNKNOWN;
+    }
+
+    byte[] head = new byte[(int) Math.min(len, HEAD_SIZE)];
+    byte[] tail = new byte[(int) Math.min(len, TAIL_SIZE)];
+    FSDataInputStream in = fs.open(status.getPath());
+    try {
+      in.readFully(0, head);
+      in.readFully(len - tail.length, tail);
+    } finally {
+      in.close();
+    }
+    return detect(head, tail);
+  }
+
+  public static FileFormat detect(byte[] head, byte[] tail) {
+    if (startsWith(head, PARQUET_MAGIC) && endsWith(tail, PARQUET_MAGIC, 0)) {
+      return PARQUET;
+    } else if (startsWith(head, AVRO_MAGIC)) {
+      return AVRO;
+    } else if (startsWith(head, SEQUENCE_FILE_MAGIC)) {
+      return SEQUENCE_FILE;
+    } else if (startsWith(head, ORC_MAGIC) || endsWith(tail, ORC_MAGIC, 1)) {
+      // The ORC postscript ends with the magic followed by a single byte
+      // holding the postscript length.
+      return ORC;
+    }
+    return UNKNOWN;
+  }
+
+  private static boolean startsWith(byte[] bytes, byte[] magic) {
+    if (bytes.length < magic.length) {
+      return false;
+    }
+    for (int i = 0; i < magic.length; i++) {
+      if (bytes[i] != magic[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean endsWith(byte[] bytes, byte[] magic, int skip) {
+    int start = bytes.length - skip - magic.length;
+    if (start < 0) {
+      return false;
+    }
+    for (int i = 0; i < magic.length; i++) {
+      if (bytes[start + i] != magic[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
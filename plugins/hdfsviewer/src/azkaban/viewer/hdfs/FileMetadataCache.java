@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Bounded, least recently used cache of metadata parsed from file headers and
+ * footers, such as Avro schemas and Parquet footers, shared by all viewers.
+ *
+ * Entries are keyed by file version and by the kind of metadata, and expire
+ * after a fixed time. Concurrent requests for the same missing entry wait for
+ * a single load. A hit still opens the file, which costs one NameNode call
+ * but no data read, so users never see metadata of files they cannot read.
+ *
+ * Cached values are shared between users and threads and must not be
+ * modified, nor hold on to the FileSystem they were read with.
+ */
+public class FileMetadataCache {
+  /** A cache that keeps nothing, for viewers used outside the servlet. */
+  public static final FileMetadataCache DISABLED = new FileMetadataCache(0, 0);
+
+  /**
+   * Reads one kind of metadata from a file.
+   */
+  public interface Loader<T> {
+    T load(FileSystem fs, FileStatus status) throws IOException;
+  }
+
+  private static final class Key {
+    private final HdfsFileKey file;
+    private final String kind;
+
+    private Key(HdfsFileKey file, String kind) {
+      this.file = file;
+      this.kind = kind;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return file.equals(other.file) && kind.equals(other.kind);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * file.hashCode() + kind.hashCode();
+    }
+  }
+
+  private static final class Entry {
+    private final FutureTask<Object> value;
+    private final long loadTime;
+
+    private Entry(FutureTask<Object> value, long loadTime) {
+      this.value = value;
+      this.loadTime = loadTime;
+    }
+  }
+
+  private final int maxEntries;
+  private final long ttlMs;
+  private final Map<Key, Entry> entries;
+
+  /**
+   * @param maxEntries number of entries kept, 0 to disable caching
+   * @param ttlMs time after which an entry is read again
+   */
+  public FileMetadataCache(final int maxEntries, long ttlMs) {
+    this.maxEntries = maxEntries;
+    this.ttlMs = ttlMs;
+    this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Returns the metadata of the given kind for the current version of the
+   * file, loading it if it is not cached or has expired.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(final FileSystem fs, Path path, String kind,
+      final Loader<T> loader) throws IOException {
+    final FileStatus status = fs.getFileStatus(path);
+    if (maxEntries <= 0) {
+      return loader.load(fs, status);
+    }
+
+    Key key = new Key(HdfsFileKey.of(status), kind);
+    long now = System.currentTimeMillis();
+    Entry entry;
+    boolean hit = false;
+    synchronized (entries) {
+      entry = entries.get(key);
+      if (entry != null && now - entry.loadTime <= ttlMs) {
+        hit = true;
+      } else {
+        FutureTask<Object> load =
+            new FutureTask<Object>(new Callable<Object>() {
+              @Override
+              public Object call() throws Exception {
+                return loader.load(fs, status);
+              }
+            });
+        entry = new Entry(load, now);
+        entries.put(key, entry);
+      }
+    }
+
+    if (hit) {
+      fs.open(path).close();
+    } else {
+      entry.value.run();
+    }
+
+    try {
+      return (T) entry.value.get();
+    } catch (ExecutionException e) {
+      synchronized (entries) {
+        if (entries.get(key) == entry) {
+          entries.remove(key);
+        }
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for " + kind + " of "
+          + path);
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+/**
+ * Searches the records of a file, or of the data files of a directory, for a
+ * regular expression. Records are read through
+ * {@link HdfsFileViewer#scanRecords(FileSystem, Path, RecordVisitor)}, so the
+ * pattern is matched against the record as the viewer renders it.
+ *
+ * The files of a directory are searched by at most a fixed number of tasks
+ * on the given executor. The search stops as soon as enough matches are
+ * found, the rendered records read add up to the byte budget (counted in
+ * UTF-8), the time budget runs out or the caller cancels it. The pattern is
+ * user supplied, so the matcher reads the record through a CharSequence that
+ * checks the budgets too, and a pattern that backtracks without end on one
+ * long record is abandoned like the rest of the search.
+ */
+public class FileSearcher {
+  private static Logger logger = Logger.getLogger(FileSearcher.class);
+
+  /** Largest number of files of a directory that are searched. */
+  public static final int MAX_FILES = 10000;
+  /** Matching records longer than this are truncated in the result. */
+  public static final int MAX_MATCH_LENGTH = 1000;
+  /** Longest regular expression accepted. */
+  public static final int MAX_PATTERN_LENGTH = 1000;
+  // number of characters read by the matcher between two budget checks
+  private static final int CHECK_INTERVAL = 4096;
+
+  public enum StopReason {
+    COMPLETE, MATCHES, BYTES, TIME, CANCELLED
+  }
+
+  /**
+   * A matching record, numbered from 1 within its file.
+   */
+  public static final class Match {
+    private final Path path;
+    private final long record;
+    private final String text;
+
+    public Match(Path path, long record, String text) {
+      this.path = path;
+      this.record = record;
+      this.text = text;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    public long getRecord() {
+      return record;
+    }
+
+    public String getText() {
+      return text;
+    }
+  }
+
+  /**
+   * The matches found, ordered by file and record, and why the search
+   * stopped. Files that no viewer can scan are counted as skipped.
+   */
+  public static final class Result {
+    private final List<Match> matches;
+    private final int filesSearched;
+    private final int filesSkipped;
+    private final long bytesScanned;
+    private final StopReason stopReason;
+    private final List<String> errors;
+
+    public Result(List<Match> matches, int filesSearched, int filesSkipped,
+        long bytesScanned, StopReason stopReason, List<String> errors) {
+      this.matches = matches;
+      this.filesSearched = filesSearched;
+      this.filesSkipped = filesSkipped;
+      this.bytesScanned = bytesScanned;
+      this.stopReason = stopReason;
+      this.errors = errors;
+    }
+
+    public List<Match> getMatches() {
+      return matches;
+    }
+
+    public int getFilesSearched() {
+      return filesSearched;
+    }
+
+    public int getFilesSkipped() {
+      return filesSkipped;
+    }
+
+    public long getBytesScanned() {
+      return bytesScanned;
+    }
+
+    public StopReason getStopReason() {
+      return stopReason;
+    }
+
+    public List<String> getErrors() {
+      return errors;
+    }
+  }
+
+  private final DatasetFiles datasetFiles;
+  private final ExecutorService executor;
+  private final int parallelism;
+
+  /**
+   * @param parallelism number of files of one directory searched at the same
+   *          time
+   */
+  public FileSearcher(List<HdfsFileViewer> viewers,
+      HdfsFileViewer defaultViewer, FileViewerResolver viewerResolver,
+      ExecutorService executor, int parallelism) {
+    this.datasetFiles =
+        new DatasetFiles(viewers, defaultViewer, viewerResolver);
+    this.executor = executor;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Compiles a user supplied regular expression.
+   *
+   * @throws IllegalArgumentException if it is longer than
+   *           {@link #MAX_PATTERN_LENGTH} or is not valid
+   */
+  public static Pattern compile(String regex) {
+    checkLength(regex);
+    return Pattern.compile(regex);
+  }
+
+  /**
+   * Returns a pattern that matches records whose field has a value matching
+   * valueRegex, for records rendered as json. String values are matched
+   * without their quotes.
+   *
+   * @throws IllegalArgumentException if field or valueRegex is longer than
+   *           {@link #MAX_PATTERN_LENGTH} or is not valid
+   */
+  public static Pattern fieldPattern(String field, String valueRegex) {
+    checkLength(field);
+    checkLength(valueRegex);
+    return Pattern.compile("\"" + Pattern.quote(field) + "\"\\s*:\\s*\"?(?:"
+        + valueRegex + ")");
+  }
+
+  private static void checkLength(String regex) {
+    if (regex.length() > MAX_PATTERN_LENGTH) {
+      throw new IllegalArgumentException("Pattern is longer than "
+          + MAX_PATTERN_LENGTH + " characters.");
+    }
+  }
+
+  /**
+   * Searches a file, or the data files of a directory in name order.
+   *
+   * Files are searched in parallel, so when the search stops because it found
+   * maxMatches matches, those are the first matches found rather than the
+   * first ones in name order, and can differ between two searches. They are
+   * sorted by file and record before they are returned.
+   *
+   * @param maxMatches number of matches after which the search stops
+   * @param maxBytes number of rendered bytes, in UTF-8, after which the
+   *          search stops
+   * @param timeoutMs time budget of the whole search
+   * @param cancelled set by the caller to stop the search early
+   */
+  public Result search(final FileSystem fs, Path path, final Pattern pattern,
+      final int maxMatches, final long maxBytes, long timeoutMs,
+      final AtomicBoolean cancelled) throws IOException {
+    final long deadline = System.currentTimeMillis() + timeoutMs;
+    final List<FileStatus> files = new ArrayList<FileStatus>();
+    DatasetFiles.listFiles(fs, path, MAX_FILES, files);
+    final State state = new State();
+
+    final AtomicInteger nextFile = new AtomicInteger();
+    Callable<Void> worker = new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        int i;
+        while (state.shouldContinue(cancelled, deadline)
+            && (i = nextFile.getAndIncrement()) < files.size()) {
+          searchFile(fs, files.get(i).getPath(), pattern, maxMatches,
+              maxBytes, deadline, cancelled, state);
+        }
+        return null;
+      }
+    };
+
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    int workers = Math.min(parallelism, files.size());
+    for (int i = 0; i < workers; i++) {
+      try {
+        futures.add(executor.submit(worker));
+      } catch (RejectedExecutionException e) {
+        break;
+      }
+    }
+    if (futures.isEmpty() && !files.isEmpty()) {
+      throw new IOException("Search is not available right now.");
+    }
+
+    for (Future<Void> future : futures) {
+      try {
+        long remaining = Math.max(0, deadline - System.currentTimeMillis());
+        future.get(remaining, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        state.stop(StopReason.TIME);
+        future.cancel(true);
+      } catch (ExecutionException e) {
+        logger.warn("Search worker failed", e.getCause());
+      } catch (InterruptedException e) {
+        state.stop(StopReason.CANCELLED);
+        future.cancel(true);
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    List<Match> matches;
+    synchronized (state.matches) {
+      matches = new ArrayList<Match>(state.matches);
+    }
+    final Map<Path, Integer> order = new HashMap<Path, Integer>();
+    for (int i = 0; i < files.size(); i++) {
+      order.put(files.get(i).getPath(), i);
+    }
+    Collections.sort(matches, new Comparator<Match>() {
+      @Override
+      public int compare(Match a, Match b) {
+        int result = order.get(a.getPath()) - order.get(b.getPath());
+        if (result == 0) {
+          result = a.getRecord() < b.getRecord() ? -1 : 1;
+        }
+        return result;
+      }
+    });
+    if (matches.size() > maxMatches) {
+      matches = new ArrayList<Match>(matches.subList(0, maxMatches));
+    }
+
+    StopReason reason = state.stopReason.get();
+    if (reason == null) {
+      reason = StopReason.COMPLETE;
+    }
+    List<String> errors;
+    synchronized (state.errors) {
+      errors = new ArrayList<String>(state.errors);
+    }
+    return new Result(matches, state.filesSearched.get(),
+        state.filesSkipped.get(), state.bytesScanned.get(), reason, errors);
+  }
+
+  private void searchFile(FileSystem fs, final Path path,
+      final Pattern pattern, final int maxMatches, final long maxBytes,
+      final long deadline, final AtomicBoolean cancelled, final State state) {
+    try {
+      HdfsFileViewer viewer = datasetFiles.getViewer(fs, path);
+      boolean scanned =
+          viewer != null
+              && viewer.scanRecords(fs, path, new RecordVisitor() {
+                @Override
+                public boolean visit(long record, String text) {
+                  if (!state.shouldContinue(cancelled, deadline)) {
+                    return false;
+                  }
+                  long bytes =
+                      state.bytesScanned.addAndGet(utf8Length(text) + 1);
+                  if (bytes > maxBytes) {
+                    state.stop(StopReason.BYTES);
+                  }
+                  boolean found;
+                  try {
+                    found =
+                        pattern.matcher(
+                            new CheckedText(text, state, cancelled, deadline))
+                            .find();
+                  } catch (SearchStoppedException e) {
+                    return false;
+                  }
+                  if (found) {
+                    if (text.length() > MAX_MATCH_LENGTH) {
+                      text = text.substring(0, MAX_MATCH_LENGTH) + "...";
+                    }
+                    state.addMatch(new Match(path, record, text), maxMatches);
+                  }
+                  return true;
+                }
+              });
+      if (scanned) {
+        state.filesSearched.incrementAndGet();
+      } else {
+        state.filesSkipped.incrementAndGet();
+      }
+    } catch (Exception e) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Failed to search " + path, e);
+      }
+      synchronized (state.errors) {
+        state.errors.add(path + ": " + e.getLocalizedMessage());
+      }
+    }
+  }
+
+  /**
+   * Returns the number of bytes of the text encoded in UTF-8, without
+   * encoding it.
+   */
+  static long utf8Length(CharSequence text) {
+    long length = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+          && Character.isLowSurrogate(text.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Thrown by {@link CheckedText} to abandon a match once the search stopped.
+   */
+  private static class SearchStoppedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+  }
+
+  /**
+   * A record as read by the matcher. Every {@link #CHECK_INTERVAL} characters
+   * read, including those read again while backtracking, it checks whether
+   * the search should stop, and aborts the match if so.
+   */
+  private static class CheckedText implements CharSequence {
+    private final CharSequence text;
+    private final State state;
+    private final AtomicBoolean cancelled;
+    private final long deadline;
+    // shared with the subsequences, which read the same record
+    private final int[] reads;
+
+    private CheckedText(CharSequence text, State state,
+        AtomicBoolean cancelled, long deadline) {
+      this(text, state, cancelled, deadline, new int[1]);
+    }
+
+    private CheckedText(CharSequence text, State state,
+        AtomicBoolean cancelled, long deadline, int[] reads) {
+      this.text = text;
+      this.state = state;
+      this.cancelled = cancelled;
+      this.deadline = deadline;
+      this.reads = reads;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (++reads[0] == CHECK_INTERVAL) {
+        reads[0] = 0;
+        if (!state.shouldContinue(cancelled, deadline)) {
+          throw new SearchStoppedException();
+        }
+      }
+      return text.charAt(index);
+    }
+
+    @Override
+    public int length() {
+      return text.length();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return new CheckedText(text.subSequence(start, end), state, cancelled,
+          deadline, reads);
+    }
+
+    @Override
+    public String toString() {
+      return text.toString();
+    }
+  }
+
+  /**
+   * Progress of one search, shared by its workers.
+   */
+  private static class State {
+    private final List<Match> matches = new ArrayList<Match>();
+    private final List<String> errors = new ArrayList<String>();
+    private final AtomicInteger filesSearched = new AtomicInteger();
+    private final AtomicInteger filesSkipped = new AtomicInteger();
+    private final AtomicLong bytesScanned = new AtomicLong();
+    private final AtomicReference<StopReason> stopReason =
+        new AtomicReference<StopReason>();
+
+    private boolean shouldContinue(AtomicBoolean cancelled, long deadline) {
+      if (cancelled.get()) {
+        stop(StopReason.CANCELLED);
+      } else if (System.currentTimeMillis() > deadline) {
+        stop(StopReason.TIME);
+      }
+      return stopReason.get() == null;
+    }
+
+    private void stop(StopReason reason) {
+      stopReason.compareAndSet(null, reason);
+    }
+
+    private void addMatch(Match match, int maxMatches) {
+      synchronized (matches) {
+        matches.add(match);
+        if (matches.size() >= maxMatches) {
+          stop(StopReason.MATCHES);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Row count and per column statistics of a file, or of several files
+ * combined, as recorded in the footers of columnar formats.
+ *
+ * Formats do not all record the same statistics. Counts and sizes that are
+ * unknown are -1, and unknown minimums and maximums are null. Instances are
+ * immutable, so they can be cached and shared.
+ */
+public final class FileStats {
+  private final long rowCount;
+  private final int fileCount;
+  private final List<Column> columns;
+
+  /**
+   * Statistics of one column.
+   */
+  public static final class Column {
+    private final String name;
+    private final String type;
+    private final long valueCount;
+    private final long nullCount;
+    private final Object min;
+    private final Object max;
+    private final long compressedSize;
+    private final long uncompressedSize;
+
+    /**
+     * @param min smallest value, a Long, Double or String, or null if unknown
+     * @param max largest value, a Long, Double or String, or null if unknown
+     */
+    public Column(String name, String type, long valueCount, long nullCount,
+        Object min, Object max, long compressedSize, long uncompressedSize) {
+      this.name = name;
+      this.type = type;
+      this.valueCount = valueCount;
+      this.nullCount = nullCount;
+      this.min = min;
+      this.max = max;
+      this.compressedSize = compressedSize;
+      this.uncompressedSize = uncompressedSize;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getType() {
+      return type;
+    }
+
+    public long getValueCount() {
+      return valueCount;
+    }
+
+    public long getNullCount() {
+      return nullCount;
+    }
+
+    public Object getMin() {
+      return min;
+    }
+
+    public Object getMax() {
+      return max;
+    }
+
+    public long getCompressedSize() {
+      return compressedSize;
+    }
+
+    public long getUncompressedSize() {
+      return uncompressedSize;
+    }
+
+    private Column combine(Column other) {
+      String combinedType = type.equals(other.type) ? type : "mixed";
+      return new Column(name, combinedType, add(valueCount, other.valueCount),
+          add(nullCount, other.nullCount), pick(min, valueCount, other.min,
+              other.valueCount, -1), pick(max, valueCount, other.max,
+              other.valueCount, 1), add(compressedSize, other.compressedSize),
+          add(uncompressedSize, other.uncompressedSize));
+    }
+
+    private Column withUnknownNulls() {
+      return new Column(name, type, valueCount, -1, min, max, compressedSize,
+          uncompressedSize);
+    }
+  }
+
+  public FileStats(long rowCount, List<Column> columns) {
+    this(rowCount, 1, columns);
+  }
+
+  private FileStats(long rowCount, int fileCount, List<Column> columns) {
+    this.rowCount = rowCount;
+    this.fileCount = fileCount;
+    this.columns = Collections.unmodifiableList(new ArrayList<Column>(columns));
+  }
+
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Number of files these statistics were combined from.
+   */
+  public int getFileCount() {
+    return fileCount;
+  }
+
+  public List<Column> getColumns() {
+    return columns;
+  }
+
+  /**
+   * Returns the statistics of both files together. Columns are matched by
+   * name; a column missing from one of the files keeps the statistics of the
+   * other, except that its null count becomes unknown.
+   */
+  public FileStats combine(FileStats other) {
+    Map<String, Column> otherColumns = new LinkedHashMap<String, Column>();
+    for (Column column : other.columns) {
+      otherColumns.put(column.getName(), column);
+    }
+    List<Column> result = new ArrayList<Column>();
+    for (Column column : columns) {
+      Column match = otherColumns.remove(column.getName());
+      result.add(match == null ? column.withUnknownNulls() : column
+          .combine(match));
+    }
+    for (Column column : otherColumns.values()) {
+      result.add(column.withUnknownNulls());
+    }
+    return new FileStats(add(rowCount, other.rowCount), fileCount
+        + other.fileCount, result);
+  }
+
+  private static long add(long a, long b) {
+    return a < 0 || b < 0 ? -1 : a + b;
+  }
+
+  /**
+   * Returns the smaller (sign -1) or larger (sign 1) of two bounds, or null
+   * if either is unknown or they cannot be compared. The bound of a side with
+   * no values, which is null, is left out rather than making the result
+   * unknown.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static Object pick(Object a, long aValues, Object b, long bValues,
+      int sign) {
+    if (aValues == 0) {
+      return b;
+    }
+    if (bValues == 0) {
+      return a;
+    }
+    if (a == null || b == null) {
+      return null;
+    }
+    int result;
+    if (a instanceof Long && b instanceof Long) {
+      result = ((Long) a).compareTo((Long) b);
+    } else if (a instanceof Number && b instanceof Number) {
+      result =
+          Double.compare(((Number) a).doubleValue(), ((Number) b)
+              .doubleValue());
+    } else if (a instanceof Comparable && a.getClass() == b.getClass()) {
+      result = ((Comparable) a).compareTo(b);
+    } else {
+      return null;
+    }
+    return result * sign >= 0 ? a : b;
+  }
+}
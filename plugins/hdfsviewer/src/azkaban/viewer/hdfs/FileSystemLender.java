@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FileSystem;
+
+/**
+ * Lends the file system of a user to a computation, which may go on after
+ * the request that started it has released its own.
+ */
+public interface FileSystemLender {
+  FileSystem borrow(String user) throws IOException;
+
+  /**
+   * Takes another reference to a file system that is already lent out, so it
+   * stays open until this reference is released too. Returns false if the
+   * file system was not lent out by this lender.
+   */
+  boolean retain(FileSystem fs);
+
+  void release(FileSystem fs);
+}
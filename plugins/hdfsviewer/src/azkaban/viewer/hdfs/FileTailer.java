@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Follows a file that is still being written, like tail -f.
+ *
+ * The client keeps the offset returned with each poll and passes it back with
+ * the next one. A poll opens the file, seeks to that offset and returns the
+ * complete lines written since, so its cost is proportional to the new data
+ * rather than to the size of the file. If there is nothing new, the poll
+ * waits for data up to a bounded time. Only a limited number of polls may
+ * wait at the same time, so followers cannot hold on to every web server
+ * thread; polls beyond that return right away.
+ */
+public class FileTailer {
+  private final int maxBytes;
+  private final long pollIntervalMs;
+  private final Semaphore waiters;
+
+  /**
+   * New lines, and the offset to pass to the next poll. Reset is set when the
+   * file became shorter than the offset, e.g. because it was replaced, and
+   * the lines are read from the top again.
+   */
+  public static final class Result {
+    private final String lines;
+    private final long nextOffset;
+    private final boolean reset;
+
+    public Result(String lines, long nextOffset, boolean reset) {
+      this.lines = lines;
+      this.nextOffset = nextOffset;
+      this.reset = reset;
+    }
+
+    public String getLines() {
+      return lines;
+    }
+
+    public long getNextOffset() {
+      return nextOffset;
+    }
+
+    public boolean isReset() {
+      return reset;
+    }
+  }
+
+  /**
+   * @param maxBytes most bytes returned by one poll, and read from the end of
+   *          the file by the first one
+   * @param pollIntervalMs time between two checks for new data while waiting
+   * @param maxWaiters polls that may wait for new data at the same time
+   */
+  public FileTailer(int maxBytes, long pollIntervalMs, int maxWaiters) {
+    this.maxBytes = maxBytes;
+    this.pollIntervalMs = pollIntervalMs;
+    this.waiters = new Semaphore(maxWaiters);
+  }
+
+  /**
+   * Returns the complete lines written after the offset.
+   *
+   * @param offset offset returned by the previous poll, or a negative value
+   *          to start with the last lines of the file
+   * @param waitMs how long to wait for new lines if there are none yet
+   */
+  public Result tail(FileSystem fs, Path path, long offset, long waitMs)
+      throws IOException, InterruptedException {
+    long deadline = System.currentTimeMillis() + waitMs;
+    Result result = read(fs, path, offset);
+    if (!result.getLines().isEmpty() || waitMs <= 0 || !waiters.tryAcquire()) {
+      return result;
+    }
+    try {
+      while (result.getLines().isEmpty()) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          break;
+        }
+        Thread.sleep(Math.min(pollIntervalMs, remaining));
+        result = read(fs, path, result.getNextOffset());
+      }
+      return result;
+    } finally {
+      waiters.release();
+    }
+  }
+
+  private Result read(FileSystem fs, Path path, long offset)
+      throws IOException {
+    FSDataInputStream inputStream = fs.open(path);
+    try {
+      // An open stream also sees data synced to a block that is still being
+      // written, which the NameNode does not report in the file length yet.
+      long length =
+          Math.max(fs.getFileStatus(path).getLen(), inputStream.available());
+
+      boolean fromEnd = offset < 0;
+      boolean reset = false;
+      if (fromEnd) {
+        offset = Math.max(0, length - maxBytes);
+      } else if (offset > length) {
+        offset = 0;
+        reset = true;
+      }
+      if (offset == length) {
+        return new Result("", offset, reset);
+      }
+
+      byte[] buffer = new byte[(int) Math.min(maxBytes, length - offset)];
+      inputStream.readFully(offset, buffer);
+
+      int start = 0;
+      if (fromEnd && offset > 0) {
+        // start at the first complete line
+        while (start < buffer.length && buffer[start] != '\n') {
+          start++;
+        }
+        start = Math.min(start + 1, buffer.length);
+      }
+      int end = buffer.length;
+      while (end > start && buffer[end - 1] != '\n') {
+        end--;
+      }
+      if (end == start && buffer.length == maxBytes && !fromEnd) {
+        // a single line longer than a poll, return it in pieces
+        end = buffer.length;
+      }
+      return new Result(new String(buffer, start, end - start, "UTF-8"),
+          offset + end, reset);
+    } finally {
+      inputStream.close();
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+/**
+ * Picks the viewer for a file. The file format is detected once from its
+ * magic bytes so that only viewers able to read that format are asked for
+ * their capabilities, and the result is cached per file version so repeated
+ * requests for the same file skip detection entirely.
+ */
+public class FileViewerResolver {
+  private static Logger logger = Logger.getLogger(FileViewerResolver.class);
+
+  private final List<HdfsFileViewer> viewers;
+  private final Map<HdfsFileKey, Resolution> resolutions;
+
+  /**
+   * The viewer chosen for a file and the capabilities it offers for it.
+   */
+  public static final class Resolution {
+    private final int viewerId;
+    private final Set<Capability> capabilities;
+
+    public Resolution(int viewerId, Set<Capability> capabilities) {
+      this.viewerId = viewerId;
+      this.capabilities = Collections.unmodifiableSet(capabilities);
+    }
+
+    /**
+     * Index of the viewer in the viewer list, or -1 if no viewer can read the
+     * file.
+     */
+    public int getViewerId() {
+      return viewerId;
+    }
+
+    public Set<Capability> getCapabilities() {
+      return capabilities;
+    }
+  }
+
+  public FileViewerResolver(List<HdfsFileViewer> viewers, final int cacheSize) {
+    this.viewers = viewers;
+    this.resolutions =
+        new LinkedHashMap<HdfsFileKey, Resolution>(16, 0.75f, true) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected boolean removeEldestEntry(
+              Map.Entry<HdfsFileKey, Resolution> eldest) {
+            return size() > cacheSize;
+          }
+        };
+  }
+
+  /**
+   * Returns the first viewer that can read the file.
+   */
+  public Resolution resolve(FileSystem fs, Path path) throws IOException {
+    FileStatus status = fs.getFileStatus(path);
+    HdfsFileKey key = HdfsFileKey.of(status);
+    synchronized (resolutions) {
+      Resolution resolution = resolutions.get(key);
+      if (resolution != null) {
+        return resolution;
+      }
+    }
+
+    FileFormat format = FileFormat.detect(fs, status);
+    if (logger.isDebugEnabled()) {
+      logger.debug("Detected format " + format + " for " + key);
+    }
+
+    Resolution resolution =
+        new Resolution(-1, EnumSet.noneOf(Capability.class));
+    for (int i = 0; i < viewers.size(); ++i) {
+      HdfsFileViewer viewer = viewers.get(i);
+      if (viewer.getFormat() != null && viewer.getFormat() != format) {
+        continue;
+      }
+      Set<Capability> capabilities = viewer.getCapabilities(fs, path);
+      if (capabilities.contains(Capability.READ)) {
+        resolution = new Resolution(i, capabilities);
+        break;
+      }
+    }
+
+    synchronized (resolutions) {
+      resolutions.put(key, resolution);
+    }
+    return resolution;
+  }
+
+  /**
+   * Returns the capabilities of a specific viewer for the file, reusing the
+   * cached resolution when it picked the same viewer.
+   */
+  public Set<Capability> getCapabilities(FileSystem fs, Path path,
+      int viewerId) throws IOException {
+    if (viewerId < 0 || viewerId >= viewers.size()) {
+      return EnumSet.noneOf(Capability.class);
+    }
+
+    Resolution resolution = resolve(fs, path);
+    if (resolution.getViewerId() == viewerId) {
+      return resolution.getCapabilities();
+    }
+    return viewers.get(viewerId).getCapabilities(fs, path);
+  }
+}
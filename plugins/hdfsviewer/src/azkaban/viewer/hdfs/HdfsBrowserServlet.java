@@ -16,6 +16,7 @@
 
 package azkaban.viewer.hdfs;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
@@ -23,11 +24,23 @@ import java.lang.reflect.Method;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -40,6 +53,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.log4j.Logger;
 
+import azkaban.security.commons.FileSystemPool;
 import azkaban.security.commons.HadoopSecurityManager;
 import azkaban.security.commons.HadoopSecurityManagerException;
 import azkaban.user.User;
@@ -56,10 +70,55 @@ public class HdfsBrowserServlet extends LoginAbstractAzkabanServlet {
       "hadoop.security.manager.class";
 
   private static final int DEFAULT_FILE_MAX_LINES = 1000;
+  private static final int DEFAULT_VIEWER_CACHE_SIZE = 1000;
+  private static final int DEFAULT_METADATA_CACHE_SIZE = 1000;
+  private static final long DEFAULT_METADATA_CACHE_TTL_MS = 10 * 60 * 1000L;
+  private static final int DEFAULT_DIR_PAGE_SIZE = 1000;
+  private static final int DEFAULT_PREVIEW_THREADS = 8;
+  private static final int DEFAULT_PREVIEW_QUEUE_SIZE = 256;
+  private static final int DEFAULT_PREVIEW_FILES = 10;
+  private static final int MAX_PREVIEW_FILES = 100;
+  private static final int DEFAULT_PREVIEW_RECORDS = 10;
+  private static final long DEFAULT_PREVIEW_TIMEOUT_MS = 10000;
+  private static final int DEFAULT_STATS_PARALLEL_FILES = 8;
+  private static final long DEFAULT_STATS_TIMEOUT_MS = 30000;
+  private static final int DEFAULT_SEARCH_THREADS = 4;
+  private static final int DEFAULT_SEARCH_PARALLEL_FILES = 2;
+  private static final int DEFAULT_SEARCH_MATCHES = 100;
+  private static final int MAX_SEARCH_MATCHES = 1000;
+  private static final long DEFAULT_SEARCH_MAX_BYTES = 1024L * 1024 * 1024;
+  private static final long DEFAULT_SEARCH_TIMEOUT_MS = 30000;
+  private static final int DEFAULT_DOWNLOADS_PER_USER = 2;
+  private static final int DEFAULT_DOWNLOADS_TOTAL = 20;
+  private static final int DEFAULT_DOWNLOAD_BUFFER_SIZE = 1024 * 1024;
+  private static final int DEFAULT_TAIL_MAX_BYTES = 256 * 1024;
+  private static final long DEFAULT_TAIL_WAIT_MS = 10000;
+  private static final long DEFAULT_TAIL_MAX_WAIT_MS = 30000;
+  private static final long DEFAULT_TAIL_POLL_INTERVAL_MS = 1000;
+  private static final int DEFAULT_TAIL_MAX_WAITERS = 10;
+  private static final int DEFAULT_USAGE_THREADS = 8;
+  private static final int DEFAULT_USAGE_QUEUE_SIZE = 256;
+  private static final int DEFAULT_USAGE_PARALLELISM = 4;
+  private static final int DEFAULT_USAGE_PER_USER = 2;
+  private static final int DEFAULT_USAGE_CACHE_SIZE = 1000;
+  private static final long DEFAULT_USAGE_CACHE_TTL_MS = 10 * 60 * 1000L;
+  private static final long DEFAULT_USAGE_WAIT_MS = 5000;
+  private static final long DEFAULT_USAGE_MAX_WAIT_MS = 30000;
+  private static final int DEFAULT_VIEW_THREADS = 16;
+  private static final int DEFAULT_VIEW_QUEUE_SIZE = 64;
+  private static final long DEFAULT_VIEW_MAX_WAIT_MS = 60000;
 
   private int fileMaxLines;
+  private int dirPageSize;
   private int defaultStartLine;
   private int defaultEndLine;
+  private long previewTimeoutMs;
+  private long statsTimeoutMs;
+  private long searchMaxBytes;
+  private long searchTimeoutMs;
+  private long tailMaxWaitMs;
+  private long viewMaxWaitMs;
+  private long usageMaxWaitMs;
 
   private static Logger logger = Logger.getLogger(HdfsBrowserServlet.class);
 
@@ -67,6 +126,26 @@ public class HdfsBrowserServlet extends LoginAbstractAzkabanServlet {
 
   private HdfsFileViewer defaultViewer;
 
+  private FileViewerResolver viewerResolver;
+
+  private ExecutorService previewExecutor;
+  private DatasetPreview datasetPreview;
+  private DatasetStats datasetStats;
+
+  private ExecutorService searchExecutor;
+  private FileSearcher fileSearcher;
+  // Cancellation flags of the searches in progress, by user and search id.
+  private final ConcurrentHashMap<String, AtomicBoolean> runningSearches =
+      new ConcurrentHashMap<String, AtomicBoolean>();
+
+  private FileDownloader fileDownloader;
+  private FileTailer fileTailer;
+
+  private ExecutorService viewExecutor;
+
+  private ExecutorService usageExecutor;
+  private DirectoryUsage directoryUsage;
+
   private Props props;
   private boolean shouldProxy;
   private boolean allowGroupProxy;
@@ -75,14 +154,28 @@ public class HdfsBrowserServlet extends LoginAbstractAzkabanServlet {
   private String viewerPath;
 
   private HadoopSecurityManager hadoopSecurityManager;
+  private FileSystemPool fileSystemPool;
 
   public HdfsBrowserServlet(Props props) {
     this.props = props;
     viewerName = props.getString("viewer.name");
     viewerPath = props.getString("viewer.path");
     fileMaxLines = props.getInt("file.max.lines", DEFAULT_FILE_MAX_LINES);
+    dirPageSize = props.getInt("dir.page.size", DEFAULT_DIR_PAGE_SIZE);
     defaultStartLine = 1;
     defaultEndLine = fileMaxLines;
+    previewTimeoutMs =
+        props.getLong("dataset.preview.timeout.ms", DEFAULT_PREVIEW_TIMEOUT_MS);
+    statsTimeoutMs =
+        props.getLong("stats.timeout.ms", DEFAULT_STATS_TIMEOUT_MS);
+    searchMaxBytes =
+        props.getLong("search.max.bytes", DEFAULT_SEARCH_MAX_BYTES);
+    searchTimeoutMs =
+        props.getLong("search.timeout.ms", DEFAULT_SEARCH_TIMEOUT_MS);
+    tailMaxWaitMs = props.getLong("tail.max.wait.ms", DEFAULT_TAIL_MAX_WAIT_MS);
+    viewMaxWaitMs = props.getLong("view.max.wait.ms", DEFAULT_VIEW_MAX_WAIT_MS);
+    usageMaxWaitMs =
+        props.getLong("usage.max.wait.ms", DEFAULT_USAGE_MAX_WAIT_MS);
   }
 
   @Override
@@ -93,6 +186,8 @@ public class HdfsBrowserServlet extends LoginAbstractAzkabanServlet {
     allowGroupProxy = props.getBoolean("allow.group.proxy", false);
     logger.info("Hdfs browser should proxy: " + shouldProxy);
 
+    // FileSystemPool owns the lifecycle of the handles, so they must not be
+    // shared through hadoop's own FileSystem cache.
     props.put("fs.hdfs.impl.disable.cache", "true");
 
     try {
@@ -102,21 +197,174 @@ public class HdfsBrowserServlet extends LoginAbstractAzkabanServlet {
       throw new RuntimeException("Failed to get hadoop security manager!"
           + e.getCause());
     }
+    fileSystemPool = new FileSystemPool(hadoopSecurityManager, props);
+    // Lends pooled handles to work that outlives the request that started it.
+    FileSystemLender fileSystemLender = new FileSystemLender() {
+      @Override
+      public FileSystem borrow(String user) throws IOException {
+        try {
+          return getFileSystem(user);
+        } catch (HadoopSecurityManagerException e) {
+          throw new IOException("Cannot get FileSystem.", e);
+        }
+      }
+
+      @Override
+      public boolean retain(FileSystem fs) {
+        return fileSystemPool.retain(fs);
+      }
+
+      @Override
+      public void release(FileSystem fs) {
+        fileSystemPool.release(fs);
+      }
+    };
 
-    defaultViewer = new TextFileViewer();
+    TextFileViewer textViewer = new TextFileViewer();
+    textViewer.setFileSystemLender(fileSystemLender);
+    defaultViewer = textViewer;
+
+    // Record indexes of Avro and sequence files are kept across restarts.
+    File indexDir =
+        new File(props.getString("viewer.index.dir", new File(
+            System.getProperty("java.io.tmpdir"), "azkaban-hdfsviewer-index")
+            .getPath()));
 
     viewers.add(new ORCFileViewer());
-    viewers.add(new AvroFileViewer());
+    viewers.add(new AvroFileViewer(indexDir));
     viewers.add(new ParquetFileViewer());
-    viewers.add(new JsonSequenceFileViewer());
+    viewers.add(new JsonSequenceFileViewer(indexDir));
     viewers.add(new ImageFileViewer());
     viewers.add(new BsonFileViewer());
+    viewers.add(new CsvFileViewer(indexDir));
 
     viewers.add(defaultViewer);
 
+    // Schemas and footers are parsed once per file version for all viewers.
+    FileMetadataCache metadataCache =
+        new FileMetadataCache(props.getInt("metadata.cache.size",
+            DEFAULT_METADATA_CACHE_SIZE), props.getLong(
+            "metadata.cache.ttl.ms", DEFAULT_METADATA_CACHE_TTL_MS));
+    for (HdfsFileViewer viewer : viewers) {
+      viewer.setMetadataCache(metadataCache);
+    }
+
+    viewerResolver =
+        new FileViewerResolver(viewers, props.getInt("viewer.cache.size",
+            DEFAULT_VIEWER_CACHE_SIZE));
+
+    // Files beyond the queue are rejected and reported as unavailable, so a
+    // burst of previews cannot pile up work behind the threads.
+    int previewThreads =
+        props.getInt("dataset.preview.threads", DEFAULT_PREVIEW_THREADS);
+    previewExecutor =
+        new ThreadPoolExecutor(previewThreads, previewThreads, 0L,
+            TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+                props.getInt("dataset.preview.queue.size",
+                    DEFAULT_PREVIEW_QUEUE_SIZE)), new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "hdfs-viewer-dataset-preview");
+                thread.setDaemon(true);
+                return thread;
+              }
+            }, new ThreadPoolExecutor.AbortPolicy());
+    datasetPreview =
+        new DatasetPreview(viewers, defaultViewer, viewerResolver,
+            previewExecutor);
+    // Statistics only read footers, so they share the preview threads.
+    datasetStats =
+        new DatasetStats(viewers, viewerResolver, previewExecutor,
+            props.getInt("stats.parallel.files", DEFAULT_STATS_PARALLEL_FILES));
+
+    searchExecutor =
+        Executors.newFixedThreadPool(props.getInt("search.threads",
+            DEFAULT_SEARCH_THREADS), new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "hdfs-viewer-search");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    fileSearcher =
+        new FileSearcher(viewers, defaultViewer, viewerResolver,
+            searchExecutor, props.getInt("search.parallel.files",
+                DEFAULT_SEARCH_PARALLEL_FILES));
+
+    fileDownloader =
+        new FileDownloader(props.getInt("download.max.per.user",
+            DEFAULT_DOWNLOADS_PER_USER), props.getInt("download.max.total",
+            DEFAULT_DOWNLOADS_TOTAL), props.getInt("download.buffer.size",
+            DEFAULT_DOWNLOAD_BUFFER_SIZE));
+
+    fileTailer =
+        new FileTailer(props.getInt("tail.max.bytes", DEFAULT_TAIL_MAX_BYTES),
+            props.getLong("tail.poll.interval.ms",
+                DEFAULT_TAIL_POLL_INTERVAL_MS), props.getInt(
+                "tail.max.waiters", DEFAULT_TAIL_MAX_WAITERS));
+
+    // Viewers run here rather than on the request thread, so that a slow
+    // file can be abandoned once its budget runs out.
+    int viewThreads = props.getInt("view.threads", DEFAULT_VIEW_THREADS);
+    viewExecutor =
+        new ThreadPoolExecutor(viewThreads, viewThreads, 0L,
+            TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+                props.getInt("view.queue.size", DEFAULT_VIEW_QUEUE_SIZE)),
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "hdfs-viewer-display");
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+
+    // Content summaries walk whole trees on the NameNode, so they get their
+    // own bounded pool rather than competing with viewers.
+    int usageThreads = props.getInt("usage.threads", DEFAULT_USAGE_THREADS);
+    usageExecutor =
+        new ThreadPoolExecutor(usageThreads, usageThreads, 0L,
+            TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+                props.getInt("usage.queue.size", DEFAULT_USAGE_QUEUE_SIZE)),
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "hdfs-viewer-usage");
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+    directoryUsage =
+        new DirectoryUsage(fileSystemLender, usageExecutor, props.getInt(
+            "usage.parallelism", DEFAULT_USAGE_PARALLELISM), props.getInt(
+            "usage.max.per.user", DEFAULT_USAGE_PER_USER), props.getInt(
+            "usage.cache.size", DEFAULT_USAGE_CACHE_SIZE), props.getLong(
+            "usage.cache.ttl.ms", DEFAULT_USAGE_CACHE_TTL_MS));
+
     logger.info("HDFS Browser initiated");
   }
 
+  @Override
+  public void destroy() {
+    if (previewExecutor != null) {
+      previewExecutor.shutdownNow();
+    }
+    if (searchExecutor != null) {
+      searchExecutor.shutdownNow();
+    }
+    if (viewExecutor != null) {
+      viewExecutor.shutdownNow();
+    }
+    if (usageExecutor != null) {
+      usageExecutor.shutdownNow();
+    }
+    if (fileSystemPool != null) {
+      fileSystemPool.shutdown();
+    }
+    super.destroy();
+  }
+
   private HadoopSecurityManager loadHadoopSecurityManager(Props props,
       Logger logger) throws RuntimeException {
 
@@ -145,9 +393,13 @@ public class HdfsBrowserServlet extends LoginAbstractAzkabanServlet {
     return hadoopSecurityManager;
   }
 
+  /**
+   * Borrows the pooled FileSystem of the user. It must be handed back with
+   * {@link FileSystemPool#release(FileSystem)} instead of being closed.
+   */
   private FileSystem getFileSystem(String username)
       throws HadoopSecurityManagerException {
-    return hadoopSecurityManager.getFSAsUser(username);
+    return fileSystemPool.borrow(username);
   }
 
   private void errorPage(String user, HttpServletRequest req,
@@ -277,32 +529,38 @@ public class HdfsBrowserServlet extends LoginAbstractAzkabanServlet {
     }
 
     try {
-      if (!fs.exists(path)) {
+      try {
+        if (!fs.exists(path)) {
+          errorPage(user, req, resp, session, path.toUri().getPath()
+              + " does not exist.");
+          return;
+        }
+      } catch (IOException ioe) {
+        logger.error("Got exception while checking for existence of path '"
+            + path + "'", ioe);
         errorPage(user, req, resp, session, path.toUri().getPath()
-            + " does not exist.");
-        fs.close();
+            + " Encountered error while trying to detect if path '" + path
+            + "' exists. Reason: " + ioe.getMessage());
+        // the first call on the handle failed, don't hand it out again
+        fileSystemPool.invalidate(fs);
+        fs = null;
         return;
       }
-    } catch (IOException ioe) {
-      logger.error("Got exception while checking for existence of path '"
-          + path + "'", ioe);
-      errorPage(user, req, resp, session, path.toUri().getPath()
-          + " Encountered error while trying to detect if path '" + path
-          + "' exists. Reason: " + ioe.getMessage());
-      fs.close();
-      return;
-    }
 
-    if (fs.isFile(path)) {
-      displayFilePage(fs, user, req, resp, session, path);
-    } else if (fs.getFileStatus(path).isDir()) {
-      displayDirPage(fs, user, req, resp, session, path);
-    } else {
-      errorPage(user, req, resp, session,
-          "It exists, it is not a file, and it is not a directory, what "
-              + "is it precious?");
+      if (fs.isFile(path)) {
+        displayFilePage(fs, user, req, resp, session, path);
+      } else if (fs.getFileStatus(path).isDir()) {
+        displayDirPage(fs, user, req, resp, session, path);
+      } else {
+        errorPage(user, req, resp, session,
+            "It exists, it is not a file, and it is not a directory, what "
+                + "is it precious?");
+      }
+    } finally {
+      if (fs != null) {
+        fileSystemPool.release(fs);
+      }
     }
-    fs.close();
   }
 
   private void displayDirPage(FileSystem fs, String user,
@@ -324,17 +582,16 @@ public class HdfsBrowserServlet extends LoginAbstractAzkabanServlet {
     page.add("user", user);
     page.add("homedir", getHomeDir(fs));
 
+    page.add("path", path.toUri().getPath());
+
     try {
-      FileStatus[] subdirs = fs.listStatus(path);
-      page.add("subdirs", subdirs);
-      long size = 0;
-      for (int i = 0; i < subdirs.length; ++i) {
-        if (subdirs[i].isDir()) {
-          continue;
-        }
-        size += subdirs[i].getLen();
-      }
-      page.add("dirsize", size);
+      // Only the first page is rendered. The rest of the listing is fetched
+      // over ajax (listdir), and the directory size on demand (usage).
+      DirectoryPager.Page listing =
+          new DirectoryPager(fs, path).list(null, dirPageSize, null,
+              DirectoryPager.SortKey.NAME, false);
+      page.add("subdirs", listing.getEntries());
+      page.add("nextCursor", listing.getNextCursor());
     } catch (AccessControlException e) {
       page.add("error_message", "Permission denied: " + e.getMessage());
       page.add("no_fs", "true");
@@ -366,22 +623,13 @@ public class HdfsBrowserServlet extends LoginAbstractAzkabanServlet {
     page.add("homedir", getHomeDir(fs));
 
     try {
-      boolean hasSchema = false;
-      int viewerId = -1;
-      for (int i = 0; i < viewers.size(); ++i) {
-        HdfsFileViewer viewer = viewers.get(i);
-        Set<Capability> capabilities = EnumSet.noneOf(Capability.class);
-        capabilities = viewer.getCapabilities(fs, path);
-        if (capabilities.contains(Capability.READ)) {
-          if (capabilities.contains(Capability.SCHEMA)) {
-            hasSchema = true;
-          }
-          viewerId = i;
-          break;
-        }
-      }
-      page.add("viewerId", viewerId);
-      page.add("hasSchema", hasSchema);
+      FileViewerResolver.Resolution resolution =
+          viewerResolver.resolve(fs, path);
+      page.add("viewerId", resolution.getViewerId());
+      page.add("hasSchema",
+          resolution.getCapabilities().contains(Capability.SCHEMA));
+      page.add("hasStats",
+          resolution.getCapabilities().contains(Capability.STATS));
 
       FileStatus status = fs.getFileStatus(path);
       page.add("status", status);
@@ -397,6 +645,12 @@ public class HdfsBrowserServlet extends LoginAbstractAzkabanServlet {
       HttpServletResponse response, Session session) throws ServletException,
       IOException {
     Map<String, Object> ret = new HashMap<String, Object>();
+    if ("cancelsearch".equals(getParam(request, "ajax"))) {
+      handleAjaxCancelSearch(username, request, ret);
+      this.writeJSON(response, ret);
+      return;
+    }
+
     FileSystem fs = null;
     try {
       try {
@@ -421,12 +675,28 @@ public class HdfsBrowserServlet extends LoginAbstractAzkabanServlet {
 
       if (ajaxName.equals("fetchschema")) {
         handleAjaxFetchSchema(fs, request, ret, session, path);
+      } else if (ajaxName.equals("listdir")) {
+        handleAjaxListDir(fs, request, ret, path);
+      } else if (ajaxName.equals("usage")) {
+        handleAjaxUsage(username, fs, request, ret, path);
+      } else if (ajaxName.equals("previewdataset")) {
+        handleAjaxPreviewDataset(fs, request, ret, path);
+      } else if (ajaxName.equals("stats")) {
+        handleAjaxStats(fs, ret, path);
+      } else if (ajaxName.equals("tail")) {
+        handleAjaxTail(fs, request, ret, path);
+      } else if (ajaxName.equals("search")) {
+        handleAjaxSearch(username, fs, request, ret, path);
       } else if (ajaxName.equals("fetchfile")) {
         // Note: fetchFile writes directly to the output stream. Thus, we need
         // to make sure we do not write to the output stream once this call
         // returns.
         ret = null;
         handleAjaxFetchFile(fs, request, response, session, path);
+      } else if (ajaxName.equals("download")) {
+        // Like fetchfile, download writes directly to the response.
+        ret = null;
+        handleAjaxDownload(username, fs, request, response, path);
       } else {
         ret.put("error", "Unknown AJAX action " + ajaxName);
       }
@@ -435,7 +705,9 @@ public class HdfsBrowserServlet extends LoginAbstractAzkabanServlet {
         this.writeJSON(response, ret);
       }
     } finally {
-      fs.close();
+      if (fs != null) {
+        fileSystemPool.release(fs);
+      }
     }
   }
 
@@ -444,20 +716,10 @@ public class HdfsBrowserServlet extends LoginAbstractAzkabanServlet {
       ServletException {
     HdfsFileViewer fileViewer = null;
     try {
-      if (hasParam(req, "viewerId")) {
-        fileViewer = viewers.get(getIntParam(req, "viewerId"));
-        if (!fileViewer.getCapabilities(fs, path).contains(Capability.SCHEMA)) {
-          fileViewer = null;
-        }
-      } else {
-        for (HdfsFileViewer viewer : viewers) {
-          if (viewer.getCapabilities(fs, path).contains(Capability.SCHEMA)) {
-            fileViewer = viewer;
-          }
-        }
-      }
+      fileViewer = findViewer(fs, req, path, Capability.SCHEMA);
     } catch (AccessControlException e) {
       ret.put("error", "Permission denied.");
+      return;
     }
 
     if (fileViewer == null) {
@@ -467,6 +729,330 @@ public class HdfsBrowserServlet extends LoginAbstractAzkabanServlet {
     ret.put("schema", fileViewer.getSchema(fs, path));
   }
 
+  private void handleAjaxListDir(FileSystem fs, HttpServletRequest req,
+      Map<String, Object> ret, Path path) throws IOException, ServletException {
+    String cursor = getParam(req, "cursor", null);
+    int limit =
+        Math.max(1, Math.min(getIntParam(req, "limit", dirPageSize),
+            dirPageSize));
+    String prefix = getParam(req, "prefix", null);
+    String sort = getParam(req, "sort", "name");
+    boolean descending = "desc".equals(getParam(req, "order", "asc"));
+
+    DirectoryPager.SortKey sortKey;
+    try {
+      sortKey = DirectoryPager.SortKey.valueOf(sort.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      ret.put("error", "Unknown sort key " + sort);
+      return;
+    }
+
+    DirectoryPager.Page listing;
+    try {
+      listing =
+          new DirectoryPager(fs, path).list(cursor, limit, prefix, sortKey,
+              descending);
+    } catch (AccessControlException e) {
+      ret.put("error", "Permission denied.");
+      return;
+    } catch (IllegalArgumentException e) {
+      ret.put("error", e.getMessage());
+      return;
+    }
+
+    List<Map<String, Object>> files = new ArrayList<Map<String, Object>>();
+    for (FileStatus status : listing.getEntries()) {
+      Map<String, Object> file = new HashMap<String, Object>();
+      file.put("name", status.getPath().getName());
+      file.put("path", status.getPath().toUri().getPath());
+      file.put("isDir", status.isDir());
+      file.put("size", status.getLen());
+      file.put("blockSize", status.getBlockSize());
+      file.put("replication", status.getReplication());
+      file.put("modificationTime", status.getModificationTime());
+      file.put("owner", status.getOwner());
+      file.put("group", status.getGroup());
+      file.put("permission", status.getPermission().toString());
+      files.add(file);
+    }
+    ret.put("files", files);
+    if (listing.getNextCursor() != null) {
+      ret.put("cursor", listing.getNextCursor());
+    }
+  }
+
+  private void handleAjaxUsage(String username, FileSystem fs,
+      HttpServletRequest req, Map<String, Object> ret, Path path)
+      throws IOException, ServletException {
+    long waitMs =
+        Math.min(getLongParam(req, "wait", DEFAULT_USAGE_WAIT_MS),
+            usageMaxWaitMs);
+    DirectoryUsage.Result result;
+    try {
+      if (!fs.getFileStatus(path).isDir()) {
+        ret.put("error", path.toUri().getPath() + " is not a directory.");
+        return;
+      }
+      result = directoryUsage.get(username, path, waitMs);
+    } catch (AccessControlException e) {
+      ret.put("error", "Permission denied.");
+      return;
+    } catch (RejectedExecutionException e) {
+      ret.put("error", e.getMessage());
+      return;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      ret.put("error", "Interrupted.");
+      return;
+    }
+
+    if (result == null) {
+      // Still running, the client asks again.
+      ret.put("pending", true);
+      return;
+    }
+    ret.put("total", getUsageMap(result.getTotal()));
+    List<Map<String, Object>> children = new ArrayList<Map<String, Object>>();
+    for (DirectoryUsage.Usage usage : result.getChildren()) {
+      children.add(getUsageMap(usage));
+    }
+    ret.put("children", children);
+    ret.put("truncated", result.isTruncated());
+    ret.put("computeTime", result.getComputeTime());
+  }
+
+  private static Map<String, Object> getUsageMap(DirectoryUsage.Usage usage) {
+    Map<String, Object> item = new HashMap<String, Object>();
+    item.put("name", usage.getPath().getName());
+    item.put("path", usage.getPath().toUri().getPath());
+    item.put("isDir", usage.isDir());
+    if (usage.getError() != null) {
+      item.put("error", usage.getError());
+      return item;
+    }
+    item.put("length", usage.getLength());
+    item.put("spaceConsumed", usage.getSpaceConsumed());
+    item.put("fileCount", usage.getFileCount());
+    item.put("directoryCount", usage.getDirectoryCount());
+    return item;
+  }
+
+  private void handleAjaxPreviewDataset(FileSystem fs, HttpServletRequest req,
+      Map<String, Object> ret, Path path) throws IOException, ServletException {
+    String cursor = getParam(req, "cursor", null);
+    int maxFiles =
+        Math.max(1, Math.min(getIntParam(req, "files", DEFAULT_PREVIEW_FILES),
+            MAX_PREVIEW_FILES));
+    int records =
+        Math.min(getIntParam(req, "records", DEFAULT_PREVIEW_RECORDS),
+            fileMaxLines);
+
+    DatasetPreview.Result result;
+    try {
+      if (!fs.getFileStatus(path).isDir()) {
+        ret.put("error", path.toUri().getPath() + " is not a directory.");
+        return;
+      }
+      result =
+          datasetPreview.preview(fs, path, cursor, maxFiles, records,
+              previewTimeoutMs);
+    } catch (AccessControlException e) {
+      ret.put("error", "Permission denied.");
+      return;
+    }
+
+    if (result.getViewer() != null) {
+      ret.put("viewer", result.getViewer().getName());
+    }
+    List<Map<String, Object>> parts = new ArrayList<Map<String, Object>>();
+    for (DatasetPreview.Part part : result.getParts()) {
+      Map<String, Object> item = new HashMap<String, Object>();
+      item.put("name", part.getPath().getName());
+      item.put("path", part.getPath().toUri().getPath());
+      if (part.getError() != null) {
+        item.put("error", part.getError());
+      } else {
+        item.put("content", part.getContent());
+      }
+      parts.add(item);
+    }
+    ret.put("parts", parts);
+    if (result.getNextCursor() != null) {
+      ret.put("cursor", result.getNextCursor());
+    }
+  }
+
+  private void handleAjaxStats(FileSystem fs, Map<String, Object> ret,
+      Path path) throws IOException {
+    DatasetStats.Result result;
+    try {
+      result = datasetStats.compute(fs, path, statsTimeoutMs);
+    } catch (AccessControlException e) {
+      ret.put("error", "Permission denied.");
+      return;
+    }
+
+    FileStats stats = result.getStats();
+    if (stats == null) {
+      ret.put("error", "No statistics are available.");
+      if (!result.getErrors().isEmpty()) {
+        ret.put("errors", result.getErrors());
+      }
+      return;
+    }
+    List<Map<String, Object>> columns = new ArrayList<Map<String, Object>>();
+    for (FileStats.Column column : stats.getColumns()) {
+      Map<String, Object> item = new HashMap<String, Object>();
+      item.put("name", column.getName());
+      item.put("type", column.getType());
+      putIfKnown(item, "valueCount", column.getValueCount());
+      putIfKnown(item, "nullCount", column.getNullCount());
+      putIfKnown(item, "compressedSize", column.getCompressedSize());
+      putIfKnown(item, "uncompressedSize", column.getUncompressedSize());
+      if (column.getMin() != null) {
+        item.put("min", column.getMin());
+      }
+      if (column.getMax() != null) {
+        item.put("max", column.getMax());
+      }
+      columns.add(item);
+    }
+    ret.put("rowCount", stats.getRowCount());
+    ret.put("filesRead", stats.getFileCount());
+    ret.put("filesSkipped", result.getFilesSkipped());
+    ret.put("complete", result.isComplete());
+    ret.put("columns", columns);
+    ret.put("errors", result.getErrors());
+  }
+
+  private static void putIfKnown(Map<String, Object> item, String key,
+      long value) {
+    if (value >= 0) {
+      item.put(key, value);
+    }
+  }
+
+  private void handleAjaxTail(FileSystem fs, HttpServletRequest req,
+      Map<String, Object> ret, Path path) throws IOException {
+    long offset = getLongParam(req, "offset", -1);
+    long waitMs =
+        Math.min(getLongParam(req, "wait", DEFAULT_TAIL_WAIT_MS),
+            tailMaxWaitMs);
+
+    FileTailer.Result result;
+    try {
+      if (fs.getFileStatus(path).isDir()) {
+        ret.put("error", path.toUri().getPath() + " is a directory.");
+        return;
+      }
+      result = fileTailer.tail(fs, path, offset, waitMs);
+    } catch (AccessControlException e) {
+      ret.put("error", "Permission denied.");
+      return;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      ret.put("error", "Interrupted.");
+      return;
+    }
+
+    ret.put("lines", result.getLines());
+    ret.put("offset", result.getNextOffset());
+    if (result.isReset()) {
+      ret.put("reset", true);
+    }
+  }
+
+  private void handleAjaxSearch(String username, FileSystem fs,
+      HttpServletRequest req, Map<String, Object> ret, Path path)
+      throws IOException, ServletException {
+    if (!hasParam(req, "pattern")) {
+      ret.put("error", "Missing parameter 'pattern'.");
+      return;
+    }
+    String regex = getParam(req, "pattern");
+    String field = getParam(req, "field", null);
+    int maxMatches =
+        Math.min(getIntParam(req, "maxMatches", DEFAULT_SEARCH_MATCHES),
+            MAX_SEARCH_MATCHES);
+
+    Pattern pattern;
+    try {
+      pattern =
+          field == null || field.isEmpty() ? FileSearcher.compile(regex)
+              : FileSearcher.fieldPattern(field, regex);
+    } catch (PatternSyntaxException e) {
+      ret.put("error", "Invalid pattern: " + e.getDescription());
+      return;
+    } catch (IllegalArgumentException e) {
+      ret.put("error", e.getMessage());
+      return;
+    }
+
+    String searchId = getParam(req, "searchId", null);
+    String searchKey = searchId == null ? null : username + "/" + searchId;
+    AtomicBoolean cancelled = new AtomicBoolean();
+    if (searchKey != null
+        && runningSearches.putIfAbsent(searchKey, cancelled) != null) {
+      ret.put("error", "Search " + searchId + " is already running.");
+      return;
+    }
+
+    FileSearcher.Result result;
+    try {
+      result =
+          fileSearcher.search(fs, path, pattern, maxMatches, searchMaxBytes,
+              searchTimeoutMs, cancelled);
+    } catch (AccessControlException e) {
+      ret.put("error", "Permission denied.");
+      return;
+    } finally {
+      if (searchKey != null) {
+        runningSearches.remove(searchKey);
+      }
+    }
+
+    List<Map<String, Object>> matches = new ArrayList<Map<String, Object>>();
+    for (FileSearcher.Match match : result.getMatches()) {
+      Map<String, Object> item = new HashMap<String, Object>();
+      item.put("path", match.getPath().toUri().getPath());
+      item.put("record", match.getRecord());
+      item.put("text", match.getText());
+      matches.add(item);
+    }
+    ret.put("matches", matches);
+    ret.put("filesSearched", result.getFilesSearched());
+    ret.put("filesSkipped", result.getFilesSkipped());
+    ret.put("bytesScanned", result.getBytesScanned());
+    ret.put("stopReason", result.getStopReason().toString().toLowerCase());
+    if (!result.getErrors().isEmpty()) {
+      ret.put("errors", result.getErrors());
+    }
+  }
+
+  private void handleAjaxCancelSearch(String username, HttpServletRequest req,
+      Map<String, Object> ret) throws ServletException {
+    if (!hasParam(req, "searchId")) {
+      ret.put("error", "Missing parameter 'searchId'.");
+      return;
+    }
+    AtomicBoolean cancelled =
+        runningSearches.get(username + "/" + getParam(req, "searchId"));
+    if (cancelled != null) {
+      cancelled.set(true);
+    }
+    ret.put("cancelled", cancelled != null);
+  }
+
+  private void handleAjaxDownload(String username, FileSystem fs,
+      HttpServletRequest req, HttpServletResponse resp, Path path)
+      throws IOException {
+    try {
+      fileDownloader.download(fs, path, username, req, resp);
+    } catch (AccessControlException e) {
+      resp.sendError(HttpServletResponse.SC_FORBIDDEN, "Permission denied.");
+    }
+  }
+
   private void handleAjaxFetchFile(FileSystem fs, HttpServletRequest req,
       HttpServletResponse resp, Session session, Path path) throws IOException,
       ServletException {
@@ -488,19 +1074,7 @@ public class HdfsBrowserServlet extends LoginAbstractAzkabanServlet {
     // Use registered viewers to show the file content
     HdfsFileViewer fileViewer = null;
     try {
-      if (hasParam(req, "viewerId")) {
-        fileViewer = viewers.get(getIntParam(req, "viewerId"));
-        if (!fileViewer.getCapabilities(fs, path).contains(Capability.READ)) {
-          fileViewer = null;
-        }
-      } else {
-        for (HdfsFileViewer viewer : viewers) {
-          if (viewer.getCapabilities(fs, path).contains(Capability.READ)) {
-            fileViewer = viewer;
-            break;
-          }
-        }
-      }
+      fileViewer = findViewer(fs, req, path, Capability.READ);
       // use default text viewer
       if (fileViewer == null) {
         if (defaultViewer.getCapabilities(fs, path).contains(Capability.READ)) {
@@ -512,8 +1086,97 @@ public class HdfsBrowserServlet extends LoginAbstractAzkabanServlet {
       }
     } catch (AccessControlException e) {
       output.write(("Permission denied.").getBytes("UTF-8"));
+      return;
+    }
+
+    ViewBudget budget = newViewBudget(fileViewer);
+    Future<?> future;
+    try {
+      future =
+          fileViewer.displayFileAsync(viewExecutor, fs, path, output,
+              startLine, endLine, getColumnsParam(req), budget);
+    } catch (RejectedExecutionException e) {
+      output.write(("The server is busy, please try again later.")
+          .getBytes("UTF-8"));
+      return;
     }
 
-    fileViewer.displayFile(fs, path, output, startLine, endLine);
+    // Cancelling waits until the task can no longer write to the response,
+    // which is recycled once this returns.
+    try {
+      future.get(Math.min(budget.getRemainingMs(), viewMaxWaitMs),
+          TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      future.cancel(true);
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Builds the budget of one display. Each limit is read from
+   * viewer.&lt;name&gt;.{timeout.ms,max.bytes,max.records}, then from
+   * view.{timeout.ms,max.bytes,max.records}, and defaults to the viewer's own
+   * limit. The name is the viewer name in lower case with spaces replaced by
+   * dots, e.g. viewer.json.sequence.file.timeout.ms.
+   */
+  private ViewBudget newViewBudget(HdfsFileViewer viewer) {
+    ViewBudget defaults = viewer.newDefaultBudget();
+    String prefix =
+        "viewer." + viewer.getName().toLowerCase().replace(' ', '.') + ".";
+    long timeoutMs =
+        props.getLong(prefix + "timeout.ms", props.getLong("view.timeout.ms",
+            defaults.getRemainingMs()));
+    long maxBytes =
+        props.getLong(prefix + "max.bytes", props.getLong("view.max.bytes",
+            defaults.getMaxBytes()));
+    int maxRecords =
+        props.getInt(prefix + "max.records", props.getInt("view.max.records",
+            defaults.getMaxRecords()));
+    return new ViewBudget(timeoutMs, maxBytes, maxRecords);
+  }
+
+  /**
+   * Returns the comma separated columns parameter as a list, or null if no
+   * columns were requested.
+   */
+  private List<String> getColumnsParam(HttpServletRequest req) {
+    String param = getParam(req, "columns", "");
+    List<String> columns = new ArrayList<String>();
+    for (String column : param.split(",")) {
+      column = column.trim();
+      if (!column.isEmpty()) {
+        columns.add(column);
+      }
+    }
+    return columns.isEmpty() ? null : columns;
+  }
+
+  /**
+   * Returns the viewer requested through the viewerId parameter, or the
+   * viewer picked by the resolver, if it offers the given capability.
+   */
+  private HdfsFileViewer findViewer(FileSystem fs, HttpServletRequest req,
+      Path path, Capability capability) throws IOException, ServletException {
+    if (hasParam(req, "viewerId")) {
+      int viewerId = getIntParam(req, "viewerId");
+      if (viewerResolver.getCapabilities(fs, path, viewerId).contains(
+          capability)) {
+        return viewers.get(viewerId);
+      }
+      return null;
+    }
+
+    FileViewerResolver.Resolution resolution = viewerResolver.resolve(fs, path);
+    if (resolution.getCapabilities().contains(capability)) {
+      return viewers.get(resolution.getViewerId());
+    }
+    return null;
   }
 }
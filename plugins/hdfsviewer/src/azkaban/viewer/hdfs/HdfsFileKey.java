@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import org.apache.hadoop.fs.FileStatus;
+
+/**
+ * Identifies one version of an HDFS file. Any state derived from the file
+ * contents (indexes, detected formats, parsed footers) is keyed by this so
+ * that a rewritten or appended file is never served stale data.
+ */
+public final class HdfsFileKey {
+  private final String path;
+  private final long modificationTime;
+  private final long length;
+
+  public HdfsFileKey(String path, long modificationTime, long length) {
+    this.path = path;
+    this.modificationTime = modificationTime;
+    this.length = length;
+  }
+
+  public static HdfsFileKey of(FileStatus status) {
+    return new HdfsFileKey(status.getPath().toUri().getPath(),
+        status.getModificationTime(), status.getLen());
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public long getModificationTime() {
+    return modificationTime;
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof HdfsFileKey)) {
+      return false;
+    }
+    HdfsFileKey other = (HdfsFileKey) obj;
+    return modificationTime == other.modificationTime
+        && length == other.length && path.equals(other.path);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = path.hashCode();
+    result = 31 * result + (int) (modificationTime ^ (modificationTime >>> 32));
+    result = 31 * result + (int) (length ^ (length >>> 32));
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return path + "@" + modificationTime + ":" + length;
+  }
+}
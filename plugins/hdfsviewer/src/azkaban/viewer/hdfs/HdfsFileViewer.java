@@ -17,7 +17,14 @@
 package azkaban.viewer.hdfs;
 
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -26,8 +33,34 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.AccessControlException;
 
 public abstract class HdfsFileViewer {
+  /** Time budget of a display that is not given one. */
+  protected static final long DEFAULT_VIEW_TIMEOUT_MS = 2000;
+
+  private volatile FileMetadataCache metadataCache = FileMetadataCache.DISABLED;
+
   public abstract String getName();
 
+  /**
+   * Sets the cache of parsed headers and footers, usually shared by all the
+   * viewers of a servlet.
+   */
+  public void setMetadataCache(FileMetadataCache metadataCache) {
+    this.metadataCache = metadataCache;
+  }
+
+  protected FileMetadataCache getMetadataCache() {
+    return metadataCache;
+  }
+
+  /**
+   * Returns the binary format this viewer reads, or null if the viewer does
+   * not depend on the magic bytes of the file. Viewers with a format are only
+   * asked about files whose magic bytes match it.
+   */
+  public FileFormat getFormat() {
+    return null;
+  }
+
   public Set<Capability> getCapabilities(FileSystem fs, Path path)
       throws AccessControlException {
     return EnumSet.noneOf(Capability.class);
@@ -36,7 +69,181 @@ public abstract class HdfsFileViewer {
   public abstract void displayFile(FileSystem fs, Path path,
       OutputStream outStream, int startLine, int endLine) throws IOException;
 
+  /**
+   * Returns the endLine to pass to displayFile so that lastLine is the last
+   * record displayed. endLine is inclusive unless a viewer overrides this.
+   */
+  public int getEndLine(int lastLine) {
+    return lastLine;
+  }
+
+  /**
+   * Displays the records like
+   * {@link #displayFile(FileSystem, Path, OutputStream, int, int)}, but only
+   * the given top level columns. A null or empty list means all columns.
+   * Viewers that cannot project columns display whole records.
+   */
+  public void displayFile(FileSystem fs, Path path, OutputStream outStream,
+      int startLine, int endLine, List<String> columns) throws IOException {
+    displayFile(fs, path, outStream, startLine, endLine);
+  }
+
+  /**
+   * Displays the records like
+   * {@link #displayFile(FileSystem, Path, OutputStream, int, int, List)},
+   * stopping early once the budget is exhausted. Viewers that do not
+   * implement budgets fall back to their own limits.
+   */
+  public void displayFile(FileSystem fs, Path path, OutputStream outStream,
+      int startLine, int endLine, List<String> columns, ViewBudget budget)
+      throws IOException {
+    displayFile(fs, path, outStream, startLine, endLine, columns);
+  }
+
+  /**
+   * Runs
+   * {@link #displayFile(FileSystem, Path, OutputStream, int, int, List, ViewBudget)}
+   * on the executor. Cancelling the returned future also cancels the budget,
+   * so the viewer stops at its next check even if it does not respond to
+   * interrupts. Once cancel returns, the task no longer writes to outStream:
+   * cancel waits for a write in progress, and later writes fail.
+   *
+   * @throws java.util.concurrent.RejectedExecutionException if the executor
+   *           cannot take the task
+   */
+  public Future<?> displayFileAsync(ExecutorService executor,
+      final FileSystem fs, final Path path, final OutputStream outStream,
+      final int startLine, final int endLine, final List<String> columns,
+      final ViewBudget budget) {
+    final DetachableOutputStream output = new DetachableOutputStream(outStream);
+    final Future<?> future = executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        if (!budget.isExhausted()) {
+          displayFile(fs, path, output, startLine, endLine, columns, budget);
+        }
+        return null;
+      }
+    });
+    return new CancellingFuture(future, budget, output);
+  }
+
+  /**
+   * Returns the budget used when a display is not given one.
+   */
+  protected ViewBudget newDefaultBudget() {
+    return new ViewBudget(DEFAULT_VIEW_TIMEOUT_MS, Long.MAX_VALUE,
+        Integer.MAX_VALUE);
+  }
+
+  /**
+   * Passes the records of the file to the visitor in order, until the visitor
+   * returns false or the file ends. Returns false if this viewer cannot read
+   * the file record by record.
+   */
+  public boolean scanRecords(FileSystem fs, Path path, RecordVisitor visitor)
+      throws IOException {
+    return false;
+  }
+
   public String getSchema(FileSystem fs, Path path) {
     return null;
   }
+
+  /**
+   * Returns the row count and column statistics recorded in the metadata of
+   * the file, without reading its records, or null if this viewer does not
+   * support {@link Capability#STATS}.
+   */
+  public FileStats getStats(FileSystem fs, Path path) throws IOException {
+    return null;
+  }
+
+  private static class CancellingFuture implements Future<Object> {
+    private final Future<?> future;
+    private final ViewBudget budget;
+    private final DetachableOutputStream output;
+
+    private CancellingFuture(Future<?> future, ViewBudget budget,
+        DetachableOutputStream output) {
+      this.future = future;
+      this.budget = budget;
+      this.output = output;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      budget.cancel();
+      boolean cancelled = future.cancel(mayInterruptIfRunning);
+      output.detach();
+      return cancelled;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return future.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+      return future.isDone();
+    }
+
+    @Override
+    public Object get() throws InterruptedException, ExecutionException {
+      return future.get();
+    }
+
+    @Override
+    public Object get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException,
+        TimeoutException {
+      return future.get(timeout, unit);
+    }
+  }
+
+  /**
+   * Passes writes on to a stream, such as a response, that must not be
+   * written to once the display is cancelled. Detaching waits for a write in
+   * progress, and writes after it fail.
+   */
+  private static class DetachableOutputStream extends OutputStream {
+    private OutputStream out;
+
+    private DetachableOutputStream(OutputStream out) {
+      this.out = out;
+    }
+
+    private synchronized void detach() {
+      out = null;
+    }
+
+    private OutputStream getOut() throws IOException {
+      if (out == null) {
+        throw new IOException("Display was cancelled");
+      }
+      return out;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+      getOut().write(b);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len)
+        throws IOException {
+      getOut().write(b, off, len);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+      getOut().flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      getOut().close();
+    }
+  }
 }
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -88,6 +89,20 @@ public class ImageFileViewer extends HdfsFileViewer {
 
   public void displayFile(FileSystem fs, Path path, OutputStream outputStream,
       int startLine, int endLine) throws IOException {
+    displayFile(fs, path, outputStream, startLine, endLine, null,
+        newDefaultBudget());
+  }
+
+  @Override
+  protected ViewBudget newDefaultBudget() {
+    return new ViewBudget(Long.MAX_VALUE, MAX_IMAGE_FILE_SIZE,
+        Integer.MAX_VALUE);
+  }
+
+  @Override
+  public void displayFile(FileSystem fs, Path path, OutputStream outputStream,
+      int startLine, int endLine, List<String> columns, ViewBudget budget)
+      throws IOException {
 
     if (logger.isDebugEnabled()) {
       logger.debug("read in image file");
@@ -96,14 +111,15 @@ public class ImageFileViewer extends HdfsFileViewer {
     InputStream inputStream = null;
     try {
       inputStream = new BufferedInputStream(fs.open(path));
-      BufferedOutputStream output = new BufferedOutputStream(outputStream);
+      BufferedOutputStream output =
+          new BufferedOutputStream(budget.track(outputStream));
       long outputSize = 0L;
       byte[] buffer = new byte[16384];
       int len;
-      while ((len = inputStream.read(buffer)) != -1) {
+      while (!budget.isCancelled() && (len = inputStream.read(buffer)) != -1) {
         output.write(buffer, 0, len);
         outputSize += len;
-        if (outputSize > MAX_IMAGE_FILE_SIZE) {
+        if (outputSize > budget.getMaxBytes()) {
           break;
         }
       }
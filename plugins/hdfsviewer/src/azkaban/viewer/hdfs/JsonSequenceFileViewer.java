@@ -18,6 +18,7 @@ package azkaban.viewer.hdfs;
 
 import java.util.EnumSet;
 import java.util.Set;
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 
@@ -33,6 +34,13 @@ import voldemort.serialization.json.JsonTypeSerializer;
 public class JsonSequenceFileViewer extends SequenceFileViewer {
   private static final String VIEWER_NAME = "JSON Sequence File";
 
+  public JsonSequenceFileViewer() {
+  }
+
+  public JsonSequenceFileViewer(File indexDir) {
+    super(indexDir);
+  }
+
   @Override
   public String getName() {
     return VIEWER_NAME;
@@ -66,11 +74,6 @@ public class JsonSequenceFileViewer extends SequenceFileViewer {
     JsonTypeSerializer valueSerializer =
         new JsonTypeSerializer(valueSchema.toString());
 
-    // skip lines before the start line
-    for (int i = 1; i < startLine; i++) {
-      reader.next(keyWritable, valueWritable);
-    }
-
     // now actually output lines
     for (int i = startLine; i <= endLine; i++) {
       boolean readSomething = reader.next(keyWritable, valueWritable);
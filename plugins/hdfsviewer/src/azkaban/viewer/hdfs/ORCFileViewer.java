@@ -2,17 +2,30 @@ package azkaban.viewer.hdfs;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
 
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.io.orc.ColumnStatistics;
+import org.apache.hadoop.hive.ql.io.orc.DateColumnStatistics;
+import org.apache.hadoop.hive.ql.io.orc.DecimalColumnStatistics;
+import org.apache.hadoop.hive.ql.io.orc.DoubleColumnStatistics;
+import org.apache.hadoop.hive.ql.io.orc.IntegerColumnStatistics;
 import org.apache.hadoop.hive.ql.io.orc.OrcFile;
+import org.apache.hadoop.hive.ql.io.orc.OrcProto;
 import org.apache.hadoop.hive.ql.io.orc.Reader;
 import org.apache.hadoop.hive.ql.io.orc.RecordReader;
+import org.apache.hadoop.hive.ql.io.orc.StringColumnStatistics;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 import org.apache.log4j.Logger;
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
 
 import azkaban.viewer.hdfs.utils.SerDeUtilsWrapper;
 
@@ -25,7 +38,6 @@ public class ORCFileViewer extends HdfsFileViewer {
     private static Logger logger = Logger.getLogger(ORCFileViewer.class);
     // Will spend 5 seconds trying to pull data and then stop.
     private final static long STOP_TIME = 5000l;
-    private final static int JSON_INDENT = 2;
 
     private static final String VIEWER_NAME = "ORC";
 
@@ -34,6 +46,16 @@ public class ORCFileViewer extends HdfsFileViewer {
         return VIEWER_NAME;
     }
 
+    @Override
+    protected ViewBudget newDefaultBudget() {
+        return new ViewBudget(STOP_TIME, Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public FileFormat getFormat() {
+        return FileFormat.ORC;
+    }
+
     /**
      * Get ORCFileViewer functionalities. Currently schema and read are
      * supported. {@inheritDoc}
@@ -47,12 +69,8 @@ public class ORCFileViewer extends HdfsFileViewer {
             logger.debug("orc file path: " + path.toUri().getPath());
         }
 
-        Reader orcReader = null;
-        RecordReader recordReader = null;
         try {
-            // no need to close orcreader
-            orcReader = OrcFile.createReader(fs, path);
-            recordReader = orcReader.rows(null);
+            getCachedSchema(fs, path);
         } catch (Exception e) {
             if (logger.isDebugEnabled()) {
                 logger.debug(path.toUri().getPath() + " is not a ORC file.");
@@ -60,16 +78,29 @@ public class ORCFileViewer extends HdfsFileViewer {
                     + e.getLocalizedMessage());
             }
             return EnumSet.noneOf(Capability.class);
-        } finally {
-            if (recordReader != null) {
-                try {
-                    recordReader.close();
-                } catch (IOException e) {
-                    logger.error(e);
-                }
-            }
         }
-        return EnumSet.of(Capability.READ, Capability.SCHEMA);
+        return EnumSet.of(Capability.READ, Capability.SCHEMA,
+            Capability.STATS);
+    }
+
+    /**
+     * Returns the type name of the rows, read from the footer. The footer is
+     * only cached once a record reader could be opened on the file.
+     */
+    private String getCachedSchema(FileSystem fs, Path path)
+        throws IOException {
+        return getMetadataCache().get(fs, path, "orc.schema",
+            new FileMetadataCache.Loader<String>() {
+                @Override
+                public String load(FileSystem fs, FileStatus status)
+                    throws IOException {
+                    // no need to close orcreader
+                    Reader orcReader =
+                        OrcFile.createReader(fs, status.getPath());
+                    orcReader.rows(null).close();
+                    return orcReader.getObjectInspector().getTypeName();
+                }
+            });
     }
 
     /**
@@ -84,51 +115,163 @@ public class ORCFileViewer extends HdfsFileViewer {
     @Override
     public void displayFile(FileSystem fs, Path path, OutputStream outStream,
         int startLine, int endLine) throws IOException {
+        displayFile(fs, path, outStream, startLine, endLine, null);
+    }
+
+    @Override
+    public void displayFile(FileSystem fs, Path path, OutputStream outStream,
+        int startLine, int endLine, List<String> columns) throws IOException {
+        displayFile(fs, path, outStream, startLine, endLine, columns,
+            newDefaultBudget());
+    }
+
+    /**
+     * Reads only the requested columns, and seeks straight to startLine using
+     * the row index of the stripe containing it instead of decoding all the
+     * rows before it. {@inheritDoc}
+     *
+     * @see azkaban.viewer.hdfs.HdfsFileViewer#displayFile(org.apache.hadoop.fs.FileSystem,
+     *      org.apache.hadoop.fs.Path, java.io.OutputStream, int, int,
+     *      java.util.List, azkaban.viewer.hdfs.ViewBudget)
+     */
+    @Override
+    public void displayFile(FileSystem fs, Path path, OutputStream outStream,
+        int startLine, int endLine, List<String> columns, ViewBudget budget)
+        throws IOException {
         if (logger.isDebugEnabled()) {
             logger.debug("displaying orc file:" + path.toUri().getPath());
         }
-        StringBuilder ret = new StringBuilder();
+        outStream = budget.track(outStream);
+        endLine = budget.lastRecord(startLine, endLine);
         Reader orcreader = null;
         RecordReader reader = null;
+        JsonGenerator json = null;
         Object row = null;
         try {
+            orcreader = OrcFile.createReader(fs, path);
+            if (startLine > orcreader.getNumberOfRows()) {
+                return;
+            }
+
+            // Only a struct at the top level has columns to project.
+            boolean[] include = null;
+            boolean isStruct =
+                orcreader.getObjectInspector() instanceof StructObjectInspector;
+            if (columns != null && !columns.isEmpty() && isStruct) {
+                try {
+                    include = getIncludedColumns(orcreader, columns);
+                } catch (IllegalArgumentException e) {
+                    outStream.write(e.getMessage().getBytes("UTF-8"));
+                    return;
+                }
+            }
+            reader = orcreader.rows(include);
+
             int lineNum = 1;
+            if (startLine > 1) {
+                reader.seekToRow(startLine - 1);
+                lineNum = startLine;
+            }
+
+            // Records are written to the stream as soon as they are decoded.
+            json =
+                new JsonFactory().createJsonGenerator(outStream,
+                    JsonEncoding.UTF8);
+            json.useDefaultPrettyPrinter();
 
-            orcreader = OrcFile.createReader(fs, path);
-            reader = orcreader.rows(null);
-            long endTime = System.currentTimeMillis() + STOP_TIME;
             while (reader.hasNext() && lineNum <= endLine
-                && System.currentTimeMillis() <= endTime) {
+                && !budget.isExhausted()) {
                 row = reader.next(row);
                 if (lineNum >= startLine) {
-                    ret.append(String.format("Record %d:\n", lineNum));
-                    String jsonString =
-                        SerDeUtilsWrapper.getJSON(row,
+                    outStream.write(String.format("Record %d:\n", lineNum)
+                        .getBytes("UTF-8"));
+                    if (include == null) {
+                        SerDeUtilsWrapper.writeJSON(json, row,
                             orcreader.getObjectInspector());
-                    try {
-                        JSONObject jsonobj = new JSONObject(jsonString);
-                        ret.append(jsonobj.toString(JSON_INDENT));
-                    } catch (JSONException e) {
-                        logger.error("Failed to parse json as JSONObject", e);
-                        // default to unformatted json string
-                        ret.append(jsonString);
+                    } else {
+                        SerDeUtilsWrapper.writeJSON(json, row,
+                            (StructObjectInspector) orcreader
+                                .getObjectInspector(), columns);
                     }
-                    ret.append("\n\n");
+                    json.flush();
+                    outStream.write("\n\n".getBytes("UTF-8"));
                 }
                 lineNum++;
             }
-            outStream.write(ret.toString().getBytes());
         } catch (IOException e) {
             outStream.write(("Error in display orc file: " + e
                 .getLocalizedMessage()).getBytes("UTF-8"));
             throw e;
         } finally {
+            if (json != null) {
+                json.flush();
+            }
             if (reader != null) {
                 reader.close();
             }
         }
     }
 
+    /**
+     * Passes each row rendered as unformatted json. {@inheritDoc}
+     *
+     * @see azkaban.viewer.hdfs.HdfsFileViewer#scanRecords(org.apache.hadoop.fs.FileSystem,
+     *      org.apache.hadoop.fs.Path, azkaban.viewer.hdfs.RecordVisitor)
+     */
+    @Override
+    public boolean scanRecords(FileSystem fs, Path path, RecordVisitor visitor)
+        throws IOException {
+        Reader orcreader = OrcFile.createReader(fs, path);
+        RecordReader reader = orcreader.rows(null);
+        try {
+            Object row = null;
+            long lineNum = 1;
+            while (reader.hasNext()) {
+                row = reader.next(row);
+                String json =
+                    SerDeUtilsWrapper.getJSON(row,
+                        orcreader.getObjectInspector());
+                if (!visitor.visit(lineNum++, json)) {
+                    break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return true;
+    }
+
+    /**
+     * Builds the include mask for {@link Reader#rows(boolean[])} from top level
+     * column names. Column ids are the ids of the types in the file footer, so
+     * each selected column includes its nested types as well.
+     *
+     * @throws IllegalArgumentException if a column does not exist
+     */
+    private static boolean[] getIncludedColumns(Reader orcReader,
+        List<String> columns) {
+        List<OrcProto.Type> types = orcReader.getTypes();
+        boolean[] include = new boolean[types.size()];
+        include[0] = true;
+        OrcProto.Type root = types.get(0);
+        for (String column : columns) {
+            int field = root.getFieldNamesList().indexOf(column);
+            if (field < 0) {
+                throw new IllegalArgumentException("Unknown column: " + column);
+            }
+            includeType(types, root.getSubtypes(field), include);
+        }
+        return include;
+    }
+
+    private static void includeType(List<OrcProto.Type> types, int id,
+        boolean[] include) {
+        include[id] = true;
+        for (int child : types.get(id).getSubtypesList()) {
+            includeType(types, child, include);
+        }
+    }
+
     /**
      * Get schema in same syntax as in hadoop --orcdump {@inheritDoc}
      *
@@ -139,8 +282,7 @@ public class ORCFileViewer extends HdfsFileViewer {
     public String getSchema(FileSystem fs, Path path) {
         String schema = null;
         try {
-            Reader orcReader = OrcFile.createReader(fs, path);
-            schema = orcReader.getObjectInspector().getTypeName();
+            schema = getCachedSchema(fs, path);
         } catch (IOException e) {
             logger
                 .warn("Cannot get schema for file: " + path.toUri().getPath());
@@ -150,4 +292,81 @@ public class ORCFileViewer extends HdfsFileViewer {
         return schema;
     }
 
+    /**
+     * Reads the file level statistics of the top level columns from the
+     * footer. The footer does not break the stream sizes down by column, so
+     * the sizes are unknown.
+     */
+    @Override
+    public FileStats getStats(FileSystem fs, Path path) throws IOException {
+        return getMetadataCache().get(fs, path, "orc.stats",
+            new FileMetadataCache.Loader<FileStats>() {
+                @Override
+                public FileStats load(FileSystem fs, FileStatus status)
+                    throws IOException {
+                    Reader orcReader =
+                        OrcFile.createReader(fs, status.getPath());
+                    return readStats(orcReader);
+                }
+            });
+    }
+
+    private static FileStats readStats(Reader orcReader) {
+        long rows = orcReader.getNumberOfRows();
+        List<OrcProto.Type> types = orcReader.getTypes();
+        ColumnStatistics[] statistics = orcReader.getStatistics();
+        List<FileStats.Column> columns = new ArrayList<FileStats.Column>();
+        OrcProto.Type root = types.get(0);
+        for (int i = 0; i < root.getSubtypesCount(); i++) {
+            int id = root.getSubtypes(i);
+            String name =
+                i < root.getFieldNamesCount() ? root.getFieldNames(i)
+                    : "_col" + i;
+            String type =
+                types.get(id).getKind().toString().toLowerCase();
+            if (id >= statistics.length) {
+                columns.add(new FileStats.Column(name, type, -1, -1, null,
+                    null, -1, -1));
+                continue;
+            }
+            ColumnStatistics column = statistics[id];
+            long values = column.getNumberOfValues();
+            Object min = null;
+            Object max = null;
+            if (values > 0) {
+                if (column instanceof IntegerColumnStatistics) {
+                    min = ((IntegerColumnStatistics) column).getMinimum();
+                    max = ((IntegerColumnStatistics) column).getMaximum();
+                } else if (column instanceof DoubleColumnStatistics) {
+                    min = ((DoubleColumnStatistics) column).getMinimum();
+                    max = ((DoubleColumnStatistics) column).getMaximum();
+                } else if (column instanceof StringColumnStatistics) {
+                    min = ((StringColumnStatistics) column).getMinimum();
+                    max = ((StringColumnStatistics) column).getMaximum();
+                } else if (column instanceof DecimalColumnStatistics) {
+                    min = toDecimal(((DecimalColumnStatistics) column)
+                        .getMinimum());
+                    max = toDecimal(((DecimalColumnStatistics) column)
+                        .getMaximum());
+                } else if (column instanceof DateColumnStatistics) {
+                    min = toString(((DateColumnStatistics) column)
+                        .getMinimum());
+                    max = toString(((DateColumnStatistics) column)
+                        .getMaximum());
+                }
+            }
+            // Top level columns have a value in every row that is not null.
+            columns.add(new FileStats.Column(name, type, values, rows - values,
+                min, max, -1, -1));
+        }
+        return new FileStats(rows, columns);
+    }
+
+    private static String toString(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    private static BigDecimal toDecimal(Object value) {
+        return value == null ? null : new BigDecimal(value.toString());
+    }
 }
@@ -16,7 +16,12 @@
 
 package azkaban.viewer.hdfs;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -27,9 +32,13 @@ import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Encoder;
 import org.apache.avro.io.EncoderFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.AccessControlException;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
 import org.apache.log4j.Logger;
 
 import org.codehaus.jackson.JsonEncoding;
@@ -37,7 +46,17 @@ import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
 
 import parquet.avro.AvroParquetReader;
-import parquet.avro.AvroSchemaConverter;
+import parquet.avro.AvroReadSupport;
+import parquet.column.ColumnDescriptor;
+import parquet.hadoop.ParquetFileReader;
+import parquet.hadoop.ParquetInputSplit;
+import parquet.hadoop.ParquetRecordReader;
+import parquet.hadoop.metadata.BlockMetaData;
+import parquet.hadoop.metadata.ColumnChunkMetaData;
+import parquet.hadoop.metadata.FileMetaData;
+import parquet.hadoop.metadata.ParquetMetadata;
+import parquet.schema.MessageType;
+import parquet.schema.Type;
 
 /**
  * This class implements a viewer for Parquet files.
@@ -47,16 +66,21 @@ import parquet.avro.AvroSchemaConverter;
 public class ParquetFileViewer extends HdfsFileViewer {
   private static Logger logger = Logger.getLogger(ParquetFileViewer.class);
 
-  // Will spend 5 seconds trying to pull data and then stop.
-  private final static long STOP_TIME = 2000l;
-
   private static final String VIEWER_NAME = "Parquet";
 
+  // Footer metadata key under which parquet-avro stores the Avro schema.
+  private static final String AVRO_SCHEMA_KEY = "avro.schema";
+
   @Override
   public String getName() {
     return VIEWER_NAME;
   }
 
+  @Override
+  public FileFormat getFormat() {
+    return FileFormat.PARQUET;
+  }
+
   @Override
   public Set<Capability> getCapabilities(FileSystem fs, Path path)
       throws AccessControlException {
@@ -64,9 +88,10 @@ public class ParquetFileViewer extends HdfsFileViewer {
       logger.debug("Parquet file path: " + path.toUri().getPath());
     }
 
-    AvroParquetReader<GenericRecord> parquetReader = null;
     try {
-      parquetReader = new AvroParquetReader<GenericRecord>(path);
+      getFooter(fs, path);
+    } catch (AccessControlException e) {
+      throw e;
     } catch (IOException e) {
       if (logger.isDebugEnabled()) {
         logger.debug(path.toUri().getPath() + " is not a Parquet file.");
@@ -74,29 +99,110 @@ public class ParquetFileViewer extends HdfsFileViewer {
             + e.getLocalizedMessage());
       }
       return EnumSet.noneOf(Capability.class);
-    } finally {
-      try {
-        if (parquetReader != null) {
-          parquetReader.close();
-        }
-      } catch (IOException e) {
-        logger.error(e);
-      }
     }
-    return EnumSet.of(Capability.READ, Capability.SCHEMA);
+    return EnumSet.of(Capability.READ, Capability.SCHEMA, Capability.STATS);
+  }
+
+  /**
+   * Returns the footer of the file, which holds the schema and the row
+   * groups.
+   */
+  private ParquetMetadata getFooter(FileSystem fs, Path path)
+      throws IOException {
+    return getMetadataCache().get(fs, path, "parquet.footer",
+        new FileMetadataCache.Loader<ParquetMetadata>() {
+          @Override
+          public ParquetMetadata load(FileSystem fs, FileStatus status)
+              throws IOException {
+            return ParquetFileReader.readFooter(fs.getConf(), status);
+          }
+        });
   }
 
   @Override
   public void displayFile(FileSystem fs, Path path, OutputStream outputStream,
       int startLine, int endLine) throws IOException {
+    displayFile(fs, path, outputStream, startLine, endLine, null);
+  }
+
+  @Override
+  public void displayFile(FileSystem fs, Path path, OutputStream outputStream,
+      int startLine, int endLine, List<String> columns) throws IOException {
+    displayFile(fs, path, outputStream, startLine, endLine, columns,
+        newDefaultBudget());
+  }
+
+  /**
+   * Uses the row counts of the row groups in the footer to only read the row
+   * groups holding the requested records, and only materializes the requested
+   * columns.
+   */
+  @Override
+  public void displayFile(FileSystem fs, Path path, OutputStream outputStream,
+      int startLine, int endLine, List<String> columns, ViewBudget budget)
+      throws IOException {
     if (logger.isDebugEnabled()) {
       logger.debug("Display Parquet file: " + path.toUri().getPath());
     }
 
+    outputStream = budget.track(outputStream);
+    endLine = budget.lastRecord(startLine, endLine);
     JsonGenerator json = null;
-    AvroParquetReader<GenericRecord> parquetReader = null;
+    ParquetRecordReader<GenericRecord> parquetReader = null;
     try {
-      parquetReader = new AvroParquetReader<GenericRecord>(path);
+      Configuration conf = fs.getConf();
+      ParquetMetadata footer = getFooter(fs, path);
+      FileMetaData fileMetaData = footer.getFileMetaData();
+
+      // Skip the row groups that end before startLine. line is the number of
+      // the first record of the first row group that is read.
+      List<BlockMetaData> blocks = new ArrayList<BlockMetaData>();
+      long line = 1;
+      long blockStart = 1;
+      for (BlockMetaData block : footer.getBlocks()) {
+        long blockEnd = blockStart + block.getRowCount();
+        if (blockEnd <= startLine) {
+          line = blockEnd;
+        } else if (blockStart <= endLine) {
+          blocks.add(block);
+        }
+        blockStart = blockEnd;
+      }
+      if (blocks.isEmpty()) {
+        return;
+      }
+
+      MessageType fileSchema = fileMetaData.getSchema();
+      Map<String, String> metadata =
+          new HashMap<String, String>(fileMetaData.getKeyValueMetaData());
+      MessageType requestedSchema = fileSchema;
+      if (columns != null && !columns.isEmpty()
+          && metadata.containsKey(AVRO_SCHEMA_KEY)) {
+        for (String column : columns) {
+          if (!fileSchema.containsField(column)) {
+            outputStream.write(("Unknown column: " + column).getBytes("UTF-8"));
+            return;
+          }
+        }
+        requestedSchema = getProjection(fileSchema, columns);
+        // The records are materialized with this schema, so it has to match
+        // the projection.
+        Schema avroSchema =
+            new Schema.Parser().parse(metadata.get(AVRO_SCHEMA_KEY));
+        metadata.put(AVRO_SCHEMA_KEY, getProjection(avroSchema, columns)
+            .toString());
+      }
+
+      ParquetInputSplit split =
+          new ParquetInputSplit(path, 0, fs.getFileStatus(path).getLen(),
+              new String[0], blocks, requestedSchema.toString(),
+              fileSchema.toString(), metadata, new HashMap<String, String>());
+      ParquetRecordReader<GenericRecord> recordReader =
+          new ParquetRecordReader<GenericRecord>(
+              new AvroReadSupport<GenericRecord>());
+      recordReader.initialize(split, new TaskAttemptContext(conf,
+          new TaskAttemptID()));
+      parquetReader = recordReader;
 
       // Initialize JsonGenerator.
       json =
@@ -110,13 +216,15 @@ public class ParquetFileViewer extends HdfsFileViewer {
       DatumWriter<GenericRecord> avroWriter = null;
       Encoder encoder = null;
 
-      long endTime = System.currentTimeMillis() + STOP_TIME;
-      int line = 1;
-      while (line <= endLine && System.currentTimeMillis() <= endTime) {
-        GenericRecord record = parquetReader.read();
-        if (record == null) {
+      while (line <= endLine && !budget.isExhausted()) {
+        if (!parquetReader.nextKeyValue()) {
           break;
         }
+        if (line < startLine) {
+          ++line;
+          continue;
+        }
+        GenericRecord record = parquetReader.getCurrentValue();
 
         if (avroWriter == null) {
           Schema schema = record.getSchema();
@@ -124,12 +232,10 @@ public class ParquetFileViewer extends HdfsFileViewer {
           encoder = EncoderFactory.get().jsonEncoder(schema, json);
         }
 
-        if (line >= startLine) {
-          String recordStr = "\n\nRecord " + line + ":\n";
-          outputStream.write(recordStr.getBytes("UTF-8"));
-          avroWriter.write(record, encoder);
-          encoder.flush();
-        }
+        String recordStr = "\n\nRecord " + line + ":\n";
+        outputStream.write(recordStr.getBytes("UTF-8"));
+        avroWriter.write(record, encoder);
+        encoder.flush();
         ++line;
       }
     } catch (IOException e) {
@@ -143,28 +249,125 @@ public class ParquetFileViewer extends HdfsFileViewer {
       if (json != null) {
         json.close();
       }
+      if (parquetReader != null) {
+        parquetReader.close();
+      }
+    }
+  }
+
+  /**
+   * Returns the top level fields of the schema that are in columns, in the
+   * order of the file.
+   */
+  private static MessageType getProjection(MessageType schema,
+      List<String> columns) {
+    List<Type> fields = new ArrayList<Type>();
+    for (Type field : schema.getFields()) {
+      if (columns.contains(field.getName())) {
+        fields.add(field);
+      }
+    }
+    return new MessageType(schema.getName(), fields);
+  }
+
+  private static Schema getProjection(Schema schema, List<String> columns) {
+    List<Schema.Field> fields = new ArrayList<Schema.Field>();
+    for (Schema.Field field : schema.getFields()) {
+      if (columns.contains(field.name())) {
+        fields.add(new Schema.Field(field.name(), field.schema(), field.doc(),
+            field.defaultValue()));
+      }
+    }
+    Schema projection =
+        Schema.createRecord(schema.getName(), schema.getDoc(),
+            schema.getNamespace(), schema.isError());
+    projection.setFields(fields);
+    return projection;
+  }
+
+  @Override
+  public boolean scanRecords(FileSystem fs, Path path, RecordVisitor visitor)
+      throws IOException {
+    AvroParquetReader<GenericRecord> parquetReader =
+        new AvroParquetReader<GenericRecord>(fs.getConf(), path);
+    try {
+      long line = 1;
+      GenericRecord record;
+      while ((record = parquetReader.read()) != null) {
+        if (!visitor.visit(line++, record.toString())) {
+          break;
+        }
+      }
+    } finally {
       parquetReader.close();
     }
+    return true;
   }
 
+  /**
+   * Returns the Parquet schema from the footer, so no record is read.
+   */
   @Override
   public String getSchema(FileSystem fs, Path path) {
-    String schema = null;
     try {
-      AvroParquetReader<GenericRecord> parquetReader =
-          new AvroParquetReader<GenericRecord>(path);
-      GenericRecord record = parquetReader.read();
-      if (record == null) {
-        return null;
-      }
-      Schema avroSchema = record.getSchema();
-      AvroSchemaConverter converter = new AvroSchemaConverter();
-      schema = converter.convert(avroSchema).toString();
+      return getFooter(fs, path).getFileMetaData().getSchema().toString();
     } catch (IOException e) {
       logger.warn("Cannot get schema for file: " + path.toUri().getPath());
       return null;
     }
+  }
+
+  /**
+   * Sums the value counts and sizes of the column chunks of every row group
+   * in the footer. The footers written by this version of Parquet carry no
+   * null counts, minimums or maximums, so those are unknown.
+   */
+  @Override
+  public FileStats getStats(FileSystem fs, Path path) throws IOException {
+    ParquetMetadata footer = getFooter(fs, path);
+    Map<String, long[]> sums = new LinkedHashMap<String, long[]>();
+    Map<String, String> types = new HashMap<String, String>();
+    for (ColumnDescriptor column : footer.getFileMetaData().getSchema()
+        .getColumns()) {
+      String name = columnName(column.getPath());
+      sums.put(name, new long[3]);
+      types.put(name, column.getType().toString().toLowerCase());
+    }
 
-    return schema;
+    long rowCount = 0;
+    for (BlockMetaData block : footer.getBlocks()) {
+      rowCount += block.getRowCount();
+      for (ColumnChunkMetaData chunk : block.getColumns()) {
+        String name = columnName(chunk.getPath().toArray());
+        long[] sum = sums.get(name);
+        if (sum == null) {
+          sum = new long[3];
+          sums.put(name, sum);
+          types.put(name, chunk.getType().toString().toLowerCase());
+        }
+        sum[0] += chunk.getValueCount();
+        sum[1] += chunk.getTotalSize();
+        sum[2] += chunk.getTotalUncompressedSize();
+      }
+    }
+
+    List<FileStats.Column> columns = new ArrayList<FileStats.Column>();
+    for (Map.Entry<String, long[]> entry : sums.entrySet()) {
+      long[] sum = entry.getValue();
+      columns.add(new FileStats.Column(entry.getKey(), types.get(entry
+          .getKey()), sum[0], -1, null, null, sum[1], sum[2]));
+    }
+    return new FileStats(rowCount, columns);
+  }
+
+  private static String columnName(String[] path) {
+    StringBuilder name = new StringBuilder();
+    for (String part : path) {
+      if (name.length() > 0) {
+        name.append('.');
+      }
+      name.append(part);
+    }
+    return name.toString();
   }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sparse index from record numbers to the byte offset at which the record
+ * starts. Record numbers start from 1, and the index always knows that record
+ * 1 starts at offset 0.
+ *
+ * The index may be filled in concurrently by a background builder and by
+ * viewers that pass checkpoints while reading, so entries can be added in any
+ * order. Lookups return the closest checkpoint at or before a record, which is
+ * always safe to seek to even while the index is still incomplete.
+ */
+public class RecordOffsetIndex {
+  private static final int INITIAL_CAPACITY = 64;
+
+  private long[] records = new long[INITIAL_CAPACITY];
+  private long[] offsets = new long[INITIAL_CAPACITY];
+  private int size;
+
+  private volatile boolean complete = false;
+  private final AtomicBoolean building = new AtomicBoolean(false);
+
+  public RecordOffsetIndex() {
+    records[0] = 1;
+    offsets[0] = 0;
+    size = 1;
+  }
+
+  /**
+   * A single checkpoint of the index.
+   */
+  public static final class Entry {
+    private final long record;
+    private final long offset;
+
+    public Entry(long record, long offset) {
+      this.record = record;
+      this.offset = offset;
+    }
+
+    public long getRecord() {
+      return record;
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+  }
+
+  /**
+   * Records that the given record starts at the given byte offset. Adding a
+   * checkpoint that is already known is a no-op.
+   */
+  public synchronized void add(long record, long offset) {
+    int pos = Arrays.binarySearch(records, 0, size, record);
+    if (pos >= 0) {
+      return;
+    }
+
+    int insertAt = -(pos + 1);
+    if (size == records.length) {
+      records = Arrays.copyOf(records, size * 2);
+      offsets = Arrays.copyOf(offsets, size * 2);
+    }
+    System.arraycopy(records, insertAt, records, insertAt + 1, size - insertAt);
+    System.arraycopy(offsets, insertAt, offsets, insertAt + 1, size - insertAt);
+    records[insertAt] = record;
+    offsets[insertAt] = offset;
+    size++;
+  }
+
+  /**
+   * Returns the checkpoint with the greatest record number that is not greater
+   * than the given record.
+   */
+  public synchronized Entry floor(long record) {
+    int pos = Arrays.binarySearch(records, 0, size, record);
+    if (pos < 0) {
+      pos = Math.max(0, -(pos + 1) - 1);
+    }
+    return new Entry(records[pos], offsets[pos]);
+  }
+
+  /**
+   * Returns the checkpoint with the greatest record number in the index.
+   */
+  public synchronized Entry last() {
+    return new Entry(records[size - 1], offsets[size - 1]);
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  public boolean isComplete() {
+    return complete;
+  }
+
+  public void markComplete() {
+    complete = true;
+  }
+
+  /**
+   * Claims the right to build this index in the background. Returns false if
+   * the index is already complete or another builder is running.
+   */
+  public boolean tryStartBuild() {
+    return !complete && building.compareAndSet(false, true);
+  }
+
+  public void finishBuild() {
+    building.set(false);
+  }
+
+  /**
+   * Writes the checkpoints of the index, and whether it is complete.
+   */
+  public synchronized void write(DataOutput out) throws IOException {
+    out.writeBoolean(complete);
+    out.writeInt(size);
+    for (int i = 0; i < size; i++) {
+      out.writeLong(records[i]);
+      out.writeLong(offsets[i]);
+    }
+  }
+
+  /**
+   * Reads an index written by {@link #write(DataOutput)}.
+   */
+  public static RecordOffsetIndex read(DataInput in) throws IOException {
+    RecordOffsetIndex index = new RecordOffsetIndex();
+    boolean complete = in.readBoolean();
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      long record = in.readLong();
+      long offset = in.readLong();
+      index.add(record, offset);
+    }
+    if (complete) {
+      index.markComplete();
+    }
+    return index;
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Bounded, least recently used cache of {@link RecordOffsetIndex} instances
+ * keyed by file version.
+ *
+ * If a directory is given, indexes are also saved there so that they survive
+ * eviction and restarts. One file is kept per HDFS path; saving the index of a
+ * new version of a file removes the index of the previous one.
+ */
+public class RecordOffsetIndexCache {
+  private static Logger logger = Logger.getLogger(RecordOffsetIndexCache.class);
+
+  private static final int FILE_VERSION = 1;
+  private static final String FILE_SUFFIX = ".idx";
+
+  private final Map<HdfsFileKey, RecordOffsetIndex> indexes;
+  private final File directory;
+
+  public RecordOffsetIndexCache(int maxEntries) {
+    this(maxEntries, null);
+  }
+
+  /**
+   * @param directory where indexes are saved, or null to only keep them in
+   *          memory
+   */
+  public RecordOffsetIndexCache(final int maxEntries, File directory) {
+    this.directory = directory;
+    indexes =
+        new LinkedHashMap<HdfsFileKey, RecordOffsetIndex>(16, 0.75f, true) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected boolean removeEldestEntry(
+              Map.Entry<HdfsFileKey, RecordOffsetIndex> eldest) {
+            return size() > maxEntries;
+          }
+        };
+  }
+
+  /**
+   * Returns the index for the given file, loading it from the index directory
+   * or creating an empty one if the file has not been seen before.
+   */
+  public RecordOffsetIndex getOrCreate(HdfsFileKey key) {
+    synchronized (this) {
+      RecordOffsetIndex index = indexes.get(key);
+      if (index != null) {
+        return index;
+      }
+    }
+
+    RecordOffsetIndex loaded = load(key);
+    synchronized (this) {
+      RecordOffsetIndex index = indexes.get(key);
+      if (index == null) {
+        index = loaded != null ? loaded : new RecordOffsetIndex();
+        indexes.put(key, index);
+      }
+      return index;
+    }
+  }
+
+  public synchronized RecordOffsetIndex get(HdfsFileKey key) {
+    return indexes.get(key);
+  }
+
+  /**
+   * Saves the index to the index directory, if there is one. Failures are
+   * logged and otherwise ignored, since the index can always be rebuilt.
+   */
+  public void save(HdfsFileKey key, RecordOffsetIndex index) {
+    if (directory == null) {
+      return;
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      logger.warn("Cannot create index directory " + directory);
+      return;
+    }
+
+    File file = getFile(key);
+    File tmp = null;
+    try {
+      // Write to a temporary file first so that readers never see a partially
+      // written index.
+      tmp = File.createTempFile(file.getName(), ".tmp", directory);
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+              tmp)));
+      try {
+        out.writeInt(FILE_VERSION);
+        out.writeUTF(key.getPath());
+        out.writeLong(key.getModificationTime());
+        out.writeLong(key.getLength());
+        index.write(out);
+      } finally {
+        out.close();
+      }
+      if (!tmp.renameTo(file)) {
+        file.delete();
+        if (!tmp.renameTo(file)) {
+          throw new IOException("Cannot rename " + tmp + " to " + file);
+        }
+      }
+      tmp = null;
+      deleteOtherVersions(key, file);
+    } catch (IOException e) {
+      logger.warn("Failed to save index of " + key, e);
+    } finally {
+      if (tmp != null) {
+        tmp.delete();
+      }
+    }
+  }
+
+  private RecordOffsetIndex load(HdfsFileKey key) {
+    if (directory == null) {
+      return null;
+    }
+    File file = getFile(key);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    try {
+      DataInputStream in =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(
+              file)));
+      try {
+        // The file name only holds a hash of the path, so check the header.
+        if (in.readInt() != FILE_VERSION || !in.readUTF().equals(key.getPath())
+            || in.readLong() != key.getModificationTime()
+            || in.readLong() != key.getLength()) {
+          return null;
+        }
+        return RecordOffsetIndex.read(in);
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      logger.warn("Failed to load index of " + key, e);
+      return null;
+    }
+  }
+
+  private File getFile(HdfsFileKey key) {
+    return new File(directory, getPrefix(key)
+        + Long.toHexString(key.getModificationTime()) + "-"
+        + Long.toHexString(key.getLength()) + FILE_SUFFIX);
+  }
+
+  private static String getPrefix(HdfsFileKey key) {
+    return Integer.toHexString(key.getPath().hashCode()) + "-";
+  }
+
+  /**
+   * Removes the saved indexes of older versions of the same path. Paths with
+   * the same hash code share the prefix, so this may also remove the index of
+   * an unrelated file, which is only a lost optimization.
+   */
+  private void deleteOtherVersions(HdfsFileKey key, final File current) {
+    final String prefix = getPrefix(key);
+    File[] others = directory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith(prefix) && name.endsWith(FILE_SUFFIX)
+            && !name.equals(current.getName());
+      }
+    });
+    if (others != null) {
+      for (File other : others) {
+        other.delete();
+      }
+    }
+  }
+}
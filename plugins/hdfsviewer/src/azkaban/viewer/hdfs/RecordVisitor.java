@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.IOException;
+
+/**
+ * Receives the records of a file one at a time, rendered as text.
+ *
+ * @see HdfsFileViewer#scanRecords(org.apache.hadoop.fs.FileSystem,
+ *      org.apache.hadoop.fs.Path, RecordVisitor)
+ */
+public interface RecordVisitor {
+  /**
+   * @param record number of the record in the file, starting from 1
+   * @param text the record rendered as a single string
+   * @return false to stop reading the file
+   */
+  boolean visit(long record, String text) throws IOException;
+}
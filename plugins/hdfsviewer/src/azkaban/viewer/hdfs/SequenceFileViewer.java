@@ -16,64 +16,113 @@
 
 package azkaban.viewer.hdfs;
 
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Set;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.AccessControlException;
+import org.apache.hadoop.io.Writable;
 
 import azkaban.viewer.hdfs.AzkabanSequenceFileReader;
 
 public abstract class SequenceFileViewer extends HdfsFileViewer {
+  // Number of file versions whose sync index is kept in memory.
+  private static final int INDEX_CACHE_SIZE = 256;
+  // Minimum number of bytes between two checkpoints of the sync index. Files
+  // that are not block compressed have a sync mark every few KB.
+  private static final long INDEX_INTERVAL_BYTES = 64 * 1024;
+
+  // Maps records that follow a sync mark to the offset of the mark, so later
+  // pages can seek close to their first record.
+  private final RecordOffsetIndexCache indexCache;
+
+  protected SequenceFileViewer() {
+    this(null);
+  }
+
+  /**
+   * @param indexDir where sync indexes are saved, or null to only keep them in
+   *          memory
+   */
+  protected SequenceFileViewer(File indexDir) {
+    indexCache = new RecordOffsetIndexCache(INDEX_CACHE_SIZE, indexDir);
+  }
 
   protected abstract Set<Capability> getCapabilities(
       AzkabanSequenceFileReader.Reader reader);
 
+  /**
+   * Displays records startLine to endLine. The reader is positioned at
+   * startLine when this is called.
+   */
   protected abstract void displaySequenceFile(
       AzkabanSequenceFileReader.Reader reader, PrintWriter output,
       int startLine, int endLine) throws IOException;
 
   @Override
+  public FileFormat getFormat() {
+    return FileFormat.SEQUENCE_FILE;
+  }
+
+  /**
+   * Reads the header of the file, with its key and value classes and
+   * metadata, once per file version and viewer.
+   */
+  @Override
   public Set<Capability> getCapabilities(FileSystem fs, Path path)
       throws AccessControlException {
-    Set<Capability> result = EnumSet.noneOf(Capability.class);
-    AzkabanSequenceFileReader.Reader reader = null;
     try {
-      reader =
-          new AzkabanSequenceFileReader.Reader(fs, path, new Configuration());
-      result = getCapabilities(reader);
+      return getMetadataCache().get(fs, path,
+          "sequencefile.capabilities." + getName(),
+          new FileMetadataCache.Loader<Set<Capability>>() {
+            @Override
+            public Set<Capability> load(FileSystem fs, FileStatus status)
+                throws IOException {
+              AzkabanSequenceFileReader.Reader reader =
+                  new AzkabanSequenceFileReader.Reader(fs, status.getPath(),
+                      new Configuration());
+              try {
+                return Collections.unmodifiableSet(getCapabilities(reader));
+              } finally {
+                reader.close();
+              }
+            }
+          });
     } catch (AccessControlException e) {
       throw e;
     } catch (IOException e) {
       return EnumSet.noneOf(Capability.class);
-    } finally {
-      if (reader != null) {
-        try {
-          reader.close();
-        } catch (IOException e) {
-          e.printStackTrace();
-        }
-      }
     }
-
-    return result;
   }
 
   @Override
   public void displayFile(FileSystem fs, Path file, OutputStream outputStream,
       int startLine, int endLine) throws IOException {
 
-    AzkabanSequenceFileReader.Reader reader = null;
+    IndexingReader reader = null;
     PrintWriter writer = new PrintWriter(outputStream);
     try {
-      reader =
-          new AzkabanSequenceFileReader.Reader(fs, file, new Configuration());
-      displaySequenceFile(reader, writer, startLine, endLine);
+      FileStatus status = fs.getFileStatus(file);
+      HdfsFileKey key = HdfsFileKey.of(status);
+      RecordOffsetIndex index = indexCache.getOrCreate(key);
+      int indexSize = index.size();
+
+      reader = new IndexingReader(fs, file, new Configuration(), index);
+      if (reader.skipTo(startLine)) {
+        displaySequenceFile(reader, writer, startLine, endLine);
+      }
+
+      if (index.size() != indexSize) {
+        indexCache.save(key, index);
+      }
     } catch (IOException e) {
       writer.write("Error opening sequence file " + e);
       throw e;
@@ -83,4 +132,75 @@ public abstract class SequenceFileViewer extends HdfsFileViewer {
       }
     }
   }
+
+  /**
+   * Reader that counts records and adds the records that follow a sync mark
+   * to the sync index as it goes. Only the positions of sync marks are valid
+   * seek targets in block compressed files, which is why the index is not
+   * simply built from record positions.
+   */
+  private static class IndexingReader extends AzkabanSequenceFileReader.Reader {
+    private final RecordOffsetIndex index;
+    // Number of the record returned by the next call to next.
+    private long nextRecord = 1;
+    private long lastCheckpoint = 0;
+
+    private IndexingReader(FileSystem fs, Path file, Configuration conf,
+        RecordOffsetIndex index) throws IOException {
+      super(fs, file, conf);
+      this.index = index;
+    }
+
+    /**
+     * Positions the reader at the given record, seeking to the closest known
+     * sync mark before it first. Returns false if the file has fewer records.
+     */
+    private boolean skipTo(long record) throws IOException {
+      RecordOffsetIndex.Entry checkpoint = index.floor(record);
+      // Record 1 is where the reader already is, after the header.
+      if (checkpoint.getRecord() > nextRecord) {
+        seek(checkpoint.getOffset());
+        nextRecord = checkpoint.getRecord();
+        lastCheckpoint = checkpoint.getOffset();
+      }
+
+      Object key = null;
+      while (nextRecord < record) {
+        key = next(key);
+        if (key == null) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public synchronized boolean next(Writable key) throws IOException {
+      boolean more = super.next(key);
+      if (more) {
+        recordRead();
+      }
+      return more;
+    }
+
+    @Override
+    public synchronized Object next(Object key) throws IOException {
+      Object result = super.next(key);
+      if (result != null) {
+        recordRead();
+      }
+      return result;
+    }
+
+    private void recordRead() {
+      if (syncSeen()) {
+        long position = getSyncPosition();
+        if (position - lastCheckpoint >= INDEX_INTERVAL_BYTES) {
+          index.add(nextRecord, position);
+          lastCheckpoint = position;
+        }
+      }
+      nextRecord++;
+    }
+  }
 }
@@ -16,19 +16,30 @@
 
 package azkaban.viewer.hdfs;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.AccessControlException;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.util.LineReader;
 import org.apache.log4j.Logger;
 
 public class TextFileViewer extends HdfsFileViewer {
@@ -38,7 +49,39 @@ public class TextFileViewer extends HdfsFileViewer {
 
   private static final String VIEWER_NAME = "Text";
 
+  // Lines between two checkpoints of the line index.
+  private static final int DEFAULT_INDEX_INTERVAL = 65536;
+  // Number of file versions whose line index is kept in memory.
+  private static final int INDEX_CACHE_SIZE = 256;
+  private static final int INDEX_BUILDER_THREADS = 2;
+
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+  // only display the first 1M chars by default. it is used to prevent
+  // showing/downloading gb of data
+  private static final long DEFAULT_MAX_BYTES = 1000000;
+  private static final int INDEX_BUFFER_SIZE = 1024 * 1024;
+
+  private final int indexInterval;
+  private volatile CompressionCodecFactory codecFactory;
+  private volatile FileSystemLender fileSystemLender;
+  private final RecordOffsetIndexCache indexCache =
+      new RecordOffsetIndexCache(INDEX_CACHE_SIZE);
+  private final ExecutorService indexBuilder = Executors.newFixedThreadPool(
+      INDEX_BUILDER_THREADS, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "hdfs-viewer-text-indexer");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
   public TextFileViewer() {
+    this(DEFAULT_INDEX_INTERVAL);
+  }
+
+  TextFileViewer(int indexInterval) {
+    this.indexInterval = indexInterval;
     acceptedSuffix.add(".txt");
     acceptedSuffix.add(".csv");
     acceptedSuffix.add(".props");
@@ -48,6 +91,15 @@ public class TextFileViewer extends HdfsFileViewer {
     acceptedSuffix.add(".log");
   }
 
+  /**
+   * Sets where the line index builder gets its own reference to the file
+   * system of a request, which the request releases when it ends. Without a
+   * lender the file system must stay open for as long as the viewer is used.
+   */
+  public void setFileSystemLender(FileSystemLender fileSystemLender) {
+    this.fileSystemLender = fileSystemLender;
+  }
+
   @Override
   public String getName() {
     return VIEWER_NAME;
@@ -61,43 +113,281 @@ public class TextFileViewer extends HdfsFileViewer {
 
   public void displayFile(FileSystem fs, Path path, OutputStream outputStream,
       int startLine, int endLine) throws IOException {
+    displayFile(fs, path, outputStream, startLine, endLine, null,
+        newDefaultBudget());
+  }
+
+  @Override
+  protected ViewBudget newDefaultBudget() {
+    return new ViewBudget(Long.MAX_VALUE, DEFAULT_MAX_BYTES, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Text files are displayed up to endLine exclusive.
+   */
+  @Override
+  public int getEndLine(int lastLine) {
+    return lastLine + 1;
+  }
+
+  /**
+   * Displays the lines [startLine, endLine).
+   */
+  @Override
+  public void displayFile(FileSystem fs, Path path, OutputStream outputStream,
+      int startLine, int endLine, List<String> columns, ViewBudget budget)
+      throws IOException {
+    outputStream = budget.track(outputStream);
+    endLine = budget.lastRecord(startLine, endLine - 1) + 1;
+
+    CompressionCodec codec = getCodec(fs, path);
+    if (codec != null) {
+      displayCompressedFile(fs, path, codec, outputStream, startLine, endLine,
+          budget);
+      return;
+    }
 
     if (logger.isDebugEnabled())
       logger.debug("read in uncompressed text file");
 
-    InputStream inputStream = null;
-    BufferedReader reader = null;
+    FileStatus status = fs.getFileStatus(path);
+    RecordOffsetIndex index =
+        indexCache.getOrCreate(HdfsFileKey.of(status));
+    buildIndexInBackground(fs, status, index);
+
+    FSDataInputStream inputStream = null;
+    LineReader reader = null;
     try {
+      // jump to the closest known line before startLine instead of reading
+      // the file from the beginning
+      RecordOffsetIndex.Entry checkpoint = index.floor(startLine);
       inputStream = fs.open(path);
-      reader = new BufferedReader(new InputStreamReader(inputStream));
-      PrintWriter output = new PrintWriter(outputStream);
-      for (int i = 1; i < startLine; i++)
-        reader.readLine();
-
-      // only display the first 1M chars. it is used to prevent
-      // showing/downloading gb of data
-      final int bufferLimit = 1000000;
-
-      int bufferSize = 0;
-      for (int i = startLine; i < endLine; i++) {
-        String line = reader.readLine();
-        if (line == null)
-          break;
+      inputStream.seek(checkpoint.getOffset());
+      reader = new LineReader(inputStream, READ_BUFFER_SIZE);
 
-        // bread if reach the buffer limit
-        bufferSize += line.length();
-        if (bufferSize >= bufferLimit)
+      long offset = checkpoint.getOffset();
+      long lineno = checkpoint.getRecord();
+      Text line = new Text();
+      while (lineno < startLine && !budget.isCancelled()) {
+        int consumed = reader.readLine(line, 0);
+        if (consumed == 0) {
           break;
+        }
+        offset += consumed;
+        lineno++;
+        if ((lineno - 1) % indexInterval == 0) {
+          index.add(lineno, offset);
+        }
+      }
+
+      writeLines(reader, outputStream, startLine, endLine, budget);
+    } finally {
+      if (reader != null) {
+        reader.close();
+      } else if (inputStream != null) {
+        inputStream.close();
+      }
+    }
+  }
+
+  /**
+   * Compressed files cannot be seeked into, and no codec of this hadoop
+   * version is splittable, so the lines before startLine are decompressed and
+   * skipped without being copied out of the reader's buffer.
+   */
+  private void displayCompressedFile(FileSystem fs, Path path,
+      CompressionCodec codec, OutputStream outputStream, int startLine,
+      int endLine, ViewBudget budget) throws IOException {
+    if (logger.isDebugEnabled()) {
+      logger.debug("read in " + codec.getClass().getSimpleName()
+          + " compressed text file");
+    }
+
+    Decompressor decompressor = CodecPool.getDecompressor(codec);
+    LineReader reader = null;
+    try {
+      reader =
+          new LineReader(openCompressed(fs, path, codec, decompressor),
+              READ_BUFFER_SIZE);
+      Text line = new Text();
+      for (int i = 1; i < startLine; i++) {
+        if (reader.readLine(line, 0) == 0 || budget.isExhausted()) {
+          return;
+        }
+      }
+      writeLines(reader, outputStream, startLine, endLine, budget);
+    } finally {
+      if (reader != null) {
+        reader.close();
+      }
+      CodecPool.returnDecompressor(decompressor);
+    }
+  }
+
+  private void writeLines(LineReader reader, OutputStream outputStream,
+      int startLine, int endLine, ViewBudget budget) throws IOException {
+    PrintWriter output = new PrintWriter(outputStream);
+
+    Text line = new Text();
+    long bufferSize = budget.getBytesWritten();
+    for (int i = startLine; i < endLine && !budget.isExhausted(); i++) {
+      if (reader.readLine(line) == 0) {
+        break;
+      }
 
-        output.write(line);
-        output.write("\n");
+      // break if the line would go over the byte budget
+      bufferSize += line.getLength() + 1;
+      if (bufferSize > budget.getMaxBytes())
+        break;
+
+      output.write(line.toString());
+      output.write("\n");
+    }
+    output.flush();
+  }
+
+  @Override
+  public boolean scanRecords(FileSystem fs, Path path, RecordVisitor visitor)
+      throws IOException {
+    CompressionCodec codec = getCodec(fs, path);
+    Decompressor decompressor =
+        codec == null ? null : CodecPool.getDecompressor(codec);
+    LineReader reader = null;
+    try {
+      InputStream inputStream =
+          codec == null ? fs.open(path) : openCompressed(fs, path, codec,
+              decompressor);
+      reader = new LineReader(inputStream, READ_BUFFER_SIZE);
+      Text line = new Text();
+      long lineno = 1;
+      while (reader.readLine(line) > 0) {
+        if (!visitor.visit(lineno++, line.toString())) {
+          break;
+        }
       }
-      output.flush();
     } finally {
       if (reader != null) {
         reader.close();
       }
-      if (inputStream != null) {
+      if (decompressor != null) {
+        CodecPool.returnDecompressor(decompressor);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the codec named by the suffix of the file, e.g. .gz or .bz2, or
+   * null if the file is not compressed.
+   */
+  private CompressionCodec getCodec(FileSystem fs, Path path) {
+    CompressionCodecFactory factory = codecFactory;
+    if (factory == null) {
+      // the codecs come from io.compression.codecs, which is the same for
+      // every user's file system
+      factory = new CompressionCodecFactory(fs.getConf());
+      codecFactory = factory;
+    }
+    return factory.getCodec(path);
+  }
+
+  private static InputStream openCompressed(FileSystem fs, Path path,
+      CompressionCodec codec, Decompressor decompressor) throws IOException {
+    FSDataInputStream inputStream = fs.open(path);
+    try {
+      return codec.createInputStream(inputStream, decompressor);
+    } catch (IOException e) {
+      inputStream.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Starts filling in the line index of the file on the index builder pool,
+   * unless the index is already complete or being built. The builder resumes
+   * from the last checkpoint known so far, so an interrupted build is never
+   * restarted from the top of the file.
+   *
+   * The request releases its file system when it ends, so the builder holds
+   * its own reference from the lender, if there is one, until it is done.
+   */
+  private void buildIndexInBackground(final FileSystem fs,
+      final FileStatus status, final RecordOffsetIndex index) {
+    if (!index.tryStartBuild()) {
+      return;
+    }
+    final FileSystemLender lender = fileSystemLender;
+    if (lender != null && !lender.retain(fs)) {
+      index.finishBuild();
+      return;
+    }
+
+    try {
+      indexBuilder.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            buildIndex(fs, status, index);
+          } catch (IOException e) {
+            if (logger.isDebugEnabled()) {
+              logger.debug("Stopped indexing " + status.getPath() + " at line "
+                  + index.last().getRecord(), e);
+            }
+          } finally {
+            index.finishBuild();
+            if (lender != null) {
+              lender.release(fs);
+            }
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      index.finishBuild();
+      if (lender != null) {
+        lender.release(fs);
+      }
+    }
+  }
+
+  private void buildIndex(FileSystem fs, FileStatus status,
+      RecordOffsetIndex index) throws IOException {
+    RecordOffsetIndex.Entry checkpoint = index.last();
+    long blockSize = status.getBlockSize() > 0 ? status.getBlockSize() : 0;
+    long offset = checkpoint.getOffset();
+    long lineno = checkpoint.getRecord();
+    long nextBlockBoundary =
+        blockSize > 0 ? (offset / blockSize + 1) * blockSize : Long.MAX_VALUE;
+
+    FSDataInputStream inputStream = fs.open(status.getPath());
+    LineReader reader = null;
+    try {
+      inputStream.seek(offset);
+      reader = new LineReader(inputStream, INDEX_BUFFER_SIZE);
+      Text line = new Text();
+      while (true) {
+        int consumed = reader.readLine(line, 0);
+        if (consumed == 0) {
+          break;
+        }
+        offset += consumed;
+        lineno++;
+
+        // index every indexInterval lines and the first line starting in each
+        // hdfs block, so a seek never has to cross a block to reach a line
+        if ((lineno - 1) % indexInterval == 0) {
+          index.add(lineno, offset);
+        } else if (offset >= nextBlockBoundary) {
+          index.add(lineno, offset);
+        }
+        if (offset >= nextBlockBoundary) {
+          nextBlockBoundary = (offset / blockSize + 1) * blockSize;
+        }
+      }
+      index.markComplete();
+    } finally {
+      if (reader != null) {
+        reader.close();
+      } else {
         inputStream.close();
       }
     }
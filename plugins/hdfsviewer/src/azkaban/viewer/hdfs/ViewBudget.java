@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.viewer.hdfs;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the work a viewer does for one request: a deadline, a number of
+ * bytes written, a number of records and a cancellation flag.
+ *
+ * Viewers write through {@link #track(OutputStream)} and stop reading as
+ * soon as {@link #isExhausted()} returns true. A failed write, e.g. because
+ * the client went away, cancels the budget.
+ */
+public class ViewBudget {
+  private final long deadline;
+  private final long maxBytes;
+  private final int maxRecords;
+  private final AtomicLong bytesWritten = new AtomicLong();
+  private final AtomicBoolean cancelled = new AtomicBoolean();
+
+  /**
+   * @param timeoutMs time from now after which the budget is exhausted
+   * @param maxBytes bytes that may be written
+   * @param maxRecords records that may be displayed
+   */
+  public ViewBudget(long timeoutMs, long maxBytes, int maxRecords) {
+    long now = System.currentTimeMillis();
+    this.deadline =
+        timeoutMs >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + timeoutMs;
+    this.maxBytes = maxBytes;
+    this.maxRecords = maxRecords;
+  }
+
+  public long getDeadline() {
+    return deadline;
+  }
+
+  public long getRemainingMs() {
+    return Math.max(0, deadline - System.currentTimeMillis());
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public int getMaxRecords() {
+    return maxRecords;
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  public void cancel() {
+    cancelled.set(true);
+  }
+
+  public boolean isCancelled() {
+    return cancelled.get();
+  }
+
+  /**
+   * Returns true once the budget was cancelled, the deadline passed or the
+   * byte budget was used up.
+   */
+  public boolean isExhausted() {
+    return cancelled.get() || bytesWritten.get() >= maxBytes
+        || System.currentTimeMillis() > deadline;
+  }
+
+  /**
+   * Returns the last record to display of the range [startLine, endLine],
+   * given the record budget. Both bounds are inclusive, so viewers whose
+   * endLine is exclusive, like TextFileViewer, pass endLine - 1 and add one
+   * to the result.
+   */
+  public int lastRecord(int startLine, int endLine) {
+    return (int) Math.min(endLine, (long) startLine + maxRecords - 1);
+  }
+
+  /**
+   * Returns a stream that counts the bytes written to out against this
+   * budget. Streams already tracked by this budget are returned as is.
+   */
+  public OutputStream track(OutputStream out) {
+    if (out instanceof TrackingOutputStream
+        && ((TrackingOutputStream) out).getBudget() == this) {
+      return out;
+    }
+    return new TrackingOutputStream(out);
+  }
+
+  private class TrackingOutputStream extends FilterOutputStream {
+    private TrackingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    private ViewBudget getBudget() {
+      return ViewBudget.this;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      try {
+        out.write(b);
+      } catch (IOException e) {
+        cancel();
+        throw e;
+      }
+      bytesWritten.incrementAndGet();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      try {
+        out.write(b, off, len);
+      } catch (IOException e) {
+        cancel();
+        throw e;
+      }
+      bytesWritten.addAndGet(len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      try {
+        out.flush();
+      } catch (IOException e) {
+        cancel();
+        throw e;
+      }
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package azkaban.viewer.hdfs.utils;
 
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -27,6 +29,7 @@ import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspe
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.TimestampObjectInspector;
 import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.Text;
+import org.codehaus.jackson.JsonGenerator;
 
 /**
  * Adapted from @see org.apache.hadoop.hive.serde2.SerDeUtils to escape binary
@@ -232,4 +235,211 @@ public final class SerDeUtilsWrapper {
         }
     }
 
+    /**
+     * Writes an orc object as json directly to a generator, following the same
+     * traversal as {@link #getJSON(Object, ObjectInspector)} without building
+     * the intermediate string.
+     *
+     * @param g
+     * @param obj
+     * @param objIns
+     * @throws IOException
+     */
+    public static void writeJSON(JsonGenerator g, Object obj,
+        ObjectInspector objIns) throws IOException {
+        switch (objIns.getCategory()) {
+        case PRIMITIVE: {
+            PrimitiveObjectInspector poi = (PrimitiveObjectInspector) objIns;
+            if (obj == null) {
+                g.writeNull();
+            } else {
+                switch (poi.getPrimitiveCategory()) {
+                case BOOLEAN: {
+                    g.writeBoolean(((BooleanObjectInspector) poi).get(obj));
+                    break;
+                }
+                case BYTE: {
+                    g.writeNumber(((ByteObjectInspector) poi).get(obj));
+                    break;
+                }
+                case SHORT: {
+                    g.writeNumber(((ShortObjectInspector) poi).get(obj));
+                    break;
+                }
+                case INT: {
+                    g.writeNumber(((IntObjectInspector) poi).get(obj));
+                    break;
+                }
+                case LONG: {
+                    g.writeNumber(((LongObjectInspector) poi).get(obj));
+                    break;
+                }
+                case FLOAT: {
+                    g.writeNumber(((FloatObjectInspector) poi).get(obj));
+                    break;
+                }
+                case DOUBLE: {
+                    g.writeNumber(((DoubleObjectInspector) poi).get(obj));
+                    break;
+                }
+                case STRING: {
+                    g.writeString(((StringObjectInspector) poi)
+                        .getPrimitiveJavaObject(obj));
+                    break;
+                }
+                case VARCHAR: {
+                    g.writeString(((HiveVarcharObjectInspector) poi)
+                        .getPrimitiveJavaObject(obj).toString());
+                    break;
+                }
+                case DATE: {
+                    g.writeString(((DateObjectInspector) poi)
+                        .getPrimitiveWritableObject(obj).toString());
+                    break;
+                }
+                case TIMESTAMP: {
+                    g.writeString(((TimestampObjectInspector) poi)
+                        .getPrimitiveWritableObject(obj).toString());
+                    break;
+                }
+                case BINARY: {
+                    BytesWritable bw =
+                        ((BinaryObjectInspector) objIns)
+                            .getPrimitiveWritableObject(obj);
+                    Text txt = new Text();
+                    txt.set(bw.getBytes(), 0, bw.getLength());
+                    g.writeString(txt.toString());
+                    break;
+                }
+                case DECIMAL: {
+                    g.writeNumber(((HiveDecimalObjectInspector) objIns)
+                        .getPrimitiveJavaObject(obj).toString());
+                    break;
+                }
+                default:
+                    throw new RuntimeException("Unknown primitive type: "
+                        + poi.getPrimitiveCategory());
+                }
+            }
+            break;
+        }
+        case LIST: {
+            ListObjectInspector loi = (ListObjectInspector) objIns;
+            ObjectInspector listElementObjectInspector =
+                loi.getListElementObjectInspector();
+            List<?> olist = loi.getList(obj);
+            if (olist == null) {
+                g.writeNull();
+            } else {
+                g.writeStartArray();
+                for (int i = 0; i < olist.size(); i++) {
+                    writeJSON(g, olist.get(i), listElementObjectInspector);
+                }
+                g.writeEndArray();
+            }
+            break;
+        }
+        case MAP: {
+            MapObjectInspector moi = (MapObjectInspector) objIns;
+            ObjectInspector mapKeyObjectInspector =
+                moi.getMapKeyObjectInspector();
+            ObjectInspector mapValueObjectInspector =
+                moi.getMapValueObjectInspector();
+            Map<?, ?> omap = moi.getMap(obj);
+            if (omap == null) {
+                g.writeNull();
+            } else {
+                g.writeStartObject();
+                for (Object entry : omap.entrySet()) {
+                    Map.Entry<?, ?> e = (Map.Entry<?, ?>) entry;
+                    g.writeFieldName(getFieldName(e.getKey(),
+                        mapKeyObjectInspector));
+                    writeJSON(g, e.getValue(), mapValueObjectInspector);
+                }
+                g.writeEndObject();
+            }
+            break;
+        }
+        case STRUCT: {
+            StructObjectInspector soi = (StructObjectInspector) objIns;
+            List<? extends StructField> structFields =
+                soi.getAllStructFieldRefs();
+            if (obj == null) {
+                g.writeNull();
+            } else {
+                g.writeStartObject();
+                for (int i = 0; i < structFields.size(); i++) {
+                    g.writeFieldName(structFields.get(i).getFieldName());
+                    writeJSON(g,
+                        soi.getStructFieldData(obj, structFields.get(i)),
+                        structFields.get(i).getFieldObjectInspector());
+                }
+                g.writeEndObject();
+            }
+            break;
+        }
+        case UNION: {
+            UnionObjectInspector uoi = (UnionObjectInspector) objIns;
+            if (obj == null) {
+                g.writeNull();
+            } else {
+                g.writeStartObject();
+                g.writeFieldName(String.valueOf(uoi.getTag(obj)));
+                writeJSON(g, uoi.getField(obj), uoi.getObjectInspectors()
+                    .get(uoi.getTag(obj)));
+                g.writeEndObject();
+            }
+            break;
+        }
+        default:
+            throw new RuntimeException("Unknown type in ObjectInspector!");
+        }
+    }
+
+    /**
+     * Writes only the given fields of an orc struct as json. Fields of the
+     * struct that are not listed are skipped, so columns excluded from the
+     * read do not show up as nulls.
+     *
+     * @param g
+     * @param obj
+     * @param soi
+     * @param fieldNames
+     * @throws IOException
+     */
+    public static void writeJSON(JsonGenerator g, Object obj,
+        StructObjectInspector soi, Collection<String> fieldNames)
+        throws IOException {
+        if (obj == null) {
+            g.writeNull();
+            return;
+        }
+        g.writeStartObject();
+        for (StructField field : soi.getAllStructFieldRefs()) {
+            if (!fieldNames.contains(field.getFieldName())) {
+                continue;
+            }
+            g.writeFieldName(field.getFieldName());
+            writeJSON(g, soi.getStructFieldData(obj, field),
+                field.getFieldObjectInspector());
+        }
+        g.writeEndObject();
+    }
+
+    /**
+     * Json field names have to be strings, so map keys are written as their
+     * plain value when primitive and as their json otherwise.
+     */
+    private static String getFieldName(Object key, ObjectInspector objIns) {
+        if (key == null) {
+            return "null";
+        }
+        if (objIns.getCategory() == ObjectInspector.Category.PRIMITIVE) {
+            Object value =
+                ((PrimitiveObjectInspector) objIns).getPrimitiveJavaObject(key);
+            return String.valueOf(value);
+        }
+        return getJSON(key, objIns);
+    }
+
 }
@@ -0,0 +1,216 @@
+package azkaban.security.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Test;
+
+import azkaban.utils.Props;
+
+/**
+ * Test cases for lending, evicting and closing pooled file systems.
+ */
+public class FileSystemPoolTest {
+  private static final long FOREVER = 60 * 60 * 1000L;
+
+  private final List<CountingFileSystem> created =
+      new ArrayList<CountingFileSystem>();
+  private FileSystemPool pool;
+
+  private static class CountingFileSystem extends RawLocalFileSystem {
+    private int closeCount;
+
+    @Override
+    public void close() {
+      closeCount++;
+    }
+  }
+
+  private final HadoopSecurityManager securityManager =
+      new HadoopSecurityManager() {
+        @Override
+        public FileSystem getFSAsUser(String user) {
+          CountingFileSystem fs = new CountingFileSystem();
+          created.add(fs);
+          return fs;
+        }
+
+        @Override
+        public UserGroupInformation getProxiedUser(String toProxy) {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public UserGroupInformation getProxiedUser(Props prop) {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void prefetchToken(File tokenFile, String userToProxy,
+            Logger logger) {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void cancelTokens(File tokenFile, String userToProxy,
+            Logger logger) {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void prefetchToken(File tokenFile, Props props, Logger logger) {
+          throw new UnsupportedOperationException();
+        }
+      };
+
+  @After
+  public void tearDown() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  private static int closeCount(FileSystem fs) {
+    return ((CountingFileSystem) fs).closeCount;
+  }
+
+  private static void waitPast(long ms) throws InterruptedException {
+    Thread.sleep(ms + 20);
+  }
+
+  /* verify a user's handle is shared between borrowers and kept after release */
+  @Test
+  public void borrowReusesHandle() throws Exception {
+    pool = new FileSystemPool(securityManager, 10, FOREVER, FOREVER);
+    FileSystem first = pool.borrow("alice");
+    FileSystem second = pool.borrow("alice");
+    assertSame(first, second);
+    assertNotSame(first, pool.borrow("bob"));
+
+    pool.release(first);
+    pool.release(second);
+    assertSame(first, pool.borrow("alice"));
+    assertEquals(0, closeCount(first));
+    assertEquals(2, created.size());
+  }
+
+  /* verify an idle handle is closed and replaced on the next borrow */
+  @Test
+  public void idleHandleIsEvicted() throws Exception {
+    pool = new FileSystemPool(securityManager, 10, 1, FOREVER);
+    FileSystem idle = pool.borrow("alice");
+    pool.release(idle);
+    waitPast(1);
+
+    // borrowing for anyone sweeps idle entries
+    pool.borrow("bob");
+    assertEquals(1, closeCount(idle));
+    FileSystem fresh = pool.borrow("alice");
+    assertNotSame(idle, fresh);
+    assertEquals(0, closeCount(fresh));
+  }
+
+  /* verify a borrowed handle is never evicted for being idle */
+  @Test
+  public void borrowedHandleIsNotIdle() throws Exception {
+    pool = new FileSystemPool(securityManager, 10, 1, FOREVER);
+    FileSystem held = pool.borrow("alice");
+    waitPast(1);
+
+    pool.borrow("bob");
+    assertEquals(0, closeCount(held));
+    pool.release(held);
+  }
+
+  /* verify an expired handle is replaced but closed only once released */
+  @Test
+  public void expiredHandleIsClosedAfterRelease() throws Exception {
+    pool = new FileSystemPool(securityManager, 10, FOREVER, 1);
+    FileSystem old = pool.borrow("alice");
+    waitPast(1);
+
+    FileSystem fresh = pool.borrow("alice");
+    assertNotSame(old, fresh);
+    assertEquals(0, closeCount(old));
+
+    pool.release(old);
+    assertEquals(1, closeCount(old));
+    assertEquals(0, closeCount(fresh));
+  }
+
+  /* verify the least recently used handle is evicted beyond maxUsers */
+  @Test
+  public void leastRecentlyUsedIsEvicted() throws Exception {
+    pool = new FileSystemPool(securityManager, 1, FOREVER, FOREVER);
+    FileSystem alice = pool.borrow("alice");
+    pool.release(alice);
+    waitPast(1);
+
+    FileSystem bob = pool.borrow("bob");
+    assertEquals(1, closeCount(alice));
+    assertEquals(0, closeCount(bob));
+  }
+
+  /* verify invalidate replaces the handle and closes it after the last release */
+  @Test
+  public void invalidateForcesNewHandle() throws Exception {
+    pool = new FileSystemPool(securityManager, 10, FOREVER, FOREVER);
+    FileSystem broken = pool.borrow("alice");
+    FileSystem other = pool.borrow("alice");
+
+    pool.invalidate(broken);
+    assertEquals(0, closeCount(broken));
+    FileSystem fresh = pool.borrow("alice");
+    assertNotSame(broken, fresh);
+
+    pool.release(other);
+    assertEquals(1, closeCount(broken));
+
+    // releasing a closed handle again is ignored
+    pool.release(broken);
+    assertEquals(1, closeCount(broken));
+  }
+
+  /* verify a retained handle outlives its borrower */
+  @Test
+  public void retainKeepsHandleOpen() throws Exception {
+    pool = new FileSystemPool(securityManager, 10, FOREVER, FOREVER);
+    FileSystem fs = pool.borrow("alice");
+    assertTrue(pool.retain(fs));
+
+    pool.invalidate(fs);
+    assertEquals(0, closeCount(fs));
+    pool.release(fs);
+    assertEquals(1, closeCount(fs));
+
+    assertFalse(pool.retain(fs));
+    assertFalse(pool.retain(new CountingFileSystem()));
+  }
+
+  /* verify shutdown closes idle handles and borrowed ones on release */
+  @Test
+  public void shutdownClosesHandles() throws Exception {
+    pool = new FileSystemPool(securityManager, 10, FOREVER, FOREVER);
+    FileSystem idle = pool.borrow("alice");
+    pool.release(idle);
+    FileSystem held = pool.borrow("bob");
+
+    pool.shutdown();
+    assertEquals(1, closeCount(idle));
+    assertEquals(0, closeCount(held));
+    pool.release(held);
+    assertEquals(1, closeCount(held));
+  }
+}
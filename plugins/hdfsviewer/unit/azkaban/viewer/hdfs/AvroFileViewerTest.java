@@ -0,0 +1,134 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for AvroFileViewer seeking through the block index.
+ */
+public class AvroFileViewerTest {
+  private static final int RECORDS = 5000;
+  private static final String SCHEMA = "{\"type\": \"record\", "
+      + "\"name\": \"Row\", \"fields\": ["
+      + "{\"name\": \"id\", \"type\": \"int\"}]}";
+
+  private FileSystem fs;
+  private File file;
+  private File indexDir;
+
+  @Before
+  public void setUp() throws IOException {
+    // Hadoop 1's BufferedFSInputStream can seek into a stale buffer after a
+    // read larger than the buffer, which HDFS streams do not use. Keep the
+    // buffer larger than the reads of the Avro decoder.
+    Configuration conf = new Configuration();
+    conf.setInt("io.file.buffer.size", 64 * 1024);
+    fs = new LocalFileSystem();
+    fs.initialize(fs.getWorkingDirectory().toUri(), conf);
+
+    indexDir = File.createTempFile("AvroFileViewerTest", "index");
+    indexDir.delete();
+    file = File.createTempFile("AvroFileViewerTest", ".avro");
+    Schema schema = new Schema.Parser().parse(SCHEMA);
+    DataFileWriter<GenericRecord> writer =
+        new DataFileWriter<GenericRecord>(new GenericDatumWriter<GenericRecord>(
+            schema));
+    // Small blocks so that the file has many of them.
+    writer.setSyncInterval(256);
+    writer.create(schema, file);
+    try {
+      for (int i = 1; i <= RECORDS; i++) {
+        GenericRecord record = new GenericData.Record(schema);
+        record.put("id", i);
+        writer.append(record);
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.close();
+    file.delete();
+    File[] indexes = indexDir.listFiles();
+    if (indexes != null) {
+      for (File index : indexes) {
+        index.delete();
+      }
+    }
+    indexDir.delete();
+  }
+
+  private String display(AvroFileViewer viewer, int startLine, int endLine)
+      throws IOException {
+    ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+    viewer.displayFile(fs, new Path(file.getAbsolutePath()), outStream,
+        startLine, endLine);
+    return new String(outStream.toByteArray(), "UTF-8");
+  }
+
+  @Test
+  public void firstPage() throws IOException {
+    String output = display(new AvroFileViewer(), 1, 2);
+    assertTrue(output.contains("Record 1:"));
+    assertTrue(output.contains("\"id\" : 1\n"));
+    assertTrue(output.contains("Record 2:"));
+    assertFalse(output.contains("Record 3:"));
+  }
+
+  @Test
+  public void seekToIndexedBlock() throws IOException {
+    AvroFileViewer viewer = new AvroFileViewer();
+    String sequential = display(viewer, 4000, 4003);
+    // The second read seeks to the block holding record 4000.
+    String seeked = display(viewer, 4000, 4003);
+    assertEquals(sequential, seeked);
+    assertTrue(seeked.contains("Record 4000:"));
+    assertTrue(seeked.contains("\"id\" : 4000\n"));
+    assertTrue(seeked.contains("\"id\" : 4003\n"));
+    assertFalse(seeked.contains("Record 3999:"));
+    assertFalse(seeked.contains("Record 4004:"));
+
+    // Earlier pages seek to earlier blocks.
+    String earlier = display(viewer, 10, 10);
+    assertTrue(earlier.contains("\"id\" : 10\n"));
+  }
+
+  @Test
+  public void indexIsPersisted() throws IOException {
+    String expected = display(new AvroFileViewer(indexDir), 3000, 3001);
+    assertEquals(1, indexDir.listFiles().length);
+
+    // A new viewer picks up the saved index.
+    String actual = display(new AvroFileViewer(indexDir), 3000, 3001);
+    assertEquals(expected, actual);
+    assertTrue(actual.contains("\"id\" : 3001\n"));
+  }
+
+  @Test
+  public void pageBeyondEnd() throws IOException {
+    AvroFileViewer viewer = new AvroFileViewer();
+    display(viewer, RECORDS, RECORDS);
+    String output = display(viewer, RECORDS + 1, RECORDS + 5);
+    assertFalse(output.contains("Record"));
+  }
+}
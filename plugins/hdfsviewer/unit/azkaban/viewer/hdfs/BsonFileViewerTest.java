@@ -0,0 +1,96 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.bson.BSON;
+import org.bson.BasicBSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for BsonFileViewer skipping to the requested records.
+ */
+public class BsonFileViewerTest {
+  private static final int RECORDS = 1000;
+
+  private BsonFileViewer viewer;
+  private FileSystem fs;
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    fs = new LocalFileSystem();
+    fs.initialize(fs.getWorkingDirectory().toUri(), new Configuration());
+    viewer = new BsonFileViewer();
+
+    file = File.createTempFile("BsonFileViewerTest", ".bson");
+    OutputStream out = new FileOutputStream(file);
+    try {
+      StringBuilder large = new StringBuilder();
+      for (int i = 0; i < 100000; i++) {
+        large.append('x');
+      }
+      for (int i = 1; i <= RECORDS; i++) {
+        BasicBSONObject record = new BasicBSONObject("id", i);
+        // every hundredth record is larger than the pooled buffer
+        record.put("name", i % 100 == 0 ? large.toString() : "name " + i);
+        out.write(BSON.encode(record));
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.close();
+    file.delete();
+  }
+
+  private String display(int startLine, int endLine) throws IOException {
+    ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+    viewer.displayFile(fs, new Path(file.getAbsolutePath()), outStream,
+        startLine, endLine);
+    return new String(outStream.toByteArray(), "UTF-8");
+  }
+
+  @Test
+  public void firstPage() throws IOException {
+    String output = display(1, 2);
+    assertTrue(output.contains("Record 1\n"));
+    assertTrue(output.contains("\"id\" : 1 "));
+    assertTrue(output.contains("Record 2\n"));
+    assertFalse(output.contains("Record 3\n"));
+  }
+
+  @Test
+  public void skipsToLaterRecords() throws IOException {
+    String output = display(799, 801);
+    assertFalse(output.contains("Record 798\n"));
+    assertTrue(output.contains("Record 799\n"));
+    assertTrue(output.contains("\"id\" : 799 "));
+    assertTrue(output.contains("\"id\" : 800 "));
+    assertTrue(output.contains("xxxxx"));
+    assertTrue(output.contains("\"id\" : 801 "));
+    assertFalse(output.contains("Record 802\n"));
+  }
+
+  @Test
+  public void pageBeyondEnd() throws IOException {
+    String output = display(RECORDS, RECORDS + 10);
+    assertTrue(output.contains("\"id\" : " + RECORDS + " "));
+    assertFalse(output.contains("Error"));
+  }
+}
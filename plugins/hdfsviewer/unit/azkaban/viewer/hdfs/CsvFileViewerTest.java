@@ -0,0 +1,157 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for CsvFileViewer inferring the layout of delimited files and
+ * paging through their rows.
+ */
+public class CsvFileViewerTest {
+  private static final int ROWS = 25000;
+
+  private CsvFileViewer viewer;
+  private FileSystem fs;
+  private List<File> files = new ArrayList<File>();
+
+  @Before
+  public void setUp() throws IOException {
+    fs = new LocalFileSystem();
+    fs.initialize(fs.getWorkingDirectory().toUri(), new Configuration());
+    viewer = new CsvFileViewer();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.close();
+    for (File file : files) {
+      file.delete();
+    }
+  }
+
+  private Path write(String suffix, String content) throws IOException {
+    File file = File.createTempFile("CsvFileViewerTest", suffix);
+    files.add(file);
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    return new Path(file.getAbsolutePath());
+  }
+
+  private Path writeLargeFile() throws IOException {
+    StringBuilder content = new StringBuilder("id,name,score,active\n");
+    for (int i = 1; i <= ROWS; i++) {
+      // every tenth name holds a quoted line break
+      String name = i % 10 == 0 ? "\"name\n" + i + "\"" : "name " + i;
+      content.append(i).append(',').append(name).append(',').append(i * 0.5)
+          .append(',').append(i % 2 == 0).append('\n');
+    }
+    return write(".csv", content.toString());
+  }
+
+  private JsonNode display(Path path, int startLine, int endLine,
+      List<String> columns) throws IOException {
+    ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+    viewer.displayFile(fs, path, outStream, startLine, endLine, columns);
+    return new ObjectMapper().readTree(outStream.toByteArray());
+  }
+
+  @Test
+  public void infersHeaderAndTypes() throws IOException {
+    Path path = writeLargeFile();
+    assertTrue(viewer.getCapabilities(fs, path).contains(Capability.SCHEMA));
+    JsonNode schema = new ObjectMapper().readTree(viewer.getSchema(fs, path));
+    assertEquals(",", schema.get("delimiter").getTextValue());
+    assertTrue(schema.get("header").getBooleanValue());
+    JsonNode columns = schema.get("columns");
+    assertEquals(4, columns.size());
+    assertEquals("id", columns.get(0).get("name").getTextValue());
+    assertEquals("long", columns.get(0).get("type").getTextValue());
+    assertEquals("string", columns.get(1).get("type").getTextValue());
+    assertEquals("double", columns.get(2).get("type").getTextValue());
+    assertEquals("boolean", columns.get(3).get("type").getTextValue());
+  }
+
+  @Test
+  public void pagesThroughRows() throws IOException {
+    Path path = writeLargeFile();
+    JsonNode page = display(path, 1, 2, null);
+    assertEquals(1, page.get("firstRow").getIntValue());
+    JsonNode rows = page.get("rows");
+    assertEquals(2, rows.size());
+    assertEquals(1, rows.get(0).get(0).getLongValue());
+    assertEquals("name 1", rows.get(0).get(1).getTextValue());
+    assertEquals(0.5, rows.get(0).get(2).getDoubleValue(), 0);
+    assertFalse(rows.get(0).get(3).getBooleanValue());
+
+    // far enough to pass index checkpoints, then again from the index
+    for (int i = 0; i < 2; i++) {
+      rows = display(path, 20000, 20001, null).get("rows");
+      assertEquals(2, rows.size());
+      assertEquals(20000, rows.get(0).get(0).getLongValue());
+      assertEquals("name\n20000", rows.get(0).get(1).getTextValue());
+      assertEquals(20001, rows.get(1).get(0).getLongValue());
+    }
+
+    rows = display(path, ROWS, ROWS + 10, null).get("rows");
+    assertEquals(1, rows.size());
+  }
+
+  @Test
+  public void projectsColumns() throws IOException {
+    Path path = writeLargeFile();
+    JsonNode page = display(path, 5, 5, Arrays.asList("active", "id"));
+    assertEquals("active", page.get("columns").get(0).get("name")
+        .getTextValue());
+    JsonNode row = page.get("rows").get(0);
+    assertEquals(2, row.size());
+    assertFalse(row.get(0).getBooleanValue());
+    assertEquals(5, row.get(1).getLongValue());
+  }
+
+  @Test
+  public void detectsTabsWithoutHeader() throws IOException {
+    Path path = write(".tsv", "1\ta,b\t\n2\t\"c\td\"\t3.5\n3\te\t4\n");
+    JsonNode page = display(path, 1, 10, null);
+    JsonNode columns = page.get("columns");
+    assertEquals(3, columns.size());
+    assertEquals("col1", columns.get(0).get("name").getTextValue());
+    assertEquals("double", columns.get(2).get("type").getTextValue());
+    JsonNode rows = page.get("rows");
+    assertEquals(3, rows.size());
+    assertEquals("a,b", rows.get(0).get(1).getTextValue());
+    assertTrue(rows.get(0).get(2).isNull());
+    assertEquals("c\td", rows.get(1).get(1).getTextValue());
+    assertEquals(4.0, rows.get(2).get(2).getDoubleValue(), 0);
+  }
+
+  @Test
+  public void detectsSemicolons() {
+    byte[] sample = "a;b;c\n1;\"x;y\";3\n4;5;6\n".getBytes();
+    assertEquals(';',
+        CsvReader.detectDelimiter(sample, sample.length, false, ','));
+  }
+}
@@ -0,0 +1,93 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for listing the data files of a dataset and picking their
+ * viewers.
+ */
+public class DatasetFilesTest {
+  private PartFileDirectory parts;
+  private List<HdfsFileViewer> viewers;
+  private TextFileViewer textViewer;
+
+  @Before
+  public void setUp() throws IOException {
+    parts = new PartFileDirectory("DatasetFilesTest");
+    parts.write("part-00001", "b\n");
+    parts.write("part-00000", "a\n");
+    parts.write("part-00002", "");
+    parts.write("_SUCCESS", "");
+    parts.write("_logs", "history");
+    parts.write(".pig_schema", "{}");
+
+    textViewer = new TextFileViewer();
+    viewers = new ArrayList<HdfsFileViewer>();
+    viewers.add(new ParquetFileViewer());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    parts.delete();
+  }
+
+  private static List<String> names(List<FileStatus> files) {
+    List<String> names = new ArrayList<String>();
+    for (FileStatus file : files) {
+      names.add(file.getPath().getName());
+    }
+    return names;
+  }
+
+  /* verify only non empty data files are listed, in name order */
+  @Test
+  public void listsDataFiles() throws IOException {
+    List<FileStatus> files = new ArrayList<FileStatus>();
+    assertFalse(DatasetFiles.listFiles(parts.fs, parts.getPath(), 10, files));
+    assertEquals("[part-00000, part-00001]", names(files).toString());
+  }
+
+  /* verify listing stops at maxFiles and reports the rest */
+  @Test
+  public void listsAtMostMaxFiles() throws IOException {
+    List<FileStatus> files = new ArrayList<FileStatus>();
+    assertTrue(DatasetFiles.listFiles(parts.fs, parts.getPath(), 1, files));
+    assertEquals("[part-00000]", names(files).toString());
+
+    files.clear();
+    assertFalse(DatasetFiles.listFiles(parts.fs, parts.getPath(), 2, files));
+    assertEquals(2, files.size());
+  }
+
+  /* verify a file is listed as itself */
+  @Test
+  public void listsSingleFile() throws IOException {
+    List<FileStatus> files = new ArrayList<FileStatus>();
+    assertFalse(DatasetFiles.listFiles(parts.fs,
+        parts.getPath("_SUCCESS"), 10, files));
+    assertEquals("[_SUCCESS]", names(files).toString());
+  }
+
+  /* verify files in no known format fall back to the default viewer */
+  @Test
+  public void fallsBackToDefaultViewer() throws IOException {
+    FileViewerResolver resolver = new FileViewerResolver(viewers, 10);
+    assertSame(textViewer, new DatasetFiles(viewers, textViewer, resolver)
+        .getViewer(parts.fs, parts.getPath("part-00000")));
+    assertNull(new DatasetFiles(viewers, null, resolver).getViewer(parts.fs,
+        parts.getPath("part-00000")));
+  }
+}
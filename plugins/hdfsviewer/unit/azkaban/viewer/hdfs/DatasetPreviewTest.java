@@ -0,0 +1,124 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for previewing a directory of part files.
+ */
+public class DatasetPreviewTest {
+  private static final int PARTS = 5;
+
+  private PartFileDirectory parts;
+  private DatasetPreview preview;
+
+  @Before
+  public void setUp() throws IOException {
+    parts = new PartFileDirectory("DatasetPreviewTest");
+    for (int i = 0; i < PARTS; i++) {
+      parts.write(String.format("part-%05d", i), "part " + i + " line 1\n"
+          + "part " + i + " line 2\npart " + i + " line 3\n");
+    }
+    parts.write("_SUCCESS", "");
+    parts.write(".part-00000.crc", "checksum");
+
+    TextFileViewer textViewer = new TextFileViewer();
+    List<HdfsFileViewer> viewers = new ArrayList<HdfsFileViewer>();
+    viewers.add(textViewer);
+    preview =
+        new DatasetPreview(viewers, textViewer, new FileViewerResolver(
+            viewers, 10), parts.executor);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    parts.delete();
+  }
+
+  @Test
+  public void previewsDataFiles() throws IOException {
+    DatasetPreview.Result result =
+        preview.preview(parts.fs, parts.getPath(), null, 10, 2,
+            10000);
+    assertEquals(PARTS, result.getParts().size());
+    assertNull(result.getNextCursor());
+    for (int i = 0; i < PARTS; i++) {
+      DatasetPreview.Part part = result.getParts().get(i);
+      assertEquals(String.format("part-%05d", i), part.getPath().getName());
+      assertNull(part.getError());
+      assertEquals("part " + i + " line 1\npart " + i + " line 2\n",
+          part.getContent());
+    }
+  }
+
+  /* verify each part shows exactly the requested number of records */
+  @Test
+  public void previewsRequestedRecords() throws IOException {
+    Path path = parts.getPath();
+    DatasetPreview.Part part =
+        preview.preview(parts.fs, path, null, 10, 1, 10000).getParts().get(0);
+    assertEquals("part 0 line 1\n", part.getContent());
+
+    part = preview.preview(parts.fs, path, null, 10, 3, 10000).getParts().get(0);
+    assertEquals("part 0 line 1\npart 0 line 2\npart 0 line 3\n",
+        part.getContent());
+  }
+
+  /* verify files that do not fit in a full executor are reported busy */
+  @Test
+  public void busyExecutor() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = PartFileDirectory.newFullExecutor(release);
+    try {
+      List<HdfsFileViewer> viewers = new ArrayList<HdfsFileViewer>();
+      TextFileViewer textViewer = new TextFileViewer();
+      viewers.add(textViewer);
+      DatasetPreview busyPreview =
+          new DatasetPreview(viewers, textViewer, new FileViewerResolver(
+              viewers, 10), executor);
+
+      DatasetPreview.Result result =
+          busyPreview.preview(parts.fs, parts.getPath(), null, 10, 1, 10000);
+      assertEquals(PARTS, result.getParts().size());
+      for (DatasetPreview.Part part : result.getParts()) {
+        assertNull(part.getContent());
+        assertEquals("Preview is not available right now.", part.getError());
+      }
+    } finally {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void pagesThroughFiles() throws IOException {
+    Path path = parts.getPath();
+    List<String> names = new ArrayList<String>();
+    String cursor = null;
+    do {
+      DatasetPreview.Result result = preview.preview(parts.fs, path, cursor, 2, 1,
+          10000);
+      assertTrue(result.getParts().size() <= 2);
+      for (DatasetPreview.Part part : result.getParts()) {
+        names.add(part.getPath().getName());
+      }
+      cursor = result.getNextCursor();
+    } while (cursor != null);
+
+    assertEquals(PARTS, names.size());
+    assertEquals("part-00000", names.get(0));
+    assertEquals("part-00004", names.get(PARTS - 1));
+  }
+}
@@ -0,0 +1,174 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import parquet.avro.AvroParquetWriter;
+
+/**
+ * Test cases for combining the footer statistics of a directory of part
+ * files.
+ */
+public class DatasetStatsTest {
+  private static final int PARTS = 4;
+  private static final int RECORDS = 100;
+  private static final String SCHEMA = "{\"type\": \"record\", "
+      + "\"name\": \"Row\", \"fields\": ["
+      + "{\"name\": \"id\", \"type\": \"long\"}, "
+      + "{\"name\": \"name\", \"type\": \"string\"}]}";
+
+  private PartFileDirectory parts;
+  private DatasetStats datasetStats;
+
+  @Before
+  public void setUp() throws IOException {
+    parts = new PartFileDirectory("DatasetStatsTest");
+    Schema schema = new Schema.Parser().parse(SCHEMA);
+    for (int i = 0; i < PARTS; i++) {
+      AvroParquetWriter<GenericRecord> writer =
+          new AvroParquetWriter<GenericRecord>(parts.getPath(String.format(
+              "part-%05d.parquet", i)), schema);
+      try {
+        for (int j = 0; j < RECORDS; j++) {
+          GenericRecord record = new GenericData.Record(schema);
+          record.put("id", (long) (i * RECORDS + j));
+          record.put("name", "name " + j);
+          writer.write(record);
+        }
+      } finally {
+        writer.close();
+      }
+    }
+    parts.write("_SUCCESS", "");
+
+    List<HdfsFileViewer> viewers = new ArrayList<HdfsFileViewer>();
+    viewers.add(new ParquetFileViewer());
+    datasetStats =
+        new DatasetStats(viewers, new FileViewerResolver(viewers, 10),
+            parts.executor, 2);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    parts.delete();
+  }
+
+  @Test
+  public void combinesPartFiles() throws IOException {
+    DatasetStats.Result result =
+        datasetStats.compute(parts.fs, parts.getPath(), 10000);
+    assertTrue(result.isComplete());
+    assertTrue(result.getErrors().isEmpty());
+    assertEquals(0, result.getFilesSkipped());
+
+    FileStats stats = result.getStats();
+    assertEquals(PARTS, stats.getFileCount());
+    assertEquals(PARTS * RECORDS, stats.getRowCount());
+    assertEquals(2, stats.getColumns().size());
+    FileStats.Column id = stats.getColumns().get(0);
+    assertEquals("id", id.getName());
+    assertEquals("int64", id.getType());
+    assertEquals(PARTS * RECORDS, id.getValueCount());
+  }
+
+  @Test
+  public void singleFile() throws IOException {
+    DatasetStats.Result result =
+        datasetStats.compute(parts.fs, parts.getPath("part-00000.parquet"),
+            10000);
+    assertEquals(1, result.getStats().getFileCount());
+    assertEquals(RECORDS, result.getStats().getRowCount());
+  }
+
+  /* verify statistics are refused when the executor is full */
+  @Test
+  public void busyExecutor() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = PartFileDirectory.newFullExecutor(release);
+    try {
+      List<HdfsFileViewer> viewers = new ArrayList<HdfsFileViewer>();
+      viewers.add(new ParquetFileViewer());
+      DatasetStats busyStats =
+          new DatasetStats(viewers, new FileViewerResolver(viewers, 10),
+              executor, 2);
+      busyStats.compute(parts.fs, parts.getPath(), 10000);
+      fail("Expected IOException");
+    } catch (IOException e) {
+      assertEquals("Statistics are not available right now.", e.getMessage());
+    } finally {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void combinesMinMaxAndCounts() {
+    FileStats a =
+        new FileStats(10, Arrays.asList(new FileStats.Column("x", "long", 10,
+            0, 5L, 20L, 100, 200), new FileStats.Column("y", "string", 10, 2,
+            "b", "m", -1, -1)));
+    FileStats b =
+        new FileStats(5, Arrays.asList(new FileStats.Column("x", "long", 5, 1,
+            -3L, 7L, 50, 80)));
+    FileStats combined = a.combine(b);
+    assertEquals(15, combined.getRowCount());
+    assertEquals(2, combined.getFileCount());
+
+    FileStats.Column x = combined.getColumns().get(0);
+    assertEquals(15, x.getValueCount());
+    assertEquals(1, x.getNullCount());
+    assertEquals(-3L, x.getMin());
+    assertEquals(20L, x.getMax());
+    assertEquals(150, x.getCompressedSize());
+    assertEquals(280, x.getUncompressedSize());
+
+    // y is missing from b, so its null count is no longer known
+    FileStats.Column y = combined.getColumns().get(1);
+    assertEquals(-1, y.getNullCount());
+    assertEquals("b", y.getMin());
+    assertEquals(-1, y.getCompressedSize());
+  }
+
+  /* verify a file with no values does not wipe out the bounds of the rest */
+  @Test
+  public void combinesAllNullColumn() {
+    FileStats values =
+        new FileStats(10, Arrays.asList(new FileStats.Column("x", "long", 10,
+            0, 5L, 20L, -1, -1)));
+    FileStats nulls =
+        new FileStats(4, Arrays.asList(new FileStats.Column("x", "long", 0, 4,
+            null, null, -1, -1)));
+
+    FileStats.Column x = values.combine(nulls).getColumns().get(0);
+    assertEquals(5L, x.getMin());
+    assertEquals(20L, x.getMax());
+    assertEquals(4, x.getNullCount());
+    x = nulls.combine(values).getColumns().get(0);
+    assertEquals(5L, x.getMin());
+    assertEquals(20L, x.getMax());
+
+    // values with unknown bounds still make the bounds unknown
+    FileStats unknown =
+        new FileStats(3, Arrays.asList(new FileStats.Column("x", "long", 3, 0,
+            null, null, -1, -1)));
+    x = values.combine(unknown).getColumns().get(0);
+    assertNull(x.getMin());
+    assertNull(x.getMax());
+  }
+}
@@ -0,0 +1,163 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import azkaban.viewer.hdfs.DirectoryPager.Page;
+import azkaban.viewer.hdfs.DirectoryPager.SortKey;
+
+/**
+ * Test cases for paging through directory listings.
+ */
+public class DirectoryPagerTest {
+  private FileSystem fs;
+  private File dir;
+  private DirectoryPager pager;
+
+  @Before
+  public void setUp() throws IOException {
+    fs = new LocalFileSystem();
+    fs.initialize(fs.getWorkingDirectory().toUri(), new Configuration());
+
+    dir = File.createTempFile("DirectoryPagerTest", "");
+    dir.delete();
+    dir.mkdirs();
+    write("a1", 30);
+    write("a2", 10);
+    write("b1", 50);
+    write("b2", 20);
+    write("c1", 40);
+    pager = new DirectoryPager(fs, new Path(dir.getAbsolutePath()));
+  }
+
+  private void write(String name, int length) throws IOException {
+    OutputStream out = new FileOutputStream(new File(dir, name));
+    try {
+      out.write(new byte[length]);
+    } finally {
+      out.close();
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.delete(new Path(dir.getAbsolutePath()), true);
+    fs.close();
+  }
+
+  private static List<String> names(Page page) {
+    List<String> names = new ArrayList<String>();
+    for (FileStatus status : page.getEntries()) {
+      names.add(status.getPath().getName());
+    }
+    return names;
+  }
+
+  /* verify the cursor of each page by name leads to the next one */
+  @Test
+  public void pagesByName() throws IOException {
+    Page page = pager.list(null, 2, null, SortKey.NAME, false);
+    assertEquals(Arrays.asList("a1", "a2"), names(page));
+    assertEquals("a2", page.getNextCursor());
+
+    page = pager.list(page.getNextCursor(), 2, null, SortKey.NAME, false);
+    assertEquals(Arrays.asList("b1", "b2"), names(page));
+    assertEquals("b2", page.getNextCursor());
+
+    page = pager.list(page.getNextCursor(), 2, null, SortKey.NAME, false);
+    assertEquals(Arrays.asList("c1"), names(page));
+    assertNull(page.getNextCursor());
+  }
+
+  /* verify a last page that is exactly full has no cursor */
+  @Test
+  public void fullLastPageHasNoCursor() throws IOException {
+    Page page = pager.list(null, 5, null, SortKey.NAME, false);
+    assertEquals(5, page.getEntries().size());
+    assertNull(page.getNextCursor());
+
+    page = pager.list("b1", 3, null, SortKey.NAME, false);
+    assertEquals(Arrays.asList("b2", "c1"), names(page));
+    assertNull(page.getNextCursor());
+  }
+
+  /* verify paging stops at the end of the children matching the prefix */
+  @Test
+  public void pagesByPrefix() throws IOException {
+    write("b", 1);
+    Page page = pager.list(null, 2, "b", SortKey.NAME, false);
+    assertEquals(Arrays.asList("b", "b1"), names(page));
+    assertEquals("b1", page.getNextCursor());
+
+    page = pager.list(page.getNextCursor(), 2, "b", SortKey.NAME, false);
+    assertEquals(Arrays.asList("b2"), names(page));
+    assertNull(page.getNextCursor());
+  }
+
+  /* verify the cursor of each page by size leads to the next one */
+  @Test
+  public void pagesBySize() throws IOException {
+    Page page = pager.list(null, 2, null, SortKey.SIZE, true);
+    assertEquals(Arrays.asList("b1", "c1"), names(page));
+    assertEquals("2", page.getNextCursor());
+
+    page = pager.list(page.getNextCursor(), 2, null, SortKey.SIZE, true);
+    assertEquals(Arrays.asList("a1", "b2"), names(page));
+    assertEquals("4", page.getNextCursor());
+
+    page = pager.list(page.getNextCursor(), 2, null, SortKey.SIZE, true);
+    assertEquals(Arrays.asList("a2"), names(page));
+    assertNull(page.getNextCursor());
+  }
+
+  /* verify sorted listings refuse windows beyond the maximum */
+  @Test
+  public void rejectsLargeSortWindow() throws IOException {
+    try {
+      pager.list(String.valueOf(DirectoryPager.MAX_SORT_WINDOW), 1, null,
+          SortKey.MTIME, false);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      pager.list("abc", 1, null, SortKey.SIZE, false);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /* verify pages smaller than one entry are refused in every order */
+  @Test
+  public void rejectsEmptyPages() throws IOException {
+    for (SortKey sortKey : SortKey.values()) {
+      for (int limit : new int[] { 0, -1 }) {
+        try {
+          pager.list(null, limit, null, sortKey, false);
+          fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+          // expected
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for computing and caching the recursive usage of directories.
+ */
+public class DirectoryUsageTest {
+  private FileSystem fs;
+  private File dir;
+  private ExecutorService executor;
+  private final AtomicInteger borrowed = new AtomicInteger();
+
+  private final FileSystemLender lender =
+      new FileSystemLender() {
+        @Override
+        public FileSystem borrow(String user) {
+          borrowed.incrementAndGet();
+          return fs;
+        }
+
+        @Override
+        public boolean retain(FileSystem retained) {
+          borrowed.incrementAndGet();
+          return true;
+        }
+
+        @Override
+        public void release(FileSystem released) {
+          borrowed.decrementAndGet();
+        }
+      };
+
+  @Before
+  public void setUp() throws IOException {
+    fs = new LocalFileSystem();
+    fs.initialize(fs.getWorkingDirectory().toUri(), new Configuration());
+
+    dir = File.createTempFile("DirectoryUsageTest", "");
+    dir.delete();
+    dir.mkdirs();
+    // big/ holds 3 files of 1000 bytes in two directories, small/ one file
+    write("big/a/part-0", 1000);
+    write("big/a/part-1", 1000);
+    write("big/b/part-0", 1000);
+    write("small/part-0", 10);
+    write("top.txt", 100);
+    executor = Executors.newFixedThreadPool(2);
+  }
+
+  private void write(String name, int length) throws IOException {
+    File file = new File(dir, name);
+    file.getParentFile().mkdirs();
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(new byte[length]);
+    } finally {
+      out.close();
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    executor.shutdownNow();
+    fs.delete(new Path(dir.getAbsolutePath()), true);
+    fs.close();
+  }
+
+  @Test
+  public void breaksDownChildren() throws Exception {
+    DirectoryUsage usage =
+        new DirectoryUsage(lender, executor, 2, 2, 10, 60000);
+    DirectoryUsage.Result result =
+        usage.get("user", new Path(dir.getAbsolutePath()), 10000);
+    assertEquals(3110, result.getTotal().getLength());
+    assertEquals(5, result.getTotal().getFileCount());
+    // the directory itself, big, big/a, big/b and small
+    assertEquals(5, result.getTotal().getDirectoryCount());
+
+    assertEquals(3, result.getChildren().size());
+    DirectoryUsage.Usage big = result.getChildren().get(0);
+    assertEquals("big", big.getPath().getName());
+    assertEquals(3000, big.getLength());
+    assertEquals(3, big.getFileCount());
+    assertEquals(3, big.getDirectoryCount());
+    assertEquals("top.txt", result.getChildren().get(1).getPath().getName());
+    assertEquals("small", result.getChildren().get(2).getPath().getName());
+    assertEquals(0, borrowed.get());
+  }
+
+  @Test
+  public void cachesResults() throws Exception {
+    DirectoryUsage usage =
+        new DirectoryUsage(lender, executor, 2, 2, 10, 60000);
+    Path path = new Path(dir.getAbsolutePath());
+    DirectoryUsage.Result first = usage.get("user", path, 10000);
+    write("small/part-1", 10);
+    assertSame(first, usage.get("user", path, 10000));
+    // results are not shared between users
+    assertEquals(3120, usage.get("other", path, 10000).getTotal()
+        .getLength());
+  }
+
+  @Test
+  public void expiresResults() throws Exception {
+    DirectoryUsage usage = new DirectoryUsage(lender, executor, 2, 2, 10, 0);
+    Path path = new Path(dir.getAbsolutePath());
+    usage.get("user", path, 10000);
+    write("small/part-1", 10);
+    Thread.sleep(5);
+    assertEquals(3120, usage.get("user", path, 10000).getTotal().getLength());
+  }
+
+  @Test
+  public void limitsComputationsPerUser() throws Exception {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    ExecutorService single = Executors.newSingleThreadExecutor();
+    try {
+      single.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            blocked.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+      DirectoryUsage usage =
+          new DirectoryUsage(lender, single, 2, 1, 10, 60000);
+      Path big = new Path(new File(dir, "big").getAbsolutePath());
+      Path small = new Path(new File(dir, "small").getAbsolutePath());
+
+      // queued behind the blocked task, so not ready in time
+      assertNull(usage.get("user", big, 0));
+      try {
+        usage.get("user", small, 0);
+        fail("Expected the second computation to be refused");
+      } catch (RejectedExecutionException e) {
+      }
+      // other users are not limited by this user's computations
+      assertNull(usage.get("other", small, 0));
+
+      blocked.countDown();
+      DirectoryUsage.Result result = usage.get("user", big, 10000);
+      assertNotNull(result);
+      assertEquals(3000, result.getTotal().getLength());
+      assertEquals(10, usage.get("user", small, 10000).getTotal()
+          .getLength());
+    } finally {
+      single.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test cases for the Range and If-Range handling of raw downloads.
+ */
+public class FileDownloaderTest {
+  private static final long LENGTH = 1000;
+
+  private static void assertRange(long start, long end, String header) {
+    FileDownloader.Range range = FileDownloader.parseRange(header, LENGTH);
+    assertEquals(start, range.getStart());
+    assertEquals(end, range.getEnd());
+  }
+
+  @Test
+  public void byteRanges() {
+    assertRange(0, 499, "bytes=0-499");
+    assertRange(500, 999, "bytes=500-");
+    assertRange(900, 999, "bytes=-100");
+    assertRange(0, 999, "bytes=-5000");
+    assertRange(990, 999, "bytes=990-2000");
+  }
+
+  @Test
+  public void unsatisfiableRanges() {
+    assertSame(FileDownloader.UNSATISFIABLE,
+        FileDownloader.parseRange("bytes=1000-", LENGTH));
+    assertSame(FileDownloader.UNSATISFIABLE,
+        FileDownloader.parseRange("bytes=-0", LENGTH));
+  }
+
+  @Test
+  public void emptyFileRanges() {
+    assertSame(FileDownloader.UNSATISFIABLE,
+        FileDownloader.parseRange("bytes=-100", 0));
+    assertSame(FileDownloader.UNSATISFIABLE,
+        FileDownloader.parseRange("bytes=0-", 0));
+    assertSame(FileDownloader.UNSATISFIABLE,
+        FileDownloader.parseRange("bytes=0-0", 0));
+  }
+
+  @Test
+  public void ignoredRanges() {
+    assertNull(FileDownloader.parseRange("items=0-10", LENGTH));
+    assertNull(FileDownloader.parseRange("bytes=0-10,20-30", LENGTH));
+    assertNull(FileDownloader.parseRange("bytes=10-5", LENGTH));
+    assertNull(FileDownloader.parseRange("bytes=a-b", LENGTH));
+  }
+
+  @Test
+  public void ifRange() {
+    long modified = 1400000000123L;
+    String etag = "\"3e8-1462f5c987b\"";
+    assertTrue(FileDownloader.ifRangeMatches(null, etag, modified));
+    assertTrue(FileDownloader.ifRangeMatches(etag, etag, modified));
+    assertFalse(FileDownloader.ifRangeMatches("\"other\"", etag, modified));
+    assertFalse(FileDownloader.ifRangeMatches("W/" + etag, etag, modified));
+    assertTrue(FileDownloader.ifRangeMatches("Tue, 13 May 2014 16:53:20 GMT",
+        etag, modified));
+    assertFalse(FileDownloader.ifRangeMatches(
+        "Tue, 13 May 2014 16:53:21 GMT", etag, modified));
+    assertFalse(FileDownloader.ifRangeMatches("yesterday", etag, modified));
+  }
+}
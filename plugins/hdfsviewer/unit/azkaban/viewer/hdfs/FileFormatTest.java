@@ -0,0 +1,67 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.URL;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for detecting file formats from their magic bytes.
+ */
+public class FileFormatTest {
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws IOException {
+    fs = new LocalFileSystem();
+    fs.initialize(fs.getWorkingDirectory().toUri(), new Configuration());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.close();
+  }
+
+  private FileFormat detect(String filename) throws IOException {
+    URL url =
+        Thread.currentThread().getContextClassLoader()
+            .getResource("resources/" + filename);
+    Path path = new Path(url.getPath());
+    return FileFormat.detect(fs, fs.getFileStatus(path));
+  }
+
+  @Test
+  public void orcFiles() throws IOException {
+    assertEquals(FileFormat.ORC, detect("TestOrcFile.emptyFile.orc"));
+    assertEquals(FileFormat.ORC, detect("TestOrcFile.testSnappy.orc"));
+  }
+
+  @Test
+  public void avroFile() throws IOException {
+    assertEquals(FileFormat.AVRO, detect("TestAvro.avro"));
+  }
+
+  @Test
+  public void parquetFile() throws IOException {
+    assertEquals(FileFormat.PARQUET, detect("TestParquetFile.parquet"));
+  }
+
+  @Test
+  public void textFile() throws IOException {
+    assertEquals(FileFormat.UNKNOWN, detect("TestTextFile.txt"));
+  }
+
+  @Test
+  public void sequenceFileHeader() {
+    byte[] head = { 'S', 'E', 'Q', 6, 0 };
+    assertEquals(FileFormat.SEQUENCE_FILE, FileFormat.detect(head, head));
+  }
+}
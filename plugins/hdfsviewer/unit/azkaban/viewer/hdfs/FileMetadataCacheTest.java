@@ -0,0 +1,120 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for caching parsed file metadata per file version.
+ */
+public class FileMetadataCacheTest {
+  private FileSystem fs;
+  private File file;
+  private Path path;
+  private AtomicInteger loads;
+  private FileMetadataCache.Loader<Long> lengthLoader;
+
+  @Before
+  public void setUp() throws IOException {
+    fs = new LocalFileSystem();
+    fs.initialize(fs.getWorkingDirectory().toUri(), new Configuration());
+    file = File.createTempFile("FileMetadataCacheTest", ".txt");
+    path = new Path(file.getAbsolutePath());
+    write("header\n");
+
+    loads = new AtomicInteger();
+    lengthLoader = new FileMetadataCache.Loader<Long>() {
+      @Override
+      public Long load(FileSystem fs, FileStatus status) {
+        loads.incrementAndGet();
+        return status.getLen();
+      }
+    };
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.close();
+    file.delete();
+  }
+
+  private void write(String content) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+
+  @Test
+  public void loadsOncePerFileVersion() throws IOException {
+    FileMetadataCache cache = new FileMetadataCache(10, 60000);
+    for (int i = 0; i < 5; i++) {
+      assertEquals(7L, (long) cache.get(fs, path, "length", lengthLoader));
+    }
+    assertEquals(1, loads.get());
+
+    // other kinds of metadata are cached separately
+    cache.get(fs, path, "other", lengthLoader);
+    assertEquals(2, loads.get());
+
+    write("a longer header\n");
+    assertEquals(16L, (long) cache.get(fs, path, "length", lengthLoader));
+    assertEquals(3, loads.get());
+  }
+
+  @Test
+  public void expiresAfterTtl() throws Exception {
+    FileMetadataCache cache = new FileMetadataCache(10, 0);
+    cache.get(fs, path, "length", lengthLoader);
+    Thread.sleep(5);
+    cache.get(fs, path, "length", lengthLoader);
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void failuresAreNotCached() throws IOException {
+    FileMetadataCache cache = new FileMetadataCache(10, 60000);
+    FileMetadataCache.Loader<Long> failing =
+        new FileMetadataCache.Loader<Long>() {
+          @Override
+          public Long load(FileSystem fs, FileStatus status)
+              throws IOException {
+            loads.incrementAndGet();
+            throw new IOException("corrupt footer");
+          }
+        };
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.get(fs, path, "length", failing);
+        fail();
+      } catch (IOException e) {
+        assertEquals("corrupt footer", e.getMessage());
+      }
+    }
+    assertEquals(2, loads.get());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void disabledCacheAlwaysLoads() throws IOException {
+    FileMetadataCache.DISABLED.get(fs, path, "length", lengthLoader);
+    FileMetadataCache.DISABLED.get(fs, path, "length", lengthLoader);
+    assertEquals(2, loads.get());
+  }
+}
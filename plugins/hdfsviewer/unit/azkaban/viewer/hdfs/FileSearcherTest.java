@@ -0,0 +1,194 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for searching the records of files and directories.
+ */
+public class FileSearcherTest {
+  private static final int PARTS = 4;
+  private static final int LINES = 100;
+
+  private PartFileDirectory parts;
+  private FileSearcher searcher;
+
+  @Before
+  public void setUp() throws IOException {
+    parts = new PartFileDirectory("FileSearcherTest");
+    for (int i = 0; i < PARTS; i++) {
+      StringBuilder content = new StringBuilder();
+      for (int j = 1; j <= LINES; j++) {
+        content.append("{\"part\": " + i + ", \"id\": \"" + j + "\"}\n");
+      }
+      parts.write(String.format("part-%05d", i), content.toString());
+    }
+    parts.write("_SUCCESS", "");
+
+    TextFileViewer textViewer = new TextFileViewer();
+    List<HdfsFileViewer> viewers = new ArrayList<HdfsFileViewer>();
+    viewers.add(textViewer);
+    searcher =
+        new FileSearcher(viewers, textViewer, new FileViewerResolver(viewers,
+            10), parts.executor, 2);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    parts.delete();
+  }
+
+  private FileSearcher.Result search(Pattern pattern, int maxMatches,
+      long maxBytes, AtomicBoolean cancelled) throws IOException {
+    return searcher.search(parts.fs, parts.getPath(), pattern,
+        maxMatches, maxBytes, 10000, cancelled);
+  }
+
+  @Test
+  public void findsMatchesInEveryFile() throws IOException {
+    FileSearcher.Result result =
+        search(Pattern.compile("\"id\": \"42\""), 100, Long.MAX_VALUE,
+            new AtomicBoolean());
+    assertEquals(FileSearcher.StopReason.COMPLETE, result.getStopReason());
+    assertEquals(PARTS, result.getFilesSearched());
+    assertEquals(PARTS, result.getMatches().size());
+    for (int i = 0; i < PARTS; i++) {
+      FileSearcher.Match match = result.getMatches().get(i);
+      assertEquals(String.format("part-%05d", i), match.getPath().getName());
+      assertEquals(42, match.getRecord());
+    }
+  }
+
+  @Test
+  public void searchesOneFile() throws IOException {
+    FileSearcher.Result result =
+        searcher.search(parts.fs, parts.getPath("part-00002"),
+            Pattern.compile("\"id\": \"7"), 100, Long.MAX_VALUE, 10000,
+            new AtomicBoolean());
+    assertEquals(1, result.getFilesSearched());
+    // ids 7 and 70 to 79
+    assertEquals(11, result.getMatches().size());
+    assertEquals(7, result.getMatches().get(0).getRecord());
+  }
+
+  @Test
+  public void fieldPredicate() throws IOException {
+    FileSearcher.Result result =
+        search(FileSearcher.fieldPattern("part", "3"), 1000, Long.MAX_VALUE,
+            new AtomicBoolean());
+    assertEquals(LINES, result.getMatches().size());
+    assertEquals("part-00003", result.getMatches().get(0).getPath().getName());
+
+    result =
+        search(FileSearcher.fieldPattern("id", "99$|99\""), 1000,
+            Long.MAX_VALUE, new AtomicBoolean());
+    assertEquals(PARTS, result.getMatches().size());
+  }
+
+  @Test
+  public void stopsAtMaxMatches() throws IOException {
+    FileSearcher.Result result =
+        search(Pattern.compile("id"), 10, Long.MAX_VALUE, new AtomicBoolean());
+    assertEquals(FileSearcher.StopReason.MATCHES, result.getStopReason());
+    assertEquals(10, result.getMatches().size());
+  }
+
+  @Test
+  public void stopsAtByteBudget() throws IOException {
+    FileSearcher.Result result =
+        search(Pattern.compile("no such record"), 100, 1000,
+            new AtomicBoolean());
+    assertEquals(FileSearcher.StopReason.BYTES, result.getStopReason());
+    assertTrue(result.getBytesScanned() < 2000);
+  }
+
+  /* verify the byte budget counts encoded bytes rather than characters */
+  @Test
+  public void countsEncodedBytes() throws IOException {
+    parts.write("part-99999", "\u00e9\u00e9\u00e9\u20ac\n");
+    FileSearcher.Result result =
+        searcher.search(parts.fs, parts.getPath("part-99999"),
+            Pattern.compile("x"), 100, Long.MAX_VALUE, 10000,
+            new AtomicBoolean());
+    // 3 two byte characters, 1 three byte character and the newline
+    assertEquals(10, result.getBytesScanned());
+  }
+
+  /* verify a pattern that backtracks without end releases its thread */
+  @Test
+  public void abandonsRunawayPattern() throws IOException {
+    StringBuilder record = new StringBuilder();
+    for (int i = 0; i < 64; i++) {
+      record.append('a');
+    }
+    parts.write("part-99999", record + "\n");
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      List<HdfsFileViewer> viewers = new ArrayList<HdfsFileViewer>();
+      TextFileViewer textViewer = new TextFileViewer();
+      viewers.add(textViewer);
+      FileSearcher oneThread =
+          new FileSearcher(viewers, textViewer, new FileViewerResolver(
+              viewers, 10), executor, 1);
+      FileSearcher.Result result =
+          oneThread.search(parts.fs, parts.getPath("part-99999"),
+              Pattern.compile("(.*a){20}b"), 100, Long.MAX_VALUE, 200,
+              new AtomicBoolean());
+      assertEquals(FileSearcher.StopReason.TIME, result.getStopReason());
+
+      // the only thread is free again
+      result =
+          oneThread.search(parts.fs, parts.getPath("part-99999"),
+              Pattern.compile("a"), 100, Long.MAX_VALUE, 10000,
+              new AtomicBoolean());
+      assertEquals(FileSearcher.StopReason.COMPLETE, result.getStopReason());
+      assertEquals(1, result.getMatches().size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /* verify overly long patterns are refused */
+  @Test
+  public void rejectsLongPattern() {
+    StringBuilder regex = new StringBuilder();
+    for (int i = 0; i <= FileSearcher.MAX_PATTERN_LENGTH; i++) {
+      regex.append('a');
+    }
+    try {
+      FileSearcher.compile(regex.toString());
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      FileSearcher.fieldPattern("id", regex.toString());
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void cancelled() throws IOException {
+    FileSearcher.Result result =
+        search(Pattern.compile("id"), 100, Long.MAX_VALUE, new AtomicBoolean(
+            true));
+    assertEquals(FileSearcher.StopReason.CANCELLED, result.getStopReason());
+    assertEquals(0, result.getMatches().size());
+  }
+}
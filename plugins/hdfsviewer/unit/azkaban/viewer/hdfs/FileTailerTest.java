@@ -0,0 +1,115 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for following a file that is still being written.
+ */
+public class FileTailerTest {
+  private FileSystem fs;
+  private File file;
+  private Path path;
+  private FileTailer tailer;
+
+  @Before
+  public void setUp() throws IOException {
+    fs = new LocalFileSystem();
+    fs.initialize(fs.getWorkingDirectory().toUri(), new Configuration());
+    file = File.createTempFile("FileTailerTest", ".log");
+    path = new Path(file.getAbsolutePath());
+    tailer = new FileTailer(32, 10, 1);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.close();
+    file.delete();
+  }
+
+  private void append(String content) throws IOException {
+    OutputStream out = new FileOutputStream(file, true);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+
+  @Test
+  public void startsWithLastCompleteLines() throws Exception {
+    append("line 1\nline 2\nline 3\nline 4\nline 5\nline 6\n");
+    FileTailer.Result result = tailer.tail(fs, path, -1, 0);
+    // the last 32 bytes start in the middle of line 2
+    assertEquals("line 3\nline 4\nline 5\nline 6\n", result.getLines());
+    assertEquals(file.length(), result.getNextOffset());
+  }
+
+  @Test
+  public void returnsOnlyNewCompleteLines() throws Exception {
+    append("line 1\n");
+    FileTailer.Result result = tailer.tail(fs, path, -1, 0);
+    assertEquals("line 1\n", result.getLines());
+
+    append("line 2\nline");
+    result = tailer.tail(fs, path, result.getNextOffset(), 0);
+    assertEquals("line 2\n", result.getLines());
+
+    result = tailer.tail(fs, path, result.getNextOffset(), 0);
+    assertEquals("", result.getLines());
+
+    append(" 3\n");
+    result = tailer.tail(fs, path, result.getNextOffset(), 0);
+    assertEquals("line 3\n", result.getLines());
+    assertEquals(file.length(), result.getNextOffset());
+  }
+
+  @Test
+  public void waitsForNewLines() throws Exception {
+    append("line 1\n");
+    final long offset = file.length();
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(100);
+          append("line 2\n");
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    writer.start();
+    FileTailer.Result result = tailer.tail(fs, path, offset, 10000);
+    writer.join();
+    assertEquals("line 2\n", result.getLines());
+  }
+
+  @Test
+  public void restartsWhenFileShrinks() throws Exception {
+    append("line 1\nline 2\n");
+    long offset = file.length();
+    file.delete();
+    append("new\n");
+    FileTailer.Result result = tailer.tail(fs, path, offset, 0);
+    assertTrue(result.isReset());
+    assertEquals("new\n", result.getLines());
+
+    result = tailer.tail(fs, path, result.getNextOffset(), 0);
+    assertFalse(result.isReset());
+  }
+}
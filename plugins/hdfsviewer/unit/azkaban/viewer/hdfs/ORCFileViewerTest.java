@@ -5,7 +5,9 @@ import static org.junit.Assert.assertEquals;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
@@ -36,7 +38,8 @@ public class ORCFileViewerTest {
         fs = new LocalFileSystem();
         fs.initialize(fs.getWorkingDirectory().toUri(), new Configuration());
         viewer = new ORCFileViewer();
-        supportedCapabilities = EnumSet.of(Capability.READ, Capability.SCHEMA);
+        supportedCapabilities =
+            EnumSet.of(Capability.READ, Capability.SCHEMA, Capability.STATS);
         unSupportedCapabilities = EnumSet.noneOf(Capability.class);
     }
 
@@ -48,9 +51,15 @@ public class ORCFileViewerTest {
     /* Calls ORCFileViewer#displayFile and parse results */
     String displayRecordWrapper(String filename, int startRecord, int endRecord)
         throws IOException {
+        return displayRecordWrapper(filename, startRecord, endRecord, null);
+    }
+
+    /* Calls ORCFileViewer#displayFile for some columns and parse results */
+    String displayRecordWrapper(String filename, int startRecord,
+        int endRecord, List<String> columns) throws IOException {
         ByteArrayOutputStream outStream = new ByteArrayOutputStream();
         viewer.displayFile(fs, getResourcePath(filename), outStream,
-            startRecord, endRecord);
+            startRecord, endRecord, columns);
         String records = new String(outStream.toByteArray());
         records = records.replaceAll("Record [0-9]*:", "");
         records = StringUtils.deleteWhitespace(records);
@@ -179,6 +188,62 @@ public class ORCFileViewerTest {
         assertEquals("{\"int1\":300,\"string1\":\"a\"}", actual);
     }
 
+    /* verify record display across two row batches */
+    @Test
+    public void batchBoundaryDisplay() throws IOException {
+        String actual =
+            displayRecordWrapper("TestOrcFile.testPredicatePushdown.orc",
+                1024, 1025);
+        assertEquals("{\"int1\":306900,\"string1\":\"27f6\"}"
+            + "{\"int1\":307200,\"string1\":\"2800\"}", actual);
+    }
+
+    /* verify record display starting in the middle of a stripe */
+    @Test
+    public void midStripeDisplay() throws IOException {
+        String actual =
+            displayRecordWrapper("TestOrcFile.testPredicatePushdown.orc",
+                1502, 1503);
+        assertEquals("{\"int1\":450300,\"string1\":\"3aa2\"}"
+            + "{\"int1\":450600,\"string1\":\"3aac\"}", actual);
+    }
+
+    /* verify record display of a subset of the columns */
+    @Test
+    public void projectedColumnsDisplay() throws IOException {
+        String actual =
+            displayRecordWrapper("TestOrcFile.testPredicatePushdown.orc", 2,
+                3, Arrays.asList("string1"));
+        assertEquals("{\"string1\":\"a\"}{\"string1\":\"14\"}", actual);
+    }
+
+    /* verify projected record display in the middle of a stripe */
+    @Test
+    public void projectedColumnsMidStripeDisplay() throws IOException {
+        String actual =
+            displayRecordWrapper("TestOrcFile.testPredicatePushdown.orc",
+                1502, 1502, Arrays.asList("int1"));
+        assertEquals("{\"int1\":450300}", actual);
+    }
+
+    /* verify projected record display of a union type orc file */
+    @Test
+    public void projectedUnionTypeFileDisplay() throws IOException {
+        String actual =
+            displayRecordWrapper("TestOrcFile.testUnionAndTimestamp.orc", 5,
+                5, Arrays.asList("union"));
+        assertEquals("{\"union\":{\"1\":null}}", actual);
+    }
+
+    /* verify projecting an unknown column reports it */
+    @Test
+    public void unknownColumnDisplay() throws IOException {
+        String actual =
+            displayRecordWrapper("TestOrcFile.testPredicatePushdown.orc", 1,
+                1, Arrays.asList("missing"));
+        assertEquals("Unknowncolumn:missing", actual);
+    }
+
     /* verify record display for orc files with binary type */
     @Test
     public void binaryTypeFileDisplay() throws IOException {
@@ -201,7 +266,9 @@ public class ORCFileViewerTest {
     public void unionTypeFileDisplay() throws IOException {
         String actual =
             displayRecordWrapper("TestOrcFile.testUnionAndTimestamp.orc", 5, 5);
-        assertEquals("{\"decimal\":null,\"time\":null,\"union\":{\"1\":null}}",
+        // fields are written in struct order
+        assertEquals(
+            "{\"time\":null,\"union\":{\"1\":null},\"decimal\":null}",
             actual);
     }
 
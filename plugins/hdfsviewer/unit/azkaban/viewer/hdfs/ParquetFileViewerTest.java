@@ -0,0 +1,157 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import parquet.avro.AvroParquetWriter;
+import parquet.hadoop.ParquetFileReader;
+import parquet.hadoop.metadata.CompressionCodecName;
+
+/**
+ * Test cases for ParquetFileViewer jumping to row groups and projecting
+ * columns.
+ */
+public class ParquetFileViewerTest {
+  private static final int RECORDS = 2000;
+  private static final String SCHEMA = "{\"type\": \"record\", "
+      + "\"name\": \"Row\", \"fields\": ["
+      + "{\"name\": \"id\", \"type\": \"int\"}, "
+      + "{\"name\": \"name\", \"type\": \"string\"}, "
+      + "{\"name\": \"payload\", \"type\": \"string\"}]}";
+
+  private ParquetFileViewer viewer;
+  private FileSystem fs;
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    fs = new LocalFileSystem();
+    fs.initialize(fs.getWorkingDirectory().toUri(), new Configuration());
+    viewer = new ParquetFileViewer();
+
+    file = File.createTempFile("ParquetFileViewerTest", ".parquet");
+    file.delete();
+    Schema schema = new Schema.Parser().parse(SCHEMA);
+    // Small row groups so that the file has several of them.
+    AvroParquetWriter<GenericRecord> writer =
+        new AvroParquetWriter<GenericRecord>(new Path(file.getAbsolutePath()),
+            schema, CompressionCodecName.UNCOMPRESSED, 16 * 1024, 1024);
+    try {
+      for (int i = 1; i <= RECORDS; i++) {
+        GenericRecord record = new GenericData.Record(schema);
+        record.put("id", i);
+        record.put("name", "name " + i);
+        record.put("payload", "payload of record " + i);
+        writer.write(record);
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.close();
+    file.delete();
+  }
+
+  private String display(int startLine, int endLine, List<String> columns)
+      throws IOException {
+    ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+    viewer.displayFile(fs, new Path(file.getAbsolutePath()), outStream,
+        startLine, endLine, columns);
+    return new String(outStream.toByteArray(), "UTF-8");
+  }
+
+  @Test
+  public void fileHasSeveralRowGroups() throws IOException {
+    assertTrue(ParquetFileReader
+        .readFooter(fs.getConf(), new Path(file.getAbsolutePath()))
+        .getBlocks().size() > 1);
+  }
+
+  @Test
+  public void firstPage() throws IOException {
+    String output = display(1, 2, null);
+    assertTrue(output.contains("Record 1:"));
+    assertTrue(output.contains("\"name\" : \"name 1\""));
+    assertTrue(output.contains("Record 2:"));
+    assertFalse(output.contains("Record 3:"));
+  }
+
+  @Test
+  public void pageInLaterRowGroup() throws IOException {
+    String output = display(1900, 1901, null);
+    assertFalse(output.contains("Record 1899:"));
+    assertTrue(output.contains("Record 1900:"));
+    assertTrue(output.contains("\"id\" : 1900"));
+    assertTrue(output.contains("Record 1901:"));
+    assertTrue(output.contains("\"id\" : 1901"));
+    assertFalse(output.contains("Record 1902:"));
+  }
+
+  @Test
+  public void pageBeyondEnd() throws IOException {
+    assertEquals("", display(RECORDS + 1, RECORDS + 10, null));
+  }
+
+  @Test
+  public void schemaFromCachedFooter() throws IOException {
+    viewer.setMetadataCache(new FileMetadataCache(10, 60000));
+    Path path = new Path(file.getAbsolutePath());
+    assertTrue(viewer.getCapabilities(fs, path).contains(Capability.SCHEMA));
+    String schema = viewer.getSchema(fs, path);
+    assertTrue(schema.contains("payload"));
+    assertEquals(schema, viewer.getSchema(fs, path));
+    assertTrue(display(1, 1, null).contains("\"id\" : 1"));
+  }
+
+  @Test
+  public void statsFromFooter() throws IOException {
+    Path path = new Path(file.getAbsolutePath());
+    assertTrue(viewer.getCapabilities(fs, path).contains(Capability.STATS));
+    FileStats stats = viewer.getStats(fs, path);
+    assertEquals(RECORDS, stats.getRowCount());
+    assertEquals(3, stats.getColumns().size());
+    FileStats.Column id = stats.getColumns().get(0);
+    assertEquals("id", id.getName());
+    assertEquals("int32", id.getType());
+    assertEquals(RECORDS, id.getValueCount());
+    assertTrue(id.getCompressedSize() > 0);
+    assertEquals(id.getCompressedSize(), id.getUncompressedSize());
+    assertEquals(-1, id.getNullCount());
+    assertEquals("payload", stats.getColumns().get(2).getName());
+  }
+
+  @Test
+  public void projection() throws IOException {
+    String output = display(1500, 1500, Arrays.asList("name", "id"));
+    assertTrue(output.contains("\"id\" : 1500"));
+    assertTrue(output.contains("\"name\" : \"name 1500\""));
+    assertFalse(output.contains("payload"));
+  }
+
+  @Test
+  public void unknownColumn() throws IOException {
+    assertEquals("Unknown column: missing",
+        display(1, 1, Arrays.asList("missing")));
+  }
+}
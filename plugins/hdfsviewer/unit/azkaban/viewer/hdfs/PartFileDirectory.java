@@ -0,0 +1,88 @@
+package azkaban.viewer.hdfs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Temporary directory of part files on the local file system, and an
+ * executor to read them with, for the tests of the features that work on a
+ * whole dataset.
+ */
+class PartFileDirectory {
+  final FileSystem fs;
+  final File dir;
+  final ExecutorService executor;
+
+  PartFileDirectory(String prefix) throws IOException {
+    fs = new LocalFileSystem();
+    fs.initialize(fs.getWorkingDirectory().toUri(), new Configuration());
+
+    dir = File.createTempFile(prefix, "");
+    dir.delete();
+    dir.mkdirs();
+    executor = Executors.newFixedThreadPool(2);
+  }
+
+  Path getPath() {
+    return new Path(dir.getAbsolutePath());
+  }
+
+  Path getPath(String name) {
+    return new Path(new File(dir, name).getAbsolutePath());
+  }
+
+  void write(String name, String content) throws IOException {
+    OutputStream out = new FileOutputStream(new File(dir, name));
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+
+  void delete() throws IOException {
+    executor.shutdownNow();
+    fs.close();
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  /**
+   * Returns an executor with one thread and a queue of one, both taken by
+   * tasks that wait for release, so that it rejects anything submitted.
+   */
+  static ExecutorService newFullExecutor(final CountDownLatch release) {
+    Runnable blocker = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(1),
+            new ThreadPoolExecutor.AbortPolicy());
+    executor.execute(blocker);
+    executor.execute(blocker);
+    return executor;
+  }
+}
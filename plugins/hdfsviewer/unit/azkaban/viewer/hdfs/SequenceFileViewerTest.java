@@ -0,0 +1,244 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for seeking through sequence files with the sync index.
+ */
+public class SequenceFileViewerTest {
+  private static final int RECORDS = 20000;
+
+  private LocalFileSystem localFs;
+  private ReadCountingFileSystem fs;
+  private File dir;
+  private File indexDir;
+  private final List<String> keys = new ArrayList<String>();
+
+  /**
+   * Shows each record as its key and value separated by a tab.
+   */
+  private static class TextViewer extends SequenceFileViewer {
+    TextViewer(File indexDir) {
+      super(indexDir);
+    }
+
+    @Override
+    public String getName() {
+      return "Text Sequence File";
+    }
+
+    @Override
+    protected Set<Capability> getCapabilities(
+        AzkabanSequenceFileReader.Reader reader) {
+      return EnumSet.of(Capability.READ);
+    }
+
+    @Override
+    protected void displaySequenceFile(
+        AzkabanSequenceFileReader.Reader reader, PrintWriter output,
+        int startLine, int endLine) throws IOException {
+      Text key = new Text();
+      Text value = new Text();
+      for (int i = startLine; i <= endLine && reader.next(key, value); i++) {
+        output.write(key + "\t" + value + "\n");
+      }
+      output.flush();
+    }
+  }
+
+  /**
+   * Counts the bytes read from the files it opens.
+   */
+  private static class ReadCountingFileSystem extends FilterFileSystem {
+    private long bytesRead;
+
+    ReadCountingFileSystem(FileSystem fs) {
+      super(fs);
+      setConf(fs.getConf());
+    }
+
+    synchronized long getBytesRead() {
+      return bytesRead;
+    }
+
+    synchronized void clearBytesRead() {
+      bytesRead = 0;
+    }
+
+    private synchronized void count(int read) {
+      if (read > 0) {
+        bytesRead += read;
+      }
+    }
+
+    @Override
+    public FSDataInputStream open(Path path, int bufferSize)
+        throws IOException {
+      final FSDataInputStream in = super.open(path, bufferSize);
+      return new FSDataInputStream(new FSInputStream() {
+        @Override
+        public void seek(long pos) throws IOException {
+          in.seek(pos);
+        }
+
+        @Override
+        public long getPos() throws IOException {
+          return in.getPos();
+        }
+
+        @Override
+        public boolean seekToNewSource(long targetPos) throws IOException {
+          return in.seekToNewSource(targetPos);
+        }
+
+        @Override
+        public int read() throws IOException {
+          int b = in.read();
+          count(b < 0 ? 0 : 1);
+          return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          int read = in.read(b, off, len);
+          count(read);
+          return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+          in.close();
+        }
+      });
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    localFs = new LocalFileSystem();
+    localFs.initialize(localFs.getWorkingDirectory().toUri(),
+        new Configuration());
+    fs = new ReadCountingFileSystem(localFs);
+
+    dir = File.createTempFile("SequenceFileViewerTest", "");
+    dir.delete();
+    dir.mkdirs();
+    indexDir = new File(dir, "index");
+    indexDir.mkdirs();
+
+    // Random keys, so most of the file has to be read to walk through them.
+    Random random = new Random(42);
+    for (int i = 1; i <= RECORDS; i++) {
+      keys.add(String.format("%05d-%016x%016x", i, random.nextLong(),
+          random.nextLong()));
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    localFs.delete(new Path(dir.getAbsolutePath()), true);
+    localFs.close();
+  }
+
+  private Path write(String name, CompressionType compressionType)
+      throws IOException {
+    Configuration conf = new Configuration();
+    // small blocks, so the file has many sync marks
+    conf.setInt("io.seqfile.compress.blocksize", 4096);
+    Path path = new Path(new File(dir, name).getAbsolutePath());
+    SequenceFile.Writer writer =
+        SequenceFile.createWriter(localFs, conf, path, Text.class, Text.class,
+            compressionType, new DefaultCodec());
+    try {
+      for (int i = 1; i <= RECORDS; i++) {
+        writer.append(new Text(keys.get(i - 1)), new Text("value " + i));
+      }
+    } finally {
+      writer.close();
+    }
+    return path;
+  }
+
+  private String expected(int startLine, int endLine) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = startLine; i <= endLine; i++) {
+      builder.append(keys.get(i - 1)).append("\tvalue ").append(i)
+          .append("\n");
+    }
+    return builder.toString();
+  }
+
+  private String display(SequenceFileViewer viewer, Path path, int startLine,
+      int endLine) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    viewer.displayFile(fs, path, out, startLine, endLine);
+    return new String(out.toByteArray(), "UTF-8");
+  }
+
+  private void verifySeeksThroughIndex(Path path) throws IOException {
+    long length = localFs.getFileStatus(path).getLen();
+    assertTrue(length > 4 * 64 * 1024);
+
+    assertEquals(expected(19000, 19002),
+        display(new TextViewer(indexDir), path, 19000, 19002));
+    assertEquals(1, indexDir.list().length);
+
+    // A later request, e.g. after a restart, loads the saved index and
+    // seeks close to its first record instead of walking the whole file.
+    TextViewer viewer = new TextViewer(indexDir);
+    for (int startLine : new int[] { 19500, 12345, 19998 }) {
+      fs.clearBytesRead();
+      assertEquals(expected(startLine, startLine + 2),
+          display(viewer, path, startLine, startLine + 2));
+    }
+    assertTrue(fs.getBytesRead() < length / 4);
+  }
+
+  /* verify block compressed files are sought through the index */
+  @Test
+  public void blockCompressedFileSeeksThroughIndex() throws IOException {
+    verifySeeksThroughIndex(write("block.seq", CompressionType.BLOCK));
+  }
+
+  /* verify record compressed files are sought through the index */
+  @Test
+  public void recordCompressedFileSeeksThroughIndex() throws IOException {
+    verifySeeksThroughIndex(write("record.seq", CompressionType.RECORD));
+  }
+
+  /* verify windows past the end of the file are empty */
+  @Test
+  public void displayPastEnd() throws IOException {
+    Path path = write("block.seq", CompressionType.BLOCK);
+    TextViewer viewer = new TextViewer(indexDir);
+    assertEquals(expected(RECORDS, RECORDS),
+        display(viewer, path, RECORDS, RECORDS + 10));
+    assertEquals("", display(viewer, path, RECORDS + 1, RECORDS + 10));
+  }
+}
@@ -0,0 +1,257 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for TextFileViewer paging through the line index.
+ */
+public class TextFileViewerTest {
+  private static final int LINES = 1000;
+  private static final int INDEX_INTERVAL = 64;
+
+  private TextFileViewer viewer;
+  private FileSystem fs;
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    fs = new LocalFileSystem();
+    fs.initialize(fs.getWorkingDirectory().toUri(), new Configuration());
+    viewer = new TextFileViewer(INDEX_INTERVAL);
+
+    file = File.createTempFile("TextFileViewerTest", ".txt");
+    OutputStream out = new FileOutputStream(file);
+    try {
+      for (int i = 1; i <= LINES; i++) {
+        out.write(("line " + i + "\n").getBytes("UTF-8"));
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.close();
+    file.delete();
+  }
+
+  private String display(int startLine, int endLine) throws IOException {
+    return display(file, startLine, endLine);
+  }
+
+  private String display(File file, int startLine, int endLine)
+      throws IOException {
+    return display(fs, file, startLine, endLine);
+  }
+
+  private String display(FileSystem fs, File file, int startLine, int endLine)
+      throws IOException {
+    ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+    viewer.displayFile(fs, new Path(file.getAbsolutePath()), outStream,
+        startLine, endLine);
+    return new String(outStream.toByteArray(), "UTF-8");
+  }
+
+  /**
+   * Records the offsets that streams of the file system are seeked to.
+   */
+  private static class SeekRecordingFileSystem extends FilterFileSystem {
+    private final List<Long> seeks = new ArrayList<Long>();
+
+    SeekRecordingFileSystem(FileSystem fs) {
+      super(fs);
+      setConf(fs.getConf());
+    }
+
+    synchronized List<Long> getSeeks() {
+      return new ArrayList<Long>(seeks);
+    }
+
+    synchronized void clearSeeks() {
+      seeks.clear();
+    }
+
+    @Override
+    public FSDataInputStream open(Path path, int bufferSize)
+        throws IOException {
+      final FSDataInputStream in = super.open(path, bufferSize);
+      return new FSDataInputStream(new FSInputStream() {
+        @Override
+        public void seek(long pos) throws IOException {
+          synchronized (SeekRecordingFileSystem.this) {
+            seeks.add(pos);
+          }
+          in.seek(pos);
+        }
+
+        @Override
+        public long getPos() throws IOException {
+          return in.getPos();
+        }
+
+        @Override
+        public boolean seekToNewSource(long targetPos) throws IOException {
+          return in.seekToNewSource(targetPos);
+        }
+
+        @Override
+        public int read() throws IOException {
+          return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          return in.read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+          in.close();
+        }
+      });
+    }
+  }
+
+  private File compressed(String suffix) throws IOException {
+    File compressed = File.createTempFile("TextFileViewerTest", suffix);
+    OutputStream out = new FileOutputStream(compressed);
+    if (suffix.equals(".gz")) {
+      out = new GZIPOutputStream(out);
+    } else {
+      out = new BZip2Codec().createOutputStream(out);
+    }
+    try {
+      out.write(expected(1, LINES + 1).getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    return compressed;
+  }
+
+  private String expected(int startLine, int endLine) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = startLine; i < endLine && i <= LINES; i++) {
+      builder.append("line ").append(i).append('\n');
+    }
+    return builder.toString();
+  }
+
+  /* verify the first page is read from the start of the file */
+  @Test
+  public void firstPage() throws IOException {
+    assertEquals(expected(1, 10), display(1, 10));
+  }
+
+  /* verify deep pages are identical whether or not the index is built */
+  @Test
+  public void deepPages() throws IOException {
+    assertEquals(expected(900, 920), display(900, 920));
+    for (int i = 0; i < 50; i++) {
+      assertEquals(expected(129, 140), display(129, 140));
+      assertEquals(expected(700, 705), display(700, 705));
+      assertEquals(expected(64, 66), display(64, 66));
+    }
+  }
+
+  /* verify a page beyond the end of the file is empty */
+  @Test
+  public void pastEndOfFile() throws IOException {
+    assertEquals("", display(LINES + 10, LINES + 20));
+    assertEquals(expected(995, 1010), display(995, 1010));
+  }
+
+  /* verify compressed files are decompressed on the fly */
+  @Test
+  public void compressedFiles() throws IOException {
+    for (String suffix : new String[] { ".gz", ".bz2" }) {
+      File compressed = compressed(suffix);
+      try {
+        assertEquals(expected(1, 10), display(compressed, 1, 10));
+        assertEquals(expected(900, 920), display(compressed, 900, 920));
+        assertEquals("", display(compressed, LINES + 10, LINES + 20));
+      } finally {
+        compressed.delete();
+      }
+    }
+  }
+
+  /* verify the background index build holds its own reference to the file
+   * system, and that a later page seeks straight to a checkpoint it built */
+  @Test
+  public void laterPagesSeekThroughBuiltIndex() throws Exception {
+    final AtomicInteger retained = new AtomicInteger();
+    final CountDownLatch released = new CountDownLatch(1);
+    viewer.setFileSystemLender(new FileSystemLender() {
+      @Override
+      public FileSystem borrow(String user) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public boolean retain(FileSystem retainedFs) {
+        retained.incrementAndGet();
+        return true;
+      }
+
+      @Override
+      public void release(FileSystem releasedFs) {
+        released.countDown();
+      }
+    });
+    SeekRecordingFileSystem recordingFs = new SeekRecordingFileSystem(fs);
+
+    // the first page starts the build, without reading past its own lines
+    assertEquals(expected(1, 10), display(recordingFs, file, 1, 10));
+    assertTrue(released.await(10, TimeUnit.SECONDS));
+    assertEquals(1, retained.get());
+
+    recordingFs.clearSeeks();
+    assertEquals(expected(900, 910), display(recordingFs, file, 900, 910));
+    // line 897 = 1 + 14 * INDEX_INTERVAL is the closest checkpoint
+    assertEquals(1, recordingFs.getSeeks().size());
+    assertEquals(expected(1, 897).length(), (long) recordingFs.getSeeks()
+        .get(0));
+  }
+
+  /* verify checkpoints land on the start of the indexed lines */
+  @Test
+  public void indexCheckpoints() throws IOException {
+    RecordOffsetIndex index = new RecordOffsetIndex();
+    index.add(129, 1200);
+    index.add(65, 500);
+    assertEquals(1, index.floor(64).getRecord());
+    assertEquals(65, index.floor(128).getRecord());
+    assertEquals(500, index.floor(128).getOffset());
+    assertEquals(129, index.floor(5000).getRecord());
+    assertTrue(index.tryStartBuild());
+    index.markComplete();
+    index.finishBuild();
+    assertTrue(!index.tryStartBuild());
+  }
+}
@@ -0,0 +1,199 @@
+package azkaban.viewer.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for limiting viewers with a ViewBudget.
+ */
+public class ViewBudgetTest {
+  private static final int LINES = 1000;
+
+  private FileSystem fs;
+  private File file;
+  private Path path;
+  private TextFileViewer viewer;
+
+  @Before
+  public void setUp() throws IOException {
+    fs = new LocalFileSystem();
+    fs.initialize(fs.getWorkingDirectory().toUri(), new Configuration());
+    viewer = new TextFileViewer();
+
+    file = File.createTempFile("ViewBudgetTest", ".txt");
+    path = new Path(file.getAbsolutePath());
+    OutputStream out = new FileOutputStream(file);
+    try {
+      for (int i = 1; i <= LINES; i++) {
+        out.write(("line " + i + "\n").getBytes("UTF-8"));
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.close();
+    file.delete();
+  }
+
+  private String display(ViewBudget budget) throws IOException {
+    ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+    viewer.displayFile(fs, path, outStream, 1, 100, null, budget);
+    return new String(outStream.toByteArray(), "UTF-8");
+  }
+
+  @Test
+  public void recordBudget() throws IOException {
+    assertEquals("line 1\nline 2\nline 3\n", display(new ViewBudget(10000,
+        Long.MAX_VALUE, 3)));
+  }
+
+  @Test
+  public void byteBudget() throws IOException {
+    ViewBudget budget = new ViewBudget(10000, 16, Integer.MAX_VALUE);
+    assertEquals("line 1\nline 2\n", display(budget));
+    assertEquals(14, budget.getBytesWritten());
+  }
+
+  @Test
+  public void cancelledBudget() throws IOException {
+    ViewBudget budget = new ViewBudget(10000, Long.MAX_VALUE, 10);
+    budget.cancel();
+    assertEquals("", display(budget));
+    assertTrue(budget.isExhausted());
+  }
+
+  @Test
+  public void failedWriteCancels() {
+    ViewBudget budget = new ViewBudget(10000, Long.MAX_VALUE, 10);
+    OutputStream out = budget.track(new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("client went away");
+      }
+    });
+    assertTrue(out == budget.track(out));
+    try {
+      out.write('x');
+    } catch (IOException e) {
+      // expected
+    }
+    assertTrue(budget.isCancelled());
+  }
+
+  @Test
+  public void lastRecord() {
+    ViewBudget budget = new ViewBudget(10000, Long.MAX_VALUE, 10);
+    assertEquals(10, budget.lastRecord(1, 100));
+    assertEquals(50, budget.lastRecord(41, 50));
+    budget = new ViewBudget(Long.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+    assertEquals(Integer.MAX_VALUE, budget.lastRecord(5, Integer.MAX_VALUE));
+    assertFalse(budget.isExhausted());
+  }
+
+  @Test
+  public void displayAsync() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+      ViewBudget budget = new ViewBudget(10000, Long.MAX_VALUE, 2);
+      Future<?> future =
+          viewer.displayFileAsync(executor, fs, path, outStream, 5, 100, null,
+              budget);
+      future.get();
+      assertEquals("line 5\nline 6\n", new String(outStream.toByteArray(),
+          "UTF-8"));
+
+      budget = new ViewBudget(10000, Long.MAX_VALUE, 2);
+      future =
+          viewer.displayFileAsync(executor, fs, path, outStream, 5, 100, null,
+              budget);
+      future.cancel(false);
+      assertTrue(budget.isCancelled());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void cancelDetachesOutput() throws Exception {
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger writes = new AtomicInteger();
+    OutputStream outStream = new OutputStream() {
+      @Override
+      public void write(int b) {
+        write(new byte[] { (byte) b }, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        writes.incrementAndGet();
+        writing.countDown();
+        // blocks like a write to a slow client, ignoring interrupts
+        while (true) {
+          try {
+            release.await();
+            return;
+          } catch (InterruptedException e) {
+            // keep blocking
+          }
+        }
+      }
+    };
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      ViewBudget budget = new ViewBudget(10000, Long.MAX_VALUE, 100);
+      final Future<?> future =
+          viewer.displayFileAsync(executor, fs, path, outStream, 1, 100, null,
+              budget);
+      assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+      Thread canceller = new Thread() {
+        @Override
+        public void run() {
+          future.cancel(true);
+        }
+      };
+      canceller.start();
+      // cancel waits for the write in progress
+      canceller.join(200);
+      assertTrue(canceller.isAlive());
+
+      release.countDown();
+      canceller.join(10000);
+      assertFalse(canceller.isAlive());
+      int written = writes.get();
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+      assertEquals(written, writes.get());
+    } finally {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package azkaban.viewer.hdfs.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for writing orc objects as json with SerDeUtilsWrapper
+ */
+public class SerDeUtilsWrapperTest {
+    StructObjectInspector rowInspector;
+    List<Object> row;
+
+    @Before
+    public void setUp() {
+        ObjectInspector intInspector =
+            PrimitiveObjectInspectorFactory.javaIntObjectInspector;
+        ObjectInspector stringInspector =
+            PrimitiveObjectInspectorFactory.javaStringObjectInspector;
+        StructObjectInspector pointInspector =
+            ObjectInspectorFactory.getStandardStructObjectInspector(
+                Arrays.asList("x", "y"),
+                Arrays.asList(intInspector, intInspector));
+        rowInspector =
+            ObjectInspectorFactory.getStandardStructObjectInspector(Arrays
+                .asList("name", "point", "tags", "counts", "amount", "time"),
+                Arrays.<ObjectInspector> asList(stringInspector,
+                    pointInspector, ObjectInspectorFactory
+                        .getStandardListObjectInspector(stringInspector),
+                    ObjectInspectorFactory.getStandardMapObjectInspector(
+                        stringInspector, ObjectInspectorFactory
+                            .getStandardListObjectInspector(intInspector)),
+                    PrimitiveObjectInspectorFactory.javaHiveDecimalObjectInspector,
+                    PrimitiveObjectInspectorFactory.javaTimestampObjectInspector));
+
+        Map<String, List<Integer>> counts =
+            Collections.singletonMap("a\"b", Arrays.asList(1, 2));
+        row =
+            Arrays.<Object> asList("zed", Arrays.<Object> asList(3, null),
+                Arrays.asList("x", "y"), counts,
+                HiveDecimal.create("12345678.6547456"),
+                Timestamp.valueOf("2000-03-12 15:00:00"));
+    }
+
+    String write(List<String> fieldNames) throws IOException {
+        StringWriter out = new StringWriter();
+        JsonGenerator json = new JsonFactory().createJsonGenerator(out);
+        if (fieldNames == null) {
+            SerDeUtilsWrapper.writeJSON(json, row, rowInspector);
+        } else {
+            SerDeUtilsWrapper.writeJSON(json, row, rowInspector, fieldNames);
+        }
+        json.flush();
+        return out.toString();
+    }
+
+    /* verify nested values are written in struct order */
+    @Test
+    public void nestedRow() throws IOException {
+        assertEquals("{\"name\":\"zed\",\"point\":{\"x\":3,\"y\":null},"
+            + "\"tags\":[\"x\",\"y\"],\"counts\":{\"a\\\"b\":[1,2]},"
+            + "\"amount\":12345678.6547456,\"time\":\"2000-03-12 15:00:00\"}",
+            write(null));
+    }
+
+    /* verify only the listed fields are written, in struct order */
+    @Test
+    public void projectedRow() throws IOException {
+        assertEquals("{\"point\":{\"x\":3,\"y\":null},"
+            + "\"time\":\"2000-03-12 15:00:00\"}",
+            write(Arrays.asList("time", "point")));
+    }
+
+    /* verify a null row is written as null */
+    @Test
+    public void nullRow() throws IOException {
+        row = null;
+        assertEquals("null", write(null));
+        assertEquals("null", write(Arrays.asList("name")));
+    }
+}
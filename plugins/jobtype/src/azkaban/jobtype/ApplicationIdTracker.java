@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.jobtype;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Follows a job log as it is written and collects the YARN application ids
+ * that it mentions, so that they are known by the time the job is cancelled.
+ *
+ * Each {@link #update()} only reads what was appended since the previous one.
+ * Lines are scanned in place with a single matcher. A partial last line may end
+ * in the middle of an id, so it is only remembered once it is complete. As
+ * with the original line based search,
+ * an id only counts when it starts a whitespace separated token, so ids inside
+ * tracking URLs are ignored.
+ *
+ * Bytes are mapped to chars one to one. Application ids and whitespace are
+ * ASCII, and no byte of a multi-byte UTF-8 sequence can be mistaken for
+ * either, so no charset decoding is needed.
+ */
+public class ApplicationIdTracker {
+  private static final Logger logger = Logger
+      .getLogger(ApplicationIdTracker.class);
+
+  private static final Pattern APPLICATION_ID_PATTERN = Pattern
+      .compile("(?<!\\S)application_\\d+_\\d+");
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long FOLLOW_INTERVAL_MS = 2000;
+
+  private static final ScheduledExecutorService follower = Executors
+      .newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "azk-application-id-tracker");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  private final File logFile;
+  private final Set<String> applicationIds = Collections
+      .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  // Guarded by this. Allocated on the first update.
+  private long offset;
+  private ByteBuffer bytes;
+  private CharBuffer chars;
+  private Matcher matcher;
+
+  private volatile ScheduledFuture<?> following;
+
+  public ApplicationIdTracker(File logFile) {
+    this.logFile = logFile;
+  }
+
+  /**
+   * Returns the application ids found so far, without reading the log.
+   */
+  public Set<String> getApplicationIds() {
+    return new HashSet<String>(applicationIds);
+  }
+
+  /**
+   * Scans what was appended to the log since the last update, and returns all
+   * the application ids found so far, including those on a partial last line.
+   * A log that does not exist yet is treated as empty.
+   */
+  public Set<String> update() throws IOException {
+    return read(true);
+  }
+
+  private synchronized Set<String> read(boolean includePartialLine)
+      throws IOException {
+    FileInputStream in;
+    try {
+      in = new FileInputStream(logFile);
+    } catch (FileNotFoundException e) {
+      return getApplicationIds();
+    }
+
+    Set<String> found = null;
+    try {
+      FileChannel channel = in.getChannel();
+      if (channel.size() < offset) {
+        // The log was truncated or replaced. Keep the ids already found.
+        offset = 0;
+      }
+      channel.position(offset);
+
+      if (bytes == null) {
+        bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        chars = CharBuffer.allocate(BUFFER_SIZE);
+        matcher = APPLICATION_ID_PATTERN.matcher(chars);
+      }
+      bytes.clear();
+      while (channel.read(bytes) > 0) {
+        int length = bytes.position();
+        int end = lastIndexOfLineEnd(length) + 1;
+        if (end == 0) {
+          if (length < BUFFER_SIZE) {
+            continue;
+          }
+          // A line longer than the buffer. Split it between tokens so that no
+          // id is cut in two.
+          end = lastIndexOfWhitespace(length) + 1;
+          if (end == 0) {
+            end = length;
+          }
+        }
+        scan(end, applicationIds);
+        offset += end;
+        bytes.limit(length);
+        bytes.position(end);
+        bytes.compact();
+      }
+      found = getApplicationIds();
+      if (includePartialLine && bytes.position() > 0) {
+        // Not remembered: the line may still be growing.
+        scan(bytes.position(), found);
+      }
+    } finally {
+      in.close();
+    }
+    return found;
+  }
+
+  /**
+   * Starts updating in the background until {@link #stop()} is called.
+   */
+  public void start() {
+    following =
+        follower.scheduleWithFixedDelay(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              read(false);
+            } catch (Exception e) {
+              logger.debug("Failed to read " + logFile, e);
+            }
+          }
+        }, 0, FOLLOW_INTERVAL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the background updates. The tracker can still be updated directly.
+   */
+  public void stop() {
+    ScheduledFuture<?> current = following;
+    if (current != null) {
+      current.cancel(false);
+      following = null;
+    }
+  }
+
+  private void scan(int length, Set<String> found) {
+    byte[] in = bytes.array();
+    char[] out = chars.array();
+    for (int i = 0; i < length; i++) {
+      out[i] = (char) (in[i] & 0xff);
+    }
+    chars.clear();
+    chars.limit(length);
+    matcher.reset(chars);
+    while (matcher.find()) {
+      found.add(matcher.group());
+    }
+  }
+
+  private int lastIndexOfLineEnd(int length) {
+    byte[] in = bytes.array();
+    for (int i = length - 1; i >= 0; i--) {
+      if (in[i] == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int lastIndexOfWhitespace(int length) {
+    byte[] in = bytes.array();
+    for (int i = length - 1; i >= 0; i--) {
+      switch (in[i]) {
+      case ' ':
+      case '\t':
+      case '\n':
+      case 0x0B:
+      case '\f':
+      case '\r':
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.jobtype;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Replaces the contents of files that are read while they are being updated,
+ * such as job attachment files.
+ *
+ * The new contents are written to a temporary file next to the target, which
+ * is then renamed over it, so readers see either the old or the new contents
+ * but never a partial write.
+ */
+public class AtomicFileWriter {
+
+  private AtomicFileWriter() {
+  }
+
+  public static void write(File file, String contents) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    File temp = File.createTempFile(file.getName(), ".tmp", dir);
+    try {
+      OutputStream out = new FileOutputStream(temp);
+      try {
+        out.write(contents.getBytes(StandardCharsets.UTF_8));
+      } finally {
+        out.close();
+      }
+      try {
+        Files.move(temp.toPath(), file.toPath(),
+            StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp.toPath(), file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      temp.delete();
+    }
+  }
+}
@@ -21,12 +21,18 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.mapred.JobClient;
@@ -48,10 +54,50 @@ import azkaban.jobtype.pig.PigJobStats;
 import azkaban.utils.JSONUtils;
 import azkaban.utils.Props;
 
+/**
+ * Writes the DAG of the MapReduce jobs of a Pig script, with their progress
+ * and stats, to the job attachment file.
+ *
+ * Notifications only mark the nodes they changed. The file is written by a
+ * background thread, at most once per MIN_WRITE_INTERVAL_MS, so a burst of
+ * notifications results in a single write. Each write only serializes the
+ * nodes that changed since the previous one; the parts of a node that do not
+ * change once it has started (its place in the DAG, aliases, features and job
+ * configuration) are serialized once. The file is replaced atomically, see
+ * {@link AtomicFileWriter}.
+ */
 public class AzkabanPigListener implements PigProgressNotificationListener {
   private static Logger logger = Logger.getLogger(AzkabanPigListener.class);
+
+  private static final long MIN_WRITE_INTERVAL_MS = 5000;
+
+  private static final ScheduledExecutorService statsWriter = Executors
+      .newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "azk-pig-stats-writer");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
   private String statsFile;
 
+  // Held while building and writing the stats file, so writes do not
+  // interleave.
+  private final Object writeLock = new Object();
+
+  // Guarded by this. Serialized JSON of the started nodes, by node name, and
+  // the serialized fields of each node that do not change once it started.
+  private final Map<String, String> nodeJson =
+      new LinkedHashMap<String, String>();
+  private final Map<String, String> staticFieldsJson =
+      new HashMap<String, String>();
+  private final Set<PigJobDagNode> changedNodes = new HashSet<PigJobDagNode>();
+  private boolean changed;
+  private boolean writeScheduled;
+  private long lastWriteTime;
+
   private Map<String, PigJobDagNode> dagNodeNameMap =
       new HashMap<String, PigJobDagNode>();
   private Map<String, PigJobDagNode> dagNodeJobIdMap =
@@ -136,40 +182,99 @@ public class AzkabanPigListener implements PigProgressNotificationListener {
       ++level;
     }
 
-    updateJsonFile();
+    updateJsonFile(null);
   }
 
-  private Object buildJobStatsJson() {
-    List<Object> jsonObj = new ArrayList<Object>();
-    for (Map.Entry<String, PigJobDagNode> entry : dagNodeJobIdMap.entrySet()) {
+  private String buildJobStatsJson(PigJobDagNode node) {
+    String staticFields = staticFieldsJson.get(node.getName());
+    if (staticFields == null) {
       Map<String, Object> jobJsonObj = new HashMap<String, Object>();
-      PigJobDagNode node = entry.getValue();
       jobJsonObj.put("name", node.getName());
-      jobJsonObj.put("jobId", node.getJobId());
       jobJsonObj.put("parents", node.getParents());
       jobJsonObj.put("successors", node.getSuccessors());
       jobJsonObj.put("level", Integer.toString(node.getLevel()));
       jobJsonObj.put("aliases", node.getAliases());
       jobJsonObj.put("features", node.getFeatures());
-      PigJobStats pigStats = node.getJobStats();
-      if (pigStats != null) {
-        jobJsonObj.put("pigStats", pigStats.toJson());
-      }
-      jobJsonObj.put("state", node.getMapReduceJobState().toJson());
       jobJsonObj.put("conf",
           StatsUtils.propertiesToJson(node.getJobConfiguration()));
-      jsonObj.add(jobJsonObj);
+      staticFields = fieldsOf(jobJsonObj);
+      // The configuration is only known once the job could be looked up.
+      if (node.getJobConfiguration() != null) {
+        staticFieldsJson.put(node.getName(), staticFields);
+      }
     }
-    return jsonObj;
+
+    Map<String, Object> jobJsonObj = new HashMap<String, Object>();
+    jobJsonObj.put("jobId", node.getJobId());
+    PigJobStats pigStats = node.getJobStats();
+    if (pigStats != null) {
+      jobJsonObj.put("pigStats", pigStats.toJson());
+    }
+    if (node.getMapReduceJobState() != null) {
+      jobJsonObj.put("state", node.getMapReduceJobState().toJson());
+    }
+    return "{" + staticFields + "," + fieldsOf(jobJsonObj) + "}";
   }
 
-  private void updateJsonFile() {
-    File file = null;
-    try {
-      file = new File(statsFile);
-      JSONUtils.toJSON(buildJobStatsJson(), file);
-    } catch (Exception e) {
-      logger.error("Couldn't write stats file", e);
+  /**
+   * Serializes a non-empty map, without the enclosing braces.
+   */
+  private static String fieldsOf(Map<String, Object> jsonObj) {
+    String json = JSONUtils.toJSON(jsonObj);
+    return json.substring(1, json.length() - 1);
+  }
+
+  /**
+   * Marks a node as changed, and schedules a write of the stats file unless
+   * one is already pending.
+   */
+  private synchronized void updateJsonFile(PigJobDagNode node) {
+    if (node != null) {
+      changedNodes.add(node);
+    }
+    changed = true;
+    if (writeScheduled) {
+      return;
+    }
+    writeScheduled = true;
+    long delay =
+        Math.max(0, lastWriteTime + MIN_WRITE_INTERVAL_MS
+            - System.currentTimeMillis());
+    statsWriter.schedule(new Runnable() {
+      @Override
+      public void run() {
+        flush();
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Writes the pending changes to the stats file right away.
+   */
+  public void flush() {
+    synchronized (writeLock) {
+      String json;
+      synchronized (this) {
+        writeScheduled = false;
+        if (!changed) {
+          return;
+        }
+        for (Iterator<PigJobDagNode> it = changedNodes.iterator(); it
+            .hasNext();) {
+          PigJobDagNode node = it.next();
+          nodeJson.put(node.getName(), buildJobStatsJson(node));
+          it.remove();
+        }
+        json = "[" + StringUtils.join(nodeJson.values(), ",") + "]";
+        changed = false;
+        lastWriteTime = System.currentTimeMillis();
+      }
+
+      try {
+        AtomicFileWriter.write(new File(statsFile), json);
+      } catch (Exception e) {
+        logger.error("Couldn't write stats file", e);
+      }
     }
   }
 
@@ -189,7 +294,7 @@ public class AzkabanPigListener implements PigProgressNotificationListener {
     }
 
     addCompletedJobStats(node, stats);
-    updateJsonFile();
+    updateJsonFile(node);
   }
 
   @Override
@@ -201,7 +306,7 @@ public class AzkabanPigListener implements PigProgressNotificationListener {
       return;
     }
     addCompletedJobStats(node, stats);
-    updateJsonFile();
+    updateJsonFile(node);
   }
 
   @Override
@@ -227,10 +332,12 @@ public class AzkabanPigListener implements PigProgressNotificationListener {
                   + "found (" + jobStats.getName() + ") for jobId "
                   + assignedJobId);
         } else {
-          node.setJobId(assignedJobId);
+          synchronized (this) {
+            node.setJobId(assignedJobId);
+          }
           addMapReduceJobState(node);
           dagNodeJobIdMap.put(node.getJobId(), node);
-          updateJsonFile();
+          updateJsonFile(node);
         }
       }
     }
@@ -248,6 +355,7 @@ public class AzkabanPigListener implements PigProgressNotificationListener {
     logger.info("launchCompletedNotification");
     logger.info("The script id is " + arg0);
     logger.info("Finished " + arg1 + " jobs successfully");
+    flush();
   }
 
   @Override
@@ -273,16 +381,17 @@ public class AzkabanPigListener implements PigProgressNotificationListener {
       if (node.getJobId() == null) {
         continue;
       }
-      addMapReduceJobState(node);
       // Only push job progress events for a completed job once.
+      if (completedJobIds.contains(node.getJobId())) {
+        continue;
+      }
+      addMapReduceJobState(node);
       if (node.getMapReduceJobState() != null
-          && !completedJobIds.contains(node.getJobId())) {
-        if (node.getMapReduceJobState().isComplete()) {
-          completedJobIds.add(node.getJobId());
-        }
+          && node.getMapReduceJobState().isComplete()) {
+        completedJobIds.add(node.getJobId());
       }
+      updateJsonFile(node);
     }
-    updateJsonFile();
   }
 
   private static String[] toArray(String string) {
@@ -303,11 +412,15 @@ public class AzkabanPigListener implements PigProgressNotificationListener {
       JobID jobID = runningJob.getID();
       TaskReport[] mapTaskReport = jobClient.getMapTaskReports(jobID);
       TaskReport[] reduceTaskReport = jobClient.getReduceTaskReports(jobID);
-      node.setMapReduceJobState(new MapReduceJobState(runningJob,
-          mapTaskReport, reduceTaskReport));
+      MapReduceJobState state =
+          new MapReduceJobState(runningJob, mapTaskReport, reduceTaskReport);
 
+      Properties jobConfProperties = null;
       if (node.getJobConfiguration() == null) {
-        Properties jobConfProperties = StatsUtils.getJobConf(runningJob);
+        jobConfProperties = StatsUtils.getJobConf(runningJob);
+      }
+      synchronized (this) {
+        node.setMapReduceJobState(state);
         if (jobConfProperties != null && jobConfProperties.size() > 0) {
           node.setJobConfiguration(jobConfProperties);
         }
@@ -318,6 +431,8 @@ public class AzkabanPigListener implements PigProgressNotificationListener {
   }
 
   private void addCompletedJobStats(PigJobDagNode node, JobStats stats) {
-    node.setJobStats(stats);
+    synchronized (this) {
+      node.setJobStats(stats);
+    }
   }
 }
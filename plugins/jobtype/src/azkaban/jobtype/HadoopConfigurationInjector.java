@@ -50,6 +50,16 @@ public class HadoopConfigurationInjector {
   public static final String INJECT_PREFIX = "hadoop-inject.";
 
   public static final String WORKFLOW_ID_SEPERATOR = "$";
+
+  // Hadoop property holding the YARN application tags of MapReduce jobs.
+  public static final String MAPREDUCE_JOB_TAGS = "mapreduce.job.tags";
+
+  // Prefix of the tag added to every YARN application an Azkaban job launches.
+  public static final String APPLICATION_TAG_PREFIX = "azkaban-";
+
+  // YARN lower cases tags and rejects those longer than this.
+  private static final int MAX_APPLICATION_TAG_LENGTH = 100;
+
   /*
    * To be called by the forked process to load the generated links and Hadoop
    * configuration properties to automatically inject.
@@ -146,6 +156,67 @@ public class HadoopConfigurationInjector {
       addHadoopProperty(props, propertyName);
     }
     addHadoopWorkflowProperty(props, MRJobConfig.WORKFLOW_ID);
+
+    String tag = getApplicationTag(props);
+    if (tag != null) {
+      props.put(INJECT_PREFIX + MAPREDUCE_JOB_TAGS,
+          addTag(props.get(INJECT_PREFIX + MAPREDUCE_JOB_TAGS), tag));
+    }
+  }
+
+  /**
+   * Returns the YARN application tag of the applications launched by this
+   * attempt of the job, so that they can be looked up on the ResourceManager
+   * instead of in the job log. The tag is derived from the execution id, the
+   * job's path in the flow and the attempt number, and is the same wherever
+   * it is computed.
+   *
+   * @param props The Azkaban properties
+   * @return the tag, or null if the properties carry no execution id
+   */
+  public static String getApplicationTag(Props props) {
+    String execId = props.get(CommonJobProperties.EXEC_ID);
+    String jobPath = props.get(CommonJobProperties.NESTED_FLOW_PATH);
+    if ((jobPath == null) || (jobPath.length() == 0)) {
+      jobPath = props.get(CommonJobProperties.JOB_ID);
+    }
+    if (execId == null || jobPath == null) {
+      return null;
+    }
+
+    String tag = APPLICATION_TAG_PREFIX + execId + "-" + jobPath + "-"
+        + props.getInt(CommonJobProperties.JOB_ATTEMPT, 0);
+    StringBuilder sanitized = new StringBuilder(tag.length());
+    for (char c : tag.toLowerCase().toCharArray()) {
+      boolean allowed = (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+          || c == '-' || c == '_' || c == '.';
+      sanitized.append(allowed ? c : '_');
+    }
+    if (sanitized.length() > MAX_APPLICATION_TAG_LENGTH) {
+      // Keep long job paths apart by a hash of the whole tag.
+      String hash = Integer.toHexString(tag.hashCode());
+      sanitized.setLength(MAX_APPLICATION_TAG_LENGTH - hash.length() - 1);
+      sanitized.append('-').append(hash);
+    }
+    return sanitized.toString();
+  }
+
+  /**
+   * Adds a tag to a comma separated list of tags, unless it is already there.
+   *
+   * @param tags The existing tags, may be null or empty
+   * @param tag The tag to add
+   */
+  public static String addTag(String tags, String tag) {
+    if ((tags == null) || (tags.trim().length() == 0)) {
+      return tag;
+    }
+    for (String existing : tags.split(",")) {
+      if (existing.trim().equalsIgnoreCase(tag)) {
+        return tags;
+      }
+    }
+    return tags + "," + tag;
   }
 
   /**
@@ -55,6 +55,10 @@ public class HadoopHiveJob extends JavaProcessJob {
 
   private HadoopSecurityManager hadoopSecurityManager;
 
+  private volatile ApplicationIdTracker appIdTracker;
+
+  private YarnProgressReporter progressReporter;
+
   private boolean debug = false;
 
   public HadoopHiveJob(String jobid, Props sysProps, Props jobProps, Logger log)
@@ -96,13 +100,24 @@ public class HadoopHiveJob extends JavaProcessJob {
           tokenFile.getAbsolutePath());
     }
 
+    appIdTracker = new ApplicationIdTracker(new File(getLogFilePath()));
     try {
-      super.run();  
+      appIdTracker.start();
+      progressReporter =
+          YarnProgressReporter.forJob(appIdTracker, getJobProps(), tokenFile);
+      if (progressReporter != null) {
+        progressReporter.start();
+      }
+      super.run();
     } catch (Throwable t) {
       t.printStackTrace();
       getLog().error("caught error running the job");
       throw new Exception(t);
     } finally {
+      if (progressReporter != null) {
+        progressReporter.stop();
+      }
+      appIdTracker.stop();
       if (tokenFile != null) {
         HadoopJobUtils.cancelHadoopTokens(hadoopSecurityManager, userToProxy, tokenFile, getLog());
         if (tokenFile.exists()) {
@@ -281,12 +296,20 @@ public class HadoopHiveJob extends JavaProcessJob {
 
     info("Cancel called.  Killing the Hive launched MR jobs on the cluster");
 
-    String azExecId = jobProps.getString(CommonJobProperties.EXEC_ID);
-    final String logFilePath =
-        String.format("%s/_job.%s.%s.log", getWorkingDirectory(), azExecId,
-            getId());
+    final String logFilePath = getLogFilePath();
     info("log file path is: " + logFilePath);
 
-    HadoopJobUtils.proxyUserKillAllSpawnedHadoopJobs(logFilePath, jobProps, tokenFile, getLog());
+    ApplicationIdTracker tracker = appIdTracker;
+    if (tracker == null) {
+      tracker = new ApplicationIdTracker(new File(logFilePath));
+    }
+    HadoopJobUtils.proxyUserKillAllSpawnedHadoopJobs(tracker, jobProps,
+        tokenFile, getLog());
+  }
+
+  private String getLogFilePath() {
+    String azExecId = jobProps.getString(CommonJobProperties.EXEC_ID);
+    return String.format("%s/_job.%s.%s.log", getWorkingDirectory(),
+        azExecId, getId());
   }
 }
@@ -58,6 +58,8 @@ public class HadoopJavaJob extends JavaProcessJob {
 
   private HadoopSecurityManager hadoopSecurityManager;
 
+  private volatile ApplicationIdTracker appIdTracker;
+
   public HadoopJavaJob(String jobid, Props sysProps, Props jobProps, Logger log)
       throws RuntimeException {
     super(jobid, sysProps, jobProps, log);
@@ -184,12 +186,15 @@ public class HadoopJavaJob extends JavaProcessJob {
       getJobProps().put("env." + HADOOP_TOKEN_FILE_LOCATION,
           tokenFile.getAbsolutePath());
     }
+    appIdTracker = new ApplicationIdTracker(new File(getLogFilePath()));
+    appIdTracker.start();
     try {
       super.run();
     } catch (Exception e) {
       e.printStackTrace();
       throw new Exception(e);
     } finally {
+      appIdTracker.stop();
       if (tokenFile != null) {
         try {
           HadoopJobUtils.cancelHadoopTokens(hadoopSecurityManager, userToProxy,
@@ -248,13 +253,20 @@ public class HadoopJavaJob extends JavaProcessJob {
 
     info("Cancel called.  Killing the launched MR jobs on the cluster");
 
-    String azExecId = jobProps.getString(CommonJobProperties.EXEC_ID);
-    final String logFilePath =
-        String.format("%s/_job.%s.%s.log", getWorkingDirectory(), azExecId,
-            getId());
+    final String logFilePath = getLogFilePath();
     info("log file path is: " + logFilePath);
 
-    HadoopJobUtils.proxyUserKillAllSpawnedHadoopJobs(logFilePath, jobProps,
+    ApplicationIdTracker tracker = appIdTracker;
+    if (tracker == null) {
+      tracker = new ApplicationIdTracker(new File(logFilePath));
+    }
+    HadoopJobUtils.proxyUserKillAllSpawnedHadoopJobs(tracker, jobProps,
         tokenFile, getLog());
   }
+
+  private String getLogFilePath() {
+    String azExecId = jobProps.getString(CommonJobProperties.EXEC_ID);
+    return String.format("%s/_job.%s.%s.log", getWorkingDirectory(),
+        azExecId, getId());
+  }
 }
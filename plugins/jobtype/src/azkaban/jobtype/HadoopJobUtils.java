@@ -16,29 +16,38 @@
 
 package azkaban.jobtype;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.regex.Matcher;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.ApplicationReport;
+import org.apache.hadoop.yarn.api.records.YarnApplicationState;
 import org.apache.hadoop.yarn.client.api.YarnClient;
-import org.apache.hadoop.yarn.conf.YarnConfiguration;
 import org.apache.hadoop.yarn.exceptions.YarnException;
 import org.apache.log4j.Logger;
 
@@ -85,6 +94,69 @@ public class HadoopJobUtils {
   // Azkaban built in property name
   public static final String JVM_ARGS = "jvm.args";
 
+  // how many applications are killed at the same time, across all jobs
+  private static final int KILL_THREADS = 8;
+
+  // how long to wait for a killed application to terminate
+  private static final long KILL_TIMEOUT_MS = 30 * 1000L;
+
+  private static final long YARN_CLIENT_MAX_IDLE_MS = 10 * 60 * 1000L;
+
+  private static final long YARN_CLIENT_MAX_LIFETIME_MS = 60 * 60 * 1000L;
+
+  /**
+   * Holds the shared YarnClients and kill threads, so that they are only created once they are
+   * needed, and so that loading this class does not need YARN on the classpath.
+   */
+  private static class YarnResources {
+    // the states of applications that can still be killed
+    static final EnumSet<YarnApplicationState> activeStates = EnumSet.of(
+            YarnApplicationState.NEW, YarnApplicationState.NEW_SAVING,
+            YarnApplicationState.SUBMITTED, YarnApplicationState.ACCEPTED,
+            YarnApplicationState.RUNNING);
+
+    // ApplicationReport.getApplicationTags(), which only exists from Hadoop 2.4 on
+    static final Method getApplicationTags = findGetApplicationTags();
+
+    static final YarnClientPool clientPool = new YarnClientPool(YARN_CLIENT_MAX_IDLE_MS,
+            YARN_CLIENT_MAX_LIFETIME_MS);
+
+    static final YarnApplicationKiller killer = new YarnApplicationKiller(newKillExecutor(),
+            KILL_TIMEOUT_MS);
+
+    private static Method findGetApplicationTags() {
+      try {
+        return ApplicationReport.class.getMethod("getApplicationTags");
+      } catch (NoSuchMethodException e) {
+        return null;
+      }
+    }
+
+    private static ExecutorService newKillExecutor() {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(KILL_THREADS, KILL_THREADS, 60,
+              TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                  Thread thread = new Thread(r, "azk-yarn-kill-" + count.incrementAndGet());
+                  thread.setDaemon(true);
+                  return thread;
+                }
+              });
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+  }
+
+  /**
+   * The pool of YarnClients that is shared by everything in the jobtype process that talks to the
+   * ResourceManager.
+   */
+  static YarnClientPool getYarnClientPool() {
+    return YarnResources.clientPool;
+  }
+
   /**
    * Invalidates a Hadoop authentication token file
    * 
@@ -341,6 +413,23 @@ public class HadoopJobUtils {
  * @param log a usable logger
  */
   public static void proxyUserKillAllSpawnedHadoopJobs(final String logFilePath, Props jobProps, File tokenFile, final Logger log) {
+    proxyUserKillAllSpawnedHadoopJobs(new ApplicationIdTracker(new File(logFilePath)), jobProps,
+            tokenFile, log);
+  }
+
+  /**
+   * Same as {@link #proxyUserKillAllSpawnedHadoopJobs(String, Props, File, Logger)}, but takes the
+   * application ids from a tracker that has been following the log, so only the tail of the log
+   * needs to be read before the kills are issued.
+   * 
+   * @param tracker tracker following the Azkaban log file
+   * @param jobProps Azkaban job props
+   * @param tokenFile Pass in the tokenFile if value is known.  It is ok to skip if the token file is in the environmental variable
+   * @param log a usable logger
+   */
+  public static void proxyUserKillAllSpawnedHadoopJobs(final ApplicationIdTracker tracker,
+          Props jobProps, File tokenFile, final Logger log) {
+    final String applicationTag = HadoopConfigurationInjector.getApplicationTag(jobProps);
     Properties properties = new Properties();
     properties.putAll(jobProps.getFlattened());
 
@@ -352,12 +441,12 @@ public class HadoopJobUtils {
         proxyUser.doAs(new PrivilegedExceptionAction<Void>() {
           @Override
           public Void run() throws Exception {
-            HadoopJobUtils.killAllSpawnedHadoopJobs(logFilePath, log);
+            HadoopJobUtils.killAllSpawnedHadoopJobs(tracker, applicationTag, log);
             return null;
           }
         });
       } else {
-        HadoopJobUtils.killAllSpawnedHadoopJobs(logFilePath, log);
+        HadoopJobUtils.killAllSpawnedHadoopJobs(tracker, applicationTag, log);
       }
     } catch (Throwable t) {
       log.warn("something happened while trying to kill all spawned jobs", t);
@@ -376,28 +465,199 @@ public class HadoopJobUtils {
    */
   public static Set<String> killAllSpawnedHadoopJobs(String logFilePath, Logger log) {
     Set<String> allSpawnedJobs = findApplicationIdFromLog(logFilePath, log);
-    log.info("applicationIds to kill: " + allSpawnedJobs);
+    tryKillApplications(allSpawnedJobs, log);
+    return allSpawnedJobs;
+  }
 
-    for (String appId : allSpawnedJobs) {
+  /**
+   * Kills all the hadoop jobs that carry the given application tag, or that the tracker found in
+   * the log. The tracker is brought up to date with the end of the log first. If the log cannot be
+   * read, or the ResourceManager cannot be asked for tagged applications, the jobs found the other
+   * way are still killed.
+   * 
+   * Only works with Hadoop2
+   * 
+   * @param tracker
+   * @param applicationTag tag from {@link HadoopConfigurationInjector#getApplicationTag(Props)},
+   *          may be null
+   * @param log
+   * @return a Set<String>. The set will contain the applicationIds that this job tried to kill.
+   */
+  public static Set<String> killAllSpawnedHadoopJobs(ApplicationIdTracker tracker,
+          String applicationTag, Logger log) {
+    Set<String> allSpawnedJobs;
+    try {
+      allSpawnedJobs = tracker.update();
+    } catch (IOException e) {
+      log.error("Error while trying to find applicationId for log", e);
+      allSpawnedJobs = tracker.getApplicationIds();
+    }
+    if (applicationTag != null) {
       try {
-        killJobOnCluster(appId, log);
-      } catch (Throwable t) {
-        log.warn("something happened while trying to kill this job: " + appId, t);
+        allSpawnedJobs.addAll(findApplicationIdsByTag(applicationTag, YarnResources.activeStates, log));
+      } catch (Exception e) {
+        log.warn("Error while trying to find applications tagged " + applicationTag, e);
       }
     }
-
+    tryKillApplications(allSpawnedJobs, log);
     return allSpawnedJobs;
   }
 
+  /**
+   * Asks the ResourceManager, in a single call, for the applications in the given states that
+   * carry the given tag. Application tags need Hadoop 2.4 or later; with older Hadoop libraries
+   * this always returns an empty set.
+   * 
+   * @param applicationTag
+   * @param states
+   * @param log
+   * @return a Set. May be empty, but will never be null
+   * @throws IOException
+   * @throws YarnException
+   */
+  public static Set<String> findApplicationIdsByTag(String applicationTag,
+          EnumSet<YarnApplicationState> states, Logger log) throws IOException, YarnException {
+    Set<String> applicationIds = new HashSet<String>();
+    if (YarnResources.getApplicationTags == null) {
+      log.debug("application tags are not supported by this version of Hadoop");
+      return applicationIds;
+    }
+
+    YarnClient yarnClient = YarnResources.clientPool.borrow(UserGroupInformation.getCurrentUser());
+    try {
+      for (ApplicationReport report : yarnClient.getApplications(states)) {
+        if (getApplicationTags(report).contains(applicationTag)) {
+          applicationIds.add(report.getApplicationId().toString());
+        }
+      }
+    } catch (IOException e) {
+      YarnResources.clientPool.invalidate(yarnClient);
+      yarnClient = null;
+      throw e;
+    } finally {
+      if (yarnClient != null) {
+        YarnResources.clientPool.release(yarnClient);
+      }
+    }
+    log.info("applications tagged " + applicationTag + ": " + applicationIds);
+    return applicationIds;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Set<String> getApplicationTags(ApplicationReport report) {
+    try {
+      Set<String> tags = (Set<String>) YarnResources.getApplicationTags.invoke(report);
+      return tags == null ? Collections.<String> emptySet() : tags;
+    } catch (Exception e) {
+      return Collections.emptySet();
+    }
+  }
+
+  private static void tryKillApplications(Set<String> applicationIds, Logger log) {
+    try {
+      killApplications(applicationIds, log);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.warn("interrupted while trying to kill jobs: " + applicationIds, e);
+    } catch (Throwable t) {
+      log.warn("something happened while trying to kill jobs: " + applicationIds, t);
+    }
+  }
+
+  /**
+   * Kills the given applications in parallel, as the current user, and waits for each of them to
+   * terminate. The YarnClient of the current user is reused across calls. If it fails to reach
+   * the ResourceManager, the applications it failed on are retried once with a new client.
+   * Malformed application ids are logged and skipped.
+   *
+   * Since it waits for the applications to terminate, this blocks for up to KILL_TIMEOUT_MS (30
+   * seconds) per batch, i.e. up to twice that if the retry is needed. Job cancel() calls it and
+   * blocks as long.
+   * 
+   * @param applicationIds
+   * @param log
+   * @return what happened to each application, in the order given
+   * @throws IOException if no YarnClient could be created
+   * @throws InterruptedException
+   */
+  public static Map<String, YarnApplicationKiller.Result> killApplications(
+          Collection<String> applicationIds, Logger log) throws IOException, InterruptedException {
+    log.info("applicationIds to kill: " + applicationIds);
+    Map<ApplicationId, String> names = new LinkedHashMap<ApplicationId, String>();
+    for (String applicationId : applicationIds) {
+      try {
+        names.put(YarnApplicationKiller.parseApplicationId(applicationId), applicationId);
+      } catch (IllegalArgumentException e) {
+        log.warn("not killing malformed application id: " + applicationId);
+      }
+    }
+    Map<String, YarnApplicationKiller.Result> results =
+            new LinkedHashMap<String, YarnApplicationKiller.Result>();
+    if (names.isEmpty()) {
+      return results;
+    }
+
+    UserGroupInformation ugi = UserGroupInformation.getCurrentUser();
+    Map<ApplicationId, YarnApplicationKiller.Result> killed =
+            killApplications(ugi, names.keySet());
+    List<ApplicationId> retries = new ArrayList<ApplicationId>();
+    for (YarnApplicationKiller.Result result : killed.values()) {
+      if (result.getError() instanceof IOException) {
+        retries.add(result.getApplicationId());
+      }
+    }
+    if (!retries.isEmpty()) {
+      log.info("retrying with a new YarnClient: " + retries);
+      killed.putAll(killApplications(ugi, retries));
+    }
+
+    for (YarnApplicationKiller.Result result : killed.values()) {
+      String applicationId = names.get(result.getApplicationId());
+      results.put(applicationId, result);
+      switch (result.getOutcome()) {
+      case FAILED:
+      case TIMED_OUT:
+        log.warn("could not kill application " + applicationId + ": " + result,
+                result.getError());
+        break;
+      default:
+        log.info("application " + applicationId + ": " + result);
+      }
+    }
+    return results;
+  }
+
+  private static Map<ApplicationId, YarnApplicationKiller.Result> killApplications(
+          UserGroupInformation ugi, Collection<ApplicationId> applicationIds) throws IOException,
+          InterruptedException {
+    YarnClient yarnClient = YarnResources.clientPool.borrow(ugi);
+    boolean broken = false;
+    try {
+      Map<ApplicationId, YarnApplicationKiller.Result> results =
+              YarnResources.killer.kill(yarnClient, applicationIds);
+      for (YarnApplicationKiller.Result result : results.values()) {
+        broken |= result.getError() instanceof IOException;
+      }
+      return results;
+    } finally {
+      if (broken) {
+        YarnResources.clientPool.invalidate(yarnClient);
+      } else {
+        YarnResources.clientPool.release(yarnClient);
+      }
+    }
+  }
+
   /**
    * <pre>
-   * Takes in a log file, will grep every line to look for the application_id pattern.
+   * Takes in a log file, will look for every token that starts with the application_id pattern.
    * If it finds multiple, it will return all of them, de-duped (this is possible in the case of pig jobs)
    * This can be used in conjunction with the @killJobOnCluster method in this file.
    * </pre>
    * 
    * @param logFilePath
    * @return a Set. May be empty, but will never be null
+   * @see ApplicationIdTracker
    */
   public static Set<String> findApplicationIdFromLog(String logFilePath, Logger log) {
 
@@ -414,42 +674,18 @@ public class HadoopJobUtils {
       throw new IllegalArgumentException("unable to read the logFilePath specified: " + logFilePath);
     }
 
-    BufferedReader br = null;
-    Set<String> applicationIds = new HashSet<String>();
-
+    ApplicationIdTracker tracker = new ApplicationIdTracker(logFile);
     try {
-      br = new BufferedReader(new FileReader(logFile));
-      String line;
-
-      // finds all the application IDs
-      while ((line = br.readLine()) != null) {
-        String [] inputs = line.split("\\s");
-        if (inputs != null) {
-          for (String input : inputs) {
-            Matcher m = APPLICATION_ID_PATTERN.matcher(input);
-            if (m.find()) {
-              String appId = m.group(1);
-              applicationIds.add(appId);
-            }
-          }
-        }
-      }
+      return tracker.update();
     } catch (IOException e) {
       log.error("Error while trying to find applicationId for log", e);
-    } finally {
-      try {
-        if (br != null)
-          br.close();
-      } catch (Exception e) {
-        // do nothing
-      }
+      return tracker.getApplicationIds();
     }
-    return applicationIds;
   }
 
   /**
    * <pre>
-   * Uses YarnClient to kill the job on HDFS.
+   * Uses the pooled YarnClient of the current user to kill the job on HDFS.
    * Using JobClient only works partially:
    *   If yarn container has started but spark job haven't, it will kill
    *   If spark job has started, the cancel will hang until the spark job is complete
@@ -463,18 +699,21 @@ public class HadoopJobUtils {
   public static void killJobOnCluster(String applicationId, Logger log) throws YarnException,
           IOException {
 
-    YarnConfiguration yarnConf = new YarnConfiguration();
-    YarnClient yarnClient = YarnClient.createYarnClient();
-    yarnClient.init(yarnConf);
-    yarnClient.start();
-
-    String[] split = applicationId.split("_");
-    ApplicationId aid = ApplicationId.newInstance(Long.parseLong(split[1]),
-            Integer.parseInt(split[2]));
-
-    log.info("start klling application: " + aid);
-    yarnClient.killApplication(aid);
-    log.info("successfully killed application: " + aid);
+    ApplicationId aid = YarnApplicationKiller.parseApplicationId(applicationId);
+    YarnClient yarnClient = YarnResources.clientPool.borrow(UserGroupInformation.getCurrentUser());
+    try {
+      log.info("start klling application: " + aid);
+      yarnClient.killApplication(aid);
+      log.info("successfully killed application: " + aid);
+    } catch (IOException e) {
+      YarnResources.clientPool.invalidate(yarnClient);
+      yarnClient = null;
+      throw e;
+    } finally {
+      if (yarnClient != null) {
+        YarnResources.clientPool.release(yarnClient);
+      }
+    }
   }
 
   /**
@@ -71,6 +71,8 @@ public class HadoopPigJob extends JavaProcessJob {
 
   private HadoopSecurityManager hadoopSecurityManager;
 
+  private volatile ApplicationIdTracker appIdTracker;
+
   private File pigLogFile = null;
 
   public HadoopPigJob(String jobid, Props sysProps, Props jobProps, Logger log)
@@ -118,6 +120,8 @@ public class HadoopPigJob extends JavaProcessJob {
       getJobProps().put("env." + HADOOP_TOKEN_FILE_LOCATION,
           tokenFile.getAbsolutePath());
     }
+    appIdTracker = new ApplicationIdTracker(new File(getLogFilePath()));
+    appIdTracker.start();
     try {
       super.run();
     } catch (Throwable t) {
@@ -125,6 +129,7 @@ public class HadoopPigJob extends JavaProcessJob {
       getLog().error("caught error running the job", t);
       throw new Exception(t);
     } finally {
+      appIdTracker.stop();
       if (tokenFile != null) {
         HadoopJobUtils.cancelHadoopTokens(hadoopSecurityManager, userToProxy,
             tokenFile, getLog());
@@ -376,13 +381,20 @@ public class HadoopPigJob extends JavaProcessJob {
 
     info("Cancel called.  Killing the Pig launched MR jobs on the cluster");
 
-    String azExecId = jobProps.getString(CommonJobProperties.EXEC_ID);
-    final String logFilePath =
-        String.format("%s/_job.%s.%s.log", getWorkingDirectory(), azExecId,
-            getId());
+    final String logFilePath = getLogFilePath();
     info("log file path is: " + logFilePath);
 
-    HadoopJobUtils.proxyUserKillAllSpawnedHadoopJobs(logFilePath, jobProps,
+    ApplicationIdTracker tracker = appIdTracker;
+    if (tracker == null) {
+      tracker = new ApplicationIdTracker(new File(logFilePath));
+    }
+    HadoopJobUtils.proxyUserKillAllSpawnedHadoopJobs(tracker, jobProps,
         tokenFile, getLog());
   }
+
+  private String getLogFilePath() {
+    String azExecId = jobProps.getString(CommonJobProperties.EXEC_ID);
+    return String.format("%s/_job.%s.%s.log", getWorkingDirectory(),
+        azExecId, getId());
+  }
 }
@@ -82,7 +82,12 @@ public class HadoopSecurePigWrapper {
   public static void runPigJob(String[] args) throws Exception {
     PigStats stats = null;
     if (props.getBoolean("pig.listener.visualizer", false) == true) {
-      stats = PigRunner.run(args, new AzkabanPigListener(props));
+      AzkabanPigListener listener = new AzkabanPigListener(props);
+      try {
+        stats = PigRunner.run(args, listener);
+      } finally {
+        listener.flush();
+      }
     } else {
       stats = PigRunner.run(args, null);
     }
@@ -50,6 +50,8 @@ public class HadoopShell extends ProcessJob {
 
 	private HadoopSecurityManager hadoopSecurityManager;
 
+	private volatile ApplicationIdTracker appIdTracker;
+
 	public HadoopShell(String jobid, Props sysProps, Props jobProps, Logger log) throws RuntimeException {
 		super(jobid, sysProps, jobProps, log);
 
@@ -82,12 +84,15 @@ public class HadoopShell extends ProcessJob {
 			tokenFile = HadoopJobUtils.getHadoopTokens(hadoopSecurityManager, props, getLog());
 			getJobProps().put("env." + HADOOP_TOKEN_FILE_LOCATION, tokenFile.getAbsolutePath());
 		}
+		appIdTracker = new ApplicationIdTracker(new File(getLogFilePath()));
+		appIdTracker.start();
 		try {
 			super.run();
 		} catch (Exception e) {
 			e.printStackTrace();
 			throw new Exception(e);
 		} finally {
+			appIdTracker.stop();
 			if (tokenFile != null) {
 				try {
 					HadoopJobUtils.cancelHadoopTokens(hadoopSecurityManager, userToProxy, tokenFile, getLog());
@@ -137,10 +142,18 @@ public class HadoopShell extends ProcessJob {
 
 		info("Cancel called.  Killing the launched Hadoop jobs on the cluster");
 
-		String azExecId = jobProps.getString(CommonJobProperties.EXEC_ID);
-		final String logFilePath = String.format("%s/_job.%s.%s.log", getWorkingDirectory(), azExecId, getId());
+		final String logFilePath = getLogFilePath();
 		info("log file path is: " + logFilePath);
 
-		HadoopJobUtils.proxyUserKillAllSpawnedHadoopJobs(logFilePath, jobProps, tokenFile, getLog());
+		ApplicationIdTracker tracker = appIdTracker;
+		if (tracker == null) {
+			tracker = new ApplicationIdTracker(new File(logFilePath));
+		}
+		HadoopJobUtils.proxyUserKillAllSpawnedHadoopJobs(tracker, jobProps, tokenFile, getLog());
+	}
+
+	private String getLogFilePath() {
+		String azExecId = jobProps.getString(CommonJobProperties.EXEC_ID);
+		return String.format("%s/_job.%s.%s.log", getWorkingDirectory(), azExecId, getId());
 	}
 }
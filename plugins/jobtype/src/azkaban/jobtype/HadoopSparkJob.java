@@ -137,6 +137,8 @@ public class HadoopSparkJob extends JavaProcessJob {
   // Env var to be passed to {@HadoopSecureSparkWrapper} for the value of minimum
   // memory size in GB
   public static final String SPARK_MIN_MEM_SIZE_ENV_VAR = "SPARK_MIN_MEM_GB_SIZE";
+  // Spark conf holding the YARN application tags of the Spark application
+  public static final String SPARK_YARN_TAGS = "spark.yarn.tags";
 
   // security variables
   private String userToProxy = null;
@@ -149,6 +151,10 @@ public class HadoopSparkJob extends JavaProcessJob {
 
   private HadoopSecurityManager hadoopSecurityManager;
 
+  private volatile ApplicationIdTracker appIdTracker;
+
+  private YarnProgressReporter progressReporter;
+
   public HadoopSparkJob(String jobid, Props sysProps, Props jobProps, Logger log) {
     super(jobid, sysProps, jobProps, log);
 
@@ -173,6 +179,7 @@ public class HadoopSparkJob extends JavaProcessJob {
   public void run() throws Exception {
     HadoopConfigurationInjector.prepareResourcesToInject(getJobProps(),
         getWorkingDirectory());
+    addApplicationTag(getJobProps());
 
     if (shouldProxy && obtainTokens) {
       userToProxy = getJobProps().getString(USER_TO_PROXY);
@@ -223,13 +230,24 @@ public class HadoopSparkJob extends JavaProcessJob {
       getJobProps().put("env." + SPARK_MIN_MEM_VCORE_RATIO_ENV_VAR, minMemVcoreRatio);
       getJobProps().put("env." + SPARK_MIN_MEM_SIZE_ENV_VAR, minMemSize);
     }
+    appIdTracker = new ApplicationIdTracker(new File(getLogFilePath()));
     try {
+      appIdTracker.start();
+      progressReporter =
+          YarnProgressReporter.forJob(appIdTracker, getJobProps(), tokenFile);
+      if (progressReporter != null) {
+        progressReporter.start();
+      }
       super.run();
     } catch (Throwable t) {
       t.printStackTrace();
       getLog().error("caught error running the job");
       throw new Exception(t);
     } finally {
+      if (progressReporter != null) {
+        progressReporter.stop();
+      }
+      appIdTracker.stop();
       if (tokenFile != null) {
         HadoopJobUtils.cancelHadoopTokens(hadoopSecurityManager, userToProxy,
             tokenFile, getLog());
@@ -240,6 +258,21 @@ public class HadoopSparkJob extends JavaProcessJob {
     }
   }
 
+  /**
+   * Tags the Spark application the same way HadoopConfigurationInjector tags
+   * MapReduce jobs, so that cancel can find it on the ResourceManager. Spark
+   * does not read the injected Hadoop configuration for this, so the tag is
+   * passed to spark-submit as a --conf.
+   */
+  static void addApplicationTag(Props jobProps) {
+    String tag = HadoopConfigurationInjector.getApplicationTag(jobProps);
+    if (tag != null) {
+      String key = SparkJobArg.SPARK_CONF_PREFIX.azPropName + SPARK_YARN_TAGS;
+      jobProps.put(key,
+          HadoopConfigurationInjector.addTag(jobProps.get(key), tag));
+    }
+  }
+
   @Override
   protected String getJavaClass() {
     return HADOOP_SECURE_SPARK_WRAPPER;
@@ -582,13 +615,20 @@ public class HadoopSparkJob extends JavaProcessJob {
 
     info("Cancel called.  Killing the Spark job on the cluster");
 
-    String azExecId = jobProps.getString(CommonJobProperties.EXEC_ID);
-    final String logFilePath =
-        String.format("%s/_job.%s.%s.log", getWorkingDirectory(), azExecId,
-            getId());
+    final String logFilePath = getLogFilePath();
     info("log file path is: " + logFilePath);
 
-    HadoopJobUtils.proxyUserKillAllSpawnedHadoopJobs(logFilePath, jobProps,
+    ApplicationIdTracker tracker = appIdTracker;
+    if (tracker == null) {
+      tracker = new ApplicationIdTracker(new File(logFilePath));
+    }
+    HadoopJobUtils.proxyUserKillAllSpawnedHadoopJobs(tracker, jobProps,
         tokenFile, getLog());
   }
+
+  private String getLogFilePath() {
+    String azExecId = jobProps.getString(CommonJobProperties.EXEC_ID);
+    return String.format("%s/_job.%s.%s.log", getWorkingDirectory(),
+        azExecId, getId());
+  }
 }
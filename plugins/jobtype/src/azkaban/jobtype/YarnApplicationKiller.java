@@ -0,0 +1,211 @@
+/*
+ * Copyright 2015 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.jobtype;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.YarnApplicationState;
+import org.apache.hadoop.yarn.client.api.YarnClient;
+import org.apache.hadoop.yarn.exceptions.ApplicationNotFoundException;
+
+/**
+ * Kills YARN applications in parallel and waits for the ResourceManager to
+ * report each of them as terminated.
+ *
+ * Kill requests run on a shared, bounded executor. They are made as the user
+ * the YarnClient was started as, since its ResourceManager proxy keeps the
+ * credentials it was created with. After the kill request, the application
+ * report is polled with an exponential backoff until the application reaches
+ * a final state or the timeout expires.
+ */
+public class YarnApplicationKiller {
+  private static final long INITIAL_POLL_INTERVAL_MS = 100;
+  private static final long MAX_POLL_INTERVAL_MS = 2000;
+
+  public enum Outcome {
+    /** The application was killed. */
+    KILLED,
+    /** The application had already reached a final state on its own. */
+    FINISHED,
+    /** The ResourceManager does not know the application. */
+    NOT_FOUND,
+    /** The application was still running when the timeout expired. */
+    TIMED_OUT,
+    /** The application could not be looked up or killed. */
+    FAILED
+  }
+
+  /**
+   * What happened to one application.
+   */
+  public static class Result {
+    private final ApplicationId applicationId;
+    private final Outcome outcome;
+    private final YarnApplicationState state;
+    private final Throwable error;
+
+    public Result(ApplicationId applicationId, Outcome outcome,
+        YarnApplicationState state, Throwable error) {
+      this.applicationId = applicationId;
+      this.outcome = outcome;
+      this.state = state;
+      this.error = error;
+    }
+
+    public ApplicationId getApplicationId() {
+      return applicationId;
+    }
+
+    public Outcome getOutcome() {
+      return outcome;
+    }
+
+    /**
+     * The last state reported by the ResourceManager, null if none was.
+     */
+    public YarnApplicationState getState() {
+      return state;
+    }
+
+    /**
+     * The cause of a FAILED outcome, null otherwise.
+     */
+    public Throwable getError() {
+      return error;
+    }
+
+    @Override
+    public String toString() {
+      return outcome + (state == null ? "" : " (" + state + ")")
+          + (error == null ? "" : ": " + error);
+    }
+  }
+
+  private final ExecutorService executor;
+  private final long timeoutMs;
+
+  /**
+   * @param executor runs the kill of each application
+   * @param timeoutMs how long to wait for each application to terminate
+   */
+  public YarnApplicationKiller(ExecutorService executor, long timeoutMs) {
+    this.executor = executor;
+    this.timeoutMs = timeoutMs;
+  }
+
+  /**
+   * Kills the given applications and returns what happened to each of them,
+   * in the order they were given.
+   */
+  public Map<ApplicationId, Result> kill(final YarnClient client,
+      Collection<ApplicationId> applicationIds) throws InterruptedException {
+    List<Future<Result>> futures = new ArrayList<Future<Result>>();
+    for (final ApplicationId applicationId : applicationIds) {
+      futures.add(executor.submit(new Callable<Result>() {
+        @Override
+        public Result call() {
+          return kill(client, applicationId);
+        }
+      }));
+    }
+
+    Map<ApplicationId, Result> results =
+        new LinkedHashMap<ApplicationId, Result>();
+    int i = 0;
+    for (ApplicationId applicationId : applicationIds) {
+      Future<Result> future = futures.get(i++);
+      try {
+        results.put(applicationId, future.get());
+      } catch (ExecutionException e) {
+        results.put(applicationId, new Result(applicationId, Outcome.FAILED,
+            null, e.getCause()));
+      } catch (InterruptedException e) {
+        for (Future<Result> pending : futures) {
+          pending.cancel(true);
+        }
+        throw e;
+      }
+    }
+    return results;
+  }
+
+  private Result kill(YarnClient client, ApplicationId id) {
+    YarnApplicationState state = null;
+    try {
+      state = client.getApplicationReport(id).getYarnApplicationState();
+      if (isFinal(state)) {
+        return new Result(id, Outcome.FINISHED, state, null);
+      }
+
+      client.killApplication(id);
+      long deadline = System.currentTimeMillis() + timeoutMs;
+      long interval = INITIAL_POLL_INTERVAL_MS;
+      while (true) {
+        state = client.getApplicationReport(id).getYarnApplicationState();
+        if (state == YarnApplicationState.KILLED) {
+          return new Result(id, Outcome.KILLED, state, null);
+        }
+        if (isFinal(state)) {
+          return new Result(id, Outcome.FINISHED, state, null);
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          return new Result(id, Outcome.TIMED_OUT, state, null);
+        }
+        Thread.sleep(Math.min(interval, remaining));
+        interval = Math.min(interval * 2, MAX_POLL_INTERVAL_MS);
+      }
+    } catch (ApplicationNotFoundException e) {
+      return new Result(id, Outcome.NOT_FOUND, state, null);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new Result(id, Outcome.FAILED, state, e);
+    } catch (Exception e) {
+      return new Result(id, Outcome.FAILED, state, e);
+    }
+  }
+
+  private static boolean isFinal(YarnApplicationState state) {
+    return state == YarnApplicationState.FINISHED
+        || state == YarnApplicationState.FAILED
+        || state == YarnApplicationState.KILLED;
+  }
+
+  /**
+   * Parses an id of the form application_&lt;cluster timestamp&gt;_&lt;id&gt;.
+   *
+   * @throws IllegalArgumentException if the id is not of that form
+   */
+  public static ApplicationId parseApplicationId(String applicationId) {
+    String[] split = applicationId.split("_");
+    if (split.length != 3 || !"application".equals(split[0])) {
+      throw new IllegalArgumentException("Invalid application id "
+          + applicationId);
+    }
+    return ApplicationId.newInstance(Long.parseLong(split[1]),
+        Integer.parseInt(split[2]));
+  }
+}
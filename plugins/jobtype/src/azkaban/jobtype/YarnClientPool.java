@@ -0,0 +1,255 @@
+/*
+ * Copyright 2015 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.jobtype;
+
+import java.io.IOException;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.yarn.client.api.YarnClient;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps one started YarnClient per user, so that killing the applications of
+ * a job does not set up a new ResourceManager client for every application.
+ *
+ * Clients are borrowed and released around each use, and are created as the
+ * user they are borrowed for. A client is stopped once it is no longer
+ * borrowed and it has either been idle for too long, outlived its maximum
+ * lifetime (so it never outlives the credentials it was created with), or been
+ * invalidated after a failure.
+ *
+ * Clients handed out by the pool must not be stopped by callers.
+ */
+public class YarnClientPool {
+  private static final Logger logger = Logger.getLogger(YarnClientPool.class);
+
+  private static final long EVICTION_INTERVAL_MS = 60 * 1000L;
+
+  private final long maxIdleMs;
+  private final long maxLifetimeMs;
+
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+  private final Map<YarnClient, Entry> handles =
+      new IdentityHashMap<YarnClient, Entry>();
+  private final ScheduledExecutorService evictor;
+
+  private static class Entry {
+    private final String user;
+    private final YarnClient client;
+    private final long createTime;
+    private long lastUsedTime;
+    private int borrowCount;
+    private boolean retired;
+
+    private Entry(String user, YarnClient client, long now) {
+      this.user = user;
+      this.client = client;
+      this.createTime = now;
+      this.lastUsedTime = now;
+    }
+  }
+
+  public YarnClientPool(long maxIdleMs, long maxLifetimeMs) {
+    this.maxIdleMs = maxIdleMs;
+    this.maxLifetimeMs = maxLifetimeMs;
+
+    evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "azk-yarn-client-pool-evictor");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    evictor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        evict();
+      }
+    }, EVICTION_INTERVAL_MS, EVICTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns a started YarnClient that talks to the ResourceManager as the
+   * given user. Every call must be paired with a call to
+   * {@link #release(YarnClient)}.
+   */
+  public YarnClient borrow(UserGroupInformation ugi) throws IOException {
+    // Proxy users are told apart from the real user they impersonate.
+    String user = ugi.toString();
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      Entry entry = entries.get(user);
+      if (entry != null && !isExpired(entry, now)) {
+        entry.borrowCount++;
+        entry.lastUsedTime = now;
+        return entry.client;
+      }
+      if (entry != null) {
+        retire(entry);
+      }
+    }
+
+    YarnClient client = createClient(ugi);
+    Entry existing;
+    List<Entry> toClose;
+    synchronized (this) {
+      existing = entries.get(user);
+      if (existing != null && !isExpired(existing, now)) {
+        // Another kill created one concurrently. Use theirs.
+        existing.borrowCount++;
+        existing.lastUsedTime = now;
+        toClose = null;
+      } else {
+        existing = null;
+        Entry entry = new Entry(user, client, now);
+        entry.borrowCount = 1;
+        entries.put(user, entry);
+        handles.put(client, entry);
+        toClose = collectEvictable(now);
+      }
+    }
+
+    if (existing != null) {
+      client.stop();
+      return existing.client;
+    }
+    stopAll(toClose);
+    return client;
+  }
+
+  /**
+   * Returns a client obtained from {@link #borrow(UserGroupInformation)} to
+   * the pool.
+   */
+  public void release(YarnClient client) {
+    Entry stoppable = null;
+    synchronized (this) {
+      Entry entry = handles.get(client);
+      if (entry == null) {
+        return;
+      }
+      entry.borrowCount--;
+      entry.lastUsedTime = System.currentTimeMillis();
+      if (entry.retired && entry.borrowCount == 0) {
+        handles.remove(client);
+        stoppable = entry;
+      }
+    }
+    if (stoppable != null) {
+      stoppable.client.stop();
+    }
+  }
+
+  /**
+   * Releases a client that failed in a way that suggests the client itself is
+   * broken, e.g. its credentials were cancelled. The next borrow for the user
+   * creates a new client.
+   */
+  public void invalidate(YarnClient client) {
+    synchronized (this) {
+      Entry entry = handles.get(client);
+      if (entry != null) {
+        retire(entry);
+      }
+    }
+    release(client);
+  }
+
+  YarnClient createClient(UserGroupInformation ugi)
+      throws IOException {
+    try {
+      return ugi.doAs(new PrivilegedExceptionAction<YarnClient>() {
+        @Override
+        public YarnClient run() {
+          YarnClient client = YarnClient.createYarnClient();
+          client.init(new YarnConfiguration());
+          client.start();
+          return client;
+        }
+      });
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while creating YARN client", e);
+    }
+  }
+
+  private void evict() {
+    List<Entry> toClose;
+    synchronized (this) {
+      toClose = collectEvictable(System.currentTimeMillis());
+    }
+    stopAll(toClose);
+  }
+
+  private boolean isExpired(Entry entry, long now) {
+    return entry.retired || now - entry.createTime > maxLifetimeMs;
+  }
+
+  private void retire(Entry entry) {
+    entry.retired = true;
+    if (entries.get(entry.user) == entry) {
+      entries.remove(entry.user);
+    }
+  }
+
+  /**
+   * Retires expired and idle entries, and returns those that can be stopped
+   * right away. Must be called while holding the pool lock.
+   */
+  private List<Entry> collectEvictable(long now) {
+    for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+      Entry entry = it.next();
+      if (isExpired(entry, now)
+          || (entry.borrowCount == 0 && now - entry.lastUsedTime > maxIdleMs)) {
+        entry.retired = true;
+        it.remove();
+      }
+    }
+
+    List<Entry> toClose = new ArrayList<Entry>();
+    for (Iterator<Entry> it = handles.values().iterator(); it.hasNext();) {
+      Entry entry = it.next();
+      if (entry.retired && entry.borrowCount == 0) {
+        it.remove();
+        toClose.add(entry);
+      }
+    }
+    return toClose;
+  }
+
+  private void stopAll(List<Entry> toClose) {
+    for (Entry entry : toClose) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Stopping pooled YARN client of " + entry.user);
+      }
+      entry.client.stop();
+    }
+  }
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright 2015 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.jobtype;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.security.Credentials;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.ApplicationReport;
+import org.apache.hadoop.yarn.api.records.ApplicationResourceUsageReport;
+import org.apache.hadoop.yarn.api.records.Resource;
+import org.apache.hadoop.yarn.api.records.YarnApplicationState;
+import org.apache.hadoop.yarn.client.api.YarnClient;
+import org.apache.hadoop.yarn.exceptions.ApplicationNotFoundException;
+import org.apache.hadoop.yarn.exceptions.YarnException;
+import org.apache.log4j.Logger;
+
+import azkaban.security.commons.HadoopSecurityManager;
+import azkaban.utils.JSONUtils;
+import azkaban.utils.Props;
+
+/**
+ * Periodically asks the ResourceManager about the YARN applications a job has
+ * spawned, and writes their progress and resource usage to the job attachment
+ * file, so jobs that do not report MapReduceJobState themselves (Spark, Hive)
+ * still show what they are doing while they run.
+ *
+ * Applications are the ones the job's ApplicationIdTracker found in the log.
+ * Until the tracker finds any, the ones carrying the job's application tag are
+ * looked up as well, which lists every active application of the cluster and
+ * is therefore done at most once a minute. Once an application reaches a final
+ * state its last report is kept and it is no longer polled.
+ *
+ * The ResourceManager is asked as the user the job proxies, if any, like
+ * {@link HadoopJobUtils#proxyUserKillAllSpawnedHadoopJobs} does, so the
+ * applications are visible to the reporter even when ACLs are enabled.
+ *
+ * The file is only rewritten when something changed, at most once per write
+ * interval, and always through {@link AtomicFileWriter}, so a reader never
+ * sees a partially written file.
+ */
+public class YarnProgressReporter {
+  private static final Logger logger = Logger
+      .getLogger(YarnProgressReporter.class);
+
+  public static final String ATTACHMENT_FILE = "azkaban.job.attachment.file";
+
+  private static final long POLL_INTERVAL_MS = 5000;
+  // threads polling for all the jobs of the executor
+  private static final int POLL_THREADS = 4;
+  private static final long MIN_WRITE_INTERVAL_MS = 15 * 1000L;
+  private static final long TAG_LOOKUP_INTERVAL_MS = 60 * 1000L;
+  // how long the end of a job waits for the last report to be written
+  private static final long FINAL_REPORT_TIMEOUT_MS = 10 * 1000L;
+
+  private static final EnumSet<YarnApplicationState> activeStates = EnumSet
+      .of(YarnApplicationState.NEW, YarnApplicationState.NEW_SAVING,
+          YarnApplicationState.SUBMITTED, YarnApplicationState.ACCEPTED,
+          YarnApplicationState.RUNNING);
+
+  // ApplicationResourceUsageReport.getMemorySeconds() and getVcoreSeconds(),
+  // which only exist from Hadoop 2.5 on
+  private static final Method getMemorySeconds = findUsageMethod(
+      "getMemorySeconds");
+  private static final Method getVcoreSeconds = findUsageMethod(
+      "getVcoreSeconds");
+
+  // A few threads, so that a slow ResourceManager call for one job does not
+  // hold up the progress of all the others.
+  private static final ScheduledExecutorService poller = Executors
+      .newScheduledThreadPool(POLL_THREADS, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "azk-yarn-progress-reporter");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  private final ApplicationIdTracker tracker;
+  private final UserGroupInformation proxyUser;
+  private final String applicationTag;
+  private final File attachmentFile;
+  private final long minWriteIntervalMs;
+
+  // Guarded by this.
+  private final Set<String> knownIds = new LinkedHashSet<String>();
+  private final Set<String> finishedIds = new HashSet<String>();
+  private final Map<String, Object> states =
+      new LinkedHashMap<String, Object>();
+  private boolean changed;
+  private long lastWriteTime;
+  private long lastTagLookupTime;
+
+  private volatile ScheduledFuture<?> polling;
+
+  /**
+   * @param tracker tracker following the job log
+   * @param proxyUser the user to ask the ResourceManager as, or null for the
+   *          current user
+   * @param applicationTag tag from
+   *          {@link HadoopConfigurationInjector#getApplicationTag(Props)}, may
+   *          be null
+   * @param attachmentFile the file to write the progress to
+   * @param minWriteIntervalMs the least time between two writes of the file
+   */
+  public YarnProgressReporter(ApplicationIdTracker tracker,
+      UserGroupInformation proxyUser, String applicationTag,
+      File attachmentFile, long minWriteIntervalMs) {
+    this.tracker = tracker;
+    this.proxyUser = proxyUser;
+    this.applicationTag = applicationTag;
+    this.attachmentFile = attachmentFile;
+    this.minWriteIntervalMs = minWriteIntervalMs;
+  }
+
+  /**
+   * Creates a reporter that writes to the attachment file of the job, or
+   * returns null if the job has none or the user it proxies cannot be set up.
+   *
+   * @param tokenFile the token file of the job, may be null
+   */
+  public static YarnProgressReporter forJob(ApplicationIdTracker tracker,
+      Props jobProps, File tokenFile) {
+    String attachmentFile = jobProps.getString(ATTACHMENT_FILE, null);
+    if (attachmentFile == null) {
+      return null;
+    }
+
+    UserGroupInformation proxyUser;
+    try {
+      proxyUser = createProxyUser(jobProps, tokenFile);
+    } catch (Exception e) {
+      logger.warn("Could not set up the proxy user, not reporting the "
+          + "progress of YARN applications", e);
+      return null;
+    }
+    return new YarnProgressReporter(tracker, proxyUser,
+        HadoopConfigurationInjector.getApplicationTag(jobProps), new File(
+            attachmentFile), MIN_WRITE_INTERVAL_MS);
+  }
+
+  /**
+   * Returns the user the job proxies, holding the tokens of the job, or null
+   * if the job does not proxy. Unlike
+   * {@link HadoopSecureWrapperUtils#setupProxyUser}, which is meant for the
+   * process of the job, this leaves the UserGroupInformation configuration and
+   * the system properties of the shared executor process alone.
+   */
+  private static UserGroupInformation createProxyUser(Props jobProps,
+      File tokenFile) throws IOException {
+    Properties properties = new Properties();
+    properties.putAll(jobProps.getFlattened());
+    if (!HadoopSecureWrapperUtils.shouldProxy(properties)) {
+      return null;
+    }
+
+    String userToProxy =
+        jobProps.getString(HadoopSecurityManager.USER_TO_PROXY);
+    if (!UserGroupInformation.isSecurityEnabled()) {
+      return UserGroupInformation.createRemoteUser(userToProxy);
+    }
+    UserGroupInformation proxyUser =
+        UserGroupInformation.createProxyUser(userToProxy,
+            UserGroupInformation.getLoginUser());
+    if (tokenFile != null) {
+      proxyUser.addCredentials(Credentials.readTokenStorageFile(tokenFile,
+          new Configuration()));
+    }
+    return proxyUser;
+  }
+
+  /**
+   * Starts reporting in the background until {@link #stop()} is called.
+   */
+  public void start() {
+    polling =
+        poller.scheduleWithFixedDelay(new Runnable() {
+          @Override
+          public void run() {
+            report(false);
+          }
+        }, POLL_INTERVAL_MS, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the background reporting, and writes the final state of the
+   * applications. Waits a bounded time for that, so an unreachable
+   * ResourceManager does not hold up the end of the job.
+   */
+  public void stop() {
+    ScheduledFuture<?> current = polling;
+    if (current == null) {
+      return;
+    }
+    current.cancel(false);
+    polling = null;
+
+    Future<?> last = poller.submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          tracker.update();
+        } catch (IOException e) {
+          logger.debug("Failed to update application ids", e);
+        }
+        report(true);
+      }
+    });
+    try {
+      last.get(FINAL_REPORT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      logger.warn("Failed to write the final application progress",
+          e.getCause());
+    } catch (TimeoutException e) {
+      logger.warn("Timed out writing the final application progress to "
+          + attachmentFile);
+    }
+  }
+
+  private void report(boolean force) {
+    try {
+      if (proxyUser == null) {
+        poll();
+      } else {
+        proxyUser.doAs(new PrivilegedExceptionAction<Void>() {
+          @Override
+          public Void run() throws Exception {
+            poll();
+            return null;
+          }
+        });
+      }
+    } catch (Exception e) {
+      logger.debug("Failed to poll application progress", e);
+    }
+
+    try {
+      flush(force);
+    } catch (IOException e) {
+      logger.warn("Failed to write application progress to "
+          + attachmentFile, e);
+    }
+  }
+
+  /**
+   * Polls with the pooled client of the current user.
+   */
+  private void poll() throws IOException, YarnException {
+    YarnClientPool pool = HadoopJobUtils.getYarnClientPool();
+    YarnClient client = pool.borrow(UserGroupInformation.getCurrentUser());
+    try {
+      poll(client);
+    } catch (IOException e) {
+      pool.invalidate(client);
+      client = null;
+      throw e;
+    } finally {
+      if (client != null) {
+        pool.release(client);
+      }
+    }
+  }
+
+  /**
+   * Fetches the report of every application that has not finished yet.
+   */
+  synchronized void poll(YarnClient client) throws IOException,
+      YarnException {
+    Set<String> trackedIds = tracker.getApplicationIds();
+    knownIds.addAll(trackedIds);
+    long now = System.currentTimeMillis();
+    if (applicationTag != null && trackedIds.isEmpty()
+        && now - lastTagLookupTime >= TAG_LOOKUP_INTERVAL_MS) {
+      lastTagLookupTime = now;
+      knownIds.addAll(findApplicationIdsByTag());
+    }
+
+    for (String id : knownIds) {
+      if (finishedIds.contains(id)) {
+        continue;
+      }
+      ApplicationReport report;
+      try {
+        report = client.getApplicationReport(toApplicationId(id));
+      } catch (ApplicationNotFoundException e) {
+        continue;
+      } catch (IllegalArgumentException e) {
+        continue;
+      }
+
+      Object state = toJson(report);
+      if (!state.equals(states.get(id))) {
+        states.put(id, state);
+        changed = true;
+      }
+      if (isFinal(report.getYarnApplicationState())) {
+        finishedIds.add(id);
+      }
+    }
+  }
+
+  /**
+   * Writes the reports to the attachment file if they changed since the last
+   * write, and the write interval has passed or force is set.
+   */
+  synchronized void flush(boolean force) throws IOException {
+    long now = System.currentTimeMillis();
+    if (!changed || (!force && now - lastWriteTime < minWriteIntervalMs)) {
+      return;
+    }
+
+    List<Object> jsonObj = new ArrayList<Object>();
+    for (Map.Entry<String, Object> entry : states.entrySet()) {
+      Map<String, Object> jobJsonObj = new HashMap<String, Object>();
+      jobJsonObj.put("jobId", entry.getKey());
+      jobJsonObj.put("state", entry.getValue());
+      jsonObj.add(jobJsonObj);
+    }
+    AtomicFileWriter.write(attachmentFile, JSONUtils.toJSON(jsonObj));
+    changed = false;
+    lastWriteTime = now;
+  }
+
+  Set<String> findApplicationIdsByTag() throws IOException, YarnException {
+    return HadoopJobUtils.findApplicationIdsByTag(applicationTag,
+        activeStates, logger);
+  }
+
+  ApplicationId toApplicationId(String applicationId) {
+    return YarnApplicationKiller.parseApplicationId(applicationId);
+  }
+
+  static Map<String, Object> toJson(ApplicationReport report) {
+    Map<String, Object> jsonObj = new HashMap<String, Object>();
+    jsonObj.put("name", report.getName());
+    jsonObj.put("applicationType", report.getApplicationType());
+    jsonObj.put("user", report.getUser());
+    jsonObj.put("queue", report.getQueue());
+    jsonObj.put("trackingURL", report.getTrackingUrl());
+    jsonObj.put("diagnostics", report.getDiagnostics());
+    jsonObj.put("state", String.valueOf(report.getYarnApplicationState()));
+    jsonObj.put("finalStatus",
+        String.valueOf(report.getFinalApplicationStatus()));
+    jsonObj.put("isComplete",
+        String.valueOf(isFinal(report.getYarnApplicationState())));
+    jsonObj.put("progress", String.valueOf(report.getProgress()));
+    jsonObj.put("startTime", String.valueOf(report.getStartTime()));
+    jsonObj.put("finishTime", String.valueOf(report.getFinishTime()));
+    jsonObj.put("counters",
+        usageToJson(report.getApplicationResourceUsageReport()));
+    return jsonObj;
+  }
+
+  private static Map<String, Object> usageToJson(
+      ApplicationResourceUsageReport usage) {
+    Map<String, Object> jsonObj = new HashMap<String, Object>();
+    if (usage == null) {
+      return jsonObj;
+    }
+    jsonObj.put("usedContainers", String.valueOf(usage.getNumUsedContainers()));
+    jsonObj.put("reservedContainers",
+        String.valueOf(usage.getNumReservedContainers()));
+    putResource(jsonObj, "used", usage.getUsedResources());
+    putResource(jsonObj, "reserved", usage.getReservedResources());
+    putResource(jsonObj, "needed", usage.getNeededResources());
+    putAggregate(jsonObj, "memorySeconds", getMemorySeconds, usage);
+    putAggregate(jsonObj, "vcoreSeconds", getVcoreSeconds, usage);
+    return jsonObj;
+  }
+
+  private static void putResource(Map<String, Object> jsonObj, String prefix,
+      Resource resource) {
+    if (resource != null) {
+      jsonObj.put(prefix + "MemoryMB", String.valueOf(resource.getMemory()));
+      jsonObj.put(prefix + "Vcores",
+          String.valueOf(resource.getVirtualCores()));
+    }
+  }
+
+  private static void putAggregate(Map<String, Object> jsonObj, String name,
+      Method method, ApplicationResourceUsageReport usage) {
+    if (method == null) {
+      return;
+    }
+    try {
+      jsonObj.put(name, String.valueOf(method.invoke(usage)));
+    } catch (Exception e) {
+      logger.debug("Failed to get " + name, e);
+    }
+  }
+
+  private static Method findUsageMethod(String name) {
+    try {
+      return ApplicationResourceUsageReport.class.getMethod(name);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  private static boolean isFinal(YarnApplicationState state) {
+    return state == YarnApplicationState.FINISHED
+        || state == YarnApplicationState.FAILED
+        || state == YarnApplicationState.KILLED;
+  }
+}
@@ -0,0 +1,96 @@
+package azkaban.jobtype;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestApplicationIdTracker {
+
+  File tempFile = null;
+
+  ApplicationIdTracker tracker = null;
+
+  @Before
+  public void beforeMethod() throws IOException {
+    tempFile = File.createTempFile("test_application_id_tracker", null);
+    tracker = new ApplicationIdTracker(tempFile);
+  }
+
+  @After
+  public void afterMethod() {
+    tempFile.delete();
+  }
+
+  private void append(String text) throws IOException {
+    FileOutputStream out = new FileOutputStream(tempFile, true);
+    try {
+      out.write(text.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+
+  @Test
+  public void testFollowsAppendedLines() throws IOException {
+    append("28-08-2015 12:29:38 PDT pig INFO - INFO Submitted application application_1440264346270_3044\n");
+    Set<String> appIds = tracker.update();
+    Assert.assertEquals(1, appIds.size());
+    Assert.assertTrue(appIds.contains("application_1440264346270_3044"));
+
+    append("28-08-2015 12:29:38 PDT pig INFO - INFO The url to track the job: http://eat1-nertzwp02.grid.linkedin.com:8080/proxy/application_1440264346270_3045/\n");
+    append("28-08-2015 12:31:09 PDT pig INFO - INFO Submitted application application_1440264346270_3088\n");
+    appIds = tracker.update();
+    Assert.assertEquals(2, appIds.size());
+    Assert.assertTrue(appIds.contains("application_1440264346270_3044"));
+    Assert.assertTrue(appIds.contains("application_1440264346270_3088"));
+    Assert.assertEquals(appIds, tracker.getApplicationIds());
+  }
+
+  @Test
+  public void testLineWrittenInPieces() throws IOException {
+    append("28-08-2015 14:05:33 PDT spark INFO - Submitted application application_1440264346270_30");
+    Assert.assertTrue(tracker.update().contains("application_1440264346270_30"));
+    Assert.assertEquals(0, tracker.getApplicationIds().size());
+
+    append("99 \u2018\u00fcn\u00efc\u00f6d\u00e9\u2019\n");
+    Set<String> appIds = tracker.update();
+    Assert.assertEquals(1, appIds.size());
+    Assert.assertTrue(appIds.contains("application_1440264346270_3099"));
+  }
+
+  @Test
+  public void testLinesLongerThanTheBuffer() throws IOException {
+    StringBuilder line = new StringBuilder();
+    int i = 0;
+    while (line.length() < 200 * 1024) {
+      line.append("application_1440264346270_").append(i++).append(' ');
+    }
+    append(line.toString());
+    append("\n");
+    Assert.assertEquals(i, tracker.update().size());
+  }
+
+  @Test
+  public void testTruncatedLog() throws IOException {
+    append("Submitted application application_1440264346270_3044\n");
+    tracker.update();
+
+    new FileOutputStream(tempFile).close();
+    append("Killed application_1440264346270_3088\n");
+    Set<String> appIds = tracker.update();
+    Assert.assertEquals(2, appIds.size());
+    Assert.assertTrue(appIds.contains("application_1440264346270_3088"));
+  }
+
+  @Test
+  public void testMissingLog() throws IOException {
+    tempFile.delete();
+    Assert.assertEquals(0, tracker.update().size());
+  }
+}
@@ -0,0 +1,46 @@
+package azkaban.jobtype;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestAtomicFileWriter {
+
+  File workingDir = null;
+
+  File file = null;
+
+  @Before
+  public void beforeMethod() throws IOException {
+    workingDir = File.createTempFile("test_atomic_file_writer", null);
+    workingDir.delete();
+    workingDir.mkdirs();
+    file = new File(workingDir, "_job.1.pig.attach");
+  }
+
+  @After
+  public void afterMethod() throws IOException {
+    FileUtils.deleteDirectory(workingDir);
+  }
+
+  @Test
+  public void testCreatesFile() throws IOException {
+    AtomicFileWriter.write(file, "[]");
+    Assert.assertEquals("[]", FileUtils.readFileToString(file, "UTF-8"));
+  }
+
+  @Test
+  public void testReplacesFileWithoutLeavingTemporaryFiles()
+      throws IOException {
+    AtomicFileWriter.write(file, "[{\"jobId\":\"job_1440264346270_3044\"}]");
+    AtomicFileWriter.write(file, "[]");
+    Assert.assertEquals("[]", FileUtils.readFileToString(file, "UTF-8"));
+    Assert.assertArrayEquals(new String[] { file.getName() },
+        workingDir.list());
+  }
+}
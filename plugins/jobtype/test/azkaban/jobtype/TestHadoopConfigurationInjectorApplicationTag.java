@@ -0,0 +1,66 @@
+package azkaban.jobtype;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import azkaban.flow.CommonJobProperties;
+import azkaban.utils.Props;
+
+public class TestHadoopConfigurationInjectorApplicationTag {
+
+  Props props = null;
+
+  @Before
+  public void beforeMethod() {
+    props = new Props();
+    props.put(CommonJobProperties.EXEC_ID, "1234");
+    props.put(CommonJobProperties.JOB_ID, "Training_clickSelectFeatures");
+    props.put(CommonJobProperties.JOB_ATTEMPT, "2");
+  }
+
+  @Test
+  public void testTagIsDeterministic() {
+    String tag = HadoopConfigurationInjector.getApplicationTag(props);
+    Assert.assertEquals("azkaban-1234-training_clickselectfeatures-2", tag);
+    Assert.assertEquals(tag, HadoopConfigurationInjector.getApplicationTag(props));
+  }
+
+  @Test
+  public void testNestedFlowPathAndFirstAttempt() {
+    props.removeLocal(CommonJobProperties.JOB_ATTEMPT);
+    props.put(CommonJobProperties.NESTED_FLOW_PATH, "embedded:Training job");
+    Assert.assertEquals("azkaban-1234-embedded_training_job-0",
+        HadoopConfigurationInjector.getApplicationTag(props));
+  }
+
+  @Test
+  public void testLongTagIsShortenedDistinctly() {
+    StringBuilder jobId = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      jobId.append("long_job_name_");
+    }
+    props.put(CommonJobProperties.JOB_ID, jobId + "a");
+    String first = HadoopConfigurationInjector.getApplicationTag(props);
+    props.put(CommonJobProperties.JOB_ID, jobId + "b");
+    String second = HadoopConfigurationInjector.getApplicationTag(props);
+
+    Assert.assertEquals(100, first.length());
+    Assert.assertEquals(100, second.length());
+    Assert.assertFalse(first.equals(second));
+  }
+
+  @Test
+  public void testNoExecutionId() {
+    props.removeLocal(CommonJobProperties.EXEC_ID);
+    Assert.assertNull(HadoopConfigurationInjector.getApplicationTag(props));
+  }
+
+  @Test
+  public void testAddTag() {
+    Assert.assertEquals("a", HadoopConfigurationInjector.addTag(null, "a"));
+    Assert.assertEquals("a", HadoopConfigurationInjector.addTag(" ", "a"));
+    Assert.assertEquals("x,y,a", HadoopConfigurationInjector.addTag("x,y", "a"));
+    Assert.assertEquals("x, a", HadoopConfigurationInjector.addTag("x, a", "a"));
+  }
+}
@@ -0,0 +1,131 @@
+package azkaban.jobtype;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.ApplicationReport;
+import org.apache.hadoop.yarn.api.records.YarnApplicationState;
+import org.apache.hadoop.yarn.client.api.YarnClient;
+import org.apache.hadoop.yarn.exceptions.ApplicationNotFoundException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestYarnApplicationKiller {
+
+  ExecutorService executor = null;
+
+  YarnClient client = null;
+
+  YarnApplicationKiller killer = null;
+
+  @Before
+  public void beforeMethod() {
+    executor = Executors.newFixedThreadPool(4);
+    client = mock(YarnClient.class);
+    killer = new YarnApplicationKiller(executor, 500);
+  }
+
+  @After
+  public void afterMethod() {
+    executor.shutdownNow();
+  }
+
+  private ApplicationReport report(YarnApplicationState state) {
+    ApplicationReport report = mock(ApplicationReport.class);
+    when(report.getYarnApplicationState()).thenReturn(state);
+    return report;
+  }
+
+  @Test
+  public void testKillsRunningApplications() throws Exception {
+    ApplicationId first = mock(ApplicationId.class);
+    ApplicationId second = mock(ApplicationId.class);
+    ApplicationReport running = report(YarnApplicationState.RUNNING);
+    ApplicationReport accepted = report(YarnApplicationState.ACCEPTED);
+    ApplicationReport killed = report(YarnApplicationState.KILLED);
+    when(client.getApplicationReport(first)).thenReturn(running, running,
+        killed);
+    when(client.getApplicationReport(second)).thenReturn(accepted, killed);
+
+    Map<ApplicationId, YarnApplicationKiller.Result> results =
+        killer.kill(client, Arrays.asList(first, second));
+
+    Assert.assertEquals(Arrays.asList(first, second),
+        Arrays.asList(results.keySet().toArray()));
+    Assert.assertEquals(YarnApplicationKiller.Outcome.KILLED, results.get(first)
+        .getOutcome());
+    Assert.assertEquals(YarnApplicationKiller.Outcome.KILLED,
+        results.get(second).getOutcome());
+    verify(client).killApplication(first);
+    verify(client).killApplication(second);
+  }
+
+  @Test
+  public void testDoesNotKillFinishedApplications() throws Exception {
+    ApplicationId id = mock(ApplicationId.class);
+    ApplicationReport finished = report(YarnApplicationState.FINISHED);
+    when(client.getApplicationReport(id)).thenReturn(finished);
+
+    YarnApplicationKiller.Result result =
+        killer.kill(client, Arrays.asList(id)).get(id);
+
+    Assert.assertEquals(YarnApplicationKiller.Outcome.FINISHED,
+        result.getOutcome());
+    Assert.assertEquals(YarnApplicationState.FINISHED, result.getState());
+    verify(client, never()).killApplication(id);
+  }
+
+  @Test
+  public void testUnknownApplication() throws Exception {
+    ApplicationId id = mock(ApplicationId.class);
+    when(client.getApplicationReport(id)).thenThrow(
+        new ApplicationNotFoundException("unknown"));
+
+    Assert.assertEquals(YarnApplicationKiller.Outcome.NOT_FOUND, killer
+        .kill(client, Arrays.asList(id)).get(id).getOutcome());
+  }
+
+  @Test
+  public void testApplicationThatKeepsRunning() throws Exception {
+    ApplicationId id = mock(ApplicationId.class);
+    ApplicationReport running = report(YarnApplicationState.RUNNING);
+    when(client.getApplicationReport(id)).thenReturn(running);
+
+    YarnApplicationKiller.Result result =
+        killer.kill(client, Arrays.asList(id)).get(id);
+
+    Assert.assertEquals(YarnApplicationKiller.Outcome.TIMED_OUT,
+        result.getOutcome());
+    Assert.assertEquals(YarnApplicationState.RUNNING, result.getState());
+  }
+
+  @Test
+  public void testUnreachableResourceManager() throws Exception {
+    ApplicationId id = mock(ApplicationId.class);
+    IOException error = new IOException("connection refused");
+    when(client.getApplicationReport(id)).thenThrow(error);
+
+    YarnApplicationKiller.Result result =
+        killer.kill(client, Arrays.asList(id)).get(id);
+
+    Assert.assertEquals(YarnApplicationKiller.Outcome.FAILED,
+        result.getOutcome());
+    Assert.assertSame(error, result.getError());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMalformedApplicationId() {
+    YarnApplicationKiller.parseApplicationId("job_1440264346270_3099");
+  }
+}
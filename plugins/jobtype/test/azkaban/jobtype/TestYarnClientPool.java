@@ -0,0 +1,115 @@
+package azkaban.jobtype;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.yarn.client.api.YarnClient;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestYarnClientPool {
+
+  final List<YarnClient> created = new ArrayList<YarnClient>();
+
+  YarnClientPool pool = null;
+
+  @Before
+  public void beforeMethod() {
+    created.clear();
+    pool = pool(Long.MAX_VALUE);
+  }
+
+  private YarnClientPool pool(long maxLifetimeMs) {
+    return new YarnClientPool(Long.MAX_VALUE, maxLifetimeMs) {
+      @Override
+      YarnClient createClient(UserGroupInformation ugi) {
+        YarnClient client = mock(YarnClient.class);
+        created.add(client);
+        return client;
+      }
+    };
+  }
+
+  private UserGroupInformation ugi(String user) {
+    UserGroupInformation ugi = mock(UserGroupInformation.class);
+    when(ugi.toString()).thenReturn(user);
+    return ugi;
+  }
+
+  @Test
+  public void testReusesClientOfSameUser() throws Exception {
+    UserGroupInformation ugi = ugi("azkaban");
+    YarnClient first = pool.borrow(ugi);
+    pool.release(first);
+    YarnClient second = pool.borrow(ugi);
+    YarnClient third = pool.borrow(ugi("azkaban"));
+    pool.release(second);
+    pool.release(third);
+
+    Assert.assertSame(first, second);
+    Assert.assertSame(first, third);
+    Assert.assertEquals(1, created.size());
+    verify(first, never()).stop();
+  }
+
+  @Test
+  public void testCreatesClientPerUser() throws Exception {
+    YarnClient first = pool.borrow(ugi("azkaban"));
+    YarnClient second = pool.borrow(ugi("bob (auth:PROXY) via azkaban"));
+
+    Assert.assertNotSame(first, second);
+    Assert.assertEquals(2, created.size());
+  }
+
+  @Test
+  public void testInvalidateCreatesNewClient() throws Exception {
+    UserGroupInformation ugi = ugi("azkaban");
+    YarnClient broken = pool.borrow(ugi);
+    pool.invalidate(broken);
+    YarnClient client = pool.borrow(ugi);
+
+    Assert.assertNotSame(broken, client);
+    Assert.assertEquals(2, created.size());
+    verify(broken).stop();
+    verify(client, never()).stop();
+  }
+
+  @Test
+  public void testStopsRetiredClientWhenLastReleased() throws Exception {
+    UserGroupInformation ugi = ugi("azkaban");
+    YarnClient client = pool.borrow(ugi);
+    YarnClient shared = pool.borrow(ugi);
+    Assert.assertSame(client, shared);
+
+    // Still borrowed once after being invalidated, so it must keep running.
+    pool.invalidate(client);
+    verify(client, never()).stop();
+    YarnClient replacement = pool.borrow(ugi);
+    Assert.assertNotSame(client, replacement);
+    verify(client, never()).stop();
+
+    pool.release(shared);
+    verify(client).stop();
+    verify(replacement, never()).stop();
+  }
+
+  @Test
+  public void testReplacesClientPastMaxLifetime() throws Exception {
+    pool = pool(-1);
+    UserGroupInformation ugi = ugi("azkaban");
+    YarnClient old = pool.borrow(ugi);
+    YarnClient client = pool.borrow(ugi);
+
+    Assert.assertNotSame(old, client);
+    verify(old, never()).stop();
+    pool.release(old);
+    verify(old).stop();
+  }
+}
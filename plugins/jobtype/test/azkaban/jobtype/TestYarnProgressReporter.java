@@ -0,0 +1,208 @@
+package azkaban.jobtype;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.ApplicationReport;
+import org.apache.hadoop.yarn.api.records.ApplicationResourceUsageReport;
+import org.apache.hadoop.yarn.api.records.Resource;
+import org.apache.hadoop.yarn.api.records.YarnApplicationState;
+import org.apache.hadoop.yarn.client.api.YarnClient;
+import org.apache.hadoop.yarn.exceptions.ApplicationNotFoundException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import azkaban.utils.JSONUtils;
+
+public class TestYarnProgressReporter {
+
+  File workingDir = null;
+
+  File attachmentFile = null;
+
+  ApplicationIdTracker tracker = null;
+
+  YarnClient client = null;
+
+  final Map<String, ApplicationId> applicationIds =
+      new HashMap<String, ApplicationId>();
+
+  int tagLookups = 0;
+
+  @Before
+  public void beforeMethod() throws IOException {
+    workingDir = File.createTempFile("test_yarn_progress_reporter", null);
+    workingDir.delete();
+    workingDir.mkdirs();
+    attachmentFile = new File(workingDir, "_job.1.spark.attach");
+
+    File logFile = new File(workingDir, "_job.1.spark.log");
+    FileOutputStream out = new FileOutputStream(logFile);
+    try {
+      out.write(("Submitted application application_1440264346270_3044\n")
+          .getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    tracker = new ApplicationIdTracker(logFile);
+    tracker.update();
+    client = mock(YarnClient.class);
+    tagLookups = 0;
+    applicationIds.put("application_1440264346270_3044",
+        mock(ApplicationId.class));
+  }
+
+  @After
+  public void afterMethod() throws IOException {
+    FileUtils.deleteDirectory(workingDir);
+  }
+
+  private YarnProgressReporter reporter(long minWriteIntervalMs) {
+    return reporter(tracker, null, minWriteIntervalMs);
+  }
+
+  private YarnProgressReporter reporter(ApplicationIdTracker tracker,
+      String applicationTag, long minWriteIntervalMs) {
+    return new YarnProgressReporter(tracker, null, applicationTag,
+        attachmentFile, minWriteIntervalMs) {
+      @Override
+      Set<String> findApplicationIdsByTag() {
+        tagLookups++;
+        return Collections.singleton("application_1440264346270_3044");
+      }
+
+      @Override
+      ApplicationId toApplicationId(String applicationId) {
+        return applicationIds.get(applicationId);
+      }
+    };
+  }
+
+  private ApplicationReport report(YarnApplicationState state, float progress,
+      int containers) {
+    Resource used = mock(Resource.class);
+    when(used.getMemory()).thenReturn(containers * 2048);
+    when(used.getVirtualCores()).thenReturn(containers);
+    ApplicationResourceUsageReport usage =
+        mock(ApplicationResourceUsageReport.class);
+    when(usage.getNumUsedContainers()).thenReturn(containers);
+    when(usage.getUsedResources()).thenReturn(used);
+    ApplicationReport report = mock(ApplicationReport.class);
+    when(report.getYarnApplicationState()).thenReturn(state);
+    when(report.getProgress()).thenReturn(progress);
+    when(report.getApplicationResourceUsageReport()).thenReturn(usage);
+    return report;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String, Object> readState(int index) throws IOException {
+    List<Object> jsonObj =
+        (List<Object>) JSONUtils.parseJSONFromFile(attachmentFile);
+    Map<String, Object> jobJsonObj = (Map<String, Object>) jsonObj.get(index);
+    return (Map<String, Object>) jobJsonObj.get("state");
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testWritesProgressAndUsage() throws Exception {
+    ApplicationId id = applicationIds.get("application_1440264346270_3044");
+    ApplicationReport running = report(YarnApplicationState.RUNNING, 0.5f, 3);
+    when(client.getApplicationReport(id)).thenReturn(running);
+
+    YarnProgressReporter reporter = reporter(0);
+    reporter.poll(client);
+    reporter.flush(false);
+
+    Map<String, Object> state = readState(0);
+    Assert.assertEquals("RUNNING", state.get("state"));
+    Assert.assertEquals("0.5", state.get("progress"));
+    Map<String, Object> counters = (Map<String, Object>) state.get("counters");
+    Assert.assertEquals("3", counters.get("usedContainers"));
+    Assert.assertEquals("6144", counters.get("usedMemoryMB"));
+    // only the log and the attachment, no temporary files
+    Assert.assertEquals(2, workingDir.list().length);
+  }
+
+  @Test
+  public void testRateLimitsWrites() throws Exception {
+    ApplicationId id = applicationIds.get("application_1440264346270_3044");
+    ApplicationReport early = report(YarnApplicationState.RUNNING, 0.1f, 1);
+    ApplicationReport late = report(YarnApplicationState.RUNNING, 0.9f, 5);
+    when(client.getApplicationReport(id)).thenReturn(early, late);
+
+    YarnProgressReporter reporter = reporter(60 * 1000L);
+    reporter.poll(client);
+    reporter.flush(false);
+    Assert.assertEquals("0.1", readState(0).get("progress"));
+
+    reporter.poll(client);
+    reporter.flush(false);
+    Assert.assertEquals("0.1", readState(0).get("progress"));
+
+    reporter.flush(true);
+    Assert.assertEquals("0.9", readState(0).get("progress"));
+  }
+
+  @Test
+  public void testStopsPollingFinishedApplications() throws Exception {
+    ApplicationId id = applicationIds.get("application_1440264346270_3044");
+    ApplicationReport finished = report(YarnApplicationState.FINISHED, 1f, 0);
+    when(client.getApplicationReport(id)).thenReturn(finished);
+
+    YarnProgressReporter reporter = reporter(0);
+    reporter.poll(client);
+    reporter.poll(client);
+    reporter.flush(false);
+
+    verify(client, times(1)).getApplicationReport(id);
+    Assert.assertEquals("true", readState(0).get("isComplete"));
+  }
+
+  @Test
+  public void testUnknownApplication() throws Exception {
+    ApplicationId id = applicationIds.get("application_1440264346270_3044");
+    when(client.getApplicationReport(id)).thenThrow(
+        new ApplicationNotFoundException("unknown"));
+
+    YarnProgressReporter reporter = reporter(0);
+    reporter.poll(client);
+    reporter.flush(true);
+    Assert.assertFalse(attachmentFile.exists());
+  }
+
+  @Test
+  public void testLooksUpTagOnlyUntilTrackerFindsIds() throws Exception {
+    ApplicationId id = applicationIds.get("application_1440264346270_3044");
+    ApplicationReport running = report(YarnApplicationState.RUNNING, 0.5f, 3);
+    when(client.getApplicationReport(id)).thenReturn(running);
+
+    reporter(tracker, "azkaban-tag", 0).poll(client);
+    Assert.assertEquals(0, tagLookups);
+
+    File emptyLog = new File(workingDir, "_job.2.spark.log");
+    emptyLog.createNewFile();
+    ApplicationIdTracker emptyTracker = new ApplicationIdTracker(emptyLog);
+    emptyTracker.update();
+    YarnProgressReporter reporter = reporter(emptyTracker, "azkaban-tag", 0);
+    reporter.poll(client);
+    reporter.poll(client);
+    reporter.flush(false);
+    Assert.assertEquals(1, tagLookups);
+    Assert.assertEquals("RUNNING", readState(0).get("state"));
+  }
+}
@@ -29,6 +29,7 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
+import azkaban.security.commons.FileSystemPool;
 import azkaban.security.commons.HadoopSecurityManager;
 import azkaban.security.commons.HadoopSecurityManagerException;
 
@@ -36,12 +37,21 @@ public class StreamProviderHDFS implements IStreamProvider {
 
   FileSystem hdfs;
   HadoopSecurityManager securityManager;
+  FileSystemPool fileSystemPool;
   String username;
 
   public void setHadoopSecurityManager(HadoopSecurityManager securityManager) {
     this.securityManager = securityManager;
   }
 
+  /**
+   * When set, the file system is borrowed from the pool instead of being
+   * created for this provider, and cleanUp hands it back to the pool.
+   */
+  public void setFileSystemPool(FileSystemPool fileSystemPool) {
+    this.fileSystemPool = fileSystemPool;
+  }
+
   public void setUser(String user) {
     this.username = user;
   }
@@ -101,14 +111,20 @@ public class StreamProviderHDFS implements IStreamProvider {
 
   public void cleanUp() throws IOException {
     if (hdfs != null) {
-      hdfs.close();
+      if (fileSystemPool != null) {
+        fileSystemPool.release(hdfs);
+      } else {
+        hdfs.close();
+      }
       hdfs = null;
     }
   }
 
   private void ensureHdfs() throws HadoopSecurityManagerException, IOException {
     if (hdfs == null) {
-      if (securityManager == null) {
+      if (fileSystemPool != null) {
+        hdfs = fileSystemPool.borrow(username);
+      } else if (securityManager == null) {
         hdfs = FileSystem.get(new Configuration());
       } else {
         hdfs = securityManager.getFSAsUser(username);
@@ -45,6 +45,7 @@ import azkaban.reportal.util.IStreamProvider;
 import azkaban.reportal.util.ReportalHelper;
 import azkaban.reportal.util.ReportalUtil;
 import azkaban.reportal.util.StreamProviderHDFS;
+import azkaban.security.commons.FileSystemPool;
 import azkaban.security.commons.HadoopSecurityManager;
 import azkaban.utils.EmailMessage;
 import azkaban.webapp.AzkabanWebServer;
@@ -52,6 +53,7 @@ import azkaban.webapp.AzkabanWebServer;
 public class ReportalMailCreator implements MailCreator {
   public static AzkabanWebServer azkaban = null;
   public static HadoopSecurityManager hadoopSecurityManager = null;
+  public static FileSystemPool fileSystemPool = null;
   public static String outputLocation = "";
   public static String outputFileSystem = "";
   public static String reportalStorageUser = "";
@@ -211,6 +213,7 @@ public class ReportalMailCreator implements MailCreator {
         StreamProviderHDFS hdfsStreamProvider =
             (StreamProviderHDFS) streamProvider;
         hdfsStreamProvider.setHadoopSecurityManager(hadoopSecurityManager);
+        hdfsStreamProvider.setFileSystemPool(fileSystemPool);
         hdfsStreamProvider.setUser(reportalStorageUser);
       }
 
@@ -64,6 +64,7 @@ import azkaban.reportal.util.ReportalUtil;
 import azkaban.reportal.util.StreamProviderHDFS;
 import azkaban.scheduler.ScheduleManager;
 import azkaban.scheduler.ScheduleManagerException;
+import azkaban.security.commons.FileSystemPool;
 import azkaban.security.commons.HadoopSecurityManager;
 import azkaban.server.session.Session;
 import azkaban.user.Permission;
@@ -105,6 +106,7 @@ public class ReportalServlet extends LoginAbstractAzkabanServlet {
   private boolean showNav;
 
   private HadoopSecurityManager hadoopSecurityManager;
+  private FileSystemPool fileSystemPool;
 
   public ReportalServlet(Props props) {
     this.props = props;
@@ -149,6 +151,10 @@ public class ReportalServlet extends LoginAbstractAzkabanServlet {
 
     shouldProxy = props.getBoolean("azkaban.should.proxy", false);
     logger.info("Hdfs browser should proxy: " + shouldProxy);
+
+    // FileSystemPool owns the lifecycle of the handles, so they must not be
+    // shared through hadoop's own FileSystem cache.
+    props.put("fs.hdfs.impl.disable.cache", "true");
     try {
       hadoopSecurityManager = loadHadoopSecurityManager(props, logger);
       ReportalMailCreator.hadoopSecurityManager = hadoopSecurityManager;
@@ -157,11 +163,24 @@ public class ReportalServlet extends LoginAbstractAzkabanServlet {
       throw new RuntimeException("Failed to get hadoop security manager!"
           + e.getCause());
     }
+    fileSystemPool = new FileSystemPool(hadoopSecurityManager, props);
+    ReportalMailCreator.fileSystemPool = fileSystemPool;
 
     cleanerThread = new CleanerThread();
     cleanerThread.start();
   }
 
+  @Override
+  public void destroy() {
+    if (cleanerThread != null) {
+      cleanerThread.shutdown();
+    }
+    if (fileSystemPool != null) {
+      fileSystemPool.shutdown();
+    }
+    super.destroy();
+  }
+
   private HadoopSecurityManager loadHadoopSecurityManager(Props props,
       Logger logger) throws RuntimeException {
 
@@ -439,6 +458,7 @@ public class ReportalServlet extends LoginAbstractAzkabanServlet {
           StreamProviderHDFS hdfsStreamProvider =
               (StreamProviderHDFS) streamProvider;
           hdfsStreamProvider.setHadoopSecurityManager(hadoopSecurityManager);
+          hdfsStreamProvider.setFileSystemPool(fileSystemPool);
           hdfsStreamProvider.setUser(reportalStorageUser);
         }
 
@@ -1258,7 +1278,6 @@ public class ReportalServlet extends LoginAbstractAzkabanServlet {
               DEFAULT_MAIL_TEMP_DIR_RETENTION_MS);
     }
 
-    @SuppressWarnings("unused")
     public void shutdown() {
       shutdown = true;
       this.interrupt();
@@ -1277,7 +1296,9 @@ public class ReportalServlet extends LoginAbstractAzkabanServlet {
         try {
           Thread.sleep(CLEAN_INTERVAL_MS);
         } catch (InterruptedException e) {
-          logger.error("CleanerThread's sleep was interrupted.", e);
+          if (!shutdown) {
+            logger.error("CleanerThread's sleep was interrupted.", e);
+          }
         }
       }
     }
@@ -1290,33 +1311,43 @@ public class ReportalServlet extends LoginAbstractAzkabanServlet {
         StreamProviderHDFS hdfsStreamProvider =
             (StreamProviderHDFS) streamProvider;
         hdfsStreamProvider.setHadoopSecurityManager(hadoopSecurityManager);
+        hdfsStreamProvider.setFileSystemPool(fileSystemPool);
         hdfsStreamProvider.setUser(reportalStorageUser);
       }
 
       final long pastTimeThreshold =
           System.currentTimeMillis() - OUTPUT_DIR_RETENTION_MS;
 
-      String[] oldFiles = null;
       try {
-        oldFiles =
-            streamProvider.getOldFiles(ReportalMailCreator.outputLocation,
-                pastTimeThreshold);
-      } catch (Exception e) {
-        logger.error("Error getting old files from "
-            + ReportalMailCreator.outputLocation + " on "
-            + ReportalMailCreator.outputFileSystem + " file system.", e);
-      }
+        String[] oldFiles = null;
+        try {
+          oldFiles =
+              streamProvider.getOldFiles(ReportalMailCreator.outputLocation,
+                  pastTimeThreshold);
+        } catch (Exception e) {
+          logger.error("Error getting old files from "
+              + ReportalMailCreator.outputLocation + " on "
+              + ReportalMailCreator.outputFileSystem + " file system.", e);
+        }
 
-      if (oldFiles != null) {
-        for (String file : oldFiles) {
-          String filePath = ReportalMailCreator.outputLocation + "/" + file;
-          try {
-            streamProvider.deleteFile(filePath);
-          } catch (Exception e) {
-            logger.error("Error deleting file " + filePath + " from "
-                + ReportalMailCreator.outputFileSystem + " file system.", e);
+        if (oldFiles != null) {
+          for (String file : oldFiles) {
+            String filePath = ReportalMailCreator.outputLocation + "/" + file;
+            try {
+              streamProvider.deleteFile(filePath);
+            } catch (Exception e) {
+              logger.error("Error deleting file " + filePath + " from "
+                  + ReportalMailCreator.outputFileSystem + " file system.", e);
+            }
           }
         }
+      } finally {
+        // hands the pooled file system back
+        try {
+          streamProvider.cleanUp();
+        } catch (IOException e) {
+          logger.error("Error cleaning up the stream provider.", e);
+        }
       }
     }
 